@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.benchmarks;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.SessionEndListener;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.BuiltInServices;
+import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.io.AbstractByteWriteAdapter;
+import org.jboss.errai.bus.server.util.SecureHashUtil;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Shared fixtures for the bus benchmarks: representative message payloads, sessions that are not backed by a
+ * servlet container, and a sink that discards what the buffer hands it.
+ */
+public final class BenchmarkSupport {
+  private BenchmarkSupport() {
+  }
+
+  /**
+   * Builds the parts of a typical RPC-style reply carrying a payload of the given number of characters.
+   */
+  public static Map<String, Object> newMessageParts(final String subject, final int payloadChars) {
+    final StringBuilder payload = new StringBuilder(payloadChars);
+    for (int i = 0; i < payloadChars; i++) {
+      payload.append((char) ('a' + (i % 26)));
+    }
+
+    final Map<String, Object> parts = new LinkedHashMap<String, Object>();
+    parts.put(MessageParts.ToSubject.name(), subject);
+    parts.put(MessageParts.CommandType.name(), "Update");
+    parts.put(MessageParts.ReplyTo.name(), subject + ":RespondTo:RPC");
+    parts.put(MessageParts.Value.name(), payload.toString());
+    parts.put(MessageParts.PriorityProcessing.name(), "1");
+    return parts;
+  }
+
+  /**
+   * Encodes the given parts exactly as the server would put them on the wire.
+   */
+  public static String encode(final Map<String, Object> parts) {
+    return ErraiProtocol.encodePayload(parts);
+  }
+
+  /**
+   * Encodes a JSON array of {@code count} copies of the given parts, which is what a client posts when it has
+   * batched several messages into one request.
+   */
+  public static String encodeBatch(final Map<String, Object> parts, final int count) {
+    final String single = encode(parts);
+    final StringBuilder sb = new StringBuilder(single.length() * count + count + 1).append('[');
+    for (int i = 0; i < count; i++) {
+      if (i != 0) {
+        sb.append(',');
+      }
+      sb.append(single);
+    }
+    return sb.append(']').toString();
+  }
+
+  public static QueueSession newSession() {
+    return new BenchmarkQueueSession(SecureHashUtil.nextSecureHash());
+  }
+
+  /**
+   * Associates the session with the bus, creating its message queue and subscribing it to the given subjects. This
+   * is the same handshake a remote client performs on connect.
+   */
+  public static void associate(final ServerMessageBus bus, final QueueSession session, final String... subjects) {
+    final StringBuilder services = new StringBuilder(BuiltInServices.ClientBus.name());
+    for (final String subject : subjects) {
+      services.append(',').append(subject);
+    }
+
+    final Message msg = MessageBuilder
+        .createMessage(BuiltInServices.ServerBus.name())
+        .command(BusCommand.Associate)
+        .with(MessageParts.RemoteServices, services.toString())
+        .with(MessageParts.PriorityProcessing, 1)
+        .noErrorHandling()
+        .getMessage()
+        .setResource("Session", session)
+        .setResource("SessionID", session.getSessionId())
+        .setFlag(RoutingFlag.FromRemote);
+
+    bus.sendGlobal(msg);
+  }
+
+  /**
+   * A {@link org.jboss.errai.bus.server.io.ByteWriteAdapter} that feeds every byte into a {@link Blackhole} so the
+   * read path can not be eliminated by the JIT.
+   */
+  public static class BlackholeWriteAdapter extends AbstractByteWriteAdapter {
+    private final Blackhole blackhole;
+
+    public BlackholeWriteAdapter(final Blackhole blackhole) {
+      this.blackhole = blackhole;
+    }
+
+    @Override
+    public void write(final byte b) throws IOException {
+      blackhole.consume(b);
+    }
+
+    @Override
+    public void flush() throws IOException {
+    }
+  }
+
+  private static class BenchmarkQueueSession implements QueueSession {
+    private final Map<String, Object> attributes = new HashMap<String, Object>();
+    private final String sessionId;
+
+    private BenchmarkQueueSession(final String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    @Override
+    public String getSessionId() {
+      return sessionId;
+    }
+
+    @Override
+    public String getParentSessionId() {
+      return null;
+    }
+
+    @Override
+    public boolean endSession() {
+      return false;
+    }
+
+    @Override
+    public void setAttribute(final String attribute, final Object value) {
+      attributes.put(attribute, value);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getAttribute(final Class<T> type, final String attribute) {
+      return (T) attributes.get(attribute);
+    }
+
+    @Override
+    public Collection<String> getAttributeNames() {
+      return attributes.keySet();
+    }
+
+    @Override
+    public boolean hasAttribute(final String attribute) {
+      return attributes.containsKey(attribute);
+    }
+
+    @Override
+    public Object removeAttribute(final String attribute) {
+      return attributes.remove(attribute);
+    }
+
+    @Override
+    public void addSessionEndListener(final SessionEndListener listener) {
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+  }
+}
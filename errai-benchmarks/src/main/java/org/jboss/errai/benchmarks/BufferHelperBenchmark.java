@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.BufferHelper;
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@link BufferHelper#encodeAndWrite(org.jboss.errai.bus.server.io.buffers.Buffer, BufferColor, Message)},
+ * which marshals a message and copies it into the {@link TransmissionBuffer}. Run with {@code -prof gc} to see the
+ * per-message allocation of the intermediate encoding.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class BufferHelperBenchmark {
+  @Param({"64", "1024", "65536"})
+  public int payloadChars;
+
+  private TransmissionBuffer buffer;
+  private BufferColor color;
+  private Message message;
+
+  @Setup
+  public void setup() {
+    buffer = TransmissionBuffer.create(TransmissionBuffer.DEFAULT_SEGMENT_SIZE / 2, 4096);
+    color = BufferColor.getNewColor();
+    message = CommandMessage.createWithParts(BenchmarkSupport.newMessageParts("BenchmarkService", payloadChars));
+  }
+
+  @Benchmark
+  public void encodeAndWrite() throws IOException {
+    BufferHelper.encodeAndWrite(buffer, color, message);
+  }
+
+  @Benchmark
+  public String encodeOnly() {
+    return BenchmarkSupport.encode(message.getParts());
+  }
+}
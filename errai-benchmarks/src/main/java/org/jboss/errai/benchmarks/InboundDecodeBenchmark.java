@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.server.JSONByteDecoder;
+import org.jboss.errai.marshalling.server.JSONStreamDecoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the inbound path of an HTTP POST: {@link JSONStreamDecoder#decode(java.io.InputStream)} and
+ * {@link JSONByteDecoder#decode(java.io.InputStream)} on their own, and
+ * {@link MessageFactory#createCommandMessage(QueueSession, java.io.InputStream)}, which decodes and demarshalls the
+ * posted messages.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class InboundDecodeBenchmark {
+  @Param({"64", "4096"})
+  public int payloadChars;
+
+  @Param({"1", "16"})
+  public int messagesPerRequest;
+
+  private byte[] requestBody;
+  private QueueSession session;
+
+  @Setup
+  public void setup() {
+    final String json = messagesPerRequest == 1
+        ? BenchmarkSupport.encode(BenchmarkSupport.newMessageParts("BenchmarkService", payloadChars))
+        : BenchmarkSupport.encodeBatch(BenchmarkSupport.newMessageParts("BenchmarkService", payloadChars),
+            messagesPerRequest);
+
+    requestBody = json.getBytes(StandardCharsets.UTF_8);
+    session = BenchmarkSupport.newSession();
+  }
+
+  @Benchmark
+  public EJValue jsonStreamDecode() throws IOException {
+    return JSONStreamDecoder.decode(new ByteArrayInputStream(requestBody));
+  }
+
+  @Benchmark
+  public EJValue jsonByteDecode() throws IOException {
+    return JSONByteDecoder.decode(new ByteArrayInputStream(requestBody));
+  }
+
+  @Benchmark
+  public List<Message> createCommandMessage() throws IOException {
+    return MessageFactory.createCommandMessage(session, new ByteArrayInputStream(requestBody));
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.bus.server.service.ErraiServiceFactory;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures {@code ServerMessageBusImpl.send} to a single session and {@code sendGlobal} fan-out of a topic to all
+ * of the sessions subscribed to it. {@link #subscribedPercent} controls whether the fan-out can take the shared
+ * "all buffers" fast path (100%) or has to encode the message once per subscribed queue.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ServerMessageBusBenchmark {
+  private static final String TOPIC = "BenchmarkTopic";
+  private static final String DIRECT = "BenchmarkDirect";
+
+  @Param({"100", "1000", "10000"})
+  public int sessions;
+
+  @Param({"100", "50", "10"})
+  public int subscribedPercent;
+
+  @Param({"256"})
+  public int payloadChars;
+
+  private ErraiService service;
+  private ServerMessageBus bus;
+  private String[] sessionIds;
+  private String payload;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    service = ErraiServiceFactory.create(new ErraiServiceConfiguratorImpl());
+    bus = service.getBus();
+
+    final List<String> ids = new ArrayList<String>(sessions);
+    final int subscribed = Math.max(1, (sessions * subscribedPercent) / 100);
+    for (int i = 0; i < sessions; i++) {
+      final QueueSession session = BenchmarkSupport.newSession();
+      if (i < subscribed) {
+        BenchmarkSupport.associate(bus, session, TOPIC, DIRECT);
+      }
+      else {
+        BenchmarkSupport.associate(bus, session, DIRECT);
+      }
+      ids.add(session.getSessionId());
+    }
+    sessionIds = ids.toArray(new String[ids.size()]);
+
+    payload = (String) BenchmarkSupport.newMessageParts(TOPIC, payloadChars).get(MessageParts.Value.name());
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    service.stopService();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void sendToSession() {
+    sendToRandomSession();
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void sendToSessionContended() {
+    sendToRandomSession();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void sendGlobalFanOut() {
+    MessageBuilder.createMessage()
+        .toSubject(TOPIC)
+        .signalling()
+        .with(MessageParts.Value, payload)
+        .noErrorHandling()
+        .sendGlobalWith(bus);
+  }
+
+  private void sendToRandomSession() {
+    final String sessionId = sessionIds[ThreadLocalRandom.current().nextInt(sessionIds.length)];
+    MessageBuilder.createMessage()
+        .toSubject(DIRECT)
+        .signalling()
+        .with(MessageParts.SessionID, sessionId)
+        .with(MessageParts.Value, payload)
+        .noErrorHandling()
+        .sendNowWith(bus);
+  }
+}
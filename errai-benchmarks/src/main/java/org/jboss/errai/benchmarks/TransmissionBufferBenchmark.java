@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures {@link TransmissionBuffer#write(int, java.io.InputStream, BufferColor)} and
+ * {@link TransmissionBuffer#read(org.jboss.errai.bus.server.io.ByteWriteAdapter, BufferColor)}, both uncontended and
+ * with several writers sharing the buffer while a reader drains its color.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class TransmissionBufferBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class SharedBuffer {
+    @Param({"64", "1024", "16384"})
+    public int messageSize;
+
+    @Param({"heap", "direct"})
+    public String allocation;
+
+    TransmissionBuffer buffer;
+    byte[] payload;
+
+    @Setup
+    public void setup() {
+      buffer = "direct".equals(allocation)
+          ? TransmissionBuffer.createDirect(TransmissionBuffer.DEFAULT_SEGMENT_SIZE / 2, 4096)
+          : TransmissionBuffer.create(TransmissionBuffer.DEFAULT_SEGMENT_SIZE / 2, 4096);
+
+      payload = new byte[messageSize];
+      for (int i = 0; i < payload.length; i++) {
+        payload[i] = (byte) ('a' + (i % 26));
+      }
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class ThreadColor {
+    final BufferColor color = BufferColor.getNewColor();
+  }
+
+  /**
+   * Every writer in a group writes into the reader's color so the reader always has something to drain.
+   */
+  @State(Scope.Group)
+  public static class GroupColor {
+    BufferColor color;
+
+    @Setup
+    public void setup(final SharedBuffer shared) {
+      color = BufferColor.getNewColorFromHead(shared.buffer);
+    }
+  }
+
+  @Benchmark
+  @Threads(1)
+  public void writeUncontended(final SharedBuffer shared, final ThreadColor color) throws IOException {
+    shared.buffer.write(shared.payload.length, new ByteArrayInputStream(shared.payload), color.color);
+  }
+
+  @Benchmark
+  @Threads(1)
+  public boolean writeThenRead(final SharedBuffer shared, final ThreadColor color, final Blackhole blackhole)
+      throws IOException {
+    shared.buffer.write(shared.payload.length, new ByteArrayInputStream(shared.payload), color.color);
+    return shared.buffer.read(new BenchmarkSupport.BlackholeWriteAdapter(blackhole), color.color);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public void writeContended(final SharedBuffer shared, final ThreadColor color) throws IOException {
+    shared.buffer.write(shared.payload.length, new ByteArrayInputStream(shared.payload), color.color);
+  }
+
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(3)
+  public void groupWrite(final SharedBuffer shared, final GroupColor color) throws IOException {
+    shared.buffer.write(shared.payload.length, new ByteArrayInputStream(shared.payload), color.color);
+  }
+
+  @Benchmark
+  @Group("producerConsumer")
+  @GroupThreads(1)
+  public boolean groupRead(final SharedBuffer shared, final GroupColor color, final Blackhole blackhole)
+      throws IOException {
+    return shared.buffer.read(new BenchmarkSupport.BlackholeWriteAdapter(blackhole), color.color);
+  }
+}
@@ -20,7 +20,9 @@ import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.SessionEndEvent;
 import org.jboss.errai.bus.client.api.SessionEndListener;
 import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
 import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
 import org.jboss.errai.bus.server.servlet.websocket.WebSocketNegotiationHandler;
@@ -31,9 +33,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.servlet.http.HttpSession;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
 import javax.websocket.Session;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,10 +47,17 @@ import java.util.Map;
  * Handler for websocket messages for both receiving and sending. There is one
  * instance for each {@link javax.websocket.Session} and each one has a relation
  * to its {@link javax.servlet.http.HttpSession}.
+ * <p/>
+ * Messages written while a frame is being sent are batched into the next frame.
+ * Frames are sent asynchronously, one at a time: the next frame is sent by the
+ * container thread completing the previous one, so no thread ever waits for a
+ * send. While a frame is in flight, the channel is not writable, so that
+ * messages are held back in the bus buffer rather than piling up in the
+ * container.
  * 
  * @author Michel Werren
  */
-public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
+public class DefaultErraiWebSocketChannel extends BatchingQueueChannel implements ErraiWebSocketChannel {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(DefaultErraiWebSocketChannel.class.getName());
 
@@ -57,12 +69,37 @@ public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
 
   protected QueueSession queueSession = null;
 
+  private volatile boolean sending;
+
+  private final SendHandler sendHandler = new SendHandler() {
+    @Override
+    public void onResult(SendResult result) {
+      sending = false;
+      if (!result.isOK()) {
+        LOGGER.warn("could not send frame on websocket session: " + session.getId(), result.getException());
+      }
+      try {
+        frameSent();
+      } catch (Exception e) {
+        LOGGER.warn("could not send frame on websocket session: " + session.getId(), e);
+      }
+    }
+  };
+
   public DefaultErraiWebSocketChannel(Session session, HttpSession httpSession) {
+    this(session, httpSession, getService());
+  }
+
+  private DefaultErraiWebSocketChannel(Session session, HttpSession httpSession, ErraiService erraiService) {
+    super(ErraiConfigAttribs.WEB_SOCKET_MAX_BATCH_SIZE.getInt(erraiService.getConfiguration()));
     this.session = session;
     this.httpSession = httpSession;
+    this.erraiService = erraiService;
+  }
 
+  private static ErraiService getService() {
     if (ErraiServiceSingleton.isInitialized()) {
-      erraiService = ErraiServiceSingleton.getService();
+      return ErraiServiceSingleton.getService();
     }
     else {
       throw new IllegalStateException(
@@ -120,8 +157,35 @@ public class DefaultErraiWebSocketChannel implements ErraiWebSocketChannel {
   }
 
   @Override
-  public void write(String data) throws IOException {
-    session.getBasicRemote().sendText(data);
+  public boolean isWritable() {
+    return !sending;
+  }
+
+  @Override
+  protected boolean canSendFrame() {
+    return !sending;
+  }
+
+  @Override
+  protected void writeFrame(String frame) throws IOException {
+    sending = true;
+    try {
+      session.getAsyncRemote().sendText(frame, sendHandler);
+    } catch (RuntimeException e) {
+      sending = false;
+      throw e;
+    }
+  }
+
+  @Override
+  protected void writeBinaryFrame(byte[] frame) throws IOException {
+    sending = true;
+    try {
+      session.getAsyncRemote().sendBinary(ByteBuffer.wrap(frame), sendHandler);
+    } catch (RuntimeException e) {
+      sending = false;
+      throw e;
+    }
   }
 
   @Override
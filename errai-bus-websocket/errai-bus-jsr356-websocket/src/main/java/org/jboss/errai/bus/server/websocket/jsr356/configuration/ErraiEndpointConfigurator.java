@@ -17,13 +17,18 @@
 package org.jboss.errai.bus.server.websocket.jsr356.configuration;
 
 import org.apache.commons.lang3.StringUtils;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceSingleton;
 import org.jboss.errai.bus.server.websocket.jsr356.filter.FilterLookup;
 
 import javax.servlet.http.HttpSession;
+import javax.websocket.Extension;
 import javax.websocket.HandshakeResponse;
 import javax.websocket.server.HandshakeRequest;
 import javax.websocket.server.ServerEndpointConfig;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.StringTokenizer;
 
@@ -34,8 +39,35 @@ public class ErraiEndpointConfigurator extends ServerEndpointConfig.Configurator
 
   public static final String FILTER_PARAM_NAME = "errai-jsr-356-websocket-filter";
 
+  private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
   private static Boolean filterLookuped = Boolean.FALSE;
 
+  /**
+   * Compression is provided by the container. Unless enabled with
+   * {@link ErraiConfigAttribs#WEB_SOCKET_COMPRESSION}, the <tt>permessage-deflate</tt> extension is declined.
+   */
+  @Override
+  public List<Extension> getNegotiatedExtensions(List<Extension> installed, List<Extension> requested) {
+    final List<Extension> negotiated = super.getNegotiatedExtensions(installed, requested);
+    if (isCompressionEnabled()) {
+      return negotiated;
+    }
+
+    final List<Extension> withoutCompression = new ArrayList<Extension>(negotiated.size());
+    for (Extension extension : negotiated) {
+      if (!PERMESSAGE_DEFLATE.equals(extension.getName())) {
+        withoutCompression.add(extension);
+      }
+    }
+    return withoutCompression;
+  }
+
+  private boolean isCompressionEnabled() {
+    return ErraiServiceSingleton.isInitialized()
+        && ErraiConfigAttribs.WEB_SOCKET_COMPRESSION.getBoolean(ErraiServiceSingleton.getService().getConfiguration());
+  }
+
   @Override
   public void modifyHandshake(ServerEndpointConfig sec, HandshakeRequest request, HandshakeResponse response) {
     super.modifyHandshake(sec, request, response);
@@ -43,4 +43,18 @@ public enum Capabilities {
    * This message bus can communicate using Server-Sent Events
    */
   SSE,
+
+  /**
+   * This message bus can send messages over a WebSocket channel in binary frames rather than as JSON text. It is
+   * used only if the client asks for it while associating the channel.
+   */
+  BinaryFraming,
+
+  /**
+   * This message bus can send messages over a WebSocket channel in the compact encoding of
+   * {@link org.jboss.errai.marshalling.client.util.CompactEncoding}, which refers to types by their IDs in a table
+   * generated from the marshalling mappings. It is used only if the client asks for it while associating the
+   * channel, with the hash of the same table.
+   */
+  CompactEncoding,
 }
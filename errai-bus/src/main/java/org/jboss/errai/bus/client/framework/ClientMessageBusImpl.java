@@ -454,6 +454,12 @@ public class ClientMessageBusImpl implements ClientMessageBus {
 
   private void processCapabilities(final Message message) {
     for (final String capability : message.get(String.class, MessageParts.CapabilitiesFlags).split(",")) {
+      if (Capabilities.BinaryFraming.name().equals(capability)
+          || Capabilities.CompactEncoding.name().equals(capability)) {
+        // options of the websocket transport, not transports of their own.
+        continue;
+      }
+
       final TransportHandler handler = availableHandlers.get(capability);
       if (handler == null) {
         logger.warn("could not find handler for capability type: " + capability);
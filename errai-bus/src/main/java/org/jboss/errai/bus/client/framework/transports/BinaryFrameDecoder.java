@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.client.framework.transports;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Turns the binary frames of a WebSocket connection which negotiated
+ * {@link org.jboss.errai.bus.client.api.base.Capabilities#BinaryFraming} back into the JSON the server's marshallers
+ * produced. A frame starts with a version byte, followed by one token per JSON value or container boundary:
+ * <ul>
+ * <li>the structural tokens {@link #OBJECT_START}, {@link #OBJECT_END}, {@link #ARRAY_START} and {@link #ARRAY_END};
+ * commas and colons are implied.</li>
+ * <li>{@link #TRUE}, {@link #FALSE} and {@link #NULL}.</li>
+ * <li>{@link #INTEGER} followed by a zig-zag encoded varint, and {@link #NUMBER} followed by the length and the
+ * characters of a number which is not a plain integer.</li>
+ * <li>{@link #STRING} followed by the length and the UTF-8 bytes of the still escaped contents of a string.
+ * {@link #DICTIONARY_DEF} is encoded the same way and also adds the string to the dictionary of the connection, and
+ * {@link #DICTIONARY_REF} is followed by the varint index of a string in the dictionary.</li>
+ * </ul>
+ * Lengths are varints. The dictionary carries over from one frame to the next, so one decoder must be used for all
+ * frames of a connection, in the order they were received.
+ */
+public class BinaryFrameDecoder {
+  public static final int VERSION = 1;
+
+  public static final int OBJECT_START = 0x01;
+  public static final int OBJECT_END = 0x02;
+  public static final int ARRAY_START = 0x03;
+  public static final int ARRAY_END = 0x04;
+  public static final int TRUE = 0x05;
+  public static final int FALSE = 0x06;
+  public static final int NULL = 0x07;
+  public static final int INTEGER = 0x08;
+  public static final int NUMBER = 0x09;
+  public static final int STRING = 0x0A;
+  public static final int DICTIONARY_DEF = 0x0B;
+  public static final int DICTIONARY_REF = 0x0C;
+
+  private final List<String> dictionary = new ArrayList<String>();
+
+  private byte[] in;
+  private int pos;
+  private int end;
+
+  /**
+   * Decodes the specified frame into JSON.
+   *
+   * @throws IllegalArgumentException
+   *     if the frame is malformed or of an unknown version.
+   */
+  public String decode(final byte[] frame, final int offset, final int length) {
+    this.in = frame;
+    this.pos = offset;
+    this.end = offset + length;
+
+    try {
+      if (pos == end || in[pos++] != VERSION) {
+        throw new IllegalArgumentException("unsupported binary frame version");
+      }
+
+      final StringBuilder json = new StringBuilder(length * 2);
+
+      // for each open container: whether it is an object, and the number of keys and values written to it so far.
+      boolean[] objects = new boolean[32];
+      int[] counts = new int[32];
+      int depth = 0;
+
+      while (pos < end) {
+        final int token = in[pos++];
+
+        if (token == OBJECT_END || token == ARRAY_END) {
+          if (depth == 0) {
+            throw new IllegalArgumentException("unbalanced binary frame");
+          }
+          depth--;
+          json.append(token == OBJECT_END ? '}' : ']');
+          continue;
+        }
+
+        if (depth > 0) {
+          final int count = counts[depth - 1]++;
+          if (count > 0) {
+            json.append(objects[depth - 1] && count % 2 == 1 ? ':' : ',');
+          }
+        }
+
+        switch (token) {
+          case OBJECT_START:
+          case ARRAY_START:
+            if (depth == counts.length) {
+              objects = Arrays.copyOf(objects, depth * 2);
+              counts = Arrays.copyOf(counts, depth * 2);
+            }
+            objects[depth] = token == OBJECT_START;
+            counts[depth++] = 0;
+            json.append(token == OBJECT_START ? '{' : '[');
+            break;
+          case TRUE:
+            json.append("true");
+            break;
+          case FALSE:
+            json.append("false");
+            break;
+          case NULL:
+            json.append("null");
+            break;
+          case INTEGER: {
+            final long zigzag = readVarint();
+            json.append((zigzag >>> 1) ^ -(zigzag & 1));
+            break;
+          }
+          case NUMBER: {
+            final int len = (int) readVarint();
+            checkAvailable(len);
+            for (int i = 0; i < len; i++) {
+              json.append((char) in[pos++]);
+            }
+            break;
+          }
+          case STRING:
+            json.append('"').append(readUTF8()).append('"');
+            break;
+          case DICTIONARY_DEF: {
+            final String value = readUTF8();
+            dictionary.add(value);
+            json.append('"').append(value).append('"');
+            break;
+          }
+          case DICTIONARY_REF: {
+            final long index = readVarint();
+            if (index >= dictionary.size()) {
+              throw new IllegalArgumentException("unknown dictionary entry: " + index);
+            }
+            json.append('"').append(dictionary.get((int) index)).append('"');
+            break;
+          }
+          default:
+            throw new IllegalArgumentException("unknown token in binary frame: " + token);
+        }
+      }
+
+      if (depth != 0) {
+        throw new IllegalArgumentException("unbalanced binary frame");
+      }
+      return json.toString();
+    }
+    finally {
+      this.in = null;
+    }
+  }
+
+  /**
+   * Returns the number of entries in the dictionary of this connection.
+   */
+  public int getDictionarySize() {
+    return dictionary.size();
+  }
+
+  private long readVarint() {
+    long value = 0;
+    int shift = 0;
+    while (true) {
+      checkAvailable(1);
+      final int b = in[pos++];
+      value |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+      shift += 7;
+      if (shift > 63) {
+        throw new IllegalArgumentException("malformed varint in binary frame");
+      }
+    }
+  }
+
+  private String readUTF8() {
+    final int len = (int) readVarint();
+    checkAvailable(len);
+    final String value;
+    try {
+      value = new String(in, pos, len, "UTF-8");
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+    pos += len;
+    return value;
+  }
+
+  private void checkAvailable(final int len) {
+    if (len < 0 || end - pos < len) {
+      throw new IllegalArgumentException("truncated binary frame");
+    }
+  }
+}
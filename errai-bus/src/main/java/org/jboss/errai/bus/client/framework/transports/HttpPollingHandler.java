@@ -695,6 +695,11 @@ public class HttpPollingHandler implements TransportHandler, TransportStatistics
     return heldMessages.size();
   }
 
+  @Override
+  public String getCompression() {
+    return null;
+  }
+
   private class RemoteRequestCallback implements RequestCallback {
     private final long startTime;
     private final List<Message> toSend;
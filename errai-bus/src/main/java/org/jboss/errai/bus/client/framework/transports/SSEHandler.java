@@ -307,6 +307,11 @@ public class SSEHandler implements TransportHandler, TransportStatistics {
     return pollingHandler.getStatistics().getPendingMessages();
   }
 
+  @Override
+  public String getCompression() {
+    return null;
+  }
+
   @Override
   public void close() {
     if (!stopped) {
@@ -31,4 +31,11 @@ public interface TransportStatistics {
   public String getRxEndpoint();
   public String getTxEndpoint();
   public int getPendingMessages();
+
+  /**
+   * Returns the compression negotiated for this transport, for instance <tt>permessage-deflate</tt>, or null if the
+   * payloads are sent uncompressed. Browsers do not expose the compressed size of the payloads, so the compression
+   * ratio achieved is recorded on the server, in the compression statistics of its bus.
+   */
+  public String getCompression();
 }
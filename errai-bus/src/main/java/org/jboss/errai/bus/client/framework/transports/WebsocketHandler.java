@@ -20,6 +20,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import org.jboss.errai.bus.client.api.base.Capabilities;
 import org.jboss.errai.bus.client.api.base.CommandMessage;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.framework.BuiltInServices;
@@ -29,6 +30,9 @@ import org.jboss.errai.bus.client.protocols.BusCommand;
 import org.jboss.errai.bus.client.util.BusToolsCli;
 import org.jboss.errai.common.client.api.Assert;
 import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
+import org.jboss.errai.marshalling.client.api.MarshallerFramework;
+import org.jboss.errai.marshalling.client.util.CompactEncoding;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -51,6 +55,10 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
   private int txCount;
   private int rxCount;
 
+  private boolean binaryFraming;
+  private BinaryFrameDecoder binaryFrameDecoder;
+  private CompactTypeTable typeTable;
+
   private boolean configured;
   private boolean hosed;
   private boolean stopped;
@@ -80,6 +88,22 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
     webSocketUrl = capabilitiesMessage.get(String.class, MessageParts.WebSocketURL);
     webSocketToken = capabilitiesMessage.get(String.class, MessageParts.WebSocketToken);
 
+    binaryFraming = false;
+    typeTable = null;
+    for (final String capability : capabilitiesMessage.get(String.class, MessageParts.CapabilitiesFlags).split(",")) {
+      if (Capabilities.BinaryFraming.name().equals(capability)) {
+        binaryFraming = true;
+      }
+      else if (Capabilities.CompactEncoding.name().equals(capability)) {
+        // the type IDs only mean the same on both ends if the marshallers were generated from the same mappings.
+        final CompactTypeTable table = MarshallerFramework.getTypeTable();
+        if (table != null
+            && table.getHash().equals(capabilitiesMessage.get(String.class, MessageParts.TypeTableHash))) {
+          typeTable = table;
+        }
+      }
+    }
+
     hosed = (webSocketUrl == null || webSocketToken == null);
 
     if (hosed) {
@@ -173,21 +197,48 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
     logger.info("web socket opened. sending negotiation message.");
     transmitToSocket(o, getWebSocketNegotiationString());
     webSocketChannel = o;
+    // the server starts a new dictionary for each connection.
+    binaryFrameDecoder = binaryFraming ? new BinaryFrameDecoder() : null;
     connectedTime = System.currentTimeMillis();
   }
 
   private String getWebSocketNegotiationString() {
     return "{\"" + MessageParts.CommandType.name() + "\":\"" + BusCommand.Associate.name() + "\", \""
         + MessageParts.ConnectionSessionKey + "\":\"" + messageBus.getSessionId() + "\"" + ",\""
-        + MessageParts.WebSocketToken + "\":\"" + webSocketToken + "\"}";
+        + MessageParts.WebSocketToken + "\":\"" + webSocketToken + "\""
+        + (binaryFraming ? ",\"" + Capabilities.BinaryFraming.name() + "\":true" : "")
+        + (typeTable != null ? ",\"" + Capabilities.CompactEncoding.name() + "\":\"" + typeTable.getHash() + "\"" : "")
+        + "}";
   }
 
-  private void handleReceived(String json) {
-    BusToolsCli.decodeToCallback(json, messageBus);
+  private void handleReceived(final String json) {
+    BusToolsCli.decodeToCallback(typeTable != null ? CompactEncoding.expand(json, typeTable) : json, messageBus);
     rxCount++;
     lastTransmission = System.currentTimeMillis();
   }
 
+  private void handleReceivedBinary(final Object arrayBuffer) {
+    if (binaryFrameDecoder == null) {
+      logger.error("received a binary frame, but binary framing was not negotiated");
+      return;
+    }
+
+    final byte[] frame = new byte[getByteLength(arrayBuffer)];
+    copyBytes(arrayBuffer, frame);
+    handleReceived(binaryFrameDecoder.decode(frame, 0, frame.length));
+  }
+
+  private native static int getByteLength(final Object arrayBuffer) /*-{
+    return arrayBuffer.byteLength;
+  }-*/;
+
+  private native static void copyBytes(final Object arrayBuffer, final byte[] target) /*-{
+    var bytes = new Int8Array(arrayBuffer);
+    for (var i = 0; i < bytes.length; i++) {
+      target[i] = bytes[i];
+    }
+  }-*/;
+
   @Override
   public String toString() {
     return "WebSockets";
@@ -206,9 +257,15 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
     var socket;
     if (window.WebSocket) {
       socket = new WebSocket(websocketAddr);
+      socket.binaryType = "arraybuffer";
 
       socket.onmessage = function (event) {
-        thisRef.@org.jboss.errai.bus.client.framework.transports.WebsocketHandler::handleReceived(Ljava/lang/String;)(event.data);
+        if (typeof event.data === "string") {
+          thisRef.@org.jboss.errai.bus.client.framework.transports.WebsocketHandler::handleReceived(Ljava/lang/String;)(event.data);
+        }
+        else {
+          thisRef.@org.jboss.errai.bus.client.framework.transports.WebsocketHandler::handleReceivedBinary(Ljava/lang/Object;)(event.data);
+        }
       };
 
       socket.onopen = function (event) {
@@ -331,6 +388,19 @@ public class WebsocketHandler implements TransportHandler, TransportStatistics {
     return 0;
   }
 
+  @Override
+  public String getCompression() {
+    if (webSocketChannel == null) {
+      return null;
+    }
+    final String extensions = getExtensions(webSocketChannel);
+    return extensions == null || extensions.isEmpty() ? null : extensions;
+  }
+
+  private native static String getExtensions(final Object socket) /*-{
+    return socket.extensions;
+  }-*/;
+
   @Override
   public void close() {
     if (!stopped) {
@@ -145,6 +145,8 @@ public class ManagementConsole {
       logger.info("  Last Activity (TX/RX) : " + ((System.currentTimeMillis() - stats.getLastTransmissionTime()) / 1000) + " secs ago.");
       final int measuredLatency = stats.getMeasuredLatency();
       logger.info("  Measured Latency      : " + (measuredLatency == -1 ? "N/A" : measuredLatency + "ms"));
+      final String compression = stats.getCompression();
+      logger.info("  Compression           : " + (compression == null ? "None" : compression));
     }
     else {
       logger.info("  <No transport configured>");
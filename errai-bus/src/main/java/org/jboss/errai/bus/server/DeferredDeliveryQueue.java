@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.common.client.protocols.MessageParts;
+
+/**
+ * Holds the messages sent to a {@link MessageQueue} before it has been initialized. Any number of threads may defer
+ * messages without locking, while draining is done by one thread at a time so that messages are delivered in the
+ * order they were deferred (with messages flagged for priority processing first).
+ */
+final class DeferredDeliveryQueue {
+  private final ConcurrentLinkedQueue<Message> messages = new ConcurrentLinkedQueue<Message>();
+  private final AtomicBoolean draining = new AtomicBoolean();
+
+  /**
+   * The time the oldest message still waiting was deferred at, in nanoseconds, or 0 if no message is waiting.
+   */
+  private final AtomicLong oldestDeferred = new AtomicLong();
+
+  private final DeferredDeliveryStatistics statistics;
+
+  DeferredDeliveryQueue(final DeferredDeliveryStatistics statistics) {
+    this.statistics = statistics;
+  }
+
+  void offer(final Message message) {
+    messages.offer(message);
+    oldestDeferred.compareAndSet(0, Math.max(1, System.nanoTime()));
+    statistics.deferred();
+  }
+
+  /**
+   * Delivers all waiting messages to the specified queue. If another thread is already draining this queue, the
+   * call returns immediately and the other thread delivers the messages.
+   */
+  void drainTo(final MessageQueue queue) throws IOException {
+    while (!messages.isEmpty() && draining.compareAndSet(false, true)) {
+      try {
+        final long since = oldestDeferred.getAndSet(0);
+
+        final List<Message> batch = new ArrayList<Message>();
+        Message m;
+        while ((m = messages.poll()) != null) {
+          batch.add(m);
+        }
+        // priority messages are taken out of the batch below.
+        final int count = batch.size();
+
+        final Iterator<Message> iter = batch.iterator();
+        while (iter.hasNext()) {
+          if ((m = iter.next()).hasPart(MessageParts.PriorityProcessing.toString())) {
+            queue.offer(m);
+            iter.remove();
+          }
+        }
+
+        for (final Message message : batch) {
+          queue.offer(message);
+        }
+
+        statistics.drained(count, since == 0 ? 0 : System.nanoTime() - since);
+      }
+      finally {
+        draining.set(false);
+      }
+    }
+  }
+
+  /**
+   * Drops all waiting messages.
+   */
+  void discard() {
+    int count = 0;
+    while (messages.poll() != null) {
+      count++;
+    }
+    oldestDeferred.set(0);
+    statistics.discarded(count);
+  }
+
+  int size() {
+    return messages.size();
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for messages whose delivery is deferred until their {@link org.jboss.errai.bus.server.api.MessageQueue}
+ * has been initialized. The depth is the number of messages currently waiting across all queues, and the drain
+ * latency is the time between the oldest waiting message of a queue being deferred and the queue being drained.
+ */
+public class DeferredDeliveryStatistics {
+  private final AtomicInteger depth = new AtomicInteger();
+  private final AtomicInteger peakDepth = new AtomicInteger();
+  private final AtomicLong totalDeferred = new AtomicLong();
+  private final AtomicLong totalDiscarded = new AtomicLong();
+  private final AtomicLong drainCount = new AtomicLong();
+  private final AtomicLong totalDrainLatency = new AtomicLong();
+  private final AtomicLong maxDrainLatency = new AtomicLong();
+
+  void deferred() {
+    totalDeferred.incrementAndGet();
+
+    final int newDepth = depth.incrementAndGet();
+    int peak;
+    while (newDepth > (peak = peakDepth.get()) && !peakDepth.compareAndSet(peak, newDepth)) ;
+  }
+
+  void drained(final int count, final long latencyNanos) {
+    depth.addAndGet(-count);
+    drainCount.incrementAndGet();
+    totalDrainLatency.addAndGet(latencyNanos);
+
+    long max;
+    while (latencyNanos > (max = maxDrainLatency.get()) && !maxDrainLatency.compareAndSet(max, latencyNanos)) ;
+  }
+
+  void discarded(final int count) {
+    depth.addAndGet(-count);
+    totalDiscarded.addAndGet(count);
+  }
+
+  /**
+   * Returns the number of messages currently waiting for their queue to be initialized.
+   */
+  public int getDepth() {
+    return depth.get();
+  }
+
+  /**
+   * Returns the highest number of messages which were waiting at the same time.
+   */
+  public int getPeakDepth() {
+    return peakDepth.get();
+  }
+
+  public long getTotalDeferred() {
+    return totalDeferred.get();
+  }
+
+  public long getTotalDiscarded() {
+    return totalDiscarded.get();
+  }
+
+  public long getDrainCount() {
+    return drainCount.get();
+  }
+
+  public long getMeanDrainLatency(final TimeUnit unit) {
+    final long drains = drainCount.get();
+    return drains == 0 ? 0 : unit.convert(totalDrainLatency.get() / drains, TimeUnit.NANOSECONDS);
+  }
+
+  public long getMaxDrainLatency(final TimeUnit unit) {
+    return unit.convert(maxDrainLatency.get(), TimeUnit.NANOSECONDS);
+  }
+
+  @Override
+  public String toString() {
+    return "DeferredDeliveryStatistics{" +
+        "depth=" + getDepth() +
+        ", peakDepth=" + getPeakDepth() +
+        ", totalDeferred=" + getTotalDeferred() +
+        ", totalDiscarded=" + getTotalDiscarded() +
+        ", drains=" + getDrainCount() +
+        ", meanDrainLatencyMs=" + getMeanDrainLatency(TimeUnit.MILLISECONDS) +
+        ", maxDrainLatencyMs=" + getMaxDrainLatency(TimeUnit.MILLISECONDS) +
+        '}';
+  }
+}
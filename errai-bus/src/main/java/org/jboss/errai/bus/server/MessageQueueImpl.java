@@ -20,6 +20,11 @@ import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jboss.errai.bus.client.api.QueueSession;
@@ -63,13 +68,53 @@ public class MessageQueueImpl implements MessageQueue {
   private final Object pageLock = new Object();
   private final AtomicInteger messageCount = new AtomicInteger();
 
+  private final ScheduledExecutorService wakeScheduler;
+  private final long coalesceWindowMillis;
+  private final int coalesceMaxWakes;
+  private final AtomicInteger coalescedWakes = new AtomicInteger();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  private volatile ScheduledFuture<?> pendingFlush;
+
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      flushCoalescedWakes();
+    }
+  };
+
   private static final Logger log = getLogger(MessageQueueImpl.class);
 
   public MessageQueueImpl(final TransmissionBuffer buffer, final QueueSession session, final int timeoutSecs) {
+    this(buffer, session, timeoutSecs, null, 0, 0);
+  }
+
+  /**
+   * Creates a queue which coalesces activations: the activation callback fires at most once per coalescing window,
+   * or as soon as the given number of wake-ups has accumulated, whichever comes first.
+   *
+   * @param wakeScheduler
+   *     the scheduler used to fire the activation callback at the end of a window. Must not be null if the
+   *     coalescing window is greater than zero.
+   * @param coalesceWindowMillis
+   *     the length of the coalescing window in milliseconds. Zero disables coalescing.
+   * @param coalesceMaxWakes
+   *     the number of wake-ups after which the activation callback fires before the window ends. Zero or less means
+   *     no limit.
+   */
+  public MessageQueueImpl(final TransmissionBuffer buffer, final QueueSession session, final int timeoutSecs,
+                          final ScheduledExecutorService wakeScheduler, final long coalesceWindowMillis,
+                          final int coalesceMaxWakes) {
+    if (coalesceWindowMillis > 0 && wakeScheduler == null) {
+      throw new IllegalArgumentException("a scheduler is required to coalesce wake-ups");
+    }
+
     this.buffer = buffer;
     this.session = session;
     this.bufferColor = BufferColor.getNewColorFromHead(buffer);
     this.timeout = (timeoutSecs * 1000);
+    this.wakeScheduler = wakeScheduler;
+    this.coalesceWindowMillis = coalesceWindowMillis;
+    this.coalesceMaxWakes = coalesceMaxWakes;
   }
 
   @Override
@@ -163,6 +208,40 @@ public class MessageQueueImpl implements MessageQueue {
 
   @Override
   public void fireActivationCallback() {
+    if (coalesceWindowMillis <= 0) {
+      activate();
+      return;
+    }
+
+    if (coalesceMaxWakes > 0 && coalescedWakes.incrementAndGet() >= coalesceMaxWakes) {
+      flushCoalescedWakes();
+    }
+    else if (flushScheduled.compareAndSet(false, true)) {
+      try {
+        pendingFlush = wakeScheduler.schedule(flushTask, coalesceWindowMillis, TimeUnit.MILLISECONDS);
+      }
+      catch (RejectedExecutionException e) {
+        // the bus is shutting down. fire right away so a waiting client is not left hanging.
+        flushCoalescedWakes();
+      }
+    }
+  }
+
+  private void flushCoalescedWakes() {
+    coalescedWakes.set(0);
+
+    final ScheduledFuture<?> flush = pendingFlush;
+    if (flush != null) {
+      pendingFlush = null;
+      flush.cancel(false);
+    }
+
+    // a wake-up racing with this flush may schedule another one. that costs at most one empty activation.
+    flushScheduled.set(false);
+    activate();
+  }
+
+  private void activate() {
     synchronized (activationLock) {
       if (activationCallback != null) {
         activationCallback.activate(this);
@@ -241,6 +320,12 @@ public class MessageQueueImpl implements MessageQueue {
   @Override
   public void discard() {
     queueRunning = false;
+
+    final ScheduledFuture<?> flush = pendingFlush;
+    if (flush != null) {
+      flush.cancel(false);
+    }
+
     if (deliveryHandler instanceof Cleanable) {
       ((Cleanable) deliveryHandler).clean(this);
     }
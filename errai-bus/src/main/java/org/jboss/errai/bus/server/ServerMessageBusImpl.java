@@ -37,14 +37,19 @@ import java.util.Map;
 import java.util.Random;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.servlet.http.HttpServletRequest;
 
 import org.jboss.errai.bus.client.api.BusMonitor;
+import org.jboss.errai.bus.client.api.HasEncoded;
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.RoutingFlag;
 import org.jboss.errai.bus.client.api.SubscribeListener;
@@ -64,11 +69,15 @@ import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.api.QueueCloseEvent;
 import org.jboss.errai.bus.server.api.QueueClosedListener;
 import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.async.scheduling.HashedWheelTimer;
+import org.jboss.errai.bus.server.async.scheduling.WheelScheduledExecutorService;
 import org.jboss.errai.bus.server.cluster.ClusteringProvider;
 import org.jboss.errai.bus.server.io.BufferHelper;
+import org.jboss.errai.bus.server.io.EncodedPayload;
 import org.jboss.errai.bus.server.io.PageUtil;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
 import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.io.websockets.CompressionStatistics;
 import org.jboss.errai.bus.server.io.websockets.WebSocketServerHandler;
 import org.jboss.errai.bus.server.io.websockets.WebSocketTokenManager;
 import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
@@ -79,6 +88,7 @@ import org.jboss.errai.bus.server.util.SecureHashUtil;
 import org.jboss.errai.common.client.protocols.MessageParts;
 import org.jboss.errai.common.client.protocols.Resources;
 import org.jboss.errai.common.server.api.ErraiBootstrapFailure;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
 import org.slf4j.Logger;
 
 import com.google.inject.AbstractModule;
@@ -102,7 +112,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
   private final Map<QueueSession, MessageQueue> messageQueues = new ConcurrentHashMap<QueueSession, MessageQueue>();
 
-  private final Map<MessageQueue, List<Message>> deferredQueue = new ConcurrentHashMap<MessageQueue, List<Message>>();
+  private final ConcurrentMap<MessageQueue, DeferredDeliveryQueue> deferredQueue
+      = new ConcurrentHashMap<MessageQueue, DeferredDeliveryQueue>();
+  private final DeferredDeliveryStatistics deferredDeliveryStatistics = new DeferredDeliveryStatistics();
+  private final CompressionStatistics compressionStatistics = new CompressionStatistics();
   private final Map<String, QueueSession> sessionLookup = new ConcurrentHashMap<String, QueueSession>();
   private final Map<String, ClusterWaitEntry> deadLetter = new ConcurrentHashMap<String, ClusterWaitEntry>();
 
@@ -110,7 +123,13 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private final List<UnsubscribeListener> unsubscribeListeners = new ArrayList<UnsubscribeListener>();
   private final List<QueueClosedListener> queueClosedListeners = new ArrayList<QueueClosedListener>();
 
-  private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
+  /**
+   * The timer of the scheduler and of the wake-up coalescing. It is owned by the bus and stopped along with it.
+   */
+  private final HashedWheelTimer timer = new HashedWheelTimer("Errai Bus Timer", HashedWheelTimer.DEFAULT_TICK_MILLIS,
+      TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL);
+  private final ScheduledExecutorService scheduler
+      = new WheelScheduledExecutorService(timer, Executors.newSingleThreadExecutor());
 
   private static final Logger log = getLogger(ServerMessageBus.class);
 
@@ -124,7 +143,14 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private final boolean sseEnabled;
   private final boolean webSocketServlet;
   private final boolean webSocketServer;
+  private final boolean webSocketBinaryFraming;
+  private final boolean webSocketCompactEncoding;
   private final boolean useSecureWebsocket;
+  private final boolean sharedBroadcastEncoding;
+  private final boolean topicBufferColors;
+  private final long wakeCoalesceWindow;
+  private final int wakeCoalesceMaxMessages;
+  private final ScheduledExecutorService wakeScheduler;
 
   private final boolean clustering;
   private final ClusteringProvider clusteringProvider;
@@ -143,6 +169,33 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     this.messageQueueTimeoutSecs = ErraiConfigAttribs.MESSAGE_QUEUE_TIMEOUT_SECS.getInt(config);
     this.sseEnabled = ErraiConfigAttribs.ENABLE_SSE_SUPPORT.getBoolean(config);
     this.webSocketServer = ErraiConfigAttribs.ENABLE_WEB_SOCKET_SERVER.getBoolean(config);
+    this.webSocketBinaryFraming = ErraiConfigAttribs.WEB_SOCKET_BINARY_FRAMING.getBoolean(config);
+    this.webSocketCompactEncoding = ErraiConfigAttribs.WEB_SOCKET_COMPACT_ENCODING.getBoolean(config);
+    this.sharedBroadcastEncoding = ErraiConfigAttribs.BUS_SHARED_BROADCAST_ENCODING.getBoolean(config);
+    this.topicBufferColors = ErraiConfigAttribs.BUS_TOPIC_BUFFER_COLORS.getBoolean(config);
+    this.wakeCoalesceWindow = ErraiConfigAttribs.BUS_WAKE_COALESCE_WINDOW.getInt(config);
+    this.wakeCoalesceMaxMessages = ErraiConfigAttribs.BUS_WAKE_COALESCE_MAX_MESSAGES.getInt(config);
+    if (wakeCoalesceWindow > 0) {
+      // activations write to the client, so they must not run on the timer thread. the pool is bounded, and its
+      // threads go away while no wake-ups are due. it is shut down along with the scheduler in stop().
+      final int wakeThreads = Runtime.getRuntime().availableProcessors();
+      final ThreadPoolExecutor wakeExecutor = new ThreadPoolExecutor(wakeThreads, wakeThreads, 60, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable r) {
+              final Thread thread = new Thread(r, "Errai Wake Thread " + counter.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            }
+          });
+      wakeExecutor.allowCoreThreadTimeOut(true);
+      this.wakeScheduler = new WheelScheduledExecutorService(timer, wakeExecutor);
+    }
+    else {
+      this.wakeScheduler = null;
+    }
 
     final int webSocketPort;
     final String webSocketPath;
@@ -196,8 +249,22 @@ public class ServerMessageBusImpl implements ServerMessageBus {
       directAlloc = false;
     }
 
+    final Integer maxBufferSize = ErraiConfigAttribs.BUS_BUFFER_MAX_SIZE.getInt(config);
+    final int maxRings;
+    if (maxBufferSize != null) {
+      maxRings = (int) Math.max(1, ((long) maxBufferSize * 1024 * 1024) / ((long) segmentSize * segmentCount));
+    }
+    else {
+      maxRings = 1;
+    }
+
     TransmissionBuffer buffer;
-    if (directAlloc) {
+    if (maxRings > 1) {
+      buffer = TransmissionBuffer.createGrowable(directAlloc, segmentSize, segmentCount, maxRings);
+      log.info("using growable transmission buffer of up to " + maxRings + " rings of "
+          + ((segmentSize * segmentCount) / 1024) + "kb");
+    }
+    else if (directAlloc) {
       try {
         buffer = TransmissionBuffer.createDirect(segmentSize, segmentCount);
       }
@@ -245,6 +312,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   private void addQueue(final QueueSession session, final MessageQueue queue) {
     messageQueues.put(session, queue);
     sessionLookup.put(session.getSessionId(), session);
+
+    if (clustering) {
+      clusteringProvider.sessionOpened(session.getSessionId());
+    }
   }
 
   /**
@@ -455,36 +526,30 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     }
   }
 
-  @SuppressWarnings({"SynchronizationOnLocalVariableOrMethodParameter"})
   private void deferDelivery(final MessageQueue queue, final Message message) {
-    synchronized (queue) {
-      if (!deferredQueue.containsKey(queue)) deferredQueue.put(queue, new ArrayList<Message>());
-      deferredQueue.get(queue).add(message);
+    DeferredDeliveryQueue deferred = deferredQueue.get(queue);
+    if (deferred == null) {
+      final DeferredDeliveryQueue newDeferred = new DeferredDeliveryQueue(deferredDeliveryStatistics);
+      deferred = deferredQueue.putIfAbsent(queue, newDeferred);
+      if (deferred == null) {
+        deferred = newDeferred;
+      }
+    }
+
+    deferred.offer(message);
+
+    // the queue may have been initialized and drained since we checked it. in that case nobody else
+    // is going to pick this message up.
+    if (queue.isInitialized()) {
+      drainDeferredDeliveryQueue(queue);
     }
   }
 
-  @SuppressWarnings({"SynchronizationOnLocalVariableOrMethodParameter"})
   private void drainDeferredDeliveryQueue(final MessageQueue queue) {
     try {
-      synchronized (queue) {
-        if (deferredQueue.containsKey(queue)) {
-          final List<Message> deferredMessages = deferredQueue.get(queue);
-          final Iterator<Message> dmIter = deferredMessages.iterator();
-
-          Message m;
-          while (dmIter.hasNext()) {
-            if ((m = dmIter.next()).hasPart(MessageParts.PriorityProcessing.toString())) {
-              queue.offer(m);
-              dmIter.remove();
-            }
-          }
-
-          for (final Message message : deferredQueue.get(queue)) {
-            queue.offer(message);
-          }
-
-          deferredQueue.remove(queue);
-        }
+      final DeferredDeliveryQueue deferred = deferredQueue.get(queue);
+      if (deferred != null) {
+        deferred.drainTo(queue);
       }
     }
     catch (IOException e) {
@@ -492,6 +557,28 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     }
   }
 
+  private void discardDeferredDeliveryQueue(final MessageQueue queue) {
+    final DeferredDeliveryQueue deferred = deferredQueue.remove(queue);
+    if (deferred != null) {
+      deferred.discard();
+    }
+  }
+
+  /**
+   * Returns the counters for messages which are held back until their queue has been initialized.
+   */
+  public DeferredDeliveryStatistics getDeferredDeliveryStatistics() {
+    return deferredDeliveryStatistics;
+  }
+
+  /**
+   * Returns the counters for the compression of outbound WebSocket messages, including the compression ratio
+   * achieved (see {@link CompressionStatistics#getCompressionRatio()}).
+   */
+  public CompressionStatistics getCompressionStatistics() {
+    return compressionStatistics;
+  }
+
   /**
    * Gets the queue corresponding to the session id given
    *
@@ -527,14 +614,24 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     messageQueues.values().remove(queue);
     sessionLookup.values().remove(queue.getSession());
 
-    for (Iterator<RemoteMessageCallback> iterator = remoteSubscriptions.values().iterator(); iterator.hasNext(); ) {
-      final RemoteMessageCallback cb = iterator.next();
-      cb.removeQueue(queue);
-      if (cb.getQueueCount() == 0) {
-        iterator.remove();
+    if (clustering) {
+      clusteringProvider.sessionClosed(queue.getSession().getSessionId());
+    }
+
+    synchronized (remoteSubscriptions) {
+      for (Iterator<RemoteMessageCallback> iterator = remoteSubscriptions.values().iterator(); iterator.hasNext(); ) {
+        final RemoteMessageCallback cb = iterator.next();
+        cb.removeQueue(queue);
+        if (cb.getQueueCount() == 0) {
+          iterator.remove();
+          cb.releaseTopicColor();
+        }
       }
     }
 
+    // a queue closed before it was initialized would otherwise keep its deferred messages forever.
+    discardDeferredDeliveryQueue(queue);
+
     fireQueueCloseListeners(new QueueCloseEvent(queue));
   }
 
@@ -654,36 +751,44 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     private final String svc;
     private final Set<MessageQueue> queues = Collections.newSetFromMap(new ConcurrentHashMap<MessageQueue, Boolean>());
     private final boolean broadcastable;
+    private final BufferColor topicColor;
 
     private final AtomicInteger totalBroadcasted = new AtomicInteger();
 
     public RemoteMessageCallback(final boolean broadcastable, final String svc) {
       this.broadcastable = broadcastable;
       this.svc = svc;
+      this.topicColor = broadcastable && topicBufferColors ? BufferColor.getNewTopicColor() : null;
     }
 
     @Override
     public void callback(final Message message) {
       // do not pipeline if this message is addressed to a specified session.
-      if (broadcastable && !message.isFlagSet(RoutingFlag.NonGlobalRouting) && queues.size() == messageQueues.size()) {
+      final boolean pipeline = broadcastable && !message.isFlagSet(RoutingFlag.NonGlobalRouting);
+
+      if (pipeline && queues.size() == messageQueues.size()) {
         // all queues are listening to this subject. therefore we can save memory and time by
         // writing to the broadcast color on the buffer
+        if (queues.isEmpty()) return;
 
+        broadcast(BufferColor.getAllBuffersColor(), message);
+      }
+      else if (pipeline && topicColor != null && queues.size() > 1) {
+        // only some queues are listening to this subject. write the message once to the topic color
+        // on the buffer, which all of those queues are subscribed to.
+        broadcast(topicColor, message);
+      }
+      else if (sharedBroadcastEncoding && queues.size() > 1 && !(message instanceof HasEncoded)) {
+        // only some queues are listening to this subject. encode the message once and let every queue
+        // copy the shared bytes into its own color.
+        final EncodedPayload payload = EncodedPayload.attach(message);
         try {
-          if (queues.isEmpty()) return;
-
-          BufferHelper.encodeAndWrite(transmissionbuffer, BufferColor.getAllBuffersColor(), message);
-
           for (final MessageQueue q : queues) {
-            q.wake();
-          }
-
-          if (log.isDebugEnabled() && totalBroadcasted.incrementAndGet() % 1000 == 0) {
-            log.debug(totalBroadcasted.get() + " messages have been broadcasted to service: " + svc);
+            send(q, message, true);
           }
         }
-        catch (IOException e) {
-          throw new RuntimeException("transmission error", e);
+        finally {
+          payload.release();
         }
       }
       else {
@@ -701,12 +806,53 @@ public class ServerMessageBusImpl implements ServerMessageBus {
       }
     }
 
+    private void broadcast(final BufferColor color, final Message message) {
+      try {
+        BufferHelper.encodeAndWrite(transmissionbuffer, color, message);
+
+        for (final MessageQueue q : queues) {
+          q.wake();
+        }
+
+        if (log.isDebugEnabled() && totalBroadcasted.incrementAndGet() % 1000 == 0) {
+          log.debug(totalBroadcasted.get() + " messages have been broadcasted to service: " + svc);
+        }
+      }
+      catch (IOException e) {
+        throw new RuntimeException("transmission error", e);
+      }
+    }
+
     public void addQueue(final MessageQueue queue) {
+      if (topicColor != null) {
+        // subscribe before the queue becomes visible to broadcasts, so it cannot miss any.
+        queue.getBufferColor().subscribeTo(topicColor, transmissionbuffer.getHeadSequence());
+      }
       queues.add(queue);
     }
 
     public void removeQueue(final MessageQueue queue) {
       queues.remove(queue);
+      if (topicColor != null) {
+        queue.getBufferColor().unsubscribeFrom(topicColor);
+      }
+    }
+
+    /**
+     * Makes the topic color of this subject available to new subjects, once the subscription has been removed.
+     */
+    private void releaseTopicColor() {
+      if (topicColor != null) {
+        BufferColor.releaseTopicColor(topicColor);
+      }
+    }
+
+    /**
+     * Returns the buffer color which messages to this subject are written to if only some queues are listening,
+     * or null if topic colors are disabled or all of them are in use.
+     */
+    public BufferColor getTopicColor() {
+      return topicColor;
     }
 
     public Collection<MessageQueue> getQueues() {
@@ -895,6 +1041,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
   public void associateNewQueue(final QueueSession oldSession, final QueueSession newSession) {
     sessionLookup.put(newSession.getSessionId(), oldSession);
     messageQueues.put(newSession, getQueue(oldSession));
+
+    if (clustering) {
+      clusteringProvider.sessionOpened(newSession.getSessionId());
+    }
   }
 
   @Override
@@ -995,12 +1145,27 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     }
 
     scheduler.shutdown();
+    if (wakeScheduler != null) {
+      wakeScheduler.shutdown();
+    }
+    timer.stop();
 
     transmissionbuffer.clear();
     subscriptions.clear();
-    remoteSubscriptions.clear();
+    synchronized (remoteSubscriptions) {
+      for (final RemoteMessageCallback cb : remoteSubscriptions.values()) {
+        cb.releaseTopicColor();
+      }
+      remoteSubscriptions.clear();
+    }
+    for (final DeferredDeliveryQueue deferred : deferredQueue.values()) {
+      deferred.discard();
+    }
     deferredQueue.clear();
     sessionLookup.clear();
+
+    // the pooled marshalling sessions would otherwise pin the classes of the application to the container threads.
+    MappingContextSingleton.getSessionPool().clear();
   }
 
   public void finishInit() {
@@ -1071,27 +1236,25 @@ public class ServerMessageBusImpl implements ServerMessageBus {
             if (queue == null) return;
 
           case Associate: {
-            List<Message> deferred = null;
+            DeferredDeliveryQueue deferred = null;
             synchronized (messageQueues) {
               if (messageQueues.containsKey(session)) {
                 final MessageQueue q = messageQueues.get(session);
-                synchronized (q) {
-                  if (deferredQueue.containsKey(q)) {
-                    deferred = deferredQueue.remove(q);
-                  }
-                }
+                deferred = deferredQueue.remove(q);
 
                 messageQueues.get(session).stopQueue();
               }
 
-              queue = new MessageQueueImpl(transmissionbuffer, session, messageQueueTimeoutSecs);
-
-              addQueue(session, queue);
+              queue = new MessageQueueImpl(transmissionbuffer, session, messageQueueTimeoutSecs, wakeScheduler,
+                  wakeCoalesceWindow, wakeCoalesceMaxMessages);
 
               if (deferred != null) {
+                // hand the deferred messages over before the new queue becomes visible to senders.
                 deferredQueue.put(queue, deferred);
               }
 
+              addQueue(session, queue);
+
               remoteSubscribe(session, queue, BuiltInServices.ClientBus.name());
             }
 
@@ -1147,6 +1310,15 @@ public class ServerMessageBusImpl implements ServerMessageBus {
               }
               msg.set(MessageParts.WebSocketURL, webSocketURL);
               msg.set(MessageParts.WebSocketToken, WebSocketTokenManager.getNewOneTimeToken(session));
+
+              if (webSocketBinaryFraming) {
+                capabilitiesBuffer.append(',').append(Capabilities.BinaryFraming.name());
+              }
+
+              if (webSocketCompactEncoding) {
+                capabilitiesBuffer.append(',').append(Capabilities.CompactEncoding.name());
+                msg.set(MessageParts.TypeTableHash, MappingContextSingleton.getTypeTable().getHash());
+              }
             }
 
             if (sseEnabled && !session.hasAttribute("NoSSE")) {
@@ -1237,6 +1409,17 @@ public class ServerMessageBusImpl implements ServerMessageBus {
     return new BufferStatus(free, (int) (highSegBytes - lowSegBytes), activeTails, ((float) free) / bufSize);
   }
 
+  private long lowestTailSequence() {
+    long lowTail = -1;
+    for (final MessageQueue q : messageQueues.values()) {
+      final long seq = q.getCurrentBufferSequenceNumber();
+      if (lowTail == -1 || seq < lowTail) {
+        lowTail = seq;
+      }
+    }
+    return lowTail;
+  }
+
   private class DefaultSubscribeListener implements SubscribeListener {
     @Override
     public void onSubscribe(final SubscriptionEvent event) {
@@ -1304,6 +1487,10 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         log.debug("[bus] killed " + killed + " sessions and paged out " + paged + " queues");
       }
 
+      if (log.isDebugEnabled() && deferredDeliveryStatistics.getDepth() > 0) {
+        log.debug("[bus] deferred deliveries: " + deferredDeliveryStatistics);
+      }
+
       for (final MessageQueue ref : endSessions) {
         for (final String subject : new HashSet<String>(ServerMessageBusImpl.this.remoteSubscriptions.keySet())) {
           ServerMessageBusImpl.this.remoteUnsubscribe(ref.getSession(), ref, subject);
@@ -1311,10 +1498,19 @@ public class ServerMessageBusImpl implements ServerMessageBus {
 
         ServerMessageBusImpl.this.closeQueue(ref);
         ref.getSession().endSession();
-        deferredQueue.remove(ref);
+        PageUtil.discardPageData(ref);
         ref.discard();
       }
 
+      if (killed > 0 || paged > 0) {
+        try {
+          PageUtil.compactPageStore();
+        }
+        catch (Exception e) {
+          log.warn("exception occurred compacting the queue page store", e);
+        }
+      }
+
       final Iterator<ClusterWaitEntry> entryIterator = deadLetter.values().iterator();
 
       while (entryIterator.hasNext()) {
@@ -1330,6 +1526,14 @@ public class ServerMessageBusImpl implements ServerMessageBus {
         }
       }
 
+      if (transmissionbuffer.isGrowable()) {
+        final long released = transmissionbuffer.reclaim(lowestTailSequence());
+        if (released > 0) {
+          log.debug("[bus] released " + (released / 1024) + "kb of buffer memory ("
+              + (transmissionbuffer.getAllocatedBytes() / 1024) + "kb still allocated)");
+        }
+      }
+
       final BufferStatus stat = bufferStatus();
       if (stat.getFree() == 1.0f) {
         if (lastWasEmpty) {
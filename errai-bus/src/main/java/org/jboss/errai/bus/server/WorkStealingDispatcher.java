@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import static org.jboss.errai.bus.client.util.ErrorHelper.handleMessageDeliveryFailure;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageBus;
+import org.jboss.errai.bus.client.api.messaging.RequestDispatcher;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.Resources;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A request dispatcher which delivers messages asynchronously on a work-stealing {@link ForkJoinPool}, or on virtual
+ * threads if the runtime supports them and {@link ErraiConfigAttribs#DISPATCHER_VIRTUAL_THREADS} is enabled.
+ * <p/>
+ * Messages from the same session are delivered one at a time, in the order they were dispatched, while messages from
+ * different sessions are delivered in parallel on at most {@link ErraiConfigAttribs#DISPATCHER_PARALLELISM} pool
+ * threads. Services which block, named by {@link ErraiConfigAttribs#DISPATCHER_BLOCKING_SUBJECTS}, are delivered as a
+ * {@link ForkJoinPool.ManagedBlocker}, so that the pool compensates with a spare thread while they block instead of
+ * starving the other sessions.
+ * <p/>
+ * To use it, set {@link ErraiConfigAttribs#ERRAI_DISPATCHER_IMPLEMENTATION} to the name of this class.
+ *
+ * @see AsyncDispatcher
+ */
+@Singleton
+public class WorkStealingDispatcher implements RequestDispatcher {
+  private static final Logger log = LoggerFactory.getLogger(WorkStealingDispatcher.class);
+
+  /**
+   * The number of messages a session lane delivers before it yields its thread to other sessions.
+   */
+  private static final int LANE_BATCH_SIZE = 64;
+
+  private final MessageBus bus;
+  private final ExecutorService executor;
+  private final Set<String> blockingSubjects;
+  private final ConcurrentMap<String, SessionLane> lanes = new ConcurrentHashMap<String, SessionLane>();
+
+  @Inject
+  public WorkStealingDispatcher(final ErraiService service) {
+    this.bus = service.getBus();
+    this.blockingSubjects =
+        parseSubjects(ErraiConfigAttribs.DISPATCHER_BLOCKING_SUBJECTS.get(service.getConfiguration()));
+
+    ExecutorService virtualThreads = null;
+    if (ErraiConfigAttribs.DISPATCHER_VIRTUAL_THREADS.getBoolean(service.getConfiguration())) {
+      virtualThreads = createVirtualThreadExecutor();
+    }
+
+    if (virtualThreads != null) {
+      this.executor = virtualThreads;
+      log.info("dispatching messages on virtual threads");
+    }
+    else {
+      final Integer parallelism = ErraiConfigAttribs.DISPATCHER_PARALLELISM.getInt(service.getConfiguration());
+      this.executor = new ForkJoinPool(parallelism != null ? parallelism : Runtime.getRuntime().availableProcessors(),
+          new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+            @Override
+            public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+              final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+              thread.setName("Dispatch Worker Thread " + thread.getPoolIndex());
+              thread.setDaemon(true);
+              return thread;
+            }
+          }, null, true);
+      log.info("dispatching messages on a work-stealing pool (parallelism: "
+          + ((ForkJoinPool) executor).getParallelism() + ")");
+    }
+
+    service.addShutdownHook(new Runnable() {
+      @Override
+      public void run() {
+        executor.shutdown();
+        try {
+          executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+  }
+
+  @Override
+  public void dispatchGlobal(final Message message) {
+    if (message.hasPart(MessageParts.PriorityProcessing)) {
+      deliver(message);
+    }
+    else {
+      enqueue(message);
+    }
+  }
+
+  @Override
+  public void dispatch(final Message message) {
+    message.setFlag(RoutingFlag.NonGlobalRouting);
+    enqueue(message);
+  }
+
+  private void enqueue(final Message message) {
+    final String sessionId = getSessionId(message);
+    if (sessionId == null) {
+      executor.execute(new Runnable() {
+        @Override
+        public void run() {
+          deliverFromPool(message);
+        }
+      });
+      return;
+    }
+
+    while (true) {
+      SessionLane lane = lanes.get(sessionId);
+      if (lane == null) {
+        final SessionLane newLane = new SessionLane(sessionId);
+        lane = lanes.putIfAbsent(sessionId, newLane);
+        if (lane == null) {
+          lane = newLane;
+        }
+      }
+
+      if (lane.offer(message)) {
+        return;
+      }
+      // the lane was closed after it ran dry. remove it unless someone else already replaced it, and retry.
+      lanes.remove(sessionId, lane);
+    }
+  }
+
+  private static Set<String> parseSubjects(final String subjects) {
+    if (subjects == null || subjects.trim().isEmpty()) {
+      return Collections.emptySet();
+    }
+    final Set<String> set = new HashSet<String>();
+    for (final String subject : subjects.split(",")) {
+      if (!subject.trim().isEmpty()) {
+        set.add(subject.trim());
+      }
+    }
+    return Collections.unmodifiableSet(set);
+  }
+
+  private static String getSessionId(final Message message) {
+    if (!message.hasResource(Resources.Session.name())) {
+      return null;
+    }
+    final QueueSession session = message.getResource(QueueSession.class, Resources.Session.name());
+    return session == null ? null : session.getSessionId();
+  }
+
+  /**
+   * Delivers a message on a thread of the executor. Only messages for subjects configured as blocking are delivered
+   * as a {@link ForkJoinPool.ManagedBlocker}; everything else runs directly, so that the pool stays at its
+   * parallelism.
+   */
+  private void deliverFromPool(final Message message) {
+    if (!blockingSubjects.contains(message.getSubject())) {
+      deliver(message);
+      return;
+    }
+
+    try {
+      ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+        private boolean done;
+
+        @Override
+        public boolean block() {
+          deliver(message);
+          done = true;
+          return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+          return done;
+        }
+      });
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void deliver(final Message message) {
+    try {
+      Worker.deliverToBus(bus, message);
+    }
+    catch (QueueUnavailableException e) {
+      handleMessageDeliveryFailure(bus, message, "Queue is not available", e, true);
+    }
+    catch (Throwable e) {
+      message.setResource("Exception", e.getCause());
+      handleMessageDeliveryFailure(bus, message, "Error calling remote service: " + message.getSubject(), e, false);
+    }
+  }
+
+  private static ExecutorService createVirtualThreadExecutor() {
+    try {
+      return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    }
+    catch (NoSuchMethodException e) {
+      log.debug("virtual threads are not supported by this runtime");
+    }
+    catch (Exception e) {
+      log.warn("could not create virtual thread executor", e);
+    }
+    return null;
+  }
+
+  /**
+   * The messages of one session waiting to be delivered. A lane is run by at most one thread at a time. It is closed
+   * when it runs dry, after which it no longer accepts messages and is replaced by a new lane on the next dispatch for
+   * the session. The queue and the state are guarded by the lane's monitor, which is only ever contended by the
+   * producers and the single consumer of one session.
+   */
+  private class SessionLane implements Runnable {
+    private final String sessionId;
+    private final Queue<Message> messages = new ArrayDeque<Message>();
+    private boolean scheduled;
+    private boolean closed;
+
+    private SessionLane(final String sessionId) {
+      this.sessionId = sessionId;
+    }
+
+    /**
+     * Adds a message to this lane, and schedules the lane if it is not already scheduled.
+     *
+     * @return false if the lane is closed and the message was not added.
+     */
+    private boolean offer(final Message message) {
+      synchronized (this) {
+        if (closed) {
+          return false;
+        }
+        messages.add(message);
+        if (scheduled) {
+          return true;
+        }
+        scheduled = true;
+      }
+      executor.execute(this);
+      return true;
+    }
+
+    @Override
+    public void run() {
+      for (int i = 0; i < LANE_BATCH_SIZE; i++) {
+        final Message message;
+        synchronized (this) {
+          message = messages.poll();
+          if (message == null) {
+            closed = true;
+            lanes.remove(sessionId, this);
+            return;
+          }
+        }
+        deliverFromPool(message);
+      }
+
+      // let other sessions have a turn.
+      executor.execute(this);
+    }
+  }
+
+  /**
+   * @return true if messages are delivered on virtual threads rather than on a work-stealing pool.
+   */
+  boolean isOnVirtualThreads() {
+    return !(executor instanceof ForkJoinPool);
+  }
+}
@@ -18,6 +18,7 @@ package org.jboss.errai.bus.server.async;
 
 import static java.lang.System.currentTimeMillis;
 
+import org.jboss.errai.bus.server.async.scheduling.HashedWheelTimer;
 import org.jboss.errai.common.client.api.tasks.AsyncTask;
 
 /**
@@ -31,6 +32,8 @@ public abstract class TimedTask implements Runnable, Comparable<TimedTask>, Asyn
   protected volatile InterruptHandle interruptHook;
   protected volatile Runnable exitHandler;
 
+  private volatile HashedWheelTimer.Timeout timeout;
+
   /**
    * Gets the period of the task, and when it should be run next
    *
@@ -69,6 +72,20 @@ public abstract class TimedTask implements Runnable, Comparable<TimedTask>, Asyn
       interruptHook.sendInterrupt();
 
     cancelled = true;
+
+    final HashedWheelTimer.Timeout t = timeout;
+    if (t != null) {
+      t.cancel();
+    }
+  }
+
+  /**
+   * Sets the timer which will run or queue this task once it is due, so it can be cancelled along with the task.
+   *
+   * @param timeout the timer handle.
+   */
+  public void setTimeout(HashedWheelTimer.Timeout timeout) {
+    this.timeout = timeout;
   }
 
   /**
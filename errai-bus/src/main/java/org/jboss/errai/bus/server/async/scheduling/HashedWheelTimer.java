@@ -0,0 +1,333 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.async.scheduling;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.slf4j.Logger;
+
+/**
+ * A hashed timing wheel for large numbers of short-lived timers, such as session timeouts and delivery retries.
+ * <p/>
+ * Timers are hashed by their deadline into one of a fixed number of buckets, each covering one tick. A single worker
+ * thread advances one bucket per tick and expires the timers in it whose deadline has passed; timers which are more
+ * than one revolution away carry the number of remaining revolutions. Adding and cancelling a timer are O(1) and do
+ * not take any locks: both are queued and applied by the worker thread on its next tick. The cost is precision, as
+ * a timer expires up to one tick after its deadline (but never before it).
+ * <p/>
+ * Expired timers run on the worker thread, so their tasks must be short. Anything which may take time should be
+ * handed off to an executor.
+ */
+public class HashedWheelTimer {
+  private static final Logger log = getLogger(HashedWheelTimer.class);
+
+  public static final long DEFAULT_TICK_MILLIS = 10;
+  public static final int DEFAULT_TICKS_PER_WHEEL = 512;
+
+  private static final int STATE_INIT = 0;
+  private static final int STATE_STARTED = 1;
+  private static final int STATE_STOPPED = 2;
+
+  /**
+   * The maximum number of new timeouts moved into the wheel per tick, so a flood of new timeouts cannot stall the
+   * expiry of the ones already in the wheel.
+   */
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final String name;
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+
+  private final Queue<Timeout> pendingTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final Queue<Timeout> cancelledTimeouts = new ConcurrentLinkedQueue<Timeout>();
+  private final AtomicInteger state = new AtomicInteger(STATE_INIT);
+
+  private final long startTime = System.nanoTime();
+  private Thread workerThread;
+
+  public HashedWheelTimer(final String name, final long tickDuration, final TimeUnit unit, final int ticksPerWheel) {
+    if (tickDuration <= 0) {
+      throw new IllegalArgumentException("tick duration must be greater than 0: " + tickDuration);
+    }
+    if (ticksPerWheel <= 0 || ticksPerWheel > (1 << 30)) {
+      throw new IllegalArgumentException("ticks per wheel must be between 1 and 2^30: " + ticksPerWheel);
+    }
+
+    int size = 1;
+    while (size < ticksPerWheel) {
+      size <<= 1;
+    }
+
+    this.name = name;
+    this.tickNanos = unit.toNanos(tickDuration);
+    this.wheel = new Bucket[size];
+    this.mask = size - 1;
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+  }
+
+  /**
+   * Schedules the specified task to run once after the specified delay.
+   *
+   * @return a handle which can be used to cancel the timeout.
+   */
+  public Timeout newTimeout(final Runnable task, final long delay, final TimeUnit unit) {
+    if (state.get() == STATE_STOPPED) {
+      throw new IllegalStateException("timer has been stopped");
+    }
+    start();
+
+    final Timeout timeout = new Timeout(task, System.nanoTime() - startTime + Math.max(0, unit.toNanos(delay)));
+    pendingTimeouts.add(timeout);
+    return timeout;
+  }
+
+  private void start() {
+    if (state.get() == STATE_INIT && state.compareAndSet(STATE_INIT, STATE_STARTED)) {
+      workerThread = new Thread(new Worker(), name);
+      workerThread.setDaemon(true);
+      workerThread.start();
+    }
+  }
+
+  /**
+   * Stops the timer. Timeouts which have not expired yet are dropped.
+   */
+  public void stop() {
+    if (state.getAndSet(STATE_STOPPED) == STATE_STARTED) {
+      workerThread.interrupt();
+    }
+  }
+
+  /**
+   * Returns the number of timeouts which are waiting to expire. Meant for diagnostics only, as this walks the wheel.
+   */
+  public int getPendingTimeouts() {
+    int count = pendingTimeouts.size();
+    for (final Bucket bucket : wheel) {
+      count += bucket.size;
+    }
+    return count;
+  }
+
+  private class Worker implements Runnable {
+    private long tick;
+
+    @Override
+    public void run() {
+      while (state.get() == STATE_STARTED) {
+        final long deadline = waitForNextTick();
+        if (deadline < 0) {
+          continue;
+        }
+
+        removeCancelledTimeouts();
+        transferPendingTimeouts();
+        wheel[(int) (tick & mask)].expireTimeouts(deadline);
+        tick++;
+      }
+    }
+
+    /**
+     * Waits until the current tick has passed, and returns the time (relative to the start time) at that point.
+     */
+    private long waitForNextTick() {
+      final long deadline = tickNanos * (tick + 1);
+
+      while (true) {
+        final long currentTime = System.nanoTime() - startTime;
+        final long sleepNanos = deadline - currentTime;
+
+        if (sleepNanos <= 0) {
+          return currentTime;
+        }
+
+        LockSupport.parkNanos(this, sleepNanos);
+        if (state.get() != STATE_STARTED) {
+          return -1;
+        }
+      }
+    }
+
+    private void transferPendingTimeouts() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        final Timeout timeout = pendingTimeouts.poll();
+        if (timeout == null) {
+          return;
+        }
+        if (timeout.state.get() != Timeout.ST_INIT) {
+          continue;
+        }
+
+        final long calculated = timeout.deadline / tickNanos;
+        timeout.remainingRounds = (calculated - tick) / wheel.length;
+
+        // a timeout whose deadline already passed goes into the current bucket.
+        final long ticks = Math.max(calculated, tick);
+        wheel[(int) (ticks & mask)].add(timeout);
+      }
+    }
+
+    private void removeCancelledTimeouts() {
+      Timeout timeout;
+      while ((timeout = cancelledTimeouts.poll()) != null) {
+        if (timeout.bucket != null) {
+          timeout.bucket.remove(timeout);
+        }
+      }
+    }
+  }
+
+  /**
+   * A doubly linked list of the timeouts hashed to one tick of the wheel. Only accessed by the worker thread.
+   */
+  private static final class Bucket {
+    private Timeout head;
+    private Timeout tail;
+    private int size;
+
+    private void add(final Timeout timeout) {
+      timeout.bucket = this;
+      if (head == null) {
+        head = tail = timeout;
+      }
+      else {
+        tail.next = timeout;
+        timeout.prev = tail;
+        tail = timeout;
+      }
+      size++;
+    }
+
+    private void expireTimeouts(final long deadline) {
+      Timeout timeout = head;
+      while (timeout != null) {
+        final Timeout next = timeout.next;
+        if (timeout.remainingRounds <= 0) {
+          if (timeout.deadline <= deadline) {
+            remove(timeout);
+            timeout.expire();
+          }
+        }
+        else if (timeout.isCancelled()) {
+          remove(timeout);
+        }
+        else {
+          timeout.remainingRounds--;
+        }
+        timeout = next;
+      }
+    }
+
+    private void remove(final Timeout timeout) {
+      if (timeout.bucket != this) {
+        return;
+      }
+
+      if (timeout.prev != null) {
+        timeout.prev.next = timeout.next;
+      }
+      if (timeout.next != null) {
+        timeout.next.prev = timeout.prev;
+      }
+      if (timeout == head) {
+        head = timeout.next;
+      }
+      if (timeout == tail) {
+        tail = timeout.prev;
+      }
+
+      timeout.prev = null;
+      timeout.next = null;
+      timeout.bucket = null;
+      size--;
+    }
+  }
+
+  /**
+   * A handle to a task scheduled on a {@link HashedWheelTimer}.
+   */
+  public final class Timeout {
+    private static final int ST_INIT = 0;
+    private static final int ST_CANCELLED = 1;
+    private static final int ST_EXPIRED = 2;
+
+    private final Runnable task;
+    private final long deadline;
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+    // accessed by the worker thread only.
+    private long remainingRounds;
+    private Bucket bucket;
+    private Timeout prev;
+    private Timeout next;
+
+    private Timeout(final Runnable task, final long deadline) {
+      this.task = task;
+      this.deadline = deadline;
+    }
+
+    /**
+     * Cancels this timeout, unless it already expired.
+     *
+     * @return true if the timeout was cancelled, false if it already expired or was cancelled before.
+     */
+    public boolean cancel() {
+      if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+        return false;
+      }
+      cancelledTimeouts.add(this);
+      return true;
+    }
+
+    public boolean isCancelled() {
+      return state.get() == ST_CANCELLED;
+    }
+
+    public boolean isExpired() {
+      return state.get() == ST_EXPIRED;
+    }
+
+    /**
+     * Returns the time left until this timeout expires, which is negative if its deadline has passed.
+     */
+    public long getDelay(final TimeUnit unit) {
+      return unit.convert(deadline - (System.nanoTime() - startTime), TimeUnit.NANOSECONDS);
+    }
+
+    private void expire() {
+      if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+        return;
+      }
+
+      try {
+        task.run();
+      }
+      catch (Throwable t) {
+        log.warn("timer task " + task + " threw an exception", t);
+      }
+    }
+  }
+}
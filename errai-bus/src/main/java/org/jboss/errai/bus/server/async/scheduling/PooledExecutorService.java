@@ -17,12 +17,10 @@
 package org.jboss.errai.bus.server.async.scheduling;
 
 import static java.lang.System.currentTimeMillis;
-import static java.util.concurrent.locks.LockSupport.parkUntil;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.locks.ReentrantLock;
 
 import org.jboss.errai.bus.server.async.InterruptHandle;
@@ -39,15 +37,18 @@ public class PooledExecutorService implements TaskProvider {
   private final BlockingQueue<TimedTask> queue;
 
   /**
-   * this *must* be an ordered Set. The narrower type is to accomodate wrapping with
-   * Collections.synchronizedSet();
+   * Keeps track of delayed and repeating tasks. Once they are due, they are put on the work queue.
    */
-  private final BlockingQueue<TimedTask> scheduledTasks;
+  private final HashedWheelTimer timer;
+  private final boolean ownsTimer;
   private final ThreadWorkerPool pool;
 
-  private boolean stopped = false;
+  private volatile boolean stopped = false;
 
-  private final SchedulerThread schedulerThread;
+  /**
+   * How long a due task waits for a spot on a full work queue before the saturation policy applies.
+   */
+  private static final long SATURATION_TIMEOUT_MILLIS = 5000;
 
   private final ReentrantLock mutex = new ReentrantLock(true);
   private final int maxQueueSize;
@@ -99,15 +100,31 @@ public class PooledExecutorService implements TaskProvider {
             ErraiConfigAttribs.SATURATION_POLICY.get(new ErraiServiceConfiguratorImpl())));
   }
 
+  /**
+   * Constructs a new PooledExecutorService with a timer of its own, which is stopped along with the service.
+   */
   public PooledExecutorService(int queueSize, SaturationPolicy saturationPolicy) {
+    this(queueSize, saturationPolicy, new HashedWheelTimer("Errai Task Timer", HashedWheelTimer.DEFAULT_TICK_MILLIS,
+        java.util.concurrent.TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL), true);
+  }
+
+  /**
+   * Constructs a new PooledExecutorService which schedules its tasks on the specified timer. The timer is not
+   * stopped along with the service.
+   */
+  public PooledExecutorService(int queueSize, SaturationPolicy saturationPolicy, HashedWheelTimer timer) {
+    this(queueSize, saturationPolicy, timer, false);
+  }
+
+  private PooledExecutorService(int queueSize, SaturationPolicy saturationPolicy, HashedWheelTimer timer,
+                                boolean ownsTimer) {
     maxQueueSize = queueSize;
     queue = new ArrayBlockingQueue<TimedTask>(queueSize);
     pool = new ThreadWorkerPool(this);
 
-    scheduledTasks = new PriorityBlockingQueue<TimedTask>();
-    schedulerThread = new SchedulerThread();
+    this.timer = timer;
+    this.ownsTimer = ownsTimer;
     this.saturationPolicy = saturationPolicy;
-    
   }
 
   /**
@@ -128,30 +145,57 @@ public class PooledExecutorService implements TaskProvider {
 
   public AsyncTask schedule(final Runnable runnable, TimeUnit unit, long interval) {
     checkLoad();
-    mutex.lock();
-    try {
-      TimedTask task;
-      scheduledTasks.offer(task = new DelayedTask(runnable, unit.toMillis(interval)));
-
-      return task;
-    }
-    finally {
-      mutex.unlock();
-    }
+    final TimedTask task = new DelayedTask(runnable, unit.toMillis(interval));
+    arm(task, unit.toMillis(interval));
+    return task;
   }
 
   public AsyncTask scheduleRepeating(final Runnable runnable, final TimeUnit unit, final long initial, final long interval) {
     checkLoad();
-    mutex.lock();
-    try {
-      TimedTask task;
-      scheduledTasks.offer(task = new RepeatingTimedTask(runnable, unit.toMillis(initial), unit.toMillis(interval)));
+    final TimedTask task = new RepeatingTimedTask(runnable, unit.toMillis(initial), unit.toMillis(interval));
+    arm(task, unit.toMillis(initial));
+    return task;
+  }
 
-      return task;
-    }
-    finally {
-      mutex.unlock();
+  /**
+   * Sets up the timer which puts the specified task on the work queue once it is due.
+   */
+  private void arm(final TimedTask task, final long delayMillis) {
+    if (stopped) {
+      return;
     }
+
+    task.setTimeout(timer.newTimeout(new Runnable() {
+      private long saturatedSince;
+
+      @Override
+      public void run() {
+        if (stopped || task.isCancelled()) {
+          return;
+        }
+
+        if (!queue.offer(task)) {
+          // don't block the timer thread while the queue is full. try again on the next tick, and give up once
+          // the task waited long enough.
+          final long now = currentTimeMillis();
+          if (saturatedSince == 0) {
+            saturatedSince = now;
+          }
+
+          if (now - saturatedSince < SATURATION_TIMEOUT_MILLIS) {
+            task.setTimeout(timer.newTimeout(this, HashedWheelTimer.DEFAULT_TICK_MILLIS,
+                java.util.concurrent.TimeUnit.MILLISECONDS));
+            return;
+          }
+
+          saturationPolicy.dealWith(task);
+        }
+
+        if (task.calculateNextRuntime()) {
+          arm(task, task.getPeriod());
+        }
+      }
+    }, delayMillis, java.util.concurrent.TimeUnit.MILLISECONDS));
   }
 
   public void start() {
@@ -161,8 +205,6 @@ public class PooledExecutorService implements TaskProvider {
         throw new IllegalStateException("work queue cannot be started after it's been stopped");
       }
 
-      schedulerThread.start();
-
       pool.startPool();
     }
     finally {
@@ -173,40 +215,15 @@ public class PooledExecutorService implements TaskProvider {
   public void shutdown() {
     mutex.lock();
     try {
-      schedulerThread.requestStop();
-      queue.clear();
       stopped = true;
+      queue.clear();
+      stopTimer();
     }
     finally {
       mutex.unlock();
     }
   }
 
-  private long runAllDue() throws InterruptedException {
-    long nextRunTime = 0;
-    TimedTask task;
-
-    while ((task = scheduledTasks.poll(60, java.util.concurrent.TimeUnit.SECONDS)) != null) {
-      if (!task.isDue(currentTimeMillis())) {
-        parkUntil(task.nextRuntime());
-      }
-
-      /**
-       * Sechedule the task for execution.
-       */
-      if (!queue.offer(task, 5, java.util.concurrent.TimeUnit.SECONDS)) {
-        saturationPolicy.dealWith(task);
-      }
-
-      if (task.calculateNextRuntime()) {
-        scheduledTasks.offer(task);
-      }
-    }
-
-    return nextRunTime;
-
-  }
-
   private volatile int idleCount = 0;
 
   private void checkLoad() {
@@ -385,46 +402,16 @@ public class PooledExecutorService implements TaskProvider {
     }
   }
 
-  private class SchedulerThread extends Thread {
-    private volatile boolean running = false;
-
-    private SchedulerThread() {
-    }
-
-    @Override
-    public void run() {
-      while (running) {
-        try {
-          while (running) {
-            runAllDue();
-          }
-        }
-        catch (InterruptedException e) {
-          // This will happen during container shutdown, so logging as debug is sufficient.
-          log.debug("Scheduler thread interrupted", e);
-        }
-        catch (Throwable t) {
-          t.printStackTrace();
-        }
-      }
-    }
-
-    @Override
-    public void start() {
-      running = true;
-      super.start();
-    }
-
-    public void requestStop() {
-      running = false;
-      interrupt();
-    }
-  }
-
   public void requestStop() {
     stopped = true;
+    stopTimer();
     pool.requestStopAll();
-    schedulerThread.requestStop();
+  }
+
+  private void stopTimer() {
+    if (ownsTimer) {
+      timer.stop();
+    }
   }
 
 }
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.async.scheduling;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableScheduledFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ScheduledExecutorService} which keeps track of time with a {@link HashedWheelTimer}, and runs the tasks
+ * that are due on a separate executor. Scheduling and cancelling a task is O(1), regardless of how many tasks are
+ * scheduled, and any number of these services can share one timer.
+ */
+public class WheelScheduledExecutorService extends AbstractExecutorService implements ScheduledExecutorService {
+  private final HashedWheelTimer timer;
+  private final boolean ownsTimer;
+  private final ExecutorService executor;
+  private final Set<WheelFuture<?>> scheduled
+      = Collections.newSetFromMap(new ConcurrentHashMap<WheelFuture<?>, Boolean>());
+
+  private volatile boolean shutdown;
+
+  /**
+   * Creates a scheduler which runs its tasks on the specified executor. The executor is shut down along with this
+   * service.
+   */
+  public WheelScheduledExecutorService(final HashedWheelTimer timer, final ExecutorService executor) {
+    this(timer, executor, false);
+  }
+
+  private WheelScheduledExecutorService(final HashedWheelTimer timer, final ExecutorService executor,
+                                        final boolean ownsTimer) {
+    this.timer = timer;
+    this.executor = executor;
+    this.ownsTimer = ownsTimer;
+  }
+
+  /**
+   * Creates a scheduler on a timer of its own which runs its tasks on a single thread, like
+   * {@link Executors#newSingleThreadScheduledExecutor()}. The timer is stopped along with this service.
+   */
+  public static WheelScheduledExecutorService newSingleThreadScheduler() {
+    return new WheelScheduledExecutorService(new HashedWheelTimer("Errai Scheduler Timer",
+        HashedWheelTimer.DEFAULT_TICK_MILLIS, TimeUnit.MILLISECONDS, HashedWheelTimer.DEFAULT_TICKS_PER_WHEEL),
+        Executors.newSingleThreadExecutor(), true);
+  }
+
+  @Override
+  public ScheduledFuture<?> schedule(final Runnable command, final long delay, final TimeUnit unit) {
+    return schedule(new WheelFuture<Void>(command, null, 0), delay, unit);
+  }
+
+  @Override
+  public <V> ScheduledFuture<V> schedule(final Callable<V> callable, final long delay, final TimeUnit unit) {
+    return schedule(new WheelFuture<V>(callable), delay, unit);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleAtFixedRate(final Runnable command, final long initialDelay, final long period,
+                                                final TimeUnit unit) {
+    if (period <= 0) {
+      throw new IllegalArgumentException("period must be greater than 0: " + period);
+    }
+    return schedule(new WheelFuture<Void>(command, null, unit.toNanos(period)), initialDelay, unit);
+  }
+
+  @Override
+  public ScheduledFuture<?> scheduleWithFixedDelay(final Runnable command, final long initialDelay, final long delay,
+                                                   final TimeUnit unit) {
+    if (delay <= 0) {
+      throw new IllegalArgumentException("delay must be greater than 0: " + delay);
+    }
+    return schedule(new WheelFuture<Void>(command, null, -unit.toNanos(delay)), initialDelay, unit);
+  }
+
+  private <V> ScheduledFuture<V> schedule(final WheelFuture<V> future, final long delay, final TimeUnit unit) {
+    if (shutdown) {
+      throw new RejectedExecutionException("scheduler has been shut down");
+    }
+    scheduled.add(future);
+    future.arm(System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+    return future;
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    if (shutdown) {
+      throw new RejectedExecutionException("scheduler has been shut down");
+    }
+    executor.execute(command);
+  }
+
+  /**
+   * Cancels all scheduled tasks and shuts down the executor. Unlike {@link java.util.concurrent.ScheduledThreadPoolExecutor}
+   * delayed tasks are not run on shutdown.
+   */
+  @Override
+  public void shutdown() {
+    shutdown = true;
+    for (final WheelFuture<?> future : scheduled) {
+      future.cancel(false);
+    }
+    if (ownsTimer) {
+      timer.stop();
+    }
+    executor.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    shutdown();
+    return executor.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return shutdown && executor.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return executor.awaitTermination(timeout, unit);
+  }
+
+  /**
+   * Returns the number of tasks which are scheduled to run in the future.
+   */
+  public int getScheduledCount() {
+    return scheduled.size();
+  }
+
+  private class WheelFuture<V> extends FutureTask<V> implements RunnableScheduledFuture<V> {
+    /**
+     * Positive for a fixed rate, negative for a fixed delay and 0 for a task which runs once.
+     */
+    private final long period;
+
+    private volatile long time;
+    private volatile HashedWheelTimer.Timeout timeout;
+
+    private WheelFuture(final Runnable runnable, final V result, final long period) {
+      super(runnable, result);
+      this.period = period;
+    }
+
+    private WheelFuture(final Callable<V> callable) {
+      super(callable);
+      this.period = 0;
+    }
+
+    private void arm(final long time) {
+      this.time = time;
+      this.timeout = timer.newTimeout(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            executor.execute(WheelFuture.this);
+          }
+          catch (RejectedExecutionException e) {
+            WheelFuture.this.cancel(false);
+          }
+        }
+      }, time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public boolean isPeriodic() {
+      return period != 0;
+    }
+
+    @Override
+    public void run() {
+      if (!isPeriodic()) {
+        super.run();
+        scheduled.remove(this);
+      }
+      else if (runAndReset() && !shutdown) {
+        arm(period > 0 ? time + period : System.nanoTime() - period);
+      }
+      else {
+        scheduled.remove(this);
+      }
+    }
+
+    @Override
+    public boolean cancel(final boolean mayInterruptIfRunning) {
+      final boolean cancelled = super.cancel(mayInterruptIfRunning);
+      final HashedWheelTimer.Timeout t = timeout;
+      if (t != null) {
+        t.cancel();
+      }
+      scheduled.remove(this);
+      return cancelled;
+    }
+
+    @Override
+    public long getDelay(final TimeUnit unit) {
+      return unit.convert(time - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(final Delayed other) {
+      if (other == this) {
+        return 0;
+      }
+      final long diff = getDelay(TimeUnit.NANOSECONDS) - other.getDelay(TimeUnit.NANOSECONDS);
+      return diff < 0 ? -1 : (diff > 0 ? 1 : 0);
+    }
+  }
+}
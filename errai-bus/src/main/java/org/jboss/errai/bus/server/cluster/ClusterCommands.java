@@ -43,5 +43,25 @@ public enum ClusterCommands {
    * The <tt>InvalidRoute</tt> verb is used in a point-to-point message to indicate that the bus was
    * forwarded a message which it is not or no longer responsible for.
    */
-  InvalidRoute
+  InvalidRoute,
+
+  /**
+   * The <tt>SessionsOpened</tt> verb is a broadcast message which announces the sessions the sending bus has
+   * become responsible for since its last announcement. It is also sent point-to-point to buses joining the
+   * cluster, listing all sessions of the sending bus.
+   */
+  SessionsOpened,
+
+  /**
+   * The <tt>SessionsClosed</tt> verb is a broadcast message which announces the sessions the sending bus is no
+   * longer responsible for.
+   */
+  SessionsClosed,
+
+  /**
+   * The <tt>SubjectsSubscribed</tt> verb announces the hashes of all subjects the sending bus has subscribers for,
+   * so that global messages are only forwarded to buses which have subscribers for them. It is broadcast whenever
+   * the subjects change, and sent point-to-point to buses joining the cluster.
+   */
+  SubjectsSubscribed
 }
@@ -39,5 +39,21 @@ public interface ClusteringProvider {
    * @param message
    */
   public void clusterTransmitGlobal(final Message message);
+
+  /**
+   * Advertises to the cluster that this bus now owns the queue of the specified session.
+   *
+   * @param sessionId
+   *        the session ID.
+   */
+  public void sessionOpened(final String sessionId);
+
+  /**
+   * Advertises to the cluster that this bus no longer owns the queue of the specified session.
+   *
+   * @param sessionId
+   *        the session ID.
+   */
+  public void sessionClosed(final String sessionId);
 }
 
@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps track of which node of the cluster owns the queue of each session, so that a message for a session on
+ * another node can be sent straight to that node. Each node announces the sessions it opens and closes; the
+ * directory of every other node records them against the address of the announcing node.
+ *
+ * @param <A>
+ *     the type of the addresses of the nodes.
+ */
+public class SessionDirectory<A> {
+  private final Map<String, A> owners = new ConcurrentHashMap<String, A>();
+
+  /**
+   * Records that the specified node owns the specified session.
+   */
+  public void put(final String sessionId, final A owner) {
+    owners.put(sessionId, owner);
+  }
+
+  /**
+   * Returns the node owning the specified session, or null if unknown.
+   */
+  public A get(final String sessionId) {
+    return owners.get(sessionId);
+  }
+
+  /**
+   * Forgets the owner of the specified session, provided it is still the specified node. A session which has moved
+   * on to another node in the meantime is left alone.
+   *
+   * @return true if the entry was removed.
+   */
+  public boolean remove(final String sessionId, final A owner) {
+    return owners.remove(sessionId, owner);
+  }
+
+  /**
+   * Forgets the sessions of all nodes which are not among the specified members of the cluster.
+   */
+  public void retainOwners(final Collection<A> members) {
+    for (final Iterator<A> iter = owners.values().iterator(); iter.hasNext(); ) {
+      if (!members.contains(iter.next())) {
+        iter.remove();
+      }
+    }
+  }
+
+  public int size() {
+    return owners.size();
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Collects the cluster messages for one destination into a single frame (see {@link ClusterFrames}), which is sent
+ * once the batching window has passed since its first message, or once it has reached the maximum size.
+ * <p/>
+ * A message which cannot be written to a frame is sent on its own in the JSON encoding, right after the messages
+ * batched before it.
+ */
+final class ClusterFrameBatch implements Runnable {
+  private static final Logger log = LoggerFactory.getLogger(ClusterFrameBatch.class);
+
+  private final JChannel channel;
+  private final Address target;
+  private final ScheduledExecutorService scheduler;
+  private final int windowMillis;
+  private final int maxSize;
+
+  private ByteArrayOutputStream bytes;
+  private DataOutputStream out;
+  private boolean scheduled;
+
+  /**
+   * @param target
+   *     the node to send to, or null to send to the whole cluster.
+   */
+  ClusterFrameBatch(final JChannel channel, final Address target, final ScheduledExecutorService scheduler,
+                    final int windowMillis, final int maxSize) {
+    this.channel = channel;
+    this.target = target;
+    this.scheduler = scheduler;
+    this.windowMillis = windowMillis;
+    this.maxSize = maxSize;
+  }
+
+  synchronized void add(final Message message) throws Exception {
+    if (!ClusterFrames.canWrite(message)) {
+      log.debug("sending cluster message with parts other than strings as JSON: " + message.getCommandType());
+      send();
+      channel.send(target, ErraiProtocol.encodePayload(message.getParts()));
+      return;
+    }
+
+    if (out == null) {
+      bytes = new ByteArrayOutputStream(1024);
+      out = new DataOutputStream(bytes);
+      ClusterFrames.writeMarker(out);
+    }
+    ClusterFrames.writeMessage(out, message);
+
+    if (windowMillis > 0 && bytes.size() < maxSize) {
+      if (!scheduled) {
+        try {
+          scheduler.schedule(this, windowMillis, TimeUnit.MILLISECONDS);
+          scheduled = true;
+          return;
+        }
+        catch (RejectedExecutionException e) {
+          // shutting down. send right away.
+        }
+      }
+      else {
+        return;
+      }
+    }
+    send();
+  }
+
+  @Override
+  public synchronized void run() {
+    scheduled = false;
+    try {
+      send();
+    }
+    catch (Exception e) {
+      log.warn("could not send batch of cluster messages to " + (target == null ? "cluster" : target), e);
+    }
+  }
+
+  // frames are sent while holding the lock, so that they arrive in order.
+  private void send() throws Exception {
+    if (out == null) {
+      return;
+    }
+    final byte[] frame = bytes.toByteArray();
+    bytes = null;
+    out = null;
+    channel.send(target, frame);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import static org.jboss.errai.bus.client.api.base.CommandMessage.createWithPartsFromRawMap;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.messaging.Message;
+
+/**
+ * Encodes cluster messages into, and decodes them from, the binary frames exchanged between nodes when
+ * {@link JGroupsConfigAttribs#BINARY_FRAMES} is enabled.
+ * <p/>
+ * A frame starts with a four byte marker followed by any number of messages. A message is the number of its parts,
+ * followed by each part as its name and its value. Values are written as their length and their UTF-8 bytes, so a
+ * forwarded message payload is carried as is rather than escaped into a JSON string.
+ */
+final class ClusterFrames {
+  private static final byte[] MARKER = {'E', 'R', 'C', 1};
+
+  private ClusterFrames() {
+  }
+
+  static void writeMarker(final DataOutputStream out) throws IOException {
+    out.write(MARKER);
+  }
+
+  /**
+   * Returns true if the specified message can be written to a frame, that is if all its parts are strings. The
+   * cluster messages of Errai are, but a message with other parts must be sent in the JSON encoding instead.
+   */
+  static boolean canWrite(final Message message) {
+    for (final Object value : message.getParts().values()) {
+      if (!(value instanceof String)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Writes the specified message to a frame.
+   *
+   * @throws IllegalArgumentException
+   *     if the message cannot be written to a frame (see {@link #canWrite(Message)}). Nothing is written then.
+   */
+  static void writeMessage(final DataOutputStream out, final Message message) throws IOException {
+    if (!canWrite(message)) {
+      throw new IllegalArgumentException("cannot encode the parts of cluster message: " + message.getParts());
+    }
+
+    final Map<String, Object> parts = message.getParts();
+    out.writeShort(parts.size());
+
+    for (final Map.Entry<String, Object> part : parts.entrySet()) {
+      final byte[] value = ((String) part.getValue()).getBytes(StandardCharsets.UTF_8);
+      out.writeUTF(part.getKey());
+      out.writeInt(value.length);
+      out.write(value);
+    }
+  }
+
+  /**
+   * Returns true if the specified data is a frame rather than a JSON encoded message.
+   */
+  static boolean isFrame(final byte[] data, final int offset, final int length) {
+    if (data == null || length < MARKER.length) {
+      return false;
+    }
+    for (int i = 0; i < MARKER.length; i++) {
+      if (data[offset + i] != MARKER[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Reads the messages of the specified frame.
+   *
+   * @param session
+   *     the session the messages are attributed to.
+   */
+  static List<Message> readMessages(final byte[] data, final int offset, final int length,
+                                    final QueueSession session) throws IOException {
+    final DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(data, offset + MARKER.length, length - MARKER.length));
+    final List<Message> messages = new ArrayList<Message>();
+
+    while (true) {
+      final int partCount;
+      try {
+        partCount = in.readUnsignedShort();
+      }
+      catch (EOFException e) {
+        return messages;
+      }
+
+      final Map<String, Object> parts = new HashMap<String, Object>(partCount * 2);
+      for (int i = 0; i < partCount; i++) {
+        final String name = in.readUTF();
+        final byte[] value = new byte[in.readInt()];
+        in.readFully(value);
+        parts.put(name, new String(value, StandardCharsets.UTF_8));
+      }
+
+      final Message message = createWithPartsFromRawMap(parts)
+          .setResource("Session", session)
+          .setResource("SessionID", session.getSessionId());
+      message.setFlag(RoutingFlag.FromRemote);
+      messages.add(message);
+    }
+  }
+}
@@ -20,26 +20,47 @@ import static org.jboss.errai.bus.server.cluster.ClusterParts.BusId;
 import static org.jboss.errai.bus.server.cluster.ClusterParts.MessageId;
 import static org.jboss.errai.bus.server.cluster.ClusterParts.Payload;
 import static org.jboss.errai.bus.server.cluster.ClusterParts.SessId;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.SessIds;
+import static org.jboss.errai.bus.server.cluster.ClusterParts.SubjectHashes;
 import static org.jboss.errai.bus.server.cluster.ClusterParts.Subject;
 import static org.jboss.errai.common.client.protocols.MessageParts.CommandType;
 import static org.jboss.errai.common.client.protocols.MessageParts.SessionID;
 import static org.jboss.errai.common.client.protocols.MessageParts.ToSubject;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import com.google.inject.Inject;
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.api.UnsubscribeListener;
 import org.jboss.errai.bus.client.api.base.CommandMessage;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.client.framework.SubscriptionEvent;
 import org.jboss.errai.bus.server.QueueUnavailableException;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.api.ServerMessageBus;
+import org.jboss.errai.bus.server.async.scheduling.WheelScheduledExecutorService;
 import org.jboss.errai.bus.server.cluster.ClusterCommands;
 import org.jboss.errai.bus.server.cluster.ClusterParts;
 import org.jboss.errai.bus.server.cluster.ClusteringProvider;
 import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.jboss.errai.bus.server.cluster.SessionDirectory;
 import org.jboss.errai.bus.server.io.MessageFactory;
 import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
@@ -50,10 +71,22 @@ import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
 import org.jgroups.Address;
 import org.jgroups.JChannel;
 import org.jgroups.ReceiverAdapter;
+import org.jgroups.View;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * Clusters buses over JGroups.
+ * <p/>
+ * Every node keeps a {@link SessionDirectory} of the sessions owned by the other nodes. Nodes announce the sessions
+ * they open and close in batches, and send their full list of sessions to nodes joining the cluster. A message for
+ * a session on another node is therefore sent to that node directly. Only if the owner is not known yet, it is
+ * located with a <tt>WhoHandles</tt> broadcast.
+ * <p/>
+ * Likewise, nodes announce the hashes of the subjects they have subscribers for. Global messages are only forwarded
+ * to the nodes which have subscribers for their subject, or which have not announced their subjects yet. New
+ * subscriptions are announced right away, so that the other nodes do not skip a node for a subject it has just
+ * subscribed to. Unsubscriptions are announced with the sessions, since a message forwarded in vain does no harm.
  *
  * @author Mike Brock
  */
@@ -65,10 +98,30 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
   private final JChannel jchannel;
   private final ServerMessageBus serverMessageBus;
 
-  final Cache<String, Address> sessionToNodeCache;
+  final SessionDirectory<Address> sessionDirectory = new SessionDirectory<Address>();
+
+  private final Queue<String> openedSessions = new ConcurrentLinkedQueue<String>();
+  private final Queue<String> closedSessions = new ConcurrentLinkedQueue<String>();
+
+  private final ScheduledExecutorService scheduler = WheelScheduledExecutorService.newSingleThreadScheduler();
+  private volatile View view;
+
+  private final Set<String> subscribedSubjects = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private volatile boolean subjectsChanged;
+  private final AtomicBoolean subjectsAnnouncementPending = new AtomicBoolean();
+  private final ConcurrentMap<Address, Set<Integer>> subjectSummaries = new ConcurrentHashMap<Address, Set<Integer>>();
+
+  private final boolean binaryFrames;
+  private final int batchWindow;
+  private final int maxBatchSize;
+  private final ConcurrentMap<Address, ClusterFrameBatch> batches = new ConcurrentHashMap<Address, ClusterFrameBatch>();
+  private final ClusterFrameBatch broadcastBatch;
 
   private final static String JGROUPS_MESSAGE_RESOURCE = "JGroupsMessage";
 
+  // the number of session IDs announced in one message.
+  final static int SESSION_BATCH_SIZE = 1000;
+
   private static Logger log = LoggerFactory.getLogger(JGroupsClusteringProvider.class);
 
   @Inject
@@ -76,6 +129,9 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
                                     final ErraiServiceConfigurator config,
                                     final ErraiService erraiService) {
     this.serverMessageBus = messageBus;
+    this.binaryFrames = JGroupsConfigAttribs.BINARY_FRAMES.getBoolean(config);
+    this.batchWindow = JGroupsConfigAttribs.BATCH_WINDOW.getInt(config);
+    this.maxBatchSize = JGroupsConfigAttribs.MAX_BATCH_SIZE.getInt(config);
 
     try {
       jchannel = new JChannel(JGroupsConfigAttribs.JGROUPS_PROTOCOL_STACK.get(config));
@@ -88,20 +144,41 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
       throw new RuntimeException(e);
     }
 
+    view = jchannel.getView();
+    broadcastBatch = new ClusterFrameBatch(jchannel, null, scheduler, batchWindow, maxBatchSize);
+
     serverMessageBus.subscribe(CLUSTER_SERVICE, this);
+    serverMessageBus.addSubscribeListener(new SubscribeListener() {
+      @Override
+      public void onSubscribe(final SubscriptionEvent event) {
+        updateSubscribedSubject(event);
+      }
+    });
+    serverMessageBus.addUnsubscribeListener(new UnsubscribeListener() {
+      @Override
+      public void onUnsubscribe(final SubscriptionEvent event) {
+        updateSubscribedSubject(event);
+      }
+    });
     jchannel.setReceiver(this);
 
     erraiService.addShutdownHook(new Runnable() {
       @Override
       public void run() {
+        scheduler.shutdownNow();
         jchannel.close();
         log.info("shut down jgroups clustering service");
       }
     });
 
-    sessionToNodeCache = CacheBuilder.newBuilder()
-        .maximumSize(100)
-        .build();
+    final int flushInterval = JGroupsConfigAttribs.SESSION_DIRECTORY_FLUSH_INTERVAL.getInt(config);
+    scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        announceSessions();
+        announceSubjects();
+      }
+    }, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
 
     log.info("starting errai clustering service.");
   }
@@ -109,21 +186,91 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
   @Override
   public void receive(final org.jgroups.Message msg) {
     try {
-      final Message erraiMessage = getErraiMessage(msg);
-      erraiMessage.setResource(JGROUPS_MESSAGE_RESOURCE, msg);
-
-      if (busId.equals(erraiMessage.get(String.class, BusId))) {
-        return;
+      // frames are accepted whatever the configured wire format, so nodes can be switched over one at a time.
+      if (ClusterFrames.isFrame(msg.getRawBuffer(), msg.getOffset(), msg.getLength())) {
+        for (final Message erraiMessage : ClusterFrames.readMessages(msg.getRawBuffer(), msg.getOffset(),
+            msg.getLength(), IntrabusQueueSession.INSTANCE)) {
+          dispatch(msg, erraiMessage);
+        }
+      }
+      else {
+        dispatch(msg, getErraiMessage(msg));
       }
-      erraiMessage.setFlag(RoutingFlag.FromPeer);
-
-      serverMessageBus.sendGlobal(erraiMessage);
     }
     catch (Exception e) {
       e.printStackTrace();
     }
   }
 
+  private void dispatch(final org.jgroups.Message msg, final Message erraiMessage) {
+    erraiMessage.setResource(JGROUPS_MESSAGE_RESOURCE, msg);
+
+    if (busId.equals(erraiMessage.get(String.class, BusId))) {
+      return;
+    }
+    erraiMessage.setFlag(RoutingFlag.FromPeer);
+
+    serverMessageBus.sendGlobal(erraiMessage);
+  }
+
+  /**
+   * Sends the specified cluster message to the specified node or, if null, to the whole cluster.
+   */
+  private void transmit(final Address target, final Message message) throws Exception {
+    if (!binaryFrames) {
+      jchannel.send(target, ErraiProtocol.encodePayload(message.getParts()));
+    }
+    else if (target == null) {
+      broadcastBatch.add(message);
+    }
+    else {
+      ClusterFrameBatch batch = batches.get(target);
+      if (batch == null) {
+        final ClusterFrameBatch newBatch = new ClusterFrameBatch(jchannel, target, scheduler, batchWindow, maxBatchSize);
+        if ((batch = batches.putIfAbsent(target, newBatch)) == null) {
+          batch = newBatch;
+        }
+      }
+      batch.add(message);
+    }
+  }
+
+  @Override
+  public void viewAccepted(final View newView) {
+    final View oldView = view;
+    view = newView;
+
+    final List<Address> joined = applyView(sessionDirectory, oldView == null ? null : oldView.getMembers(),
+        newView.getMembers(), jchannel.getAddress());
+    batches.keySet().retainAll(newView.getMembers());
+    subjectSummaries.keySet().retainAll(newView.getMembers());
+
+    // let the nodes which have just joined know about the sessions of this one.
+    for (final Address member : joined) {
+      sendSessions(member, ClusterCommands.SessionsOpened, getLocalSessionIds());
+      sendSubjects(member);
+    }
+  }
+
+  /**
+   * Forgets the sessions of the nodes which are not among the new members of the cluster.
+   *
+   * @return the nodes other than this one which have joined the cluster, and need to be sent the sessions of this
+   *         node.
+   */
+  static List<Address> applyView(final SessionDirectory<Address> directory, final Collection<Address> oldMembers,
+                                 final Collection<Address> newMembers, final Address self) {
+    directory.retainOwners(newMembers);
+
+    final List<Address> joined = new ArrayList<Address>();
+    for (final Address member : newMembers) {
+      if (!member.equals(self) && (oldMembers == null || !oldMembers.contains(member))) {
+        joined.add(member);
+      }
+    }
+    return joined;
+  }
+
   @Override
   public void callback(final Message message) {
     final QueueSession queueSession = message.getResource(QueueSession.class, "Session");
@@ -158,7 +305,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
               .set(ClusterParts.SessId, sessionIdRequested);
 
           try {
-            jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(replyMsg.getParts()));
+            transmit(jgroupsMessage.getSrc(), replyMsg);
           }
           catch (Exception e) {
             e.printStackTrace();
@@ -176,13 +323,13 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         final org.jgroups.Message jgroupsMessage
             = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE);
 
-        sessionToNodeCache.put(sessId, jgroupsMessage.getSrc());
+        sessionDirectory.put(sessId, jgroupsMessage.getSrc());
 
         if (deferredMessage != null) {
           final Message dMessage = createForwardMessageFor(deferredMessage, messageId);
 
           try {
-            jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(dMessage.getParts()));
+            transmit(jgroupsMessage.getSrc(), dMessage);
           }
           catch (Exception e) {
             e.printStackTrace();
@@ -193,7 +340,9 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
 
       case InvalidRoute: {
         final String sessionId = message.get(String.class, SessId);
-        sessionToNodeCache.invalidate(sessionId);
+        final org.jgroups.Message jgroupsMessage
+            = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE);
+        sessionDirectory.remove(sessionId, jgroupsMessage.getSrc());
 
         final String messageId = message.get(String.class, MessageId);
         final String subject = message.get(String.class, Subject);
@@ -201,7 +350,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         final Message whoMessage = createWhoHandlesMessage(sessionId, subject, messageId);
 
         try {
-          jchannel.send(getJGroupsMessage(whoMessage));
+          transmit(null, whoMessage);
         }
         catch (Exception e) {
           e.printStackTrace();
@@ -233,7 +382,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
             final Message invalidRoute = createInvalidRouteMessage(sessId, forwardMessage.getSubject(), messageId);
 
             try {
-              jchannel.send(jgroupsMessage.getSrc(), ErraiProtocol.encodePayload(invalidRoute.getParts()));
+              transmit(jgroupsMessage.getSrc(), invalidRoute);
             }
             catch (Exception e2) {
               e2.printStackTrace();
@@ -247,16 +396,208 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         }
       }
       break;
+
+      case SessionsOpened:
+      case SessionsClosed: {
+        final Address owner = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE).getSrc();
+        applySessions(sessionDirectory, ClusterCommands.valueOf(message.getCommandType()), owner,
+            message.get(String.class, SessIds));
+      }
+      break;
+
+      case SubjectsSubscribed: {
+        final Address node = message.getResource(org.jgroups.Message.class, JGROUPS_MESSAGE_RESOURCE).getSrc();
+        final Set<Integer> hashes = new HashSet<Integer>();
+        for (final String hash : split(message.get(String.class, SubjectHashes))) {
+          hashes.add((int) Long.parseLong(hash, 16));
+        }
+        subjectSummaries.put(node, hashes);
+      }
+      break;
+    }
+  }
+
+  /**
+   * Applies an announcement of the sessions the specified node has opened or closed.
+   *
+   * @param sessionIds
+   *     the comma-separated session IDs of a <tt>SessionsOpened</tt> or a <tt>SessionsClosed</tt> announcement.
+   */
+  static void applySessions(final SessionDirectory<Address> directory, final ClusterCommands command,
+                            final Address owner, final String sessionIds) {
+    for (final String sessId : split(sessionIds)) {
+      if (command == ClusterCommands.SessionsOpened) {
+        directory.put(sessId, owner);
+      }
+      else {
+        directory.remove(sessId, owner);
+      }
+    }
+  }
+
+  @Override
+  public void sessionOpened(final String sessionId) {
+    openedSessions.add(sessionId);
+  }
+
+  @Override
+  public void sessionClosed(final String sessionId) {
+    closedSessions.add(sessionId);
+  }
+
+  /**
+   * Announces the sessions opened and closed since the last announcement to the cluster.
+   */
+  private void announceSessions() {
+    // a session opened and closed within one interval is announced both ways, in this order.
+    sendSessions(null, ClusterCommands.SessionsOpened, drain(openedSessions));
+    sendSessions(null, ClusterCommands.SessionsClosed, drain(closedSessions));
+  }
+
+  private static List<String> drain(final Queue<String> queue) {
+    final List<String> sessionIds = new ArrayList<String>();
+    String sessionId;
+    while ((sessionId = queue.poll()) != null) {
+      sessionIds.add(sessionId);
+    }
+    return sessionIds;
+  }
+
+  private List<String> getLocalSessionIds() {
+    final List<String> sessionIds = new ArrayList<String>();
+    for (final QueueSession session : serverMessageBus.getMessageQueues().keySet()) {
+      sessionIds.add(session.getSessionId());
+    }
+    return sessionIds;
+  }
+
+  /**
+   * Sends the specified session IDs in batches, to the specified node or, if null, to the whole cluster.
+   */
+  private void sendSessions(final Address target, final ClusterCommands command, final List<String> sessionIds) {
+    for (final String joined : joinSessionIds(sessionIds)) {
+      final Message sessionsMessage = CommandMessage.create()
+          .set(ToSubject, CLUSTER_SERVICE)
+          .set(CommandType, command.name())
+          .set(BusId, busId)
+          .set(SessIds, joined);
+
+      try {
+        transmit(target, sessionsMessage);
+      }
+      catch (Exception e) {
+        log.warn("could not announce sessions to the cluster", e);
+      }
+    }
+  }
+
+  /**
+   * Joins the specified session IDs into the comma-separated values of the announcements carrying them, with at most
+   * {@value #SESSION_BATCH_SIZE} sessions per announcement.
+   */
+  static List<String> joinSessionIds(final List<String> sessionIds) {
+    final List<String> announcements = new ArrayList<String>();
+    for (int start = 0; start < sessionIds.size(); start += SESSION_BATCH_SIZE) {
+      final List<String> batch = sessionIds.subList(start, Math.min(start + SESSION_BATCH_SIZE, sessionIds.size()));
+
+      final StringBuilder joined = new StringBuilder(batch.size() * 32);
+      for (final String sessionId : batch) {
+        if (joined.length() != 0) {
+          joined.append(',');
+        }
+        joined.append(sessionId);
+      }
+      announcements.add(joined.toString());
+    }
+    return announcements;
+  }
+
+  private static Collection<String> split(final String values) {
+    final List<String> split = new ArrayList<String>();
+    if (values != null && !values.isEmpty()) {
+      int start = 0;
+      int end;
+      while ((end = values.indexOf(',', start)) != -1) {
+        split.add(values.substring(start, end));
+        start = end + 1;
+      }
+      split.add(values.substring(start));
+    }
+    return split;
+  }
+
+  private void updateSubscribedSubject(final SubscriptionEvent event) {
+    final String subject = event.getSubject();
+    if (event.isLocalOnly() || subject.startsWith("local:")) {
+      return;
+    }
+
+    final boolean subscribed = serverMessageBus.isSubscribed(subject);
+    final boolean changed = subscribed ? subscribedSubjects.add(subject) : subscribedSubjects.remove(subject);
+    if (changed) {
+      subjectsChanged = true;
+
+      // the subscriptions of a burst are announced together.
+      if (subscribed && subjectsAnnouncementPending.compareAndSet(false, true)) {
+        try {
+          scheduler.execute(new Runnable() {
+            @Override
+            public void run() {
+              subjectsAnnouncementPending.set(false);
+              announceSubjects();
+            }
+          });
+        }
+        catch (RejectedExecutionException e) {
+          // shutting down.
+        }
+      }
+    }
+  }
+
+  /**
+   * Announces the subjects of this node to the cluster, if they changed since the last announcement.
+   */
+  private void announceSubjects() {
+    if (subjectsChanged) {
+      subjectsChanged = false;
+      sendSubjects(null);
+    }
+  }
+
+  /**
+   * Sends the hashes of the subjects of this node to the specified node or, if null, to the whole cluster.
+   */
+  private void sendSubjects(final Address target) {
+    final StringBuilder hashes = new StringBuilder(subscribedSubjects.size() * 9);
+    for (final String subject : subscribedSubjects) {
+      if (hashes.length() != 0) {
+        hashes.append(',');
+      }
+      hashes.append(Integer.toHexString(subject.hashCode()));
+    }
+
+    final Message subjectsMessage = CommandMessage.create()
+        .set(ToSubject, CLUSTER_SERVICE)
+        .set(CommandType, ClusterCommands.SubjectsSubscribed.name())
+        .set(BusId, busId)
+        .set(SubjectHashes, hashes.toString());
+
+    try {
+      transmit(target, subjectsMessage);
+    }
+    catch (Exception e) {
+      log.warn("could not announce subscribed subjects to the cluster", e);
     }
   }
 
   @Override
   public void clusterTransmit(final String sessionId, final String subject, final String messageId) {
-    final Address knownAddress = sessionToNodeCache.getIfPresent(sessionId);
+    final Address knownAddress = getSessionTarget(sessionDirectory, sessionId);
     if (knownAddress != null) {
       final Message forwardMessage = createForwardMessageFor(serverMessageBus.getDeadLetterMessage(messageId), messageId);
       try {
-        jchannel.send(knownAddress, ErraiProtocol.encodePayload(forwardMessage.getParts()));
+        transmit(knownAddress, forwardMessage);
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -265,7 +606,7 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
     else {
       final Message whoHandlesMessage = createWhoHandlesMessage(sessionId, subject, messageId);
       try {
-        jchannel.send(getJGroupsMessage(whoHandlesMessage));
+        transmit(null, whoHandlesMessage);
       }
       catch (Exception e) {
         e.printStackTrace();
@@ -273,6 +614,14 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
     }
   }
 
+  /**
+   * Returns the node a message for the specified session is sent to, or null if the owner of the session is not known
+   * and has to be located with a <tt>WhoHandles</tt> broadcast.
+   */
+  static Address getSessionTarget(final SessionDirectory<Address> directory, final String sessionId) {
+    return directory.get(sessionId);
+  }
+
   private Message createForwardMessageFor(final Message message, final String messageId) {
     final Message forward = CommandMessage.create()
         .set(ToSubject, CLUSTER_SERVICE)
@@ -314,10 +663,51 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
         .set(MessageId, messageId);
   }
 
+  /**
+   * Returns the nodes a global message for the specified subject is forwarded to: the members of the cluster other
+   * than this node which have subscribers for the subject, or which have not announced their subjects yet.
+   */
+  static List<Address> getGlobalTargets(final Collection<Address> members, final Address self,
+                                        final Map<Address, Set<Integer>> subjectSummaries, final String subject) {
+    final int subjectHash = subject.hashCode();
+    final List<Address> targets = new ArrayList<Address>();
+    for (final Address member : members) {
+      if (member.equals(self)) {
+        continue;
+      }
+
+      // a node which has not announced its subjects yet might have subscribers.
+      final Set<Integer> subjects = subjectSummaries.get(member);
+      if (subjects == null || subjects.contains(subjectHash)) {
+        targets.add(member);
+      }
+    }
+    return targets;
+  }
+
   @Override
   public void clusterTransmitGlobal(final Message message) {
+    final View currentView = view;
+    List<Address> targets = null;
+
+    if (currentView != null) {
+      targets = getGlobalTargets(currentView.getMembers(), jchannel.getAddress(), subjectSummaries,
+          message.getSubject());
+      if (targets.isEmpty()) {
+        return;
+      }
+    }
+
     try {
-      jchannel.send(getJGroupsMessage(createForwardMessageFor(message, null)));
+      final Message forwardMessage = createForwardMessageFor(message, null);
+      if (targets == null || targets.size() == currentView.size() - 1) {
+        transmit(null, forwardMessage);
+      }
+      else {
+        for (final Address target : targets) {
+          transmit(target, forwardMessage);
+        }
+      }
     }
     catch (Exception e) {
       e.printStackTrace();
@@ -327,8 +717,4 @@ public class JGroupsClusteringProvider extends ReceiverAdapter implements Cluste
   public static Message getErraiMessage(final org.jgroups.Message message) {
     return MessageFactory.createCommandMessage(IntrabusQueueSession.INSTANCE, String.valueOf(message.getObject()));
   }
-
-  private static org.jgroups.Message getJGroupsMessage(final Message message) {
-    return new org.jgroups.Message(null, null, ErraiProtocol.encodePayload(message.getParts()));
-  }
 }
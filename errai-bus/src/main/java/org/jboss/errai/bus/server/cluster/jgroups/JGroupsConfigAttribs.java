@@ -23,7 +23,38 @@ import org.jgroups.JChannel;
  * @author Mike Brock
  */
 public enum JGroupsConfigAttribs {
-  JGROUPS_PROTOCOL_STACK("errai.jgroups.protocol_stack", JChannel.DEFAULT_PROTOCOL_STACK);
+  JGROUPS_PROTOCOL_STACK("errai.jgroups.protocol_stack", JChannel.DEFAULT_PROTOCOL_STACK),
+
+  /**
+   * The interval in milliseconds at which the sessions opened and closed on a node are announced to the rest of the
+   * cluster. Until then, messages for those sessions are located with a broadcast.
+   * <p/>
+   * Default value: 100
+   */
+  SESSION_DIRECTORY_FLUSH_INTERVAL("errai.jgroups.session_directory_flush_interval_ms", "100"),
+
+  /**
+   * If true, cluster messages are sent in a compact binary format, batched per destination. Nodes accept both
+   * formats either way, but nodes of older versions only understand the JSON format.
+   * <p/>
+   * Default value: false
+   */
+  BINARY_FRAMES("errai.jgroups.binary_frames", "false"),
+
+  /**
+   * The time in milliseconds for which binary cluster messages to the same destination are collected into one
+   * frame. 0 sends each message right away.
+   * <p/>
+   * Default value: 2
+   */
+  BATCH_WINDOW("errai.jgroups.batch_window_ms", "2"),
+
+  /**
+   * The size in bytes from which a frame of binary cluster messages is sent before the batching window has passed.
+   * <p/>
+   * Default value: 65536
+   */
+  MAX_BATCH_SIZE("errai.jgroups.max_batch_size", "65536");
 
   protected final String attributeName;
   protected final String defaultValue;
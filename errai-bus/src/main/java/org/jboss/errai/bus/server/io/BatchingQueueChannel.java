@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.io.IOException;
+
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
+import org.jboss.errai.marshalling.client.util.CompactEncoding;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+
+/**
+ * A {@link QueueChannel} which aggregates the message arrays written to it into larger arrays, so that several
+ * messages are sent to the client in one frame and with one flush.
+ * <p/>
+ * The first write after a flush starts a new batch and calls {@link #scheduleFlush()}. Writes arriving before that
+ * flush runs are added to the same batch. By default the flush runs right away on the writing thread: writes which
+ * arrive while it sends a frame are then sent together with the next one. Subclasses may defer the flush instead,
+ * for instance to the end of the current event loop tick. Either way a batch is flushed early once it reaches the
+ * maximum batch size.
+ * <p/>
+ * Batches are sent in the order they were started.
+ * <p/>
+ * Subclasses which can tell when the client falls behind override {@link #isWritable()} and call
+ * {@link #fireWritable()} once it has caught up. Subclasses which send frames asynchronously, one at a time, override
+ * {@link #canSendFrame()} instead and call {@link #frameSent()} once a frame has been sent: batches are then kept,
+ * rather than waited on, while a frame is in flight. Subclasses which can send binary frames override
+ * {@link #writeBinaryFrame(byte[])} so that {@link #enableBinaryFraming()} can be called once the client asked for
+ * them. The compact encoding of the messages (see {@link #enableCompactEncoding(String)}) is applied to the JSON
+ * array of a batch before it is framed.
+ */
+public abstract class BatchingQueueChannel implements FlowControlledChannel {
+  public static final int DEFAULT_MAX_BATCH_SIZE = 1024 * 64;
+
+  private final int maxBatchSize;
+
+  private final Object batchLock = new Object();
+  private final Object flushLock = new Object();
+
+  // the messages of the current batch, preceded by the opening bracket of the array.
+  private StringBuilder batch = new StringBuilder(256).append('[');
+  private boolean flushPending;
+
+  private volatile Runnable writabilityListener;
+  // set when a frame was sent while the sending thread was still flushing. the listener is notified once it is done.
+  private volatile boolean sentWhileFlushing;
+
+  // only used while holding the flush lock, which keeps the frames in the order of the dictionary entries.
+  private BinaryFrameEncoder binaryEncoder;
+  private CompactTypeTable typeTable;
+
+  protected BatchingQueueChannel(final int maxBatchSize) {
+    this.maxBatchSize = maxBatchSize;
+  }
+
+  /**
+   * Adds the messages of the specified JSON array to the current batch.
+   *
+   * @param data
+   *     a JSON array of messages.
+   */
+  @Override
+  public void write(final String data) throws IOException {
+    final int end = data.length() - 1;
+    if (end < 1 || data.charAt(0) != '[' || data.charAt(end) != ']') {
+      throw new IOException("expected a JSON array of messages");
+    }
+    if (end == 1) {
+      // an empty array. nothing to send.
+      return;
+    }
+
+    add(data, 1, end);
+  }
+
+  /**
+   * Adds the specified message to the current batch.
+   *
+   * @param message
+   *     a single encoded message.
+   */
+  public void writeMessage(final String message) throws IOException {
+    add(message, 0, message.length());
+  }
+
+  private void add(final String data, final int start, final int end) throws IOException {
+    final boolean schedule;
+    final boolean flushNow;
+    synchronized (batchLock) {
+      if (batch.length() > 1) {
+        batch.append(',');
+      }
+      batch.append(data, start, end);
+
+      schedule = !flushPending;
+      flushNow = flushPending && batch.length() >= maxBatchSize;
+      flushPending = true;
+    }
+
+    if (schedule) {
+      scheduleFlush();
+    }
+    else if (flushNow) {
+      flush();
+    }
+  }
+
+  /**
+   * Called when a new batch has been started. The implementation must make sure that {@link #flush()} is called
+   * eventually. This implementation calls it right away.
+   */
+  protected void scheduleFlush() throws IOException {
+    flush();
+  }
+
+  /**
+   * Sends the current batch, and any batch started while doing so, to the client. If a frame cannot be sent right
+   * now (see {@link #canSendFrame()}), the batch is kept until {@link #frameSent()} is called.
+   */
+  protected final void flush() throws IOException {
+    try {
+      synchronized (flushLock) {
+        flushBatches();
+      }
+    }
+    finally {
+      if (sentWhileFlushing && !Thread.holdsLock(flushLock)) {
+        sentWhileFlushing = false;
+        if (isWritable()) {
+          fireWritable();
+        }
+      }
+    }
+  }
+
+  private void flushBatches() throws IOException {
+    boolean sent = false;
+    try {
+      while (true) {
+        final StringBuilder frame;
+        synchronized (batchLock) {
+          if (batch.length() == 1) {
+            flushPending = false;
+            sent = true;
+            return;
+          }
+          if (!canSendFrame()) {
+            // the flush stays pending: writes are added to the batch until the frame in flight has been sent.
+            sent = true;
+            return;
+          }
+          frame = batch;
+          batch = new StringBuilder(Math.min(frame.capacity(), maxBatchSize)).append('[');
+        }
+
+        String text = frame.append(']').toString();
+        if (typeTable != null) {
+          text = CompactEncoding.compact(text, typeTable);
+        }
+
+        if (binaryEncoder != null) {
+          writeBinaryFrame(binaryEncoder.encode(text));
+        }
+        else {
+          writeFrame(text);
+        }
+      }
+    }
+    finally {
+      if (!sent) {
+        // the channel failed. let the next write start over.
+        synchronized (batchLock) {
+          flushPending = false;
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns true if a frame can be sent to the client right away. This implementation always returns true.
+   */
+  protected boolean canSendFrame() {
+    return true;
+  }
+
+  /**
+   * Called by subclasses overriding {@link #canSendFrame()} once the frame in flight has been sent. Sends the batch
+   * kept in the meantime, if any, and notifies the writability listener unless that batch is in flight now. If the
+   * frame was sent before
+   * {@link #writeFrame(String)} returned, the flushing thread sends the next batch and notifies the listener once it
+   * is done instead.
+   */
+  protected final void frameSent() throws IOException {
+    if (Thread.holdsLock(flushLock)) {
+      sentWhileFlushing = true;
+      return;
+    }
+    flush();
+    if (isWritable()) {
+      fireWritable();
+    }
+  }
+
+  /**
+   * Sends the batches flushed from now on to the client in binary frames (see {@link BinaryFrameEncoder}).
+   */
+  public void enableBinaryFraming() {
+    synchronized (flushLock) {
+      if (binaryEncoder == null) {
+        binaryEncoder = new BinaryFrameEncoder();
+      }
+    }
+  }
+
+  /**
+   * Sends the batches flushed from now on to the client in the compact encoding (see {@link CompactEncoding}), if
+   * the client has the same table of marshallable types as the server.
+   *
+   * @param typeTableHash
+   *     the hash of the client's table of marshallable types.
+   * @return true if the compact encoding is used.
+   */
+  public boolean enableCompactEncoding(final String typeTableHash) {
+    final CompactTypeTable table = MappingContextSingleton.getTypeTable();
+    if (!table.getHash().equals(typeTableHash)) {
+      return false;
+    }
+
+    synchronized (flushLock) {
+      typeTable = table;
+    }
+    return true;
+  }
+
+  /**
+   * This implementation always returns true.
+   */
+  @Override
+  public boolean isWritable() {
+    return true;
+  }
+
+  @Override
+  public void setWritabilityListener(final Runnable listener) {
+    this.writabilityListener = listener;
+  }
+
+  /**
+   * Notifies the writability listener, if any, that the channel is writable again.
+   */
+  protected final void fireWritable() {
+    final Runnable listener = writabilityListener;
+    if (listener != null) {
+      listener.run();
+    }
+  }
+
+  /**
+   * Sends the specified JSON array of messages to the client in a single frame.
+   */
+  protected abstract void writeFrame(String frame) throws IOException;
+
+  /**
+   * Sends the specified binary frame to the client. This implementation throws an {@link IOException}, as binary
+   * framing must only be enabled for channels which support it.
+   */
+  protected void writeBinaryFrame(final byte[] frame) throws IOException {
+    throw new IOException("binary frames are not supported by this channel");
+  }
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jboss.errai.bus.client.framework.transports.BinaryFrameDecoder;
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.SerializationParts;
+
+/**
+ * Re-encodes the JSON arrays of messages sent to a client into the binary frame format read by the
+ * {@link BinaryFrameDecoder}. The JSON produced by the marshallers is translated token by token: structural
+ * characters become single bytes, integers become varints and object keys, class names and subjects are sent once
+ * per connection and referred to by index afterwards.
+ * <p/>
+ * The dictionary is shared by all frames of a connection, so frames must be encoded in the order they are sent.
+ * Instances are not thread-safe.
+ */
+public class BinaryFrameEncoder {
+  /**
+   * The maximum number of dictionary entries per connection. Strings seen after the dictionary is full are sent
+   * inline.
+   */
+  public static final int MAX_DICTIONARY_SIZE = 4096;
+
+  private static final String[] INTERNED_VALUES = {
+      SerializationParts.ENCODED_TYPE, MessageParts.ToSubject.name(), MessageParts.CommandType.name()
+  };
+
+  // the states of the open containers.
+  private static final byte IN_ARRAY = 0;
+  private static final byte EXPECT_KEY = 1;
+  private static final byte EXPECT_VALUE = 2;
+
+  private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+  private byte[] out = new byte[1024];
+  private int length;
+
+  /**
+   * Encodes the specified JSON value, usually an array of messages.
+   *
+   * @param json
+   *     well-formed JSON, as produced by the marshallers.
+   *
+   * @return the binary frame.
+   */
+  public byte[] encode(final String json) {
+    length = 0;
+    writeByte(BinaryFrameDecoder.VERSION);
+
+    byte[] containers = new byte[32];
+    int depth = 0;
+    boolean internNextValue = false;
+
+    final int len = json.length();
+    int i = 0;
+    while (i < len) {
+      final char c = json.charAt(i);
+      switch (c) {
+        case '{':
+        case '[':
+          if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+          }
+          containers[depth++] = c == '{' ? EXPECT_KEY : IN_ARRAY;
+          writeByte(c == '{' ? BinaryFrameDecoder.OBJECT_START : BinaryFrameDecoder.ARRAY_START);
+          internNextValue = false;
+          i++;
+          break;
+
+        case '}':
+        case ']':
+          depth--;
+          writeByte(c == '}' ? BinaryFrameDecoder.OBJECT_END : BinaryFrameDecoder.ARRAY_END);
+          i++;
+          break;
+
+        case ',':
+          if (depth > 0 && containers[depth - 1] == EXPECT_VALUE) {
+            containers[depth - 1] = EXPECT_KEY;
+          }
+          i++;
+          break;
+
+        case ':':
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+          i++;
+          break;
+
+        case '"': {
+          final int end = endOfString(json, i + 1);
+          if (depth > 0 && containers[depth - 1] == EXPECT_KEY) {
+            containers[depth - 1] = EXPECT_VALUE;
+            writeString(json, i + 1, end, true);
+            internNextValue = isInternedValue(json, i + 1, end);
+          }
+          else {
+            writeString(json, i + 1, end, internNextValue);
+            internNextValue = false;
+          }
+          i = end + 1;
+          break;
+        }
+
+        case 't':
+          writeByte(BinaryFrameDecoder.TRUE);
+          internNextValue = false;
+          i += 4;
+          break;
+
+        case 'f':
+          writeByte(BinaryFrameDecoder.FALSE);
+          internNextValue = false;
+          i += 5;
+          break;
+
+        case 'n':
+          writeByte(BinaryFrameDecoder.NULL);
+          internNextValue = false;
+          i += 4;
+          break;
+
+        default: {
+          int end = i + 1;
+          while (end < len && isNumberChar(json.charAt(end))) {
+            end++;
+          }
+          writeNumber(json, i, end);
+          internNextValue = false;
+          i = end;
+        }
+      }
+    }
+
+    return Arrays.copyOf(out, length);
+  }
+
+  /**
+   * Returns the number of entries in the dictionary of this connection.
+   */
+  public int getDictionarySize() {
+    return dictionary.size();
+  }
+
+  private static int endOfString(final String json, int i) {
+    while (true) {
+      final char c = json.charAt(i);
+      if (c == '"') {
+        return i;
+      }
+      i += c == '\\' ? 2 : 1;
+    }
+  }
+
+  private static boolean isInternedValue(final String json, final int start, final int end) {
+    for (final String key : INTERNED_VALUES) {
+      if (key.length() == end - start && json.regionMatches(start, key, 0, key.length())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static boolean isNumberChar(final char c) {
+    return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+  }
+
+  private void writeString(final String json, final int start, final int end, final boolean intern) {
+    if (intern) {
+      final String value = json.substring(start, end);
+      final Integer index = dictionary.get(value);
+      if (index != null) {
+        writeByte(BinaryFrameDecoder.DICTIONARY_REF);
+        writeVarint(index);
+        return;
+      }
+      if (dictionary.size() < MAX_DICTIONARY_SIZE) {
+        dictionary.put(value, dictionary.size());
+        writeByte(BinaryFrameDecoder.DICTIONARY_DEF);
+        writeUTF8(json, start, end);
+        return;
+      }
+    }
+    writeByte(BinaryFrameDecoder.STRING);
+    writeUTF8(json, start, end);
+  }
+
+  private void writeNumber(final String json, final int start, final int end) {
+    final int digits = end - start - (json.charAt(start) == '-' ? 1 : 0);
+    if (digits > 0 && digits <= 18 && isCanonicalInteger(json, start, end)) {
+      final long value = Long.parseLong(json.substring(start, end));
+      writeByte(BinaryFrameDecoder.INTEGER);
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+    else {
+      writeByte(BinaryFrameDecoder.NUMBER);
+      writeVarint(end - start);
+      ensureCapacity(end - start);
+      for (int i = start; i < end; i++) {
+        out[length++] = (byte) json.charAt(i);
+      }
+    }
+  }
+
+  /**
+   * Returns true if the number is an integer which reads back the same after decoding. A leading zero, or a
+   * negative zero, would not.
+   */
+  private static boolean isCanonicalInteger(final String json, int start, final int end) {
+    if (json.charAt(start) == '-') {
+      start++;
+      if (json.charAt(start) == '0') {
+        return false;
+      }
+    }
+    if (json.charAt(start) == '0' && end - start > 1) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      final char c = json.charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void writeUTF8(final String s, final int start, final int end) {
+    int size = 0;
+    for (int i = start; i < end; i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        size++;
+      }
+      else if (c < 0x800) {
+        size += 2;
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+        size += 4;
+        i++;
+      }
+      else {
+        size += 3;
+      }
+    }
+
+    writeVarint(size);
+    ensureCapacity(size);
+    for (int i = start; i < end; i++) {
+      final char c = s.charAt(i);
+      if (c < 0x80) {
+        out[length++] = (byte) c;
+      }
+      else if (c < 0x800) {
+        out[length++] = (byte) (0xC0 | (c >> 6));
+        out[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+      else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(s.charAt(i + 1))) {
+        final int cp = Character.toCodePoint(c, s.charAt(++i));
+        out[length++] = (byte) (0xF0 | (cp >> 18));
+        out[length++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+        out[length++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+        out[length++] = (byte) (0x80 | (cp & 0x3F));
+      }
+      else {
+        out[length++] = (byte) (0xE0 | (c >> 12));
+        out[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        out[length++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private void writeVarint(long value) {
+    ensureCapacity(10);
+    while ((value & ~0x7FL) != 0) {
+      out[length++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    out[length++] = (byte) value;
+  }
+
+  private void writeByte(final int b) {
+    ensureCapacity(1);
+    out[length++] = (byte) b;
+  }
+
+  private void ensureCapacity(final int size) {
+    if (length + size > out.length) {
+      out = Arrays.copyOf(out, Math.max(out.length * 2, length + size));
+    }
+  }
+}
@@ -16,7 +16,7 @@
 
 package org.jboss.errai.bus.server.io;
 
-import static org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer.encodePayloadToByteArrayInputStream;
+import static org.jboss.errai.marshalling.server.protocol.ErraiProtocolServer.encodePayloadToCharSequence;
 
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.server.io.buffers.Buffer;
@@ -35,7 +35,20 @@ public final class BufferHelper {
   public static void encodeAndWrite(final Buffer buffer, final BufferColor bufferColor, final Message message)
           throws IOException {
 
-    buffer.write(encodePayloadToByteArrayInputStream(message.getParts()), bufferColor);
+    final EncodedPayload payload = EncodedPayload.get(message);
+    if (payload != null && payload.retain()) {
+      try {
+        payload.writeTo(buffer, bufferColor);
+      }
+      finally {
+        payload.release();
+      }
+    }
+    else {
+      // the envelope is built in a presized StringBuilder, and its characters are encoded straight into the buffer
+      // segments rather than into an intermediate byte array first.
+      buffer.write(encodePayloadToCharSequence(message.getParts()), bufferColor);
+    }
   }
 
   private static final byte[] NOOP_ARRAY = new byte[0];
@@ -19,32 +19,74 @@ package org.jboss.errai.bus.server.io;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.util.BusToolsCli;
 import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.buffers.BufferOverflowException;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.marshalling.server.util.UnwrappedByteArrayOutputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
+ * Delivers messages straight to the socket of the client.
+ * <p/>
+ * If the channel is a {@link FlowControlledChannel} which reports that the client falls behind, messages are held
+ * back in the {@link org.jboss.errai.bus.server.io.buffers.TransmissionBuffer} instead, and sent once the channel
+ * has drained. Once more than the configured number of bytes are held back for the session, they are paged out.
+ * Should the client disconnect in the meantime, the held messages stay in the buffer for the next transport.
+ *
  * @author Mike Brock
  */
-public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable, DirectChannel {
+public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable, DirectChannel, Pageable, Cleanable {
+  public static final int DEFAULT_MAX_HELD_BYTES = 1024 * 256;
+
   private static final Logger log = LoggerFactory.getLogger(DirectDeliveryHandler.class);
   private final QueueChannel directSocketChannel;
+  private final FlowControlledChannel flowControlledChannel;
+  private final int maxHeldBytes;
+
+  private final Object holdLock = new Object();
+  private final ReentrantLock drainLock = new ReentrantLock();
+
+  // true from the first message held back until all held messages have been sent.
+  private volatile boolean holding;
+  private int heldBytes;
+  private volatile boolean listening;
 
   public static MessageDeliveryHandler createFor(final QueueChannel channel) {
-    return new DirectDeliveryHandler(channel);
+    return new DirectDeliveryHandler(channel, DEFAULT_MAX_HELD_BYTES);
   }
 
-  private DirectDeliveryHandler(final QueueChannel directSocketChannel) {
+  /**
+   * @param maxHeldBytes
+   *     the number of bytes held back for a client which falls behind, from which they are paged out.
+   */
+  public static MessageDeliveryHandler createFor(final QueueChannel channel, final int maxHeldBytes) {
+    return new DirectDeliveryHandler(channel, maxHeldBytes);
+  }
+
+  private DirectDeliveryHandler(final QueueChannel directSocketChannel, final int maxHeldBytes) {
     this.directSocketChannel = directSocketChannel;
+    this.flowControlledChannel =
+        directSocketChannel instanceof FlowControlledChannel ? (FlowControlledChannel) directSocketChannel : null;
+    this.maxHeldBytes = maxHeldBytes;
   }
 
   @Override
   public boolean deliver(final MessageQueue queue, final Message message) throws IOException {
     try {
-      directSocketChannel.write("[" + BusToolsCli.encodeMessage(message) + "]");
+      if (flowControlledChannel != null && holdIfBehind(queue, message)) {
+        return true;
+      }
+
+      if (directSocketChannel instanceof BatchingQueueChannel) {
+        ((BatchingQueueChannel) directSocketChannel).writeMessage(encode(message));
+      }
+      else {
+        directSocketChannel.write("[" + encode(message) + "]");
+      }
       return true;
     }
     catch (Throwable e) {
@@ -56,8 +98,159 @@ public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable,
     }
   }
 
+  /**
+   * Holds the message back if the client falls behind, or if messages are held back already so that they stay in
+   * order.
+   *
+   * @return true if the message was held back.
+   */
+  private boolean holdIfBehind(final MessageQueue queue, final Message message) throws IOException {
+    listenForWritability(queue);
+
+    synchronized (holdLock) {
+      if (!holding && !queue.isPaged() && flowControlledChannel.isWritable()) {
+        return false;
+      }
+
+      final String encoded = encode(message);
+      queue.getBuffer().write(encoded, queue.getBufferColor());
+      queue.incrementMessageCount();
+      holding = true;
+
+      heldBytes += TransmissionBuffer.utf8Length(encoded);
+      if (heldBytes > maxHeldBytes) {
+        pageOut(queue);
+      }
+    }
+
+    // the channel may have drained before the message was held back.
+    if (flowControlledChannel.isWritable()) {
+      drain(queue);
+    }
+    return true;
+  }
+
+  private void listenForWritability(final MessageQueue queue) {
+    if (!listening) {
+      listening = true;
+      flowControlledChannel.setWritabilityListener(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            drain(queue);
+          }
+          catch (Throwable e) {
+            log.info("error writing held messages to socket for queue " + queue.getSession().getSessionId());
+            queue.stopQueue();
+          }
+        }
+      });
+    }
+  }
+
+  /**
+   * Sends the held messages for as long as the channel stays writable. Returns right away if another thread is
+   * sending them already.
+   */
+  private void drain(final MessageQueue queue) throws IOException {
+    if (drainLock.isHeldByCurrentThread()) {
+      // notified of the writability by a write of this thread's drain, which keeps sending in order.
+      return;
+    }
+
+    do {
+      if (!drainLock.tryLock()) {
+        return;
+      }
+
+      try {
+        while (flowControlledChannel.isWritable()) {
+          final String paged;
+          final String buffered;
+          synchronized (holdLock) {
+            paged = queue.isPaged() ? readPaged(queue) : null;
+            buffered = readBuffered(queue);
+
+            if (paged == null && buffered == null) {
+              holding = false;
+              break;
+            }
+            heldBytes = 0;
+            queue.resetMessageCount();
+          }
+
+          if (paged != null) {
+            directSocketChannel.write(paged);
+          }
+          if (buffered != null) {
+            directSocketChannel.write(buffered);
+          }
+        }
+      }
+      finally {
+        drainLock.unlock();
+      }
+    }
+    // a message may have been held back after the last read, but before the lock was released.
+    while (holding && flowControlledChannel.isWritable());
+  }
+
+  private static String readPaged(final MessageQueue queue) {
+    final UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
+    PageUtil.readInPageFile(queue, new OutputStreamWriteAdapter(outputStream), new MultiMessageFilter());
+    return toMessageArray(outputStream);
+  }
+
+  private static String readBuffered(final MessageQueue queue) throws IOException {
+    final UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
+    try {
+      queue.getBuffer().read(new OutputStreamWriteAdapter(outputStream), queue.getBufferColor(),
+          new MultiMessageFilter());
+    }
+    catch (BufferOverflowException e) {
+      queue.getBufferColor().getSequence().set(queue.getBuffer().getHeadSequence());
+      log.warn("held back messages were evicted for session " + queue.getSession().getSessionId()
+          + " due to overflow condition. (consider lowering errai.bus.direct_delivery_max_held_bytes "
+          + "in ErraiService.properties)");
+    }
+    return toMessageArray(outputStream);
+  }
+
+  /**
+   * Returns the messages read as a JSON array, or null if there were none.
+   */
+  private static String toMessageArray(final UnwrappedByteArrayOutputStream outputStream) {
+    if (outputStream.size() <= 2) {
+      return null;
+    }
+    return new String(outputStream.toByteArray(), 0, outputStream.size());
+  }
+
+  private static String encode(final Message message) {
+    final EncodedPayload payload = EncodedPayload.get(message);
+    if (payload != null && payload.retain()) {
+      try {
+        return payload.asString();
+      }
+      finally {
+        payload.release();
+      }
+    }
+    return BusToolsCli.encodeMessage(message);
+  }
+
   @Override
   public void onWake(MessageQueue queue) throws IOException {
+    if (flowControlledChannel != null) {
+      // whatever is in the buffer is sent like held back messages: in order, and only while the client keeps up.
+      listenForWritability(queue);
+      synchronized (holdLock) {
+        holding = true;
+      }
+      drain(queue);
+      return;
+    }
+
     UnwrappedByteArrayOutputStream outputStream = new UnwrappedByteArrayOutputStream();
     ByteWriteAdapter adapter = new OutputStreamWriteAdapter(outputStream);
     queue.getBuffer().read(adapter, queue.getBufferColor(), new MultiMessageFilter());
@@ -65,6 +258,32 @@ public class DirectDeliveryHandler implements MessageDeliveryHandler, Wakeable,
     directSocketChannel.write(new String(outputStream.toByteArray(), 0, outputStream.size()));
   }
 
+  /**
+   * Pages out the messages held back for the specified queue, if any.
+   */
+  @Override
+  public boolean pageOut(final MessageQueue queue) {
+    synchronized (holdLock) {
+      if (!holding) {
+        return false;
+      }
+
+      PageUtil.pageWaitingToDisk(queue);
+      heldBytes = 0;
+      return true;
+    }
+  }
+
+  @Override
+  public void discardPageData(final MessageQueue queue) {
+    PageUtil.discardPageData(queue);
+  }
+
+  @Override
+  public void clean(final MessageQueue queue) {
+    discardPageData(queue);
+  }
+
   @Override
   public void noop(MessageQueue queue) throws IOException {
   }
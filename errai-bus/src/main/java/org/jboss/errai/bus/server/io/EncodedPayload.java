@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import static org.jboss.errai.marshalling.client.protocols.ErraiProtocol.encodePayload;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.io.buffers.Buffer;
+import org.jboss.errai.bus.server.io.buffers.BufferColor;
+
+/**
+ * The encoded form of a message, shared by all queues a message is fanned out to so that the message is only
+ * marshalled once. The payload is attached to the message as a resource (see {@link #attach(Message)}), and
+ * {@link BufferHelper#encodeAndWrite(Buffer, BufferColor, Message)} writes the shared bytes instead of
+ * encoding the message again.
+ * <p/>
+ * The payload is reference counted. The broadcaster holds the initial reference for the duration of the fan-out,
+ * and each writer holds one while it copies the bytes. Once the last reference is released the bytes are dropped,
+ * and any later delivery of the same message (for instance a deferred delivery) falls back to encoding it.
+ */
+public final class EncodedPayload {
+  public static final String RESOURCE_NAME = EncodedPayload.class.getName();
+
+  private final AtomicInteger refCount = new AtomicInteger(1);
+  private volatile byte[] data;
+
+  private EncodedPayload(final byte[] data) {
+    this.data = data;
+  }
+
+  /**
+   * Encodes the specified message and attaches the result to it. The caller owns the initial reference and must
+   * {@link #release()} it once the message has been handed to all recipients.
+   */
+  public static EncodedPayload attach(final Message message) {
+    final EncodedPayload payload
+        = new EncodedPayload(encodePayload(message.getParts()).getBytes(StandardCharsets.UTF_8));
+    message.setResource(RESOURCE_NAME, payload);
+    return payload;
+  }
+
+  /**
+   * Returns the payload attached to the specified message, or null if there is none.
+   */
+  public static EncodedPayload get(final Message message) {
+    if (!message.hasResource(RESOURCE_NAME)) {
+      return null;
+    }
+    return message.getResource(EncodedPayload.class, RESOURCE_NAME);
+  }
+
+  /**
+   * Acquires a reference to this payload.
+   *
+   * @return false if the payload was already released and its bytes are no longer available.
+   */
+  public boolean retain() {
+    int count;
+    do {
+      count = refCount.get();
+      if (count == 0) {
+        return false;
+      }
+    }
+    while (!refCount.compareAndSet(count, count + 1));
+    return true;
+  }
+
+  /**
+   * Releases a reference to this payload. The bytes are dropped when the last reference is released.
+   */
+  public void release() {
+    if (refCount.decrementAndGet() == 0) {
+      data = null;
+    }
+  }
+
+  /**
+   * Writes the encoded message to the specified buffer. The caller must hold a reference.
+   */
+  public void writeTo(final Buffer buffer, final BufferColor bufferColor) throws IOException {
+    final byte[] bytes = data;
+    buffer.write(bytes.length, new ByteArrayInputStream(bytes), bufferColor);
+  }
+
+  /**
+   * Returns the encoded message as a string. The caller must hold a reference.
+   */
+  public String asString() {
+    return new String(data, StandardCharsets.UTF_8);
+  }
+
+  public int getLength() {
+    final byte[] bytes = data;
+    return bytes == null ? 0 : bytes.length;
+  }
+
+  public int getRefCount() {
+    return refCount.get();
+  }
+}
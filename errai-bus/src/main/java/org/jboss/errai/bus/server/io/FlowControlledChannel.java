@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+/**
+ * A {@link QueueChannel} which can tell whether the client keeps up with the data written to it.
+ */
+public interface FlowControlledChannel extends QueueChannel {
+  /**
+   * Returns true if data written now would be sent right away, rather than pile up in memory until the client has
+   * read what was sent before.
+   */
+  public boolean isWritable();
+
+  /**
+   * Sets the callback to run when the channel becomes writable again after it was not.
+   */
+  public void setWritabilityListener(Runnable listener);
+}
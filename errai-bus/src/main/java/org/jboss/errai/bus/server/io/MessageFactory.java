@@ -32,13 +32,15 @@ import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.RoutingFlag;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
 import org.jboss.errai.marshalling.client.api.json.EJArray;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.client.marshallers.ErraiProtocolEnvelopeMarshaller;
-import org.jboss.errai.marshalling.server.DecodingSession;
 import org.jboss.errai.marshalling.server.JSONDecoder;
-import org.jboss.errai.marshalling.server.JSONStreamDecoder;
+import org.jboss.errai.marshalling.server.JSONPullParser;
 import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jboss.errai.marshalling.server.MarshallingSessionPool;
+import org.jboss.errai.marshalling.server.StreamingDemarshaller;
 
 /**
  * The <tt>MessageFactory</tt> facilitates the building of a command message using a JSON string
@@ -78,8 +80,7 @@ public class MessageFactory {
   public static Message createCommandMessage(QueueSession session, String json) {
     if (json.length() == 0) return null;
 
-    Message msg = createWithPartsFromRawMap(ErraiProtocolEnvelopeMarshaller.INSTANCE.demarshall(JSONDecoder.decode(json),
-        new DecodingSession(MappingContextSingleton.get())))
+    Message msg = createWithPartsFromRawMap(getParts(JSONDecoder.decode(json)))
             .setResource("Session", session)
             .setResource("SessionID", session.getSessionId());
 
@@ -90,42 +91,40 @@ public class MessageFactory {
 
 
   public static List<Message> createCommandMessage(QueueSession session, HttpServletRequest request) throws IOException {
-    EJValue value = JSONStreamDecoder.decode(request.getInputStream());
-    if (value.isObject() != null) {
-      return Collections.singletonList(from(getParts(value), session, request));
-    }
-    else if (value.isArray() != null) {
-      EJArray arr = value.isArray();
-      List<Message> messages = new ArrayList<Message>(arr.size());
-      for (int i = 0; i < arr.size(); i++) {
-        messages.add(from(getParts(arr.get(i)), session, request));
-      }
-      return messages;
-    }
-    else if (value.isNull()) {
-      return Collections.<Message>emptyList();
-    }
-    else {
-      throw new RuntimeException("bad payload");
+    JSONPullParser parser = new JSONPullParser(request.getInputStream());
+    switch (parser.next()) {
+      case END:
+      case NULL:
+        return Collections.<Message>emptyList();
+      default:
+        return createCommandMessages(parser, session, request);
     }
   }
 
 
   public static List<Message> createCommandMessage(QueueSession session, InputStream inputStream) throws IOException {
-    EJValue value = JSONStreamDecoder.decode(inputStream);
-    if (value.isObject() != null) {
-      return Collections.singletonList(from(getParts(value), session, null));
-    }
-    else if (value.isArray() != null) {
-      EJArray arr = value.isArray();
-      List<Message> messages = new ArrayList<Message>(arr.size());
-      for (int i = 0; i < arr.size(); i++) {
-        messages.add(from(getParts(arr.get(i)), session, null));
-      }
-      return messages;
-    }
-    else {
-      throw new RuntimeException("bad payload");
+    JSONPullParser parser = new JSONPullParser(inputStream);
+    parser.next();
+    return createCommandMessages(parser, session, null);
+  }
+
+  /**
+   * Demarshalls the message, or the array of messages, at the current token of the parser one message at a time,
+   * without building a tree of the whole payload first.
+   */
+  private static List<Message> createCommandMessages(JSONPullParser parser, QueueSession session,
+                                                     HttpServletRequest request) {
+    switch (parser.getToken()) {
+      case START_OBJECT:
+        return Collections.singletonList(from(getParts(parser), session, request));
+      case START_ARRAY:
+        List<Message> messages = new ArrayList<Message>();
+        while (parser.next() != JSONPullParser.Token.END_ARRAY) {
+          messages.add(from(getParts(parser), session, request));
+        }
+        return messages;
+      default:
+        throw new RuntimeException("bad payload");
     }
   }
 
@@ -148,9 +147,26 @@ public class MessageFactory {
 
 
 
+  private static Map getParts(JSONPullParser parser) {
+    MarshallingSessionPool pool = MappingContextSingleton.getSessionPool();
+    MarshallingSession ctx = pool.getDecoding();
+    try {
+      return StreamingDemarshaller.demarshallEnvelope(parser, ctx);
+    }
+    finally {
+      pool.release(ctx);
+    }
+  }
+
   private static Map getParts(EJValue value) {
-    return ErraiProtocolEnvelopeMarshaller.INSTANCE.demarshall(value,
-            new DecodingSession(MappingContextSingleton.get()));
+    MarshallingSessionPool pool = MappingContextSingleton.getSessionPool();
+    MarshallingSession ctx = pool.getDecoding();
+    try {
+      return ErraiProtocolEnvelopeMarshaller.INSTANCE.demarshall(value, ctx);
+    }
+    finally {
+      pool.release(ctx);
+    }
   }
 
   @SuppressWarnings("unchecked")
@@ -21,14 +21,10 @@ import static java.lang.System.nanoTime;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.io.buffers.BufferFilter;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -43,10 +39,20 @@ public final class PageUtil {
 
   private static final String tempDir = System.getProperty("java.io.tmpdir");
 
+  private static volatile QueuePageStore pageStore;
+
+  /**
+   * @deprecated paged data is no longer kept in a file per queue. See {@link QueuePageStore}.
+   */
+  @Deprecated
   public static String getPageFileName(final MessageQueue queue) {
     return tempDir + "/queuecache/" + queue.getSession().getSessionId().replaceAll("\\-", "_");
   }
 
+  /**
+   * @deprecated paged data is no longer kept in a file per queue. See {@link QueuePageStore}.
+   */
+  @Deprecated
   public static File getOrCreatePageFile(final MessageQueue queue) throws IOException {
     final File pageFile = new File(getPageFileName(queue));
     if (!pageFile.exists()) {
@@ -57,21 +63,41 @@ public final class PageUtil {
     return pageFile;
   }
 
-  public static void writeToPageFile(final MessageQueue queue, final InputStream inputStream, final boolean append) {
-
-    try {
-      final OutputStream outputStream
-          = new BufferedOutputStream(new FileOutputStream(getOrCreatePageFile(queue), append));
+  private static QueuePageStore getPageStore() throws IOException {
+    QueuePageStore store = pageStore;
+    if (store == null) {
+      synchronized (PageUtil.class) {
+        store = pageStore;
+        if (store == null) {
+          pageStore = store = QueuePageStore.open(new File(tempDir, "queuecache"), QueuePageStore.DEFAULT_PAGE_SIZE);
+        }
+      }
+    }
+    return store;
+  }
 
-      int read;
-      while ((read = inputStream.read()) != -1) outputStream.write(read);
+  private static String getPageKey(final MessageQueue queue) {
+    return queue.getSession().getSessionId();
+  }
 
-      outputStream.flush();
-      outputStream.close();
+  public static void writeToPageFile(final MessageQueue queue, final InputStream inputStream, final boolean append) {
+    synchronized (queue.getPageLock()) {
+      try {
+        final QueuePageStore store = getPageStore();
+        final String key = getPageKey(queue);
+        if (!append) {
+          store.discard(key);
+        }
 
-    }
-    catch (IOException e) {
-      throw new RuntimeException("paging error", e);
+        final byte[] chunk = new byte[store.getPageSize()];
+        int read;
+        while ((read = inputStream.read(chunk)) != -1) {
+          store.append(key, ByteBuffer.wrap(chunk, 0, read));
+        }
+      }
+      catch (IOException e) {
+        throw new RuntimeException("paging error", e);
+      }
     }
   }
 
@@ -79,13 +105,15 @@ public final class PageUtil {
     synchronized (queue.getPageLock()) {
       try {
         final boolean alreadyPaged = queue.isPaged();
+        final QueuePageStore store = getPageStore();
+        final String key = getPageKey(queue);
+        if (!alreadyPaged) {
+          store.discard(key);
+        }
 
-        final OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(getOrCreatePageFile(queue), alreadyPaged));
-        final ByteWriteAdapter writeAdapter = new OutputStreamWriteAdapter(outputStream);
-
+        final ByteWriteAdapter writeAdapter = store.newWriteAdapter(key);
         queue.getBuffer().read(writeAdapter, queue.getBufferColor());
-        outputStream.flush();
-        outputStream.close();
+        writeAdapter.flush();
 
         queue.setPaged(true);
 
@@ -103,23 +131,11 @@ public final class PageUtil {
     synchronized (queue.getPageLock()) {
       try {
         if (queue.isPaged()) {
-          final File pageFile = new File(getPageFileName(queue));
-          if (!pageFile.exists()) {
-            queue.setPaged(false);
-            return;
-          }
+          final QueuePageStore store = getPageStore();
+          final String key = getPageKey(queue);
 
-          final InputStream inputStream = new BufferedInputStream(new FileInputStream(pageFile));
-
-          callback.before(outputStream);
-
-          int read;
-          while ((read = inputStream.read()) != -1) {
-            outputStream.write(callback.each(read, outputStream));
-          }
-          inputStream.close();
-
-          callback.after(outputStream);
+          store.read(key, outputStream, callback);
+          store.discard(key);
 
           queue.setPaged(false);
         }
@@ -131,10 +147,25 @@ public final class PageUtil {
   }
 
   public static void discardPageData(final MessageQueue queue) {
-    if (queue.isPaged()) {
-      File pageFile = new File(getPageFileName(queue));
-      if (pageFile.exists()) {
-        pageFile.delete();
+    synchronized (queue.getPageLock()) {
+      if (queue.isPaged() && pageStore != null) {
+        pageStore.discard(getPageKey(queue));
+      }
+    }
+  }
+
+  /**
+   * Gives space in the page store which is no longer used back to the file system. Does nothing if no queue has
+   * been paged yet.
+   */
+  public static void compactPageStore() {
+    final QueuePageStore store = pageStore;
+    if (store != null) {
+      try {
+        store.compact();
+      }
+      catch (IOException e) {
+        throw new RuntimeException("paging error", e);
       }
     }
   }
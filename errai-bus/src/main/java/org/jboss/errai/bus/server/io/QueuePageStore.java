@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jboss.errai.bus.server.io.buffers.BufferFilter;
+
+/**
+ * A paging store shared by all message queues. Paged data lives in a single file which is divided into fixed size
+ * pages. Each queue owns a chain of pages which it appends to, and which is handed back to the store when the queue
+ * reads its data back in or is discarded. Freed pages are reused before the file grows, and {@link #compact()}
+ * moves live pages into the holes left behind so the file can be truncated.
+ * <p/>
+ * All I/O is positional and done in page-sized chunks through a {@link FileChannel}, so no streams are opened per
+ * queue.
+ */
+public class QueuePageStore {
+  public static final int DEFAULT_PAGE_SIZE = 1024 * 64;              /* 64 Kilobytes */
+
+  private final FileChannel channel;
+  private final int pageSize;
+
+  private final Map<String, PageChain> chains = new ConcurrentHashMap<String, PageChain>();
+
+  /**
+   * Pages below {@link #pageCount} which are not owned by any chain. Guarded by {@code this}.
+   */
+  private final BitSet freePages = new BitSet();
+
+  /**
+   * The number of pages the file currently spans. Guarded by {@code this}.
+   */
+  private int pageCount;
+
+  private final ThreadLocal<ByteBuffer> scratch = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(pageSize);
+    }
+  };
+
+  private final ThreadLocal<ByteBuffer> writeScratch = new ThreadLocal<ByteBuffer>() {
+    @Override
+    protected ByteBuffer initialValue() {
+      return ByteBuffer.allocateDirect(pageSize);
+    }
+  };
+
+  private QueuePageStore(final File file, final int pageSize) throws IOException {
+    this.pageSize = pageSize;
+    this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.DELETE_ON_CLOSE);
+  }
+
+  /**
+   * Opens a new page store backed by a temporary file in the specified directory.
+   *
+   * @param directory
+   *     the directory to create the page file in. Created if it does not exist.
+   * @param pageSize
+   *     the size of the individual pages in bytes.
+   *
+   * @return a new page store.
+   */
+  public static QueuePageStore open(final File directory, final int pageSize) throws IOException {
+    directory.mkdirs();
+    final File file = File.createTempFile("errai-pages", ".dat", directory);
+    file.deleteOnExit();
+    return new QueuePageStore(file, pageSize);
+  }
+
+  /**
+   * Appends the remaining bytes of the specified buffer to the data paged for the specified key.
+   */
+  public void append(final String key, final ByteBuffer src) throws IOException {
+    while (true) {
+      PageChain chain = chains.get(key);
+      if (chain == null) {
+        final PageChain newChain = new PageChain();
+        chain = chains.putIfAbsent(key, newChain);
+        if (chain == null) {
+          chain = newChain;
+        }
+      }
+
+      synchronized (chain) {
+        if (chain.discarded) {
+          // discarded after it was looked up. its pages were given back, so start a new chain.
+          continue;
+        }
+        appendTo(chain, src);
+        return;
+      }
+    }
+  }
+
+  /**
+   * Appends to the specified chain. The caller must hold its lock.
+   */
+  private void appendTo(final PageChain chain, final ByteBuffer src) throws IOException {
+    while (src.hasRemaining()) {
+      final int offset = (int) (chain.length % pageSize);
+      if (offset == 0) {
+        chain.add(allocatePage());
+      }
+
+      final int toWrite = Math.min(src.remaining(), pageSize - offset);
+      final ByteBuffer slice = src.duplicate();
+      slice.limit(slice.position() + toWrite);
+
+      long position = (long) chain.last() * pageSize + offset;
+      while (slice.hasRemaining()) {
+        position += channel.write(slice, position);
+      }
+
+      src.position(src.position() + toWrite);
+      chain.length += toWrite;
+    }
+  }
+
+  /**
+   * Returns a {@link ByteWriteAdapter} which batches the bytes written to it into page sized writes appended to
+   * the data for the specified key. The adapter must be flushed once all data has been written.
+   */
+  public ByteWriteAdapter newWriteAdapter(final String key) {
+    return new AbstractByteWriteAdapter() {
+      private final ByteBuffer buffer = writeScratch.get();
+
+      {
+        buffer.clear();
+      }
+
+      @Override
+      public void write(final byte b) throws IOException {
+        if (!buffer.hasRemaining()) {
+          flush();
+        }
+        buffer.put(b);
+      }
+
+      @Override
+      public void flush() throws IOException {
+        buffer.flip();
+        append(key, buffer);
+        buffer.clear();
+      }
+    };
+  }
+
+  /**
+   * Reads all data paged for the specified key into the specified adapter, passing every byte through the filter.
+   *
+   * @return the number of bytes read.
+   */
+  public long read(final String key, final ByteWriteAdapter writeAdapter, final BufferFilter filter)
+      throws IOException {
+    final PageChain chain = chains.get(key);
+    if (chain == null) {
+      return 0;
+    }
+
+    synchronized (chain) {
+      final ByteBuffer buffer = scratch.get();
+      filter.before(writeAdapter);
+
+      long read = 0;
+      for (int i = 0; i < chain.count; i++) {
+        readPage(chain.pages[i], (int) Math.min(pageSize, chain.length - (long) i * pageSize), buffer);
+        while (buffer.hasRemaining()) {
+          writeAdapter.write(filter.each(buffer.get() & 0xFF, writeAdapter));
+        }
+        read += buffer.limit();
+      }
+
+      filter.after(writeAdapter);
+      return read;
+    }
+  }
+
+  /**
+   * Returns the number of bytes paged for the specified key.
+   */
+  public long size(final String key) {
+    final PageChain chain = chains.get(key);
+    return chain == null ? 0 : chain.length;
+  }
+
+  /**
+   * Discards all data paged for the specified key and returns its pages to the store.
+   */
+  public void discard(final String key) {
+    final PageChain chain = chains.remove(key);
+    if (chain == null) {
+      return;
+    }
+
+    synchronized (chain) {
+      synchronized (this) {
+        for (int i = 0; i < chain.count; i++) {
+          freePages.set(chain.pages[i]);
+        }
+      }
+      chain.count = 0;
+      chain.length = 0;
+      chain.discarded = true;
+    }
+  }
+
+  /**
+   * Moves pages from the end of the file into free pages closer to its start, and truncates the file past the last
+   * page still in use. Nothing is done unless at least half of the file is free.
+   *
+   * @return the number of bytes the file shrank by.
+   */
+  public long compact() throws IOException {
+    synchronized (this) {
+      if (freePages.cardinality() * 2 < pageCount) {
+        return 0;
+      }
+    }
+
+    final ByteBuffer buffer = scratch.get();
+    for (final PageChain chain : chains.values()) {
+      synchronized (chain) {
+        for (int i = 0; i < chain.count; i++) {
+          final int page = chain.pages[i];
+          final int target;
+          synchronized (this) {
+            target = freePages.nextSetBit(0);
+            if (target == -1 || target > page) continue;
+            freePages.clear(target);
+          }
+
+          readPage(page, pageSize, buffer);
+          long position = (long) target * pageSize;
+          while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+          }
+          chain.pages[i] = target;
+
+          synchronized (this) {
+            freePages.set(page);
+          }
+        }
+      }
+    }
+
+    synchronized (this) {
+      final int before = pageCount;
+      while (pageCount > 0 && freePages.get(pageCount - 1)) {
+        freePages.clear(--pageCount);
+      }
+      channel.truncate((long) pageCount * pageSize);
+      return (long) (before - pageCount) * pageSize;
+    }
+  }
+
+  /**
+   * Returns the number of bytes spanned by the pages of the page file.
+   */
+  public synchronized long getFileSize() {
+    return (long) pageCount * pageSize;
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public void close() throws IOException {
+    chains.clear();
+    channel.close();
+  }
+
+  private synchronized int allocatePage() {
+    final int page = freePages.nextSetBit(0);
+    if (page != -1) {
+      freePages.clear(page);
+      return page;
+    }
+    return pageCount++;
+  }
+
+  private void readPage(final int page, final int length, final ByteBuffer buffer) throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    long position = (long) page * pageSize;
+    while (buffer.hasRemaining()) {
+      final int read = channel.read(buffer, position);
+      if (read == -1) break;
+      position += read;
+    }
+    buffer.flip();
+  }
+
+  private static class PageChain {
+    private int[] pages = new int[4];
+    private int count;
+    private long length;
+    private boolean discarded;
+
+    private void add(final int page) {
+      if (count == pages.length) {
+        pages = Arrays.copyOf(pages, count * 2);
+      }
+      pages[count++] = page;
+    }
+
+    private int last() {
+      return pages[count - 1];
+    }
+  }
+}
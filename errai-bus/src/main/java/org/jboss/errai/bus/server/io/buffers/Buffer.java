@@ -30,6 +30,8 @@ public interface Buffer {
 
   public void write(int writeSize, InputStream inputStream, BufferColor bufferColor) throws IOException;
 
+  public void write(CharSequence chars, BufferColor bufferColor) throws IOException;
+
   public boolean read(ByteWriteAdapter outputStream, BufferColor bufferColor) throws IOException;
 
   public boolean read(ByteWriteAdapter outputStream, BufferColor bufferColor, BufferFilter callback) throws IOException;
@@ -16,6 +16,8 @@
 
 package org.jboss.errai.bus.server.io.buffers;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
@@ -31,6 +33,18 @@ public class BufferColor {
   private static final AtomicInteger bufferColorCounter = new AtomicInteger();
   private static final BufferColor allBuffersColor = new BufferColor(Short.MIN_VALUE);
 
+  /**
+   * The number of colors reserved for topics, right above the global color. Topic colors live as long as their
+   * subscription, so the counter of the other colors, which wraps, never hands one of them out.
+   */
+  static final int TOPIC_COLORS = 4096;
+  private static final int FIRST_TOPIC_COLOR = Short.MIN_VALUE + 1;
+  private static final int LAST_TOPIC_COLOR = Short.MIN_VALUE + TOPIC_COLORS;
+
+  // the topic colors in use, and the index to look for the next free one from.
+  private static final BitSet liveTopicColors = new BitSet(TOPIC_COLORS);
+  private static int nextTopicColor;
+
   /**
    * The current tail position for this buffer color.
    */
@@ -41,6 +55,14 @@ public class BufferColor {
    */
   final short color;
 
+  /**
+   * The topic colors this color is subscribed to, in addition to the global color. Replaced as a whole whenever a
+   * subscription is added or removed, so readers can scan it without locking.
+   */
+  private volatile TopicSubscription[] topics = NO_TOPICS;
+
+  private static final TopicSubscription[] NO_TOPICS = new TopicSubscription[0];
+
   /**
    * Lock for reads and writes on this buffer color.
    */
@@ -81,6 +103,73 @@ public class BufferColor {
     this.color = color;
   }
 
+  /**
+   * Makes data written to the specified topic color visible to this color, starting with data written at or after
+   * the specified sequence. Data a topic color was written with before the subscription is not visible.
+   *
+   * @param topic
+   *     the topic color to subscribe to.
+   * @param fromSequence
+   *     the first buffer sequence visible to this color, usually the head sequence of the buffer.
+   */
+  public synchronized void subscribeTo(final BufferColor topic, final long fromSequence) {
+    final TopicSubscription[] current = topics;
+    for (final TopicSubscription subscription : current) {
+      if (subscription.color == topic.color) {
+        return;
+      }
+    }
+
+    final TopicSubscription[] newTopics = Arrays.copyOf(current, current.length + 1);
+    newTopics[current.length] = new TopicSubscription(topic.color, fromSequence);
+    topics = newTopics;
+  }
+
+  /**
+   * Stops data written to the specified topic color from being visible to this color.
+   *
+   * @param topic
+   *     the topic color to unsubscribe from.
+   */
+  public synchronized void unsubscribeFrom(final BufferColor topic) {
+    final TopicSubscription[] current = topics;
+    for (int i = 0; i < current.length; i++) {
+      if (current[i].color == topic.color) {
+        final TopicSubscription[] newTopics = new TopicSubscription[current.length - 1];
+        System.arraycopy(current, 0, newTopics, 0, i);
+        System.arraycopy(current, i + 1, newTopics, i, current.length - i - 1);
+        topics = newTopics;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Returns true if this color is subscribed to the specified topic color.
+   */
+  public boolean isSubscribedTo(final BufferColor topic) {
+    for (final TopicSubscription subscription : topics) {
+      if (subscription.color == topic.color) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  TopicSubscription[] getTopics() {
+    return topics;
+  }
+
+  static final class TopicSubscription {
+    final short color;
+    final long fromSequence;
+
+    private TopicSubscription(final short color, final long fromSequence) {
+      this.color = color;
+      this.fromSequence = fromSequence;
+    }
+  }
+
   /**
    * Return a new unique BufferColor.
    *
@@ -89,17 +178,60 @@ public class BufferColor {
    * @see #getNewColorFromHead(TransmissionBuffer)
    */
   public static BufferColor getNewColor() {
-    short val = (short) bufferColorCounter.incrementAndGet();
-
-    // in a long-running system, do not allow it to recycle over the global
-    // color.
-    if (val == Short.MIN_VALUE) {
+    short val;
+    do {
       val = (short) bufferColorCounter.incrementAndGet();
-    }
+
+      // in a long-running system, do not allow it to recycle over the global
+      // color, or over the colors reserved for topics.
+    } while (val <= LAST_TOPIC_COLOR);
 
     return new BufferColor(val);
   }
 
+  /**
+   * Returns a new topic color, which is unique until it is released with {@link #releaseTopicColor(BufferColor)}.
+   * The colors released most recently are handed out last.
+   *
+   * @return a new topic color, or null if all the topic colors are in use.
+   */
+  public static BufferColor getNewTopicColor() {
+    synchronized (liveTopicColors) {
+      int index = liveTopicColors.nextClearBit(nextTopicColor);
+      if (index >= TOPIC_COLORS) {
+        index = liveTopicColors.nextClearBit(0);
+        if (index >= TOPIC_COLORS) {
+          return null;
+        }
+      }
+      liveTopicColors.set(index);
+      nextTopicColor = index + 1;
+      return new BufferColor((short) (FIRST_TOPIC_COLOR + index));
+    }
+  }
+
+  /**
+   * Makes a topic color returned by {@link #getNewTopicColor()} available again, once nothing writes to it anymore.
+   *
+   * @param topic
+   *     the topic color to release.
+   */
+  public static void releaseTopicColor(final BufferColor topic) {
+    if (!topic.isTopicColor()) {
+      throw new IllegalArgumentException("not a topic color: " + topic.color);
+    }
+    synchronized (liveTopicColors) {
+      liveTopicColors.clear(topic.color - FIRST_TOPIC_COLOR);
+    }
+  }
+
+  /**
+   * Returns true if this is one of the colors reserved for topics.
+   */
+  public boolean isTopicColor() {
+    return color >= FIRST_TOPIC_COLOR && color <= LAST_TOPIC_COLOR;
+  }
+
   /**
    * Returns a new unique BufferColor set to the head sequence of the specified TransmissionBuffer.
    *
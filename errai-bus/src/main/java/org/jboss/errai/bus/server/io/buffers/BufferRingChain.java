@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io.buffers;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The backing store of a growable {@link TransmissionBuffer}. The logical buffer is divided into a fixed number of
+ * equally sized rings, each of which is only allocated once a writer needs it and is handed back when
+ * {@link #release(boolean[])} finds that no reader or writer can still reach it. Up to {@code retainedRings}
+ * released rings are kept as spares so that a buffer oscillating around its base load does not churn memory.
+ * <p/>
+ * Writers announce the range they are about to write with {@link #acquire(int, int)}, which guarantees the rings
+ * covering that range are allocated and can not be released until the matching {@link #release(int, int)}.
+ *
+ * @see TransmissionBuffer#createGrowable(boolean, int, int, int)
+ */
+final class BufferRingChain {
+  /**
+   * The pin count of a ring while {@link #release(boolean[])} is reclaiming it. Writers can not pin such a ring and
+   * wait on the chain's monitor until the reclaim is over.
+   */
+  private static final int RECLAIMING = Integer.MIN_VALUE;
+
+  private final boolean directBuffer;
+  private final int ringSize;
+  private final int ringCount;
+  private final int retainedRings;
+
+  private final AtomicReferenceArray<ByteBuffer> rings;
+
+  /**
+   * The number of writers currently holding each ring, or {@link #RECLAIMING}.
+   */
+  private final AtomicIntegerArray writers;
+
+  /**
+   * Released rings kept for reuse. Guarded by {@code this}.
+   */
+  private final ArrayDeque<ByteBuffer> spares = new ArrayDeque<ByteBuffer>();
+
+  private volatile int allocatedRings;
+
+  BufferRingChain(final boolean directBuffer, final int ringSize, final int ringCount, final int retainedRings) {
+    this.directBuffer = directBuffer;
+    this.ringSize = ringSize;
+    this.ringCount = ringCount;
+    this.retainedRings = retainedRings;
+    this.rings = new AtomicReferenceArray<ByteBuffer>(ringCount);
+    this.writers = new AtomicIntegerArray(ringCount);
+
+    for (int i = 0; i < retainedRings && i < ringCount; i++) {
+      rings.set(i, allocateRing());
+      allocatedRings++;
+    }
+  }
+
+  byte get(final int position) {
+    final ByteBuffer ring = rings.get(position / ringSize);
+    if (ring == null) {
+      throw new IllegalStateException("read of released ring " + (position / ringSize) + " at position " + position);
+    }
+    return ring.get(position % ringSize);
+  }
+
+  void put(final int position, final byte b) {
+    rings.get(position / ringSize).put(position % ringSize, b);
+  }
+
+  /**
+   * Pins the rings covering {@code length} bytes from {@code position} (wrapping around the end of the buffer),
+   * allocating any that are not present.
+   */
+  void acquire(final int position, final int length) {
+    final int first = position / ringSize;
+    final int span = ringSpan(position, length);
+    for (int i = 0; i < span; i++) {
+      final int ring = (first + i) % ringCount;
+      pin(ring);
+      if (rings.get(ring) == null) {
+        allocate(ring);
+      }
+    }
+  }
+
+  /**
+   * Unpins the rings previously pinned by {@link #acquire(int, int)} with the same arguments.
+   */
+  void release(final int position, final int length) {
+    final int first = position / ringSize;
+    final int span = ringSpan(position, length);
+    for (int i = 0; i < span; i++) {
+      writers.decrementAndGet((first + i) % ringCount);
+    }
+  }
+
+  /**
+   * Releases every allocated ring that is not marked in {@code inUse} and is not pinned by a writer.
+   *
+   * @return the number of rings released.
+   */
+  synchronized int release(final boolean[] inUse) {
+    int released = 0;
+    for (int ring = 0; ring < ringCount; ring++) {
+      final ByteBuffer buf;
+      if (inUse[ring] || (buf = rings.get(ring)) == null) continue;
+
+      // a writer pins the ring before it looks at it, so if no writer holds the ring now, none can reach it until
+      // the pin count is reset below, after the ring was unpublished.
+      if (!writers.compareAndSet(ring, 0, RECLAIMING)) continue;
+
+      rings.set(ring, null);
+      writers.set(ring, 0);
+      recycle(buf);
+      released++;
+    }
+    return released;
+  }
+
+  synchronized void clear() {
+    for (int ring = 0; ring < ringCount; ring++) {
+      final ByteBuffer buf = rings.getAndSet(ring, null);
+      if (buf != null) {
+        recycle(buf);
+      }
+    }
+  }
+
+  int getRingCount() {
+    return ringCount;
+  }
+
+  int getRingSize() {
+    return ringSize;
+  }
+
+  int getAllocatedRings() {
+    return allocatedRings;
+  }
+
+  private void pin(final int ring) {
+    while (true) {
+      final int count = writers.get(ring);
+      if (count == RECLAIMING) {
+        synchronized (this) {
+          // the reclaim holds the monitor until it has reset the pin count, so there is nothing to do but wait.
+        }
+      }
+      else if (writers.compareAndSet(ring, count, count + 1)) {
+        return;
+      }
+    }
+  }
+
+  private int ringSpan(final int position, final int length) {
+    final long lastRing = ((long) position + Math.max(length, 1) - 1) / ringSize;
+    return (int) Math.min(ringCount, lastRing - (position / ringSize) + 1);
+  }
+
+  private synchronized void allocate(final int ring) {
+    if (rings.get(ring) != null) return;
+
+    final ByteBuffer buf = spares.poll();
+    if (buf != null) {
+      rings.set(ring, buf);
+    }
+    else {
+      rings.set(ring, allocateRing());
+    }
+    allocatedRings++;
+  }
+
+  private void recycle(final ByteBuffer buf) {
+    allocatedRings--;
+    if (spares.size() < retainedRings) {
+      spares.offer(buf);
+    }
+  }
+
+  private ByteBuffer allocateRing() {
+    return directBuffer ? ByteBuffer.allocateDirect(ringSize) : ByteBuffer.allocate(ringSize);
+  }
+}
@@ -38,9 +38,18 @@ import org.jboss.errai.bus.server.io.ByteWriteAdapter;
  * <p/>
  * Since this is a multi-colored buffer, it has multiple tails -- one for each color.
  * <p/>
+ * Data which is visible to a group of colors can be written once under a topic color. Every color which has
+ * subscribed to the topic color (see {@link BufferColor#subscribeTo(BufferColor, long)}) reads that data along with
+ * its own.
+ * <p/>
  * The amount of free space available in the buffer at any time is the delta between the head and maximum physical
  * extent of the buffer, plus the delta from the beginning of the physical buffer in memory to the closest tail.
  * </p>
+ * A buffer created with {@link #createGrowable(boolean, int, int, int)} behaves the same way, but its memory is
+ * split into rings which are only allocated once the head reaches them, and are handed back by {@link #reclaim(long)}
+ * once every tail has moved past them. This allows a large ceiling to be configured without committing the memory
+ * for it up front.
+ * </p>
  *
  * @author Mike Brock
  * @see BufferColor
@@ -56,10 +65,15 @@ public class TransmissionBuffer implements Buffer {
   private static final int SEGMENT_HEADER_SIZE = 4;                      /* to accommodate a 32-bit integer  */
 
   /**
-   * The main buffer where the data is stored
+   * The main buffer where the data is stored. Null if this is a growable buffer.
    */
   private final ByteBuffer _buffer;
 
+  /**
+   * The on-demand rings where the data is stored if this is a growable buffer, otherwise null.
+   */
+  private final BufferRingChain rings;
+
   /**
    * The segment map where allocation data is stored
    */
@@ -108,6 +122,7 @@ public class TransmissionBuffer implements Buffer {
     this.segmentSize = segmentSize;
     this.bufferSize = segmentSize * segments;
     this.segments = segments;
+    this.rings = null;
 
     if (directBuffer) {
       this._buffer = ByteBuffer.allocateDirect(bufferSize);
@@ -122,6 +137,24 @@ public class TransmissionBuffer implements Buffer {
     segmentMap[0] = (short) 0;
   }
 
+  private TransmissionBuffer(final boolean directBuffer,
+                             final int segmentSize,
+                             final int segmentsPerRing,
+                             final int maxRings) {
+    if ((long) segmentSize * segmentsPerRing * maxRings > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("buffer ceiling may not exceed " + Integer.MAX_VALUE + " bytes");
+    }
+
+    this.segmentSize = segmentSize;
+    this.segments = segmentsPerRing * maxRings;
+    this.bufferSize = segmentSize * segments;
+    this.rings = new BufferRingChain(directBuffer, segmentSize * segmentsPerRing, maxRings, 1);
+    this._buffer = null;
+
+    segmentMap = new short[segments];
+    segmentMap[0] = (short) 0;
+  }
+
   /**
    * Creates a transmission buffer with the default segment and buffer size, using a regular heap allocated buffer.
    *
@@ -170,6 +203,30 @@ public class TransmissionBuffer implements Buffer {
     return new TransmissionBuffer(true, segmentSize, segments);
   }
 
+  /**
+   * Creates a growable transmission buffer made up of <i>maxRings</i> rings of <i>segmentsPerRing</i> segments
+   * each. Only the first ring is allocated immediately. Further rings are allocated when the head reaches them,
+   * and released again by {@link #reclaim(long)} when no tail refers to them anymore. The resulting buffer behaves
+   * like a buffer of size <i>segmentSize * segmentsPerRing * maxRings</i>, which must not exceed 2GB.
+   *
+   * @param directBuffer
+   *     true if the rings should be allocated from direct memory, false for the heap.
+   * @param segmentSize
+   *     the size of the individual segments
+   * @param segmentsPerRing
+   *     the number of segments in each ring
+   * @param maxRings
+   *     the maximum number of rings
+   *
+   * @return an instance of the transmission buffer
+   */
+  public static TransmissionBuffer createGrowable(final boolean directBuffer,
+                                                  final int segmentSize,
+                                                  final int segmentsPerRing,
+                                                  final int maxRings) {
+    return new TransmissionBuffer(directBuffer, segmentSize, segmentsPerRing, maxRings);
+  }
+
   /**
    * Writes from the {@link InputStream} into the buffer. Space is allocated and the data expected to be written
    * by checking the {@link java.io.InputStream#available()} value.
@@ -204,6 +261,31 @@ public class TransmissionBuffer implements Buffer {
                     final InputStream inputStream,
                     final BufferColor bufferColor) throws IOException {
 
+    write(writeSize, inputStream, null, bufferColor);
+  }
+
+  /**
+   * Writes the UTF-8 encoding of the specified characters into the buffer. The characters are encoded straight into
+   * the allocated segments, so no intermediate byte array of the encoded data is created. Malformed surrogates are
+   * replaced with <tt>'?'</tt>, as {@link String#getBytes(java.nio.charset.Charset)} does.
+   *
+   * @param chars
+   *     the characters to write into the buffer.
+   * @param bufferColor
+   *     the color of the data to be inserted.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void write(final CharSequence chars, final BufferColor bufferColor) throws IOException {
+    write(utf8Length(chars), null, chars, bufferColor);
+  }
+
+  private void write(final int writeSize,
+                     final InputStream inputStream,
+                     final CharSequence chars,
+                     final BufferColor bufferColor) throws IOException {
+
     if (writeSize > bufferSize) {
       throw new IOException("write size larger than buffer can fit");
     }
@@ -217,27 +299,43 @@ public class TransmissionBuffer implements Buffer {
 
       int writeCursor = seq * segmentSize;
 
-      // write the chunk size header for the data we're about to write
-      writeChunkSize(writeCursor, writeSize);
+      if (rings != null) {
+        rings.acquire(writeCursor, writeSize + SEGMENT_HEADER_SIZE);
+      }
 
-      final int end = (writeCursor += SEGMENT_HEADER_SIZE) + writeSize;
-      final int initialRead = end > bufferSize ? bufferSize : end;
+      try {
+        // write the chunk size header for the data we're about to write
+        writeChunkSize(writeCursor, writeSize);
 
-      /*
-      * Allocate the segments to the this color
-      */
-      final short color = bufferColor.color;
-      for (int i = 0; i < allocSize; i++) {
-        segmentMap[((seq + i) % segments)] = color;
-      }
+        final int end = (writeCursor += SEGMENT_HEADER_SIZE) + writeSize;
+        final int initialRead = end > bufferSize ? bufferSize : end;
 
-      for (; writeCursor < initialRead; writeCursor++) {
-        _buffer.put(writeCursor, (byte) inputStream.read());
-      }
+        /*
+        * Allocate the segments to the this color
+        */
+        final short color = bufferColor.color;
+        for (int i = 0; i < allocSize; i++) {
+          segmentMap[((seq + i) % segments)] = color;
+        }
 
-      if (writeCursor < end) {
-        for (int i = 0; i < end - bufferSize; i++) {
-          _buffer.put(i, (byte) inputStream.read());
+        if (chars != null) {
+          writeUtf8(writeCursor, chars);
+        }
+        else {
+          for (; writeCursor < initialRead; writeCursor++) {
+            put(writeCursor, (byte) inputStream.read());
+          }
+
+          if (writeCursor < end) {
+            for (int i = 0; i < end - bufferSize; i++) {
+              put(i, (byte) inputStream.read());
+            }
+          }
+        }
+      }
+      finally {
+        if (rings != null) {
+          rings.release(seq * segmentSize, writeSize + SEGMENT_HEADER_SIZE);
         }
       }
 
@@ -253,6 +351,76 @@ public class TransmissionBuffer implements Buffer {
     }
   }
 
+  /**
+   * Encodes the specified characters as UTF-8 into the buffer, starting at the specified position and wrapping
+   * around the end of the buffer.
+   */
+  private void writeUtf8(int position, final CharSequence chars) {
+    final int length = chars.length();
+    for (int i = 0; i < length; i++) {
+      final char c = chars.charAt(i);
+
+      if (c < 0x80) {
+        position = putWrapped(position, c);
+      }
+      else if (c < 0x800) {
+        position = putWrapped(position, 0xC0 | (c >> 6));
+        position = putWrapped(position, 0x80 | (c & 0x3F));
+      }
+      else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          final int cp = Character.toCodePoint(c, chars.charAt(++i));
+          position = putWrapped(position, 0xF0 | (cp >> 18));
+          position = putWrapped(position, 0x80 | ((cp >> 12) & 0x3F));
+          position = putWrapped(position, 0x80 | ((cp >> 6) & 0x3F));
+          position = putWrapped(position, 0x80 | (cp & 0x3F));
+        }
+        else {
+          position = putWrapped(position, '?');
+        }
+      }
+      else {
+        position = putWrapped(position, 0xE0 | (c >> 12));
+        position = putWrapped(position, 0x80 | ((c >> 6) & 0x3F));
+        position = putWrapped(position, 0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  private int putWrapped(final int position, final int b) {
+    put(position < bufferSize ? position : position - bufferSize, (byte) b);
+    return position + 1;
+  }
+
+  /**
+   * Returns the number of bytes of the UTF-8 encoding of the specified characters, counting a malformed surrogate
+   * as a single replacement byte.
+   */
+  public static int utf8Length(final CharSequence chars) {
+    final int length = chars.length();
+    int size = length;
+    for (int i = 0; i < length; i++) {
+      final char c = chars.charAt(i);
+
+      if (c < 0x800) {
+        if (c >= 0x80) {
+          size += 1;
+        }
+      }
+      else if (Character.isSurrogate(c)) {
+        if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(chars.charAt(i + 1))) {
+          // two chars, four bytes.
+          size += 2;
+          i++;
+        }
+      }
+      else {
+        size += 2;
+      }
+    }
+    return size;
+  }
+
   /**
    * Reads all the available data of the specified color from the buffer into the provided <tt>OutputStream</tt>
    *
@@ -611,6 +779,63 @@ public class TransmissionBuffer implements Buffer {
     return segmentSize;
   }
 
+  /**
+   * Returns true if this buffer allocates its memory on demand.
+   *
+   * @see #createGrowable(boolean, int, int, int)
+   */
+  public boolean isGrowable() {
+    return rings != null;
+  }
+
+  /**
+   * Returns the number of bytes of memory currently committed to this buffer. For a fixed buffer this is always
+   * the same as {@link #getBufferSize()}.
+   */
+  public long getAllocatedBytes() {
+    if (rings == null) {
+      return bufferSize;
+    }
+    return (long) rings.getAllocatedRings() * rings.getRingSize();
+  }
+
+  /**
+   * Releases the memory of all rings which lie entirely behind the specified tail sequence, as long as no writer is
+   * currently using them. The ring directly ahead of the head is kept so that a steady load does not allocate and
+   * release the same ring over and over. This has no effect on a buffer which is not growable.
+   *
+   * @param lowestTailSequence
+   *     the sequence of the slowest reader of this buffer, or -1 if there are no readers.
+   *
+   * @return the number of bytes released.
+   */
+  public long reclaim(final long lowestTailSequence) {
+    if (rings == null) {
+      return 0;
+    }
+
+    final int ringCount = rings.getRingCount();
+    final int segmentsPerRing = segments / ringCount;
+
+    final long head = writeSequenceNumber.get();
+    final long low = lowestTailSequence == -1 ? head : Math.min(lowestTailSequence, head);
+    final long high = head + segmentsPerRing;
+
+    if (high - low >= segments) {
+      // every ring is spanned by a tail.
+      return 0;
+    }
+
+    final boolean[] inUse = new boolean[ringCount];
+    final int firstRing = (int) ((low % segments) / segmentsPerRing);
+    final int spannedRings = (int) (((low % segmentsPerRing) + (high - low) - 1) / segmentsPerRing) + 1;
+    for (int i = 0; i < spannedRings && i < ringCount; i++) {
+      inUse[(firstRing + i) % ringCount] = true;
+    }
+
+    return (long) rings.release(inUse) * rings.getRingSize();
+  }
+
   /**
    * Returns the next segment containing data for the specified {@param bufferColor}, up to the specified
    * {@param head} position, from the specified {@param segment} position.
@@ -625,12 +850,20 @@ public class TransmissionBuffer implements Buffer {
    * @return returns an long representing the initial sequence to read from
    */
   private long getNextSegment(final BufferColor bufferColor, final long headSeq, long colorSeq) {
+    final BufferColor.TopicSubscription[] topics = bufferColor.getTopics();
+
     for (final int color = bufferColor.getColor(); colorSeq < headSeq; colorSeq++) {
       final short seg = segmentMap[(int) (colorSeq % segments)];
 
       if (seg == color || seg == Short.MIN_VALUE) {
         return colorSeq;
       }
+
+      for (final BufferColor.TopicSubscription topic : topics) {
+        if (seg == topic.color && colorSeq >= topic.fromSequence) {
+          return colorSeq;
+        }
+      }
     }
     return -1;
   }
@@ -686,7 +919,7 @@ public class TransmissionBuffer implements Buffer {
       final BufferFilter nullSafeCallback = (callback == null ? NoOpBufferFilter.INSTANCE : callback);
 
       for (; readCursor >= 0 && readCursor < maxInitialRead; readCursor++) {
-        outputStream.write(nullSafeCallback.each(_buffer.get(readCursor), outputStream));
+        outputStream.write(nullSafeCallback.each(get(readCursor), outputStream));
       }
 
       if (readCursor < endRead) {
@@ -701,7 +934,7 @@ public class TransmissionBuffer implements Buffer {
          */
         final int remaining = (int) (endRead - bufferSize);
         for (int i = 0; i < remaining; i++) {
-          outputStream.write(nullSafeCallback.each(_buffer.get(i), outputStream));
+          outputStream.write(nullSafeCallback.each(get(i), outputStream));
         }
       }
 
@@ -722,24 +955,42 @@ public class TransmissionBuffer implements Buffer {
    * @return the size in bytes.
    */
   private int readChunkSize(final int position) {
-    return (((_buffer.get(position + 3)) & 0xFF)) +
-        (((_buffer.get(position + 2)) & 0xFF) << 8) +
-        (((_buffer.get(position + 1)) & 0xFF) << 16) +
-        (((_buffer.get(position)) & 0xFF) << 24);
+    return (((get(position + 3)) & 0xFF)) +
+        (((get(position + 2)) & 0xFF) << 8) +
+        (((get(position + 1)) & 0xFF) << 16) +
+        (((get(position)) & 0xFF) << 24);
   }
 
   private void writeChunkSize(final int position, final int size) {
-    _buffer.put(position, (byte) ((size >> 24) & 0xFF));
-    _buffer.put(position + 1, (byte) ((size >> 16) & 0xFF));
-    _buffer.put(position + 2, (byte) ((size >> 8) & 0xFF));
-    _buffer.put(position + 3, (byte) (size & 0xFF));
+    put(position, (byte) ((size >> 24) & 0xFF));
+    put(position + 1, (byte) ((size >> 16) & 0xFF));
+    put(position + 2, (byte) ((size >> 8) & 0xFF));
+    put(position + 3, (byte) (size & 0xFF));
+  }
+
+  private byte get(final int position) {
+    return rings == null ? _buffer.get(position) : rings.get(position);
+  }
+
+  private void put(final int position, final byte b) {
+    if (rings == null) {
+      _buffer.put(position, b);
+    }
+    else {
+      rings.put(position, b);
+    }
   }
 
   /**
-   * Clear the current buffer.
+   * Clear the current buffer. A growable buffer also releases all of its memory.
    */
   public void clear() {
-    _buffer.clear();
+    if (rings == null) {
+      _buffer.clear();
+    }
+    else {
+      rings.clear();
+    }
   }
 
   public void dumpSegments(final PrintWriter writer) {
@@ -757,10 +1008,9 @@ public class TransmissionBuffer implements Buffer {
       pos += SEGMENT_HEADER_SIZE;
 
       final byte[] buf = new byte[length];
-
-      final ByteBuffer dupBuf = _buffer.duplicate();
-      dupBuf.position(pos);
-      dupBuf.put(buf, 0, length);
+      for (int b = 0; b < length; b++) {
+        buf[b] = get((pos + b) % bufferSize);
+      }
 
       build.append("::'").append(new String(buf)).append("'");
       length += SEGMENT_HEADER_SIZE;
@@ -785,10 +1035,9 @@ public class TransmissionBuffer implements Buffer {
       pos += SEGMENT_HEADER_SIZE;
 
       final byte[] buf = new byte[length];
-
-      final ByteBuffer dupBuf = _buffer.duplicate();
-      dupBuf.position(pos);
-      dupBuf.put(buf, 0, length);
+      for (int b = 0; b < length; b++) {
+        buf[b] = get((pos + b) % bufferSize);
+      }
 
       list.add(new String(buf));
 
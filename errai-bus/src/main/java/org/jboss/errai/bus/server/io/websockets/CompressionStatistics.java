@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io.websockets;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts the bytes of the outbound WebSocket messages before and after compression, across all channels of the
+ * {@link WebSocketServer} of a bus (see
+ * {@link org.jboss.errai.bus.server.ServerMessageBusImpl#getCompressionStatistics()}). Messages which were sent
+ * uncompressed are counted on both sides, so the ratio reflects the bandwidth saved overall.
+ */
+public class CompressionStatistics {
+  private final AtomicLong messages = new AtomicLong();
+  private final AtomicLong compressedMessages = new AtomicLong();
+  private final AtomicLong uncompressedBytes = new AtomicLong();
+  private final AtomicLong compressedBytes = new AtomicLong();
+
+  void record(final int uncompressedSize, final int compressedSize, final boolean compressed) {
+    messages.incrementAndGet();
+    if (compressed) {
+      compressedMessages.incrementAndGet();
+    }
+    uncompressedBytes.addAndGet(uncompressedSize);
+    compressedBytes.addAndGet(compressedSize);
+  }
+
+  public long getMessages() {
+    return messages.get();
+  }
+
+  public long getCompressedMessages() {
+    return compressedMessages.get();
+  }
+
+  public long getUncompressedBytes() {
+    return uncompressedBytes.get();
+  }
+
+  public long getCompressedBytes() {
+    return compressedBytes.get();
+  }
+
+  /**
+   * Returns the ratio of the uncompressed to the compressed size of all messages sent so far, or -1 if none were
+   * sent yet.
+   */
+  public double getCompressionRatio() {
+    final long compressed = compressedBytes.get();
+    return compressed == 0 ? -1 : (double) uncompressedBytes.get() / compressed;
+  }
+
+  @Override
+  public String toString() {
+    return "CompressionStatistics{" +
+        "messages=" + getMessages() +
+        ", compressedMessages=" + getCompressedMessages() +
+        ", uncompressedBytes=" + getUncompressedBytes() +
+        ", compressedBytes=" + getCompressedBytes() +
+        ", ratio=" + getCompressionRatio() +
+        '}';
+  }
+}
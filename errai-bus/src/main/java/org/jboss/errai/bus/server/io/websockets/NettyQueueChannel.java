@@ -16,18 +16,50 @@
 
 package org.jboss.errai.bus.server.io.websockets;
 
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
-import org.jboss.errai.bus.server.io.QueueChannel;
+
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
+ * A {@link BatchingQueueChannel} for a Netty channel. The messages written during one tick of the channel's event
+ * loop are sent in a single frame, with a single flush, at the end of that tick.
+ * <p/>
+ * The channel is writable as long as Netty's outbound buffer for it stays below the high water mark.
+ *
  * @author Mike Brock
  * @author Christian Sadilek <csadilek@redhat.com>
  */
-public class NettyQueueChannel implements QueueChannel {
+public class NettyQueueChannel extends BatchingQueueChannel {
+  private static final Logger log = LoggerFactory.getLogger(NettyQueueChannel.class);
+
   final Channel channel;
 
+  private final Runnable flushTask = new Runnable() {
+    @Override
+    public void run() {
+      try {
+        flush();
+      }
+      catch (IOException e) {
+        log.debug("failed to flush batch to channel: " + channel, e);
+      }
+    }
+  };
+
   public NettyQueueChannel(Channel channel) {
+    this(channel, DEFAULT_MAX_BATCH_SIZE);
+  }
+
+  public NettyQueueChannel(Channel channel, int maxBatchSize) {
+    super(maxBatchSize);
     this.channel = channel;
   }
 
@@ -37,8 +69,36 @@ public class NettyQueueChannel implements QueueChannel {
   }
 
   @Override
-  public void write(String data) {
-    channel.writeAndFlush(new TextWebSocketFrame(data));
+  public boolean isWritable() {
+    return channel.isWritable();
+  }
+
+  /**
+   * Called by the {@link WebSocketServerHandler} when the outbound buffer has drained below the low water mark.
+   */
+  void onWritable() {
+    fireWritable();
+  }
+
+  @Override
+  protected void scheduleFlush() throws IOException {
+    try {
+      channel.eventLoop().execute(flushTask);
+    }
+    catch (RejectedExecutionException e) {
+      // the event loop is shutting down.
+      flush();
+    }
+  }
+
+  @Override
+  protected void writeFrame(String frame) {
+    channel.writeAndFlush(new TextWebSocketFrame(frame));
+  }
+
+  @Override
+  protected void writeBinaryFrame(byte[] frame) {
+    channel.writeAndFlush(new BinaryWebSocketFrame(Unpooled.wrappedBuffer(frame)));
   }
 
 }
@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io.websockets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Implements the <tt>permessage-deflate</tt> WebSocket extension (RFC 7692) for a single channel. Inbound messages
+ * compressed by the client are inflated before they reach the {@link WebSocketServerHandler}, and outbound text
+ * and binary messages of at least the configured size are deflated.
+ * <p/>
+ * Java's {@link Deflater} always uses a 32KB window, so offers which restrict the window of the server are declined
+ * (see {@link #negotiate(String, boolean)}). The window of the client is not restricted.
+ */
+public class PerMessageDeflateHandler extends ChannelDuplexHandler {
+  public static final String EXTENSION_NAME = "permessage-deflate";
+
+  private static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+  private static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+  private static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+  private static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+  private static final int RSV1 = 0x04;
+  private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+  private final int threshold;
+  private final boolean contextTakeover;
+  private final CompressionStatistics statistics;
+
+  private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+  private final Inflater inflater = new Inflater(true);
+  private final byte[] scratch = new byte[8192];
+
+  private boolean inflatingFragments;
+
+  /**
+   * @param threshold
+   *     the size in bytes from which outbound messages are compressed.
+   * @param contextTakeover
+   *     true if the compression context is kept from one message to the next. This must be false if the negotiated
+   *     extension includes <tt>server_no_context_takeover</tt>.
+   * @param statistics
+   *     the statistics to record the outbound messages in.
+   */
+  public PerMessageDeflateHandler(final int threshold, final boolean contextTakeover,
+                                  final CompressionStatistics statistics) {
+    this.threshold = threshold;
+    this.contextTakeover = contextTakeover;
+    this.statistics = statistics;
+  }
+
+  /**
+   * Picks the first <tt>permessage-deflate</tt> offer of the client which this handler can serve.
+   *
+   * @param extensionsHeader
+   *     the value of the <tt>Sec-WebSocket-Extensions</tt> header of the handshake request. May be null.
+   * @param contextTakeover
+   *     false if the server should reset its compression context after each message.
+   *
+   * @return the value of the <tt>Sec-WebSocket-Extensions</tt> header for the handshake response, or null if no offer
+   *         was accepted.
+   */
+  public static String negotiate(final String extensionsHeader, final boolean contextTakeover) {
+    if (extensionsHeader == null) {
+      return null;
+    }
+
+    Offers:
+    for (final String offer : extensionsHeader.split(",")) {
+      final String[] parts = offer.split(";");
+      if (!EXTENSION_NAME.equalsIgnoreCase(parts[0].trim())) {
+        continue;
+      }
+
+      boolean serverNoContextTakeover = !contextTakeover;
+      boolean clientNoContextTakeover = false;
+      for (int i = 1; i < parts.length; i++) {
+        final String param = parts[i].trim();
+        final int eq = param.indexOf('=');
+        final String name = (eq == -1 ? param : param.substring(0, eq)).trim();
+
+        if (SERVER_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+          serverNoContextTakeover = true;
+        }
+        else if (CLIENT_NO_CONTEXT_TAKEOVER.equalsIgnoreCase(name)) {
+          clientNoContextTakeover = true;
+        }
+        else if (SERVER_MAX_WINDOW_BITS.equalsIgnoreCase(name)) {
+          final String bits = eq == -1 ? "" : param.substring(eq + 1).replace("\"", "").trim();
+          if (!"15".equals(bits)) {
+            // the deflater cannot use a smaller window.
+            continue Offers;
+          }
+        }
+        else if (!CLIENT_MAX_WINDOW_BITS.equalsIgnoreCase(name)) {
+          // an unknown parameter. this offer cannot be accepted.
+          continue Offers;
+        }
+      }
+
+      final StringBuilder response = new StringBuilder(EXTENSION_NAME);
+      if (serverNoContextTakeover) {
+        response.append("; ").append(SERVER_NO_CONTEXT_TAKEOVER);
+      }
+      if (clientNoContextTakeover) {
+        response.append("; ").append(CLIENT_NO_CONTEXT_TAKEOVER);
+      }
+      return response.toString();
+    }
+    return null;
+  }
+
+  @Override
+  public void channelRead(final ChannelHandlerContext ctx, final Object msg) throws Exception {
+    if (msg instanceof TextWebSocketFrame && (((WebSocketFrame) msg).rsv() & RSV1) != 0) {
+      final TextWebSocketFrame frame = (TextWebSocketFrame) msg;
+      try {
+        final ByteBuf inflated = inflate(frame.content(), frame.isFinalFragment());
+        inflatingFragments = !frame.isFinalFragment();
+        ctx.fireChannelRead(new TextWebSocketFrame(frame.isFinalFragment(), frame.rsv() & ~RSV1, inflated));
+      }
+      finally {
+        frame.release();
+      }
+    }
+    else if (msg instanceof ContinuationWebSocketFrame && inflatingFragments) {
+      final ContinuationWebSocketFrame frame = (ContinuationWebSocketFrame) msg;
+      try {
+        final ByteBuf inflated = inflate(frame.content(), frame.isFinalFragment());
+        inflatingFragments = !frame.isFinalFragment();
+        ctx.fireChannelRead(new ContinuationWebSocketFrame(frame.isFinalFragment(), frame.rsv(), inflated));
+      }
+      finally {
+        frame.release();
+      }
+    }
+    else {
+      ctx.fireChannelRead(msg);
+    }
+  }
+
+  @Override
+  public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) throws Exception {
+    if ((msg instanceof TextWebSocketFrame || msg instanceof BinaryWebSocketFrame)
+        && ((WebSocketFrame) msg).isFinalFragment()) {
+      final WebSocketFrame frame = (WebSocketFrame) msg;
+      final int size = frame.content().readableBytes();
+
+      if (size >= threshold) {
+        final ByteBuf deflated;
+        try {
+          deflated = deflate(frame.content());
+        }
+        finally {
+          frame.release();
+        }
+        statistics.record(size, deflated.readableBytes(), true);
+        ctx.write(frame instanceof BinaryWebSocketFrame
+            ? new BinaryWebSocketFrame(true, frame.rsv() | RSV1, deflated)
+            : new TextWebSocketFrame(true, frame.rsv() | RSV1, deflated), promise);
+        return;
+      }
+
+      statistics.record(size, size, false);
+    }
+    ctx.write(msg, promise);
+  }
+
+  @Override
+  public void handlerRemoved(final ChannelHandlerContext ctx) throws Exception {
+    deflater.end();
+    inflater.end();
+    super.handlerRemoved(ctx);
+  }
+
+  private ByteBuf inflate(final ByteBuf content, final boolean finalFragment) throws DataFormatException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(content.readableBytes() * 4);
+
+    final byte[] input = new byte[content.readableBytes() + (finalFragment ? TAIL.length : 0)];
+    content.getBytes(content.readerIndex(), input, 0, content.readableBytes());
+    if (finalFragment) {
+      System.arraycopy(TAIL, 0, input, input.length - TAIL.length, TAIL.length);
+    }
+
+    inflater.setInput(input);
+    while (true) {
+      final int read = inflater.inflate(scratch);
+      if (read > 0) {
+        out.write(scratch, 0, read);
+      }
+      else if (inflater.needsInput() || inflater.finished() || inflater.needsDictionary()) {
+        break;
+      }
+    }
+    return Unpooled.wrappedBuffer(out.toByteArray());
+  }
+
+  private ByteBuf deflate(final ByteBuf content) {
+    final byte[] input = new byte[content.readableBytes()];
+    content.getBytes(content.readerIndex(), input);
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream(input.length / 2 + 16);
+    deflater.setInput(input);
+    int written;
+    do {
+      written = deflater.deflate(scratch, 0, scratch.length, Deflater.SYNC_FLUSH);
+      out.write(scratch, 0, written);
+    }
+    while (written == scratch.length);
+
+    if (!contextTakeover) {
+      deflater.reset();
+    }
+
+    // a sync flush ends with an empty stored block, which the extension leaves off.
+    final byte[] deflated = out.toByteArray();
+    return Unpooled.wrappedBuffer(deflated, 0, deflated.length - TAIL.length);
+  }
+}
@@ -18,9 +18,14 @@ package org.jboss.errai.bus.server.io.websockets;
 
 import static org.slf4j.LoggerFactory.getLogger;
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.http.HttpObjectAggregator;
@@ -31,6 +36,7 @@ import org.jboss.errai.bus.server.io.websockets.ssl.SslHandlerFactory;
 import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.jboss.errai.common.server.api.ErraiBootstrapFailure;
 import org.slf4j.Logger;
 
 /**
@@ -38,6 +44,10 @@ import org.slf4j.Logger;
  * @author Christian Sadilek <csadilek@redhat.com>
  */
 public class WebSocketServer {
+  private static final String EPOLL = "io.netty.channel.epoll.Epoll";
+  private static final String EPOLL_EVENT_LOOP_GROUP = "io.netty.channel.epoll.EpollEventLoopGroup";
+  private static final String EPOLL_SERVER_SOCKET_CHANNEL = "io.netty.channel.epoll.EpollServerSocketChannel";
+
   private ErraiService svc;
   private Logger log = getLogger(getClass());
   private boolean useSecureWebSocket = false;
@@ -53,10 +63,55 @@ public class WebSocketServer {
     final ServerBootstrap bootstrap = new ServerBootstrap();
     final WebSocketServerHandler webSocketHandler = new WebSocketServerHandler(svc);
 
+    final boolean nativeTransport = ErraiConfigAttribs.WEB_SOCKET_NATIVE_TRANSPORT.getBoolean(esc) && isEpollAvailable();
+    final int bossThreads = ErraiConfigAttribs.WEB_SOCKET_BOSS_THREADS.getInt(esc);
+    final int workerThreads = ErraiConfigAttribs.WEB_SOCKET_WORKER_THREADS.getInt(esc);
+    final int backlog = ErraiConfigAttribs.WEB_SOCKET_BACKLOG.getInt(esc);
+    final int highWaterMark = ErraiConfigAttribs.WEB_SOCKET_WRITE_BUFFER_HIGH_WATER_MARK.getInt(esc);
+    final int lowWaterMark = ErraiConfigAttribs.WEB_SOCKET_WRITE_BUFFER_LOW_WATER_MARK.getInt(esc);
+
+    if (lowWaterMark > highWaterMark) {
+      throw new ErraiBootstrapFailure("the low water mark of the web socket write buffer (" + lowWaterMark
+          + ") must not be greater than its high water mark (" + highWaterMark + ")");
+    }
+
+    if (nativeTransport) {
+      bootstrap.channel(loadEpollClass(EPOLL_SERVER_SOCKET_CHANNEL).asSubclass(ServerChannel.class));
+    }
+    else {
+      bootstrap.channel(NioServerSocketChannel.class);
+    }
+
+    if (backlog > 0) {
+      bootstrap.option(ChannelOption.SO_BACKLOG, backlog);
+    }
+
+    if (ErraiConfigAttribs.WEB_SOCKET_POOLED_ALLOCATOR.getBoolean(esc)) {
+      bootstrap.option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+      bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+    }
+    else {
+      bootstrap.option(ChannelOption.ALLOCATOR, UnpooledByteBufAllocator.DEFAULT);
+      bootstrap.childOption(ChannelOption.ALLOCATOR, UnpooledByteBufAllocator.DEFAULT);
+    }
+
+    bootstrap.childOption(ChannelOption.TCP_NODELAY, ErraiConfigAttribs.WEB_SOCKET_TCP_NO_DELAY.getBoolean(esc));
+
+    // each mark is checked against the current value of the other one, so the order depends on the direction in
+    // which the defaults (32K and 64K) are moved.
+    if (highWaterMark >= 32 * 1024) {
+      bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+      bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+    }
+    else {
+      bootstrap.childOption(ChannelOption.WRITE_BUFFER_LOW_WATER_MARK, lowWaterMark);
+      bootstrap.childOption(ChannelOption.WRITE_BUFFER_HIGH_WATER_MARK, highWaterMark);
+    }
+
     try {
-      final NioEventLoopGroup bossGroup = new NioEventLoopGroup();
-      final NioEventLoopGroup workerGroup = new NioEventLoopGroup();
-      final ChannelFuture channelFuture = bootstrap.group(bossGroup, workerGroup).channel(NioServerSocketChannel.class)
+      final EventLoopGroup bossGroup = newEventLoopGroup(bossThreads, nativeTransport);
+      final EventLoopGroup workerGroup = newEventLoopGroup(workerThreads, nativeTransport);
+      final ChannelFuture channelFuture = bootstrap.group(bossGroup, workerGroup)
               .childHandler(new ChannelInitializer() {
                 @Override
                 protected void initChannel(Channel ch) throws Exception {
@@ -77,7 +132,7 @@ public class WebSocketServer {
           try {
             webSocketHandler.stop();
             channelFuture.channel().close();
-            log.info("web socket server stopped.");
+            log.info("web socket server stopped. " + webSocketHandler.getCompressionStatistics());
           } 
           catch (Exception e) {
             throw new RuntimeException(e);
@@ -93,6 +148,37 @@ public class WebSocketServer {
     catch (Throwable t) {
       throw new RuntimeException(t);
     }
-    log.info("started web socket server on port: " + port);
+    log.info("started web socket server on port: " + port + (nativeTransport ? " (native epoll transport)" : ""));
+  }
+
+  private boolean isEpollAvailable() {
+    try {
+      return (Boolean) loadEpollClass(EPOLL).getMethod("isAvailable").invoke(null);
+    }
+    catch (Throwable t) {
+      log.warn("native epoll transport not available; falling back to NIO: " + t);
+      return false;
+    }
+  }
+
+  private static EventLoopGroup newEventLoopGroup(final int threads, final boolean nativeTransport) throws Exception {
+    if (nativeTransport) {
+      return (EventLoopGroup) loadEpollClass(EPOLL_EVENT_LOOP_GROUP).getConstructor(int.class).newInstance(threads);
+    }
+    else {
+      return new NioEventLoopGroup(threads);
+    }
+  }
+
+  /**
+   * The epoll transport is an optional dependency, so its classes are only referred to by name.
+   */
+  private static Class<?> loadEpollClass(final String name) {
+    try {
+      return Class.forName(name, true, WebSocketServer.class.getClassLoader());
+    }
+    catch (ClassNotFoundException e) {
+      throw new ErraiBootstrapFailure("could not load native epoll transport class: " + name, e);
+    }
   }
 }
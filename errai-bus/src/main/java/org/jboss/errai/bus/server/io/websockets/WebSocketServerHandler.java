@@ -30,6 +30,7 @@ import io.netty.channel.ChannelHandler.Sharable;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.FullHttpRequest;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpHeaders;
@@ -41,6 +42,7 @@ import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketFrame;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
+import io.netty.util.AttributeKey;
 import io.netty.util.CharsetUtil;
 
 import java.io.BufferedReader;
@@ -71,18 +73,22 @@ import javax.servlet.http.HttpUpgradeHandler;
 import javax.servlet.http.Part;
 
 import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.Capabilities;
 import org.jboss.errai.bus.client.api.messaging.Message;
 import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.server.ServerMessageBusImpl;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.io.DirectDeliveryHandler;
 import org.jboss.errai.bus.server.io.MessageFactory;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.common.client.protocols.MessageParts;
 import org.jboss.errai.marshalling.client.api.json.EJObject;
 import org.jboss.errai.marshalling.client.api.json.EJString;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
-import org.jboss.errai.marshalling.server.JSONDecoder;
+import org.jboss.errai.marshalling.server.JSONByteDecoder;
 
 /**
  * The working prototype ErraiBus Websocket Server.
@@ -94,13 +100,39 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
   public static final String WEBSOCKET_ACTIVE = "Active";
   public static final String WEBSOCKET_PATH = "/websocket.bus";
 
+  private static final String SEC_WEBSOCKET_EXTENSIONS = "Sec-WebSocket-Extensions";
+
+  private static final AttributeKey<NettyQueueChannel> QUEUE_CHANNEL = AttributeKey.valueOf("ErraiQueueChannel");
+
   private final Map<Channel, QueueSession> activeChannels = new ConcurrentHashMap<Channel, QueueSession>();
 
   private WebSocketServerHandshaker handshaker = null;
   private final ErraiService svc;
 
+  private final boolean compression;
+  private final int compressionThreshold;
+  private final boolean compressionContextTakeover;
+  private final CompressionStatistics compressionStatistics;
+  private final boolean binaryFraming;
+  private final boolean compactEncoding;
+
   public WebSocketServerHandler(final ErraiService bus) {
     this.svc = bus;
+
+    final ErraiServiceConfigurator config = bus.getConfiguration();
+    this.compression = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION.getBoolean(config);
+    this.compressionThreshold = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION_THRESHOLD.getInt(config);
+    this.compressionContextTakeover = ErraiConfigAttribs.WEB_SOCKET_COMPRESSION_CONTEXT_TAKEOVER.getBoolean(config);
+    this.binaryFraming = ErraiConfigAttribs.WEB_SOCKET_BINARY_FRAMING.getBoolean(config);
+    this.compactEncoding = ErraiConfigAttribs.WEB_SOCKET_COMPACT_ENCODING.getBoolean(config);
+
+    // recorded in the statistics of the bus, so that they can be looked up along with its other statistics.
+    if (bus.getBus() instanceof ServerMessageBusImpl) {
+      this.compressionStatistics = ((ServerMessageBusImpl) bus.getBus()).getCompressionStatistics();
+    }
+    else {
+      this.compressionStatistics = new CompressionStatistics();
+    }
   }
 
   @Override
@@ -118,6 +150,15 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
     ctx.flush();
   }
 
+  @Override
+  public void channelWritabilityChanged(final ChannelHandlerContext ctx) throws Exception {
+    final NettyQueueChannel queueChannel = ctx.channel().attr(QUEUE_CHANNEL).get();
+    if (queueChannel != null && ctx.channel().isWritable()) {
+      queueChannel.onWritable();
+    }
+    super.channelWritabilityChanged(ctx);
+  }
+
   private void handleHttpRequest(final ChannelHandlerContext ctx, final FullHttpRequest req) throws Exception {
     // Allow only GET methods.
     if (req.getMethod() != GET) {
@@ -127,10 +168,25 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
 
     // Handshake
     final WebSocketServerHandshakerFactory wsFactory = new WebSocketServerHandshakerFactory(
-        this.getWebSocketLocation(req), null, false);
+        this.getWebSocketLocation(req), null, compression);
     this.handshaker = wsFactory.newHandshaker(req);
     if (this.handshaker == null) {
       wsFactory.sendUnsupportedWebSocketVersionResponse(ctx.channel());
+      return;
+    }
+
+    final String extension =
+        compression ? PerMessageDeflateHandler.negotiate(req.headers().get(SEC_WEBSOCKET_EXTENSIONS),
+            compressionContextTakeover) : null;
+
+    if (extension != null) {
+      // sits between the frame codec, which the handshake puts in place of the HTTP codec, and this handler.
+      ctx.pipeline().addBefore(ctx.name(), "ws-deflate", new PerMessageDeflateHandler(compressionThreshold,
+          !extension.contains("server_no_context_takeover"), compressionStatistics));
+
+      final HttpHeaders responseHeaders = new DefaultHttpHeaders();
+      responseHeaders.add(SEC_WEBSOCKET_EXTENSIONS, extension);
+      this.handshaker.handshake(ctx.channel(), req, responseHeaders, ctx.channel().newPromise());
     }
     else {
       this.handshaker.handshake(ctx.channel(), req);
@@ -154,7 +210,9 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
           .getName()));
     }
 
-    @SuppressWarnings("unchecked") final EJValue val = JSONDecoder.decode(((TextWebSocketFrame) frame).text());
+    // parsed straight from the UTF-8 bytes of the frame, rather than from a String copy of them. the decoder of the
+    // event loop thread is reused for all channels it serves.
+    final EJValue val = JSONByteDecoder.decode(frame.content().nioBuffer());
 
     final QueueSession session;
 
@@ -191,7 +249,20 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
               WEBSOCKET_ACTIVE.equals(localContext.getAttribute(String.class, SESSION_ATTR_WS_STATUS))) {
 
             final MessageQueue queueBySession = svc.getBus().getQueueBySession(sessionKey);
-            queueBySession.setDeliveryHandler(DirectDeliveryHandler.createFor(new NettyQueueChannel(ctx.channel())));
+            final int maxBatchSize = ErraiConfigAttribs.WEB_SOCKET_MAX_BATCH_SIZE.getInt(svc.getConfiguration());
+            final int maxHeldBytes =
+                ErraiConfigAttribs.BUS_DIRECT_DELIVERY_MAX_HELD_BYTES.getInt(svc.getConfiguration());
+            final NettyQueueChannel queueChannel = new NettyQueueChannel(ctx.channel(), maxBatchSize);
+            ctx.channel().attr(QUEUE_CHANNEL).set(queueChannel);
+            if (binaryFraming && ejObject.containsKey(Capabilities.BinaryFraming.name())) {
+              queueChannel.enableBinaryFraming();
+            }
+            final EJString typeTableHash = compactEncoding && ejObject.containsKey(Capabilities.CompactEncoding.name())
+                ? ejObject.get(Capabilities.CompactEncoding.name()).isString() : null;
+            if (typeTableHash != null) {
+              queueChannel.enableCompactEncoding(typeTableHash.stringValue());
+            }
+            queueBySession.setDeliveryHandler(DirectDeliveryHandler.createFor(queueChannel, maxHeldBytes));
 
             // open the channel
             activeChannels.put(ctx.channel(), session);
@@ -299,6 +370,13 @@ public class WebSocketServerHandler extends SimpleChannelInboundHandler {
         token + "\"}]";
   }
 
+  /**
+   * Returns the statistics of the outbound messages of all channels which negotiated compression.
+   */
+  public CompressionStatistics getCompressionStatistics() {
+    return compressionStatistics;
+  }
+
   public void stop() {
     for (final Channel channel : activeChannels.keySet()) {
       channel.close();
@@ -25,6 +25,33 @@ import org.jboss.errai.bus.server.SimpleDispatcher;
 public enum ErraiConfigAttribs {
 
   ERRAI_DISPATCHER_IMPLEMENTATION("errai.dispatcher_implementation", SimpleDispatcher.class.getName()),
+
+  /**
+   * The number of threads the {@link org.jboss.errai.bus.server.WorkStealingDispatcher} keeps busy delivering
+   * messages. The pool only adds threads beyond this while a service named by {@link #DISPATCHER_BLOCKING_SUBJECTS}
+   * blocks.
+   * <p/>
+   * Default value: the number of available processors
+   */
+  DISPATCHER_PARALLELISM("errai.dispatcher.parallelism"),
+
+  /**
+   * If true, the {@link org.jboss.errai.bus.server.WorkStealingDispatcher} delivers messages on virtual threads if
+   * the runtime supports them, rather than on a work-stealing pool.
+   * <p/>
+   * Default value: true
+   */
+  DISPATCHER_VIRTUAL_THREADS("errai.dispatcher.virtual_threads", "true"),
+
+  /**
+   * A comma-separated list of subjects whose services block, for example on I/O or on locks. The
+   * {@link org.jboss.errai.bus.server.WorkStealingDispatcher} lets its pool compensate with a spare thread while such
+   * a service blocks. All other services are expected not to block.
+   * <p/>
+   * Default value: none
+   */
+  DISPATCHER_BLOCKING_SUBJECTS("errai.dispatcher.blocking_subjects"),
+
   ERRAI_SESSION_PROVIDER_IMPLEMENTATION("errai.session_provider_implementation", HttpSessionProvider.class.getName()),
 
   /**
@@ -64,6 +91,61 @@ public enum ErraiConfigAttribs {
    */
   BUS_BUFFER_ALLOCATION_MODE("errai.bus.buffer_allocation_mode", "direct"),
 
+  /**
+   * The maximum buffer size in megabytes. If this attribute is larger than the buffer size (see
+   * {@link #BUS_BUFFER_SIZE}) the bus uses a growable buffer: it starts out with a single ring of the configured
+   * buffer size, allocates further rings of the same size while clients fall behind, up to this ceiling, and
+   * releases them again once the clients have caught up.
+   * <p/>
+   * Default value: unset (the buffer has a fixed size)
+   */
+  BUS_BUFFER_MAX_SIZE("errai.bus.buffer_max_size"),
+
+  /**
+   * If true, a message which is broadcast to some but not all sessions is encoded once, and the encoded bytes are
+   * shared by all recipients instead of marshalling the message for each of them.
+   * <p/>
+   * Default value: true
+   */
+  BUS_SHARED_BROADCAST_ENCODING("errai.bus.shared_broadcast_encoding", "true"),
+
+  /**
+   * If true, every subject with remote subscribers gets its own buffer color. A message which is broadcast to some but
+   * not all sessions is then written to the buffer once under that color, and read by every session subscribed to
+   * the subject. Otherwise, such a message is written to the buffer once for each session. The topic colors come from
+   * a range the colors of the sessions never use. Subjects subscribed to once that range is used up fall back to one
+   * write per session.
+   * <p/>
+   * Default value: true
+   */
+  BUS_TOPIC_BUFFER_COLORS("errai.bus.topic_buffer_colors", "true"),
+
+  /**
+   * The window in milliseconds within which wake-ups of a message queue are coalesced. A client waiting for messages
+   * is then activated once per window, receiving all messages that arrived in the meantime in a single response,
+   * rather than once for every message. The window is rounded up to the 10ms resolution of the bus timer. A value of
+   * 0 activates the client immediately on every wake-up.
+   * <p/>
+   * Default value: 0
+   */
+  BUS_WAKE_COALESCE_WINDOW("errai.bus.wake_coalesce_window_ms", "0"),
+
+  /**
+   * The number of wake-ups after which a message queue activates its client without waiting for the end of the
+   * coalescing window (see {@link #BUS_WAKE_COALESCE_WINDOW}). A value of 0 means no limit.
+   * <p/>
+   * Default value: 64
+   */
+  BUS_WAKE_COALESCE_MAX_MESSAGES("errai.bus.wake_coalesce_max_messages", "64"),
+
+  /**
+   * The number of bytes of messages held back in the buffer for a WebSocket client which cannot keep up, from which
+   * they are paged out.
+   * <p/>
+   * Default value: 262144
+   */
+  BUS_DIRECT_DELIVERY_MAX_HELD_BYTES("errai.bus.direct_delivery_max_held_bytes", "262144"),
+
   ENABLE_CSRF_BUS_TOKEN("errai.bus.enable_csrf_token", "false"),
 
   HOSTED_MODE_TESTING("errai.hosted_mode_testing", "false"),
@@ -73,6 +155,24 @@ public enum ErraiConfigAttribs {
   ENABLE_SSE_SUPPORT("errai.bus.enable_sse_support", "true"),
   SSE_TIMEOUT("errai.bus.servlet_sse_timeout", "45000"),
 
+  /**
+   * If true, the {@link org.jboss.errai.bus.server.servlet.StandardAsyncServlet} offers Server-Sent Events to clients
+   * and streams them over a single asynchronous request per client, rather than completing a long poll for each
+   * burst of messages.
+   * <p/>
+   * Default value: false
+   */
+  ASYNC_SERVLET_SSE_STREAMING("errai.bus.async_servlet_sse_streaming", "false"),
+
+  /**
+   * The time in milliseconds after which an idle Server-Sent Events stream of the
+   * {@link org.jboss.errai.bus.server.servlet.StandardAsyncServlet} receives a heartbeat comment, so that proxies do
+   * not close it.
+   * <p/>
+   * Default value: 15000
+   */
+  SSE_HEARTBEAT_INTERVAL("errai.bus.sse_heartbeat_interval", "15000"),
+
   ENABLE_WEB_SOCKET_SERVER("errai.bus.enable_web_socket_server", "false"),
   WEB_SOCKET_URL("errai.bus.web_socket_url", "/websocket.bus"),
   WEB_SOCKET_PORT("errai.bus.web_socket_port", "8085"),
@@ -82,6 +182,119 @@ public enum ErraiConfigAttribs {
   WEB_SOCKET_KEYSTORE_PASSWORD("errai.bus.web_socket_keystore_password"),
   WEB_SOCKET_KEY_PASSWORD("errai.bus.web_socket_key_password"),
 
+  /**
+   * The size in characters beyond which a batch of messages is sent to a WebSocket client right away, rather than
+   * at the end of the current event loop tick or when the previous batch has been sent.
+   * <p/>
+   * Default value: 65536
+   */
+  WEB_SOCKET_MAX_BATCH_SIZE("errai.bus.web_socket_max_batch_size", "65536"),
+
+  /**
+   * If true, the WebSocket server accepts the <tt>permessage-deflate</tt> extension when a client offers it. On a
+   * JSR-356 container, the extension is then left to the container; otherwise it is declined.
+   * <p/>
+   * Default value: false
+   */
+  WEB_SOCKET_COMPRESSION("errai.bus.web_socket_compression", "false"),
+
+  /**
+   * The size in bytes from which the WebSocket server compresses outbound messages, if compression was negotiated
+   * (see {@link #WEB_SOCKET_COMPRESSION}). Smaller messages are sent uncompressed.
+   * <p/>
+   * Default value: 256
+   */
+  WEB_SOCKET_COMPRESSION_THRESHOLD("errai.bus.web_socket_compression_threshold", "256"),
+
+  /**
+   * If true, the WebSocket server keeps its compression context from one message to the next, which compresses
+   * the repetitive bus messages much better at the cost of about 300KB of memory per connection. Clients may still
+   * ask the server not to.
+   * <p/>
+   * Default value: true
+   */
+  WEB_SOCKET_COMPRESSION_CONTEXT_TAKEOVER("errai.bus.web_socket_compression_context_takeover", "true"),
+
+  /**
+   * If true, the WebSocket server uses the native epoll transport of Netty, provided that
+   * <tt>netty-transport-native-epoll</tt> is on the classpath and the platform supports it. Otherwise it falls back
+   * to NIO.
+   * <p/>
+   * Default value: false
+   */
+  WEB_SOCKET_NATIVE_TRANSPORT("errai.bus.web_socket_native_transport", "false"),
+
+  /**
+   * The number of threads accepting connections to the WebSocket server.
+   * <p/>
+   * Default value: 1
+   */
+  WEB_SOCKET_BOSS_THREADS("errai.bus.web_socket_boss_threads", "1"),
+
+  /**
+   * The number of event loop threads serving the connections of the WebSocket server. 0 uses twice the number of
+   * available processors.
+   * <p/>
+   * Default value: 0
+   */
+  WEB_SOCKET_WORKER_THREADS("errai.bus.web_socket_worker_threads", "0"),
+
+  /**
+   * The maximum number of pending connections to the WebSocket server (<tt>SO_BACKLOG</tt>). 0 uses the default of
+   * the operating system.
+   * <p/>
+   * Default value: 0
+   */
+  WEB_SOCKET_BACKLOG("errai.bus.web_socket_backlog", "0"),
+
+  /**
+   * If true, Nagle's algorithm is disabled on WebSocket connections (<tt>TCP_NODELAY</tt>).
+   * <p/>
+   * Default value: true
+   */
+  WEB_SOCKET_TCP_NO_DELAY("errai.bus.web_socket_tcp_no_delay", "true"),
+
+  /**
+   * The number of bytes queued for writing from which a WebSocket connection reports itself as not writable.
+   * <p/>
+   * Default value: 65536
+   */
+  WEB_SOCKET_WRITE_BUFFER_HIGH_WATER_MARK("errai.bus.web_socket_write_buffer_high_water_mark", "65536"),
+
+  /**
+   * The number of bytes queued for writing below which a WebSocket connection which was not writable becomes
+   * writable again. Must not be greater than {@link #WEB_SOCKET_WRITE_BUFFER_HIGH_WATER_MARK}.
+   * <p/>
+   * Default value: 32768
+   */
+  WEB_SOCKET_WRITE_BUFFER_LOW_WATER_MARK("errai.bus.web_socket_write_buffer_low_water_mark", "32768"),
+
+  /**
+   * If true, the WebSocket server allocates its buffers from a pool of direct memory rather than allocating a new
+   * buffer for each read and write.
+   * <p/>
+   * Default value: true
+   */
+  WEB_SOCKET_POOLED_ALLOCATOR("errai.bus.web_socket_pooled_allocator", "true"),
+
+  /**
+   * If true, the server offers to send messages to WebSocket clients in compact binary frames rather than as JSON
+   * text. Clients which do not ask for binary frames keep receiving JSON.
+   * <p/>
+   * Default value: false
+   */
+  WEB_SOCKET_BINARY_FRAMING("errai.bus.web_socket_binary_framing", "false"),
+
+  /**
+   * If true, the server offers to send messages to WebSocket clients with integer type IDs in place of class names,
+   * and without the types of objects which are of the declared type of their field. Only clients whose marshallers
+   * were generated from the same mappings as the server's, with {@code errai.marshalling.make_type_table=true} in
+   * their ErraiApp.properties, ask for it. Other clients keep receiving plain JSON.
+   * <p/>
+   * Default value: false
+   */
+  WEB_SOCKET_COMPACT_ENCODING("errai.bus.web_socket_compact_encoding", "false"),
+
   WEBSOCKET_SERVLET_ENABLED("errai.bus.websocket.servlet.enabled", "false"),
   WEBSOCKET_SERVLET_CONTEXT_PATH("errai.bus.websocket.servlet.path", "in.erraiBusWebSocket"),
   FORCE_SECURE_WEBSOCKET("errai.bus.websocket.force.secure", "false"),
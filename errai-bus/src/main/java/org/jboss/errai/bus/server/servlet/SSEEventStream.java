@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.servlet;
+
+import static org.slf4j.LoggerFactory.getLogger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.api.QueueActivationCallback;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.slf4j.Logger;
+
+/**
+ * Streams the messages of a queue to a client as Server-Sent Events, over one asynchronous request which stays open
+ * for as long as the queue lives. Each activation of the queue is written as one event using the non-blocking output
+ * of Servlet 3.1, and a comment line is sent whenever the stream has been idle for the heartbeat interval, so that
+ * proxies do not drop the connection.
+ * <p/>
+ * Messages are taken from the queue only when the container can take an event without blocking. While the client
+ * reads slowly, they stay in the bus buffer rather than piling up in memory, and should the request end in the
+ * meantime, they are left there for the next one.
+ */
+class SSEEventStream implements QueueActivationCallback, WriteListener, AsyncListener {
+  private static final Logger log = getLogger(SSEEventStream.class);
+
+  private static final byte[] EVENT_START = "data: ".getBytes();
+  private static final byte[] EVENT_END = "\n\n".getBytes();
+  private static final byte[] HEARTBEAT = ":\n\n".getBytes();
+
+  private final AsyncContext asyncContext;
+  private final ServletOutputStream outputStream;
+  private final MessageQueue queue;
+  private final long heartbeatInterval;
+  private final ScheduledExecutorService scheduler;
+
+  private final Object lock = new Object();
+
+  // the event being written. guarded by lock, as are the fields below.
+  private final ByteArrayOutputStream event = new ByteArrayOutputStream(1024);
+  private final OutputStreamWriteAdapter eventAdapter = new OutputStreamWriteAdapter(event);
+  private boolean started;
+  private boolean closed;
+  private boolean completed;
+  private long lastWrite = System.currentTimeMillis();
+  private ScheduledFuture<?> heartbeat;
+
+  private final Runnable heartbeatTask = new Runnable() {
+    @Override
+    public void run() {
+      sendHeartbeat();
+    }
+  };
+
+  /**
+   * @param scheduler
+   *     the scheduler the heartbeats are sent from. Its tasks must not block, and neither does sending a heartbeat.
+   */
+  SSEEventStream(final AsyncContext asyncContext, final MessageQueue queue, final long heartbeatInterval,
+                 final ScheduledExecutorService scheduler) throws IOException {
+    this.asyncContext = asyncContext;
+    this.outputStream = asyncContext.getResponse().getOutputStream();
+    this.queue = queue;
+    this.heartbeatInterval = heartbeatInterval;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Switches the response to non-blocking output. The container then calls {@link #onWritePossible()}, which starts
+   * streaming: the output must not be used before, so the queue cannot activate the stream until then.
+   */
+  void start() {
+    asyncContext.addListener(this);
+    outputStream.setWriteListener(this);
+  }
+
+  @Override
+  public void activate(final MessageQueue queue) {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      try {
+        writeEvent();
+      }
+      catch (Throwable t) {
+        log.debug("failed to stream messages of queue: " + queue.getSession().getSessionId(), t);
+        closed = true;
+      }
+    }
+    if (isClosed()) {
+      close();
+    }
+  }
+
+  @Override
+  public void onWritePossible() throws IOException {
+    final boolean first;
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      first = !started;
+      if (first) {
+        started = true;
+        scheduleHeartbeat();
+      }
+    }
+
+    synchronized (queue.getActivationLock()) {
+      if (first && !isClosed()) {
+        queue.setActivationCallback(this);
+      }
+      if (queue.getActivationCallback() == this) {
+        // sends the messages which arrived while the client was not reading, or before the stream started.
+        activate(queue);
+      }
+    }
+  }
+
+  @Override
+  public void onError(final Throwable t) {
+    log.debug("SSE stream of queue " + queue.getSession().getSessionId() + " failed", t);
+    close();
+  }
+
+  @Override
+  public void onComplete(final AsyncEvent event) throws IOException {
+    close();
+  }
+
+  @Override
+  public void onTimeout(final AsyncEvent event) throws IOException {
+    close();
+  }
+
+  @Override
+  public void onError(final AsyncEvent event) throws IOException {
+    close();
+  }
+
+  @Override
+  public void onStartAsync(final AsyncEvent event) throws IOException {
+  }
+
+  /**
+   * Writes the waiting messages of the queue as one event, if the container can take it without blocking. Otherwise
+   * the container calls {@link #onWritePossible()} once it can, and the messages are sent then. Must be called
+   * holding the lock.
+   */
+  private void writeEvent() throws IOException {
+    if (!queue.messagesWaiting() || !outputStream.isReady()) {
+      return;
+    }
+    event.write(EVENT_START);
+    queue.poll(eventAdapter);
+    event.write(EVENT_END);
+    write();
+  }
+
+  /**
+   * Hands the event to the container. Must be called holding the lock, once the container reported that it is ready.
+   */
+  private void write() throws IOException {
+    try {
+      event.writeTo(outputStream);
+    }
+    finally {
+      event.reset();
+    }
+    if (outputStream.isReady()) {
+      outputStream.flush();
+    }
+
+    lastWrite = System.currentTimeMillis();
+    queue.heartBeat();
+  }
+
+  private void sendHeartbeat() {
+    if (queue.isStale()) {
+      close();
+      return;
+    }
+
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      try {
+        // a client which is not reading has not taken the previous write yet. the heartbeat would not get through.
+        if (System.currentTimeMillis() - lastWrite >= heartbeatInterval && outputStream.isReady()) {
+          event.write(HEARTBEAT);
+          write();
+        }
+      }
+      catch (IOException e) {
+        log.debug("failed to send heartbeat to queue: " + queue.getSession().getSessionId(), e);
+        closed = true;
+      }
+      if (!closed) {
+        scheduleHeartbeat();
+      }
+    }
+    if (isClosed()) {
+      close();
+    }
+  }
+
+  private void scheduleHeartbeat() {
+    final long idle = System.currentTimeMillis() - lastWrite;
+    heartbeat = scheduler.schedule(heartbeatTask, Math.max(0, heartbeatInterval - idle), TimeUnit.MILLISECONDS);
+  }
+
+  private boolean isClosed() {
+    synchronized (lock) {
+      return closed;
+    }
+  }
+
+  /**
+   * Stops streaming and completes the request, if that has not happened yet. The client will reconnect. No messages
+   * are lost: they are only taken from the queue as they are written.
+   */
+  private void close() {
+    synchronized (lock) {
+      if (completed) {
+        return;
+      }
+      closed = completed = true;
+      if (heartbeat != null) {
+        heartbeat.cancel(false);
+      }
+    }
+
+    synchronized (queue.getActivationLock()) {
+      if (queue.getActivationCallback() == this) {
+        queue.setActivationCallback(null);
+      }
+    }
+
+    try {
+      asyncContext.complete();
+    }
+    catch (IllegalStateException e) {
+      // already completed.
+    }
+  }
+}
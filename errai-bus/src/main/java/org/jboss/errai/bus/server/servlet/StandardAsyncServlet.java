@@ -20,10 +20,13 @@ import static org.jboss.errai.bus.server.io.MessageFactory.createCommandMessage;
 import static org.slf4j.LoggerFactory.getLogger;
 
 import java.io.IOException;
+import java.util.concurrent.ScheduledExecutorService;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.AsyncEvent;
 import javax.servlet.AsyncListener;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -32,11 +35,17 @@ import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.server.QueueUnavailableException;
 import org.jboss.errai.bus.server.api.MessageQueue;
 import org.jboss.errai.bus.server.api.QueueActivationCallback;
+import org.jboss.errai.bus.server.async.scheduling.WheelScheduledExecutorService;
 import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
 import org.slf4j.Logger;
 
 /**
  * An implementation of {@link AbstractErraiServlet} leveraging asynchronous support of Servlet 3.0.
+ * <p/>
+ * If {@link ErraiConfigAttribs#ASYNC_SERVLET_SSE_STREAMING} is enabled, clients which support Server-Sent Events keep
+ * one request open, over which all their messages are streamed (see {@link SSEEventStream}).
  *
  * @author Christian Sadilek <csadilek@redhat.com>
  * @author Mike Brock
@@ -45,11 +54,50 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
   private static final Logger log = getLogger(StandardAsyncServlet.class);
   private static final long serialVersionUID = 1L;
 
+  private boolean sseStreaming;
+  private int sseHeartbeatInterval;
+
+  /**
+   * Sends the heartbeats of the event streams of this servlet. Only created if streaming is enabled.
+   */
+  private ScheduledExecutorService sseScheduler;
+
+  @Override
+  public void init(final ServletConfig config) throws ServletException {
+    super.init(config);
+    configureStreaming();
+  }
+
+  @Override
+  public void initAsFilter(final FilterConfig config) throws ServletException {
+    super.initAsFilter(config);
+    configureStreaming();
+  }
+
+  private void configureStreaming() {
+    final ErraiServiceConfigurator config = service.getConfiguration();
+    sseStreaming = ErraiConfigAttribs.ASYNC_SERVLET_SSE_STREAMING.getBoolean(config);
+    sseHeartbeatInterval = ErraiConfigAttribs.SSE_HEARTBEAT_INTERVAL.getInt(config);
+    if (sseStreaming) {
+      sseScheduler = WheelScheduledExecutorService.newSingleThreadScheduler();
+    }
+  }
+
+  @Override
+  public void destroy() {
+    if (sseScheduler != null) {
+      sseScheduler.shutdownNow();
+    }
+    super.destroy();
+  }
+
   @Override
   protected void doGet(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
     final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
-    session.setAttribute("NoSSE", Boolean.TRUE);
-    
+    if (!sseStreaming) {
+      session.setAttribute("NoSSE", Boolean.TRUE);
+    }
+
     final MessageQueue queue = service.getBus().getQueue(session);
     if (queue == null) {
       switch (getConnectionPhase(request)) {
@@ -70,7 +118,11 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
     }
     queue.heartBeat();
 
-    
+    if (sseStreaming && isSSERequest(request)) {
+      streamEvents(request, response, queue);
+      return;
+    }
+
     final AsyncContext asyncContext = request.startAsync();
     asyncContext.setTimeout(60000);
     queue.setTimeout(65000);
@@ -139,7 +191,9 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
   @Override
   protected void doPost(final HttpServletRequest request, final HttpServletResponse response) throws ServletException {
     final QueueSession session = sessionProvider.createOrGetSession(request.getSession(), getClientId(request));
-    session.setAttribute("NoSSE", Boolean.TRUE);
+    if (!sseStreaming) {
+      session.setAttribute("NoSSE", Boolean.TRUE);
+    }
 
     if (failFromMissingCSRFToken(request)) {
       prepareTokenChallenge(request, response);
@@ -184,6 +238,25 @@ public class StandardAsyncServlet extends AbstractErraiServlet {
     }
   }
   
+  private void streamEvents(final HttpServletRequest request, final HttpServletResponse response,
+                            final MessageQueue queue) {
+    try {
+      response.setHeader("Cache-Control", "no-cache");
+      // keeps reverse proxies like nginx from buffering the stream.
+      response.setHeader("X-Accel-Buffering", "no");
+      prepareSSE(response);
+      response.flushBuffer();
+
+      final AsyncContext asyncContext = request.startAsync();
+      // the stream ends when the queue goes stale or the client goes away.
+      asyncContext.setTimeout(0);
+      new SSEEventStream(asyncContext, queue, sseHeartbeatInterval, sseScheduler).start();
+    }
+    catch (IOException e) {
+      log.debug("Failed to open SSE stream for queue: " + queue.getSession().getSessionId(), e);
+    }
+  }
+
   private void clearActivationCallback(final MessageQueue queue) {
     synchronized (queue.getActivationLock()) {
       queue.setActivationCallback(null);
@@ -17,12 +17,15 @@
 package org.jboss.errai.bus.server.servlet.websocket;
 
 import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.Capabilities;
 import org.jboss.errai.bus.client.protocols.BusCommand;
 import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
 import org.jboss.errai.bus.server.io.DirectDeliveryHandler;
 import org.jboss.errai.bus.server.io.QueueChannel;
 import org.jboss.errai.bus.server.io.websockets.WebSocketServerHandler;
 import org.jboss.errai.bus.server.io.websockets.WebSocketTokenManager;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
 import org.jboss.errai.bus.server.service.ErraiService;
 import org.jboss.errai.bus.server.util.LocalContext;
 import org.jboss.errai.common.client.protocols.MessageParts;
@@ -69,7 +72,21 @@ public class WebSocketNegotiationHandler {
 
           // set the session queue into direct channel mode.
           final MessageQueue queue = service.getBus().getQueueBySession(sessionKey);
-          queue.setDeliveryHandler(DirectDeliveryHandler.createFor(queueChannel));
+          final int maxHeldBytes =
+              ErraiConfigAttribs.BUS_DIRECT_DELIVERY_MAX_HELD_BYTES.getInt(service.getConfiguration());
+          if (queueChannel instanceof BatchingQueueChannel
+              && ErraiConfigAttribs.WEB_SOCKET_BINARY_FRAMING.getBoolean(service.getConfiguration())
+              && ejObject.containsKey(Capabilities.BinaryFraming.name())) {
+            ((BatchingQueueChannel) queueChannel).enableBinaryFraming();
+          }
+          if (queueChannel instanceof BatchingQueueChannel
+              && ErraiConfigAttribs.WEB_SOCKET_COMPACT_ENCODING.getBoolean(service.getConfiguration())
+              && ejObject.containsKey(Capabilities.CompactEncoding.name())
+              && ejObject.get(Capabilities.CompactEncoding.name()).isString() != null) {
+            ((BatchingQueueChannel) queueChannel).enableCompactEncoding(
+                ejObject.get(Capabilities.CompactEncoding.name()).isString().stringValue());
+          }
+          queue.setDeliveryHandler(DirectDeliveryHandler.createFor(queueChannel, maxHeldBytes));
           LOGGER.debug("set direct delivery handler on session: {}", session.getSessionId());
 
           //See ERRAI-873: In case a connection failure has occurred make sure 
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
+import org.jboss.errai.marshalling.client.util.CompactEncoding;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+
+/**
+ * Tests the batching of outbound messages by the {@link BatchingQueueChannel}.
+ */
+public class BatchingQueueChannelTests extends TestCase {
+
+  /**
+   * A channel which flushes only when told to, like a channel flushing at the end of an event loop tick.
+   */
+  private static class DeferredChannel extends BatchingQueueChannel {
+    final List<String> frames = new ArrayList<String>();
+    boolean flushScheduled;
+
+    DeferredChannel(final int maxBatchSize) {
+      super(maxBatchSize);
+    }
+
+    @Override
+    protected void scheduleFlush() {
+      flushScheduled = true;
+    }
+
+    void tick() throws IOException {
+      flushScheduled = false;
+      flush();
+    }
+
+    @Override
+    protected void writeFrame(final String frame) {
+      frames.add(frame);
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+  }
+
+  /**
+   * A channel which sends frames asynchronously, one at a time, like a JSR-356 WebSocket session.
+   */
+  private static class AsyncChannel extends BatchingQueueChannel {
+    final List<String> frames = new ArrayList<String>();
+    boolean sending;
+    boolean completeRightAway;
+
+    AsyncChannel() {
+      super(DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    void complete() throws IOException {
+      sending = false;
+      frameSent();
+    }
+
+    @Override
+    public boolean isWritable() {
+      return !sending;
+    }
+
+    @Override
+    protected boolean canSendFrame() {
+      return !sending;
+    }
+
+    @Override
+    protected void writeFrame(final String frame) throws IOException {
+      frames.add(frame);
+      sending = true;
+      if (completeRightAway) {
+        complete();
+      }
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+  }
+
+  public void testWritesWithinOneTickAreSentAsOneFrame() throws IOException {
+    final DeferredChannel channel = new DeferredChannel(BatchingQueueChannel.DEFAULT_MAX_BATCH_SIZE);
+
+    channel.write("[{\"a\":1}]");
+    assertTrue(channel.flushScheduled);
+
+    channel.flushScheduled = false;
+    channel.writeMessage("{\"b\":2}");
+    channel.write("[]");
+    channel.write("[{\"c\":3},{\"d\":4}]");
+    assertFalse("a flush is pending already", channel.flushScheduled);
+    assertTrue(channel.frames.isEmpty());
+
+    channel.tick();
+    assertEquals(1, channel.frames.size());
+    assertEquals("[{\"a\":1},{\"b\":2},{\"c\":3},{\"d\":4}]", channel.frames.get(0));
+
+    channel.write("[{\"e\":5}]");
+    assertTrue(channel.flushScheduled);
+    channel.tick();
+    assertEquals("[{\"e\":5}]", channel.frames.get(1));
+  }
+
+  public void testBatchIsFlushedEarlyOnceFull() throws IOException {
+    final DeferredChannel channel = new DeferredChannel(16);
+
+    channel.write("[{\"a\":1}]");
+    channel.write("[{\"b\":2}]");
+    assertEquals(1, channel.frames.size());
+    assertEquals("[{\"a\":1},{\"b\":2}]", channel.frames.get(0));
+
+    channel.tick();
+    assertEquals(1, channel.frames.size());
+  }
+
+  public void testWritesDuringFlushAreSentWithTheNextFrame() throws IOException {
+    final List<String> frames = new ArrayList<String>();
+    final BatchingQueueChannel channel = new BatchingQueueChannel(BatchingQueueChannel.DEFAULT_MAX_BATCH_SIZE) {
+      @Override
+      protected void writeFrame(final String frame) throws IOException {
+        frames.add(frame);
+        if (frames.size() == 1) {
+          // arrives while the first frame is being sent.
+          write("[{\"b\":2}]");
+          write("[{\"c\":3}]");
+        }
+      }
+
+      @Override
+      public boolean isConnected() {
+        return true;
+      }
+    };
+
+    channel.write("[{\"a\":1}]");
+
+    assertEquals(2, frames.size());
+    assertEquals("[{\"a\":1}]", frames.get(0));
+    assertEquals("[{\"b\":2},{\"c\":3}]", frames.get(1));
+  }
+
+  public void testFramesWrittenWhileAFrameIsInFlightAreKept() throws IOException {
+    final AsyncChannel channel = new AsyncChannel();
+
+    channel.write("[{\"a\":1}]");
+    // would wait for the first frame to be sent if the channel blocked.
+    channel.write("[{\"b\":2}]");
+    channel.write("[{\"c\":3}]");
+    assertEquals(1, channel.frames.size());
+
+    channel.complete();
+    assertEquals(2, channel.frames.size());
+    assertEquals("[{\"b\":2},{\"c\":3}]", channel.frames.get(1));
+
+    channel.complete();
+    assertEquals(2, channel.frames.size());
+
+    channel.write("[{\"d\":4}]");
+    assertEquals(3, channel.frames.size());
+    assertEquals("[{\"d\":4}]", channel.frames.get(2));
+  }
+
+  public void testWritabilityListenerWritingTwoFramesDoesNotWaitOnItself() throws IOException {
+    final AsyncChannel channel = new AsyncChannel();
+    final List<Boolean> writableWhenNotified = new ArrayList<Boolean>();
+    channel.setWritabilityListener(new Runnable() {
+      @Override
+      public void run() {
+        writableWhenNotified.add(channel.isWritable());
+        if (writableWhenNotified.size() == 1) {
+          try {
+            // like the held back messages, which are sent as paged and buffered messages.
+            channel.write("[{\"b\":2}]");
+            channel.write("[{\"c\":3}]");
+          }
+          catch (IOException e) {
+            throw new RuntimeException(e);
+          }
+        }
+      }
+    });
+
+    channel.write("[{\"a\":1}]");
+    channel.complete();
+    assertEquals(2, channel.frames.size());
+    assertEquals("[{\"b\":2}]", channel.frames.get(1));
+
+    channel.complete();
+    assertEquals(3, channel.frames.size());
+    assertEquals("[{\"c\":3}]", channel.frames.get(2));
+    assertEquals("not notified while the kept frame is in flight", "[true]", writableWhenNotified.toString());
+
+    channel.complete();
+    assertEquals("[true, true]", writableWhenNotified.toString());
+  }
+
+  public void testFrameSentBeforeWriteFrameReturns() throws IOException {
+    final AsyncChannel channel = new AsyncChannel();
+    channel.completeRightAway = true;
+    final List<Integer> framesWhenNotified = new ArrayList<Integer>();
+    channel.setWritabilityListener(new Runnable() {
+      @Override
+      public void run() {
+        framesWhenNotified.add(channel.frames.size());
+      }
+    });
+
+    channel.write("[{\"a\":1}]");
+    assertEquals(1, channel.frames.size());
+    assertEquals("the listener must be notified once the flush is done", "[1]", framesWhenNotified.toString());
+
+    channel.write("[{\"b\":2}]");
+    assertEquals(2, channel.frames.size());
+    assertEquals("[1, 2]", framesWhenNotified.toString());
+  }
+
+  public void testCompactEncodingIsOnlyUsedWithTheSameTypeTable() throws IOException {
+    final CompactTypeTable table = MappingContextSingleton.getTypeTable();
+    assertTrue(table.size() > 0);
+    final String json = "[{\"ToSubject\":\"Test\",\"Value\":{\"^EncodedType\":\"" + table.getTypeName(1)
+        + "\",\"^ObjectID\":\"1\"}}]";
+
+    final DeferredChannel channel = new DeferredChannel(BatchingQueueChannel.DEFAULT_MAX_BATCH_SIZE);
+    assertFalse(channel.enableCompactEncoding(table.getHash() + "0"));
+    channel.write(json);
+    channel.tick();
+    assertEquals(json, channel.frames.get(0));
+
+    assertTrue(channel.enableCompactEncoding(table.getHash()));
+    channel.write(json);
+    channel.tick();
+    final String compact = channel.frames.get(1);
+    assertFalse(compact, compact.contains("^EncodedType"));
+    assertTrue(compact, compact.contains("\"^T\":1"));
+    assertEquals(json, CompactEncoding.expand(compact, table));
+  }
+
+  public void testRejectsDataWhichIsNotAnArray() {
+    final DeferredChannel channel = new DeferredChannel(BatchingQueueChannel.DEFAULT_MAX_BATCH_SIZE);
+    try {
+      channel.write("{\"a\":1}");
+      fail("expected an IOException");
+    }
+    catch (IOException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.framework.transports.BinaryFrameDecoder;
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
+import org.jboss.errai.bus.server.io.BinaryFrameEncoder;
+
+/**
+ * Tests the binary frames written by the {@link BinaryFrameEncoder} and read back by the client.
+ */
+public class BinaryFramingTests extends TestCase {
+  private static final String MESSAGES = "[{\"ToSubject\":\"ClientBus\",\"CommandType\":\"RemoteSubscribe\","
+      + "\"Value\":{\"^EncodedType\":\"org.example.Person\",\"^ObjectID\":\"1\",\"name\":\"J\\u00fcrgen \\\"J\\\" \u00d6\","
+      + "\"age\":42,\"balance\":-17.5e3,\"tags\":[\"a\",\"\ud83d\ude00\",[],{}],\"id\":-9223372036854775,"
+      + "\"zero\":0,\"negZero\":-0,\"big\":123456789012345678901234567890,\"active\":true,\"spouse\":null,"
+      + "\"retired\":false}},{\"ToSubject\":\"ClientBus\",\"CommandType\":\"RemoteSubscribe\"}]";
+
+  public void testRoundTrip() {
+    final BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+    final BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+
+    final byte[] frame = encoder.encode(MESSAGES);
+    assertEquals(MESSAGES, decoder.decode(frame, 0, frame.length));
+    assertTrue(frame.length < MESSAGES.length());
+  }
+
+  public void testDictionaryCarriesOverToTheNextFrame() {
+    final BinaryFrameEncoder encoder = new BinaryFrameEncoder();
+    final BinaryFrameDecoder decoder = new BinaryFrameDecoder();
+
+    final byte[] first = encoder.encode(MESSAGES);
+    final byte[] second = encoder.encode(MESSAGES);
+    assertTrue("the second frame refers to the strings sent with the first", second.length < first.length);
+
+    assertEquals(MESSAGES, decoder.decode(first, 0, first.length));
+    assertEquals(MESSAGES, decoder.decode(second, 0, second.length));
+    assertEquals(encoder.getDictionarySize(), decoder.getDictionarySize());
+  }
+
+  public void testWhitespaceIsDropped() {
+    final byte[] frame = new BinaryFrameEncoder().encode("[{\"a\" : 1, \"b\":[ 2 , \"c\" ]}]");
+    assertEquals("[{\"a\":1,\"b\":[2,\"c\"]}]", new BinaryFrameDecoder().decode(frame, 0, frame.length));
+  }
+
+  public void testRejectsTruncatedFrame() {
+    final byte[] frame = new BinaryFrameEncoder().encode(MESSAGES);
+    try {
+      new BinaryFrameDecoder().decode(frame, 0, frame.length - 3);
+      fail("expected an IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+  }
+
+  public void testBatchingChannelSendsBinaryFramesOnceEnabled() throws IOException {
+    final List<String> textFrames = new ArrayList<String>();
+    final List<byte[]> binaryFrames = new ArrayList<byte[]>();
+    final BatchingQueueChannel channel = new BatchingQueueChannel(BatchingQueueChannel.DEFAULT_MAX_BATCH_SIZE) {
+      @Override
+      protected void writeFrame(final String frame) {
+        textFrames.add(frame);
+      }
+
+      @Override
+      protected void writeBinaryFrame(final byte[] frame) {
+        binaryFrames.add(frame);
+      }
+
+      @Override
+      public boolean isConnected() {
+        return true;
+      }
+    };
+
+    channel.write("[{\"a\":1}]");
+    channel.enableBinaryFraming();
+    channel.write("[{\"b\":2}]");
+
+    assertEquals(1, textFrames.size());
+    assertEquals(1, binaryFrames.size());
+    final byte[] frame = binaryFrames.get(0);
+    assertEquals("[{\"b\":2}]", new BinaryFrameDecoder().decode(frame, 0, frame.length));
+  }
+}
@@ -20,11 +20,18 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.Collection;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import junit.framework.TestCase;
 
 import org.jboss.errai.bus.client.api.QueueSession;
 import org.jboss.errai.bus.client.api.SessionEndListener;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.api.QueueActivationCallback;
+import org.jboss.errai.bus.server.async.scheduling.WheelScheduledExecutorService;
 import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
 import org.jboss.errai.bus.server.io.buffers.BufferColor;
 import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
@@ -97,4 +104,58 @@ public class BusTests extends TestCase {
 
     assertEquals("[]", new String(outputStream.toByteArray()));
   }
+
+  public void testWakeUpsWithinWindowAreCoalesced() throws InterruptedException {
+    final ScheduledExecutorService scheduler = WheelScheduledExecutorService.newSingleThreadScheduler();
+    try {
+      final MessageQueueImpl messageQueue = new MessageQueueImpl(TransmissionBuffer.create(),
+          MockQueueSessionFactory.newSession(), 60, scheduler, 50, 0);
+      final CountDownLatch activated = new CountDownLatch(1);
+      final AtomicInteger activations = new AtomicInteger();
+      messageQueue.setActivationCallback(new QueueActivationCallback() {
+        @Override
+        public void activate(MessageQueue queue) {
+          activations.incrementAndGet();
+          activated.countDown();
+        }
+      });
+
+      for (int i = 0; i < 10; i++) {
+        messageQueue.fireActivationCallback();
+      }
+      assertEquals(0, activations.get());
+
+      assertTrue(activated.await(5, TimeUnit.SECONDS));
+      Thread.sleep(100);
+      assertEquals(1, activations.get());
+    }
+    finally {
+      scheduler.shutdown();
+    }
+  }
+
+  public void testCoalescedWakeUpsFlushAtMessageLimit() {
+    final ScheduledExecutorService scheduler = WheelScheduledExecutorService.newSingleThreadScheduler();
+    try {
+      final MessageQueueImpl messageQueue = new MessageQueueImpl(TransmissionBuffer.create(),
+          MockQueueSessionFactory.newSession(), 60, scheduler, 10000, 3);
+      final AtomicInteger activations = new AtomicInteger();
+      messageQueue.setActivationCallback(new QueueActivationCallback() {
+        @Override
+        public void activate(MessageQueue queue) {
+          activations.incrementAndGet();
+        }
+      });
+
+      messageQueue.fireActivationCallback();
+      messageQueue.fireActivationCallback();
+      assertEquals(0, activations.get());
+
+      messageQueue.fireActivationCallback();
+      assertEquals(1, activations.get());
+    }
+    finally {
+      scheduler.shutdown();
+    }
+  }
 }
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.SubscribeListener;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.base.MessageBuilder;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.framework.BuiltInServices;
+import org.jboss.errai.bus.client.framework.SubscriptionEvent;
+import org.jboss.errai.bus.client.protocols.BusCommand;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.MessageDeliveryHandler;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.bus.server.service.ErraiServiceFactory;
+import org.jboss.errai.common.client.protocols.MessageParts;
+
+/**
+ * Tests the delivery of messages sent to a queue before it has been initialized.
+ */
+public class DeferredDeliveryTests extends TestCase {
+  private final DeferredDeliveryStatistics statistics = new DeferredDeliveryStatistics();
+  private final DeferredDeliveryQueue deferred = new DeferredDeliveryQueue(statistics);
+  private final List<String> delivered = new ArrayList<String>();
+
+  private MessageQueue newQueue() {
+    final MessageQueue queue =
+        new MessageQueueImpl(TransmissionBuffer.create(1024, 64), MockQueueSessionFactory.newSession(), 60);
+    queue.setDeliveryHandler(new MessageDeliveryHandler() {
+      @Override
+      public boolean deliver(final MessageQueue queue, final Message message) throws IOException {
+        delivered.add(message.get(String.class, "Text"));
+        return true;
+      }
+
+      @Override
+      public void noop(final MessageQueue queue) throws IOException {
+      }
+    });
+    return queue;
+  }
+
+  private static Message message(final String text) {
+    return CommandMessage.create().toSubject("Test").set("Text", text);
+  }
+
+  private static Message priorityMessage(final String text) {
+    return message(text).set(MessageParts.PriorityProcessing, "1");
+  }
+
+  public void testMessagesAreHeldUntilDrained() throws IOException {
+    final MessageQueue queue = newQueue();
+
+    deferred.offer(message("m1"));
+    deferred.offer(message("m2"));
+    assertEquals(2, deferred.size());
+    assertTrue(delivered.isEmpty());
+
+    deferred.drainTo(queue);
+    assertEquals(0, deferred.size());
+    assertEquals(2, delivered.size());
+
+    // a drained queue can be deferred to again.
+    deferred.offer(message("m3"));
+    deferred.drainTo(queue);
+    assertEquals("m3", delivered.get(2));
+  }
+
+  public void testPriorityMessagesAreDrainedFirst() throws IOException {
+    deferred.offer(message("m1"));
+    deferred.offer(priorityMessage("p1"));
+    deferred.offer(message("m2"));
+    deferred.offer(priorityMessage("p2"));
+
+    deferred.drainTo(newQueue());
+
+    assertEquals("[p1, p2, m1, m2]", delivered.toString());
+  }
+
+  public void testStatistics() throws IOException {
+    deferred.offer(message("m1"));
+    deferred.offer(priorityMessage("p1"));
+    deferred.offer(message("m2"));
+    assertEquals(3, statistics.getDepth());
+    assertEquals(3, statistics.getPeakDepth());
+    assertEquals(3, statistics.getTotalDeferred());
+
+    deferred.drainTo(newQueue());
+    assertEquals("priority messages must be counted as drained", 0, statistics.getDepth());
+    assertEquals(1, statistics.getDrainCount());
+
+    deferred.offer(message("m3"));
+    deferred.discard();
+    assertEquals(0, statistics.getDepth());
+    assertEquals(3, statistics.getPeakDepth());
+    assertEquals(4, statistics.getTotalDeferred());
+    assertEquals(1, statistics.getTotalDiscarded());
+    assertEquals(1, statistics.getDrainCount());
+  }
+
+  public void testQueueClosedBeforeItInitializesDiscardsItsDeferredMessages() {
+    final ErraiServiceConfigurator configurator = new ErraiServiceConfiguratorImpl();
+    ErraiConfigAttribs.AUTO_DISCOVER_SERVICES.set(configurator, "false");
+    ErraiConfigAttribs.BUS_BUFFER_SIZE.set(configurator, "2");
+    final ErraiService<?> service = ErraiServiceFactory.create(configurator);
+
+    try {
+      final ServerMessageBusImpl bus = (ServerMessageBusImpl) service.getBus();
+      final DeferredDeliveryStatistics busStatistics = bus.getDeferredDeliveryStatistics();
+      final QueueSession session = MockQueueSessionFactory.newSession("client");
+      final List<Integer> depthBeforeClose = new ArrayList<Integer>();
+
+      // the remote services of the client are subscribed while its queue is being associated, before the queue has
+      // been initialized.
+      bus.addSubscribeListener(new SubscribeListener() {
+        @Override
+        public void onSubscribe(final SubscriptionEvent event) {
+          if (event.isRemote() && "ClientService".equals(event.getSubject())) {
+            bus.send(CommandMessage.create().toSubject("Unsubscribed").set(MessageParts.SessionID, "client"));
+            depthBeforeClose.add(busStatistics.getDepth());
+
+            bus.closeQueue(bus.getQueue(session));
+          }
+        }
+      });
+
+      try {
+        bus.sendGlobal(MessageBuilder
+            .createMessage(BuiltInServices.ServerBus.name())
+            .command(BusCommand.Associate)
+            .with(MessageParts.RemoteServices, "ClientService")
+            .with(MessageParts.PriorityProcessing, 1)
+            .noErrorHandling()
+            .getMessage()
+            .setResource("Session", session)
+            .setResource("SessionID", session.getSessionId())
+            .setFlag(RoutingFlag.FromRemote));
+      }
+      catch (QueueUnavailableException e) {
+        // the reply to the client of the closed queue has nowhere to go.
+      }
+
+      assertEquals("[1]", depthBeforeClose.toString());
+      assertEquals(0, busStatistics.getDepth());
+      assertEquals(1, busStatistics.getTotalDiscarded());
+    }
+    finally {
+      service.stopService();
+    }
+  }
+}
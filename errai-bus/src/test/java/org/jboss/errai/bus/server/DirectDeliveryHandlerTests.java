@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.server.io.BatchingQueueChannel;
+import org.jboss.errai.bus.server.io.DirectDeliveryHandler;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+
+/**
+ * Tests that direct deliveries are held back while the channel of the client is not writable.
+ */
+public class DirectDeliveryHandlerTests extends TestCase {
+
+  /**
+   * A channel which can be told that the client falls behind.
+   */
+  private static class SlowChannel extends BatchingQueueChannel {
+    final List<String> frames = new ArrayList<String>();
+    boolean writable = true;
+
+    SlowChannel() {
+      super(DEFAULT_MAX_BATCH_SIZE);
+    }
+
+    void drained() {
+      writable = true;
+      fireWritable();
+    }
+
+    @Override
+    public boolean isWritable() {
+      return writable;
+    }
+
+    @Override
+    protected void writeFrame(final String frame) {
+      frames.add(frame);
+    }
+
+    @Override
+    public boolean isConnected() {
+      return true;
+    }
+  }
+
+  private static Message message(final String text) {
+    return CommandMessage.create().toSubject("Test").set("Text", text);
+  }
+
+  public void testMessagesAreHeldBackUntilTheChannelDrains() throws IOException {
+    final SlowChannel channel = new SlowChannel();
+    final MessageQueueImpl queue =
+        new MessageQueueImpl(TransmissionBuffer.create(1024, 64), MockQueueSessionFactory.newSession(), 60);
+    queue.setDeliveryHandler(DirectDeliveryHandler.createFor(channel));
+
+    queue.offer(message("m1"));
+    assertEquals(1, channel.frames.size());
+
+    channel.writable = false;
+    queue.offer(message("m2"));
+    queue.offer(message("m3"));
+    assertEquals("messages must be held back", 1, channel.frames.size());
+    assertTrue(queue.messagesWaiting());
+
+    channel.drained();
+    assertEquals(2, channel.frames.size());
+    final String held = channel.frames.get(1);
+    assertTrue(held, held.indexOf("m2") != -1 && held.indexOf("m3") > held.indexOf("m2"));
+    assertFalse(queue.messagesWaiting());
+
+    queue.offer(message("m4"));
+    assertEquals(3, channel.frames.size());
+    assertTrue(channel.frames.get(2).contains("m4"));
+  }
+}
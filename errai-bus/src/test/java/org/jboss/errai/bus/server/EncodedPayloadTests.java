@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.api.MessageQueue;
+import org.jboss.errai.bus.server.io.EncodedPayload;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+
+/**
+ * Tests that a message fanned out to several queues is encoded once, and that the shared bytes are dropped once
+ * the last queue is done with them.
+ */
+public class EncodedPayloadTests extends TestCase {
+  private static final int QUEUES = 4;
+
+  private final TransmissionBuffer buffer = TransmissionBuffer.create(1024, 64);
+  private final List<MessageQueue> queues = new ArrayList<MessageQueue>();
+
+  @Override
+  protected void setUp() throws Exception {
+    for (int i = 0; i < QUEUES; i++) {
+      final QueueSession session = MockQueueSessionFactory.newSession();
+      queues.add(new MessageQueueImpl(buffer, session, 60));
+    }
+  }
+
+  private static Message message(final String text) {
+    return CommandMessage.create().toSubject("Test").set("Text", text);
+  }
+
+  private static String poll(final MessageQueue queue) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    queue.poll(new OutputStreamWriteAdapter(out));
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+
+  public void testBroadcastIsEncodedOnce() throws IOException {
+    final Message message = message("encoded");
+    final EncodedPayload payload = EncodedPayload.attach(message);
+
+    // anything encoding the message again from here on would pick up the new text.
+    message.set("Text", "encoded again");
+
+    try {
+      for (final MessageQueue queue : queues) {
+        queue.offer(message);
+      }
+    }
+    finally {
+      payload.release();
+    }
+
+    for (final MessageQueue queue : queues) {
+      final String polled = poll(queue);
+      assertTrue(polled, polled.contains("\"encoded\""));
+      assertFalse(polled, polled.contains("encoded again"));
+    }
+
+    assertEquals(0, payload.getRefCount());
+    assertEquals(0, payload.getLength());
+  }
+
+  public void testPayloadIsReleasedAfterTheLastConsumer() {
+    final EncodedPayload payload = EncodedPayload.attach(message("encoded"));
+    final int length = payload.getLength();
+    assertTrue(length > 0);
+
+    // two queues are still copying the bytes when the broadcaster is done with them.
+    assertTrue(payload.retain());
+    assertTrue(payload.retain());
+    payload.release();
+    assertEquals(2, payload.getRefCount());
+    assertEquals(length, payload.getLength());
+
+    payload.release();
+    assertEquals(length, payload.getLength());
+    assertTrue(payload.asString().contains("\"encoded\""));
+
+    payload.release();
+    assertEquals(0, payload.getRefCount());
+    assertEquals(0, payload.getLength());
+    assertFalse("a released payload must not be revived", payload.retain());
+  }
+
+  public void testDiscardedQueueDoesNotHoldThePayload() throws IOException {
+    final Message message = message("encoded");
+    final EncodedPayload payload = EncodedPayload.attach(message);
+    message.set("Text", "encoded again");
+
+    final MessageQueue discarded = queues.get(1);
+    discarded.discard();
+
+    try {
+      for (final MessageQueue queue : queues) {
+        try {
+          queue.offer(message);
+        }
+        catch (QueueUnavailableException e) {
+          assertSame(discarded, queue);
+        }
+      }
+      assertEquals("the discarded queue must not have kept a reference", 1, payload.getRefCount());
+    }
+    finally {
+      payload.release();
+    }
+
+    assertEquals(0, payload.getLength());
+    for (final MessageQueue queue : queues) {
+      if (queue != discarded) {
+        assertTrue(poll(queue).contains("\"encoded\""));
+      }
+    }
+  }
+
+  public void testLateDeliveryFallsBackToEncoding() throws IOException {
+    final Message message = message("encoded");
+    final EncodedPayload payload = EncodedPayload.attach(message);
+    payload.release();
+
+    // a deferred delivery of the message after the fan-out.
+    message.set("Text", "encoded again");
+    queues.get(0).offer(message);
+
+    final String polled = poll(queues.get(0));
+    assertTrue(polled, polled.contains("encoded again"));
+    assertSame(payload, EncodedPayload.get(message));
+    assertEquals(0, payload.getRefCount());
+  }
+}
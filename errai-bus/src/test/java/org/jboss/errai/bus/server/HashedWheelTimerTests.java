@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jboss.errai.bus.server.async.scheduling.HashedWheelTimer;
+import org.jboss.errai.bus.server.async.scheduling.WheelScheduledExecutorService;
+
+import junit.framework.TestCase;
+
+public class HashedWheelTimerTests extends TestCase {
+  private HashedWheelTimer timer;
+
+  @Override
+  protected void setUp() throws Exception {
+    // a small wheel, so that the timeouts below need more than one revolution.
+    timer = new HashedWheelTimer("Test Timer", 5, TimeUnit.MILLISECONDS, 8);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    timer.stop();
+  }
+
+  public void testTimeoutsExpireInOrderAndNotEarly() throws InterruptedException {
+    final List<Integer> expired = new CopyOnWriteArrayList<Integer>();
+    final CountDownLatch latch = new CountDownLatch(4);
+    final long start = System.nanoTime();
+    final long[] expiredAfter = new long[4];
+
+    final int[] delays = {150, 20, 90, 60};
+    for (int i = 0; i < delays.length; i++) {
+      final int index = i;
+      timer.newTimeout(new Runnable() {
+        @Override
+        public void run() {
+          expiredAfter[index] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          expired.add(delays[index]);
+          latch.countDown();
+        }
+      }, delays[i], TimeUnit.MILLISECONDS);
+    }
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals("[20, 60, 90, 150]", expired.toString());
+    for (int i = 0; i < delays.length; i++) {
+      assertTrue("expired early: " + expiredAfter[i] + " < " + delays[i], expiredAfter[i] >= delays[i]);
+    }
+    assertEquals(0, timer.getPendingTimeouts());
+  }
+
+  public void testCancelledTimeoutDoesNotExpire() throws InterruptedException {
+    final AtomicInteger runs = new AtomicInteger();
+    final Runnable task = new Runnable() {
+      @Override
+      public void run() {
+        runs.incrementAndGet();
+      }
+    };
+
+    final HashedWheelTimer.Timeout cancelled = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+    final HashedWheelTimer.Timeout kept = timer.newTimeout(task, 50, TimeUnit.MILLISECONDS);
+
+    assertTrue(cancelled.cancel());
+    assertFalse(cancelled.cancel());
+
+    Thread.sleep(200);
+
+    assertEquals(1, runs.get());
+    assertTrue(cancelled.isCancelled());
+    assertTrue(kept.isExpired());
+    assertFalse(kept.cancel());
+    assertEquals(0, timer.getPendingTimeouts());
+  }
+
+  public void testScheduledExecutorService() throws Exception {
+    final WheelScheduledExecutorService scheduler
+        = new WheelScheduledExecutorService(timer, Executors.newSingleThreadExecutor());
+
+    try {
+      final ScheduledFuture<String> once = scheduler.schedule(new Callable<String>() {
+        @Override
+        public String call() {
+          return "done";
+        }
+      }, 20, TimeUnit.MILLISECONDS);
+
+      final CountDownLatch repeats = new CountDownLatch(3);
+      final ScheduledFuture<?> repeating = scheduler.scheduleAtFixedRate(new Runnable() {
+        @Override
+        public void run() {
+          repeats.countDown();
+        }
+      }, 10, 10, TimeUnit.MILLISECONDS);
+
+      assertEquals("done", once.get(5, TimeUnit.SECONDS));
+      assertTrue(repeats.await(5, TimeUnit.SECONDS));
+
+      assertTrue(repeating.cancel(false));
+      assertTrue(repeating.isCancelled());
+      assertEquals(0, scheduler.getScheduledCount());
+    }
+    finally {
+      scheduler.shutdown();
+    }
+    assertTrue(scheduler.awaitTermination(5, TimeUnit.SECONDS));
+  }
+
+  public void testSchedulerStopsOnlyATimerItOwns() throws Exception {
+    final WheelScheduledExecutorService onTimer
+        = new WheelScheduledExecutorService(timer, Executors.newSingleThreadExecutor());
+    onTimer.shutdown();
+    final CountDownLatch expired = new CountDownLatch(1);
+    timer.newTimeout(new Runnable() {
+      @Override
+      public void run() {
+        expired.countDown();
+      }
+    }, 10, TimeUnit.MILLISECONDS);
+    assertTrue("a timer passed in must outlive the scheduler", expired.await(5, TimeUnit.SECONDS));
+
+    final Set<Thread> before = timerThreads();
+    final WheelScheduledExecutorService owning = WheelScheduledExecutorService.newSingleThreadScheduler();
+    owning.schedule(new Runnable() {
+      @Override
+      public void run() {
+      }
+    }, 10, TimeUnit.MILLISECONDS).get(5, TimeUnit.SECONDS);
+
+    final Set<Thread> started = timerThreads();
+    started.removeAll(before);
+    assertEquals(1, started.size());
+
+    owning.shutdown();
+    final Thread timerThread = started.iterator().next();
+    timerThread.join(5000);
+    assertFalse("the timer of the scheduler was not stopped", timerThread.isAlive());
+  }
+
+  private static Set<Thread> timerThreads() {
+    final Set<Thread> threads = new HashSet<Thread>();
+    for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+      if ("Errai Scheduler Timer".equals(thread.getName())) {
+        threads.add(thread);
+      }
+    }
+    return threads;
+  }
+}
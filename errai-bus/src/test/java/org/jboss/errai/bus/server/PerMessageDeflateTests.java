@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.server.io.websockets.CompressionStatistics;
+import org.jboss.errai.bus.server.io.websockets.PerMessageDeflateHandler;
+
+/**
+ * Tests the negotiation of the <tt>permessage-deflate</tt> extension, and the compression of messages by the
+ * {@link PerMessageDeflateHandler}.
+ */
+public class PerMessageDeflateTests extends TestCase {
+  private static final String TEXT;
+
+  static {
+    final StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 50; i++) {
+      builder.append("{\"ToSubject\":\"ClientBus\",\"CommandType\":\"Heartbeat\"},");
+    }
+    TEXT = builder.toString();
+  }
+
+  private final CompressionStatistics statistics = new CompressionStatistics();
+
+  public void testNegotiation() {
+    assertNull(PerMessageDeflateHandler.negotiate(null, true));
+    assertNull(PerMessageDeflateHandler.negotiate("x-webkit-deflate-frame", true));
+
+    assertEquals("permessage-deflate", PerMessageDeflateHandler.negotiate("permessage-deflate", true));
+    assertEquals("permessage-deflate",
+        PerMessageDeflateHandler.negotiate("x-webkit-deflate-frame, permessage-deflate", true));
+    assertEquals("permessage-deflate",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; client_max_window_bits", true));
+    assertEquals("permessage-deflate",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; server_max_window_bits=\"15\"", true));
+  }
+
+  public void testNegotiationOfContextTakeover() {
+    assertEquals("permessage-deflate; server_no_context_takeover",
+        PerMessageDeflateHandler.negotiate("permessage-deflate", false));
+    assertEquals("permessage-deflate; server_no_context_takeover",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; server_no_context_takeover", true));
+    assertEquals("permessage-deflate; client_no_context_takeover",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; client_no_context_takeover", true));
+    assertEquals("permessage-deflate; server_no_context_takeover; client_no_context_takeover",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; client_no_context_takeover", false));
+  }
+
+  public void testOffersWhichCannotBeServedAreDeclined() {
+    assertNull(PerMessageDeflateHandler.negotiate("permessage-deflate; server_max_window_bits=10", true));
+    assertNull(PerMessageDeflateHandler.negotiate("permessage-deflate; mystery_parameter", true));
+
+    // the next offer is chosen instead.
+    assertEquals("permessage-deflate; client_no_context_takeover",
+        PerMessageDeflateHandler.negotiate("permessage-deflate; server_max_window_bits=10, "
+            + "permessage-deflate; client_no_context_takeover", true));
+  }
+
+  public void testRoundTripWithContextTakeover() {
+    final EmbeddedChannel server = new EmbeddedChannel(new PerMessageDeflateHandler(0, true, statistics));
+    final EmbeddedChannel client = new EmbeddedChannel(new PerMessageDeflateHandler(0, true, statistics));
+
+    final TextWebSocketFrame first = send(server);
+    final int firstSize = first.content().readableBytes();
+    assertEquals(TEXT, receive(client, first));
+
+    // the second message refers back to the first.
+    final TextWebSocketFrame second = send(server);
+    assertTrue(second.content().readableBytes() < firstSize);
+    assertEquals(TEXT, receive(client, second));
+
+    server.finish();
+    client.finish();
+  }
+
+  public void testRoundTripWithoutContextTakeover() {
+    final EmbeddedChannel server = new EmbeddedChannel(new PerMessageDeflateHandler(0, false, statistics));
+
+    // each message must inflate on its own.
+    for (int i = 0; i < 3; i++) {
+      final EmbeddedChannel client = new EmbeddedChannel(new PerMessageDeflateHandler(0, true, statistics));
+      assertEquals(TEXT, receive(client, send(server)));
+      client.finish();
+    }
+
+    server.finish();
+  }
+
+  public void testSmallMessagesAreSentUncompressed() {
+    final EmbeddedChannel server = new EmbeddedChannel(new PerMessageDeflateHandler(1024, true, statistics));
+
+    server.writeOutbound(new TextWebSocketFrame("{}"));
+    final TextWebSocketFrame frame = (TextWebSocketFrame) server.readOutbound();
+    assertEquals(0, frame.rsv());
+    assertEquals("{}", frame.text());
+    frame.release();
+
+    assertEquals(1, statistics.getMessages());
+    assertEquals(0, statistics.getCompressedMessages());
+    server.finish();
+  }
+
+  public void testStatistics() {
+    assertEquals(-1.0, statistics.getCompressionRatio());
+
+    final EmbeddedChannel server = new EmbeddedChannel(new PerMessageDeflateHandler(0, true, statistics));
+    send(server).release();
+
+    assertEquals(1, statistics.getMessages());
+    assertEquals(1, statistics.getCompressedMessages());
+    assertEquals(TEXT.length(), statistics.getUncompressedBytes());
+    assertTrue(statistics.getCompressedBytes() < statistics.getUncompressedBytes());
+    assertTrue(statistics.getCompressionRatio() > 1);
+    server.finish();
+  }
+
+  private static TextWebSocketFrame send(final EmbeddedChannel server) {
+    server.writeOutbound(new TextWebSocketFrame(TEXT));
+    final TextWebSocketFrame frame = (TextWebSocketFrame) server.readOutbound();
+    assertTrue("the message was not compressed", (frame.rsv() & 0x04) != 0);
+    return frame;
+  }
+
+  private static String receive(final EmbeddedChannel client, final TextWebSocketFrame compressed) {
+    client.writeInbound(compressed);
+    final TextWebSocketFrame frame = (TextWebSocketFrame) client.readInbound();
+    try {
+      assertEquals(0, frame.rsv());
+      return frame.text();
+    }
+    finally {
+      frame.release();
+    }
+  }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import org.jboss.errai.bus.server.io.ByteWriteAdapter;
+import org.jboss.errai.bus.server.io.OutputStreamWriteAdapter;
+import org.jboss.errai.bus.server.io.QueuePageStore;
+import org.jboss.errai.bus.server.io.buffers.BufferFilter;
+
+import junit.framework.TestCase;
+
+public class QueuePageStoreTests extends TestCase {
+  private static final int PAGE_SIZE = 64;
+
+  private QueuePageStore store;
+
+  @Override
+  protected void setUp() throws Exception {
+    store = QueuePageStore.open(new File(System.getProperty("java.io.tmpdir"), "queuecache"), PAGE_SIZE);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    store.close();
+  }
+
+  public void testAppendAndReadAcrossPages() throws IOException {
+    final byte[] first = data(100, 1);
+    final byte[] second = data(50, 2);
+
+    store.append("a", ByteBuffer.wrap(first));
+    store.append("a", ByteBuffer.wrap(second));
+
+    assertEquals(150, store.size("a"));
+    assertEquals(3 * PAGE_SIZE, store.getFileSize());
+
+    final byte[] expected = concat(first, second);
+    assertTrue(Arrays.equals(expected, read("a")));
+  }
+
+  public void testInterleavedKeysDoNotMix() throws IOException {
+    final byte[] a = data(200, 3);
+    final byte[] b = data(130, 4);
+
+    for (int i = 0; i < 10; i++) {
+      store.append("a", ByteBuffer.wrap(a, i * 20, 20));
+      store.append("b", ByteBuffer.wrap(b, i * 13, 13));
+    }
+
+    assertTrue(Arrays.equals(a, read("a")));
+    assertTrue(Arrays.equals(b, read("b")));
+  }
+
+  public void testWriteAdapter() throws IOException {
+    final byte[] data = data(PAGE_SIZE * 3 + 7, 5);
+
+    final ByteWriteAdapter adapter = store.newWriteAdapter("a");
+    adapter.write(data);
+    adapter.flush();
+
+    assertTrue(Arrays.equals(data, read("a")));
+  }
+
+  public void testFilterIsApplied() throws IOException {
+    final byte[] data = data(100, 6);
+    store.append("a", ByteBuffer.wrap(data));
+
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    store.read("a", new OutputStreamWriteAdapter(out), new BufferFilter() {
+      @Override
+      public void before(final ByteWriteAdapter writer) throws IOException {
+        writer.write('[');
+      }
+
+      @Override
+      public int each(final int i, final ByteWriteAdapter writer) throws IOException {
+        assertTrue(i >= 0 && i < 256);
+        return i;
+      }
+
+      @Override
+      public void after(final ByteWriteAdapter writer) throws IOException {
+        writer.write(']');
+      }
+    });
+
+    final byte[] result = out.toByteArray();
+    assertEquals(102, result.length);
+    assertEquals('[', result[0]);
+    assertEquals(']', result[101]);
+    assertTrue(Arrays.equals(data, Arrays.copyOfRange(result, 1, 101)));
+  }
+
+  public void testDiscardedPagesAreReused() throws IOException {
+    store.append("a", ByteBuffer.wrap(data(PAGE_SIZE * 4, 7)));
+    store.discard("a");
+
+    assertEquals(0, store.size("a"));
+    assertEquals(0, read("a").length);
+
+    final byte[] data = data(PAGE_SIZE * 2, 8);
+    store.append("b", ByteBuffer.wrap(data));
+
+    assertEquals(4 * PAGE_SIZE, store.getFileSize());
+    assertTrue(Arrays.equals(data, read("b")));
+  }
+
+  public void testCompactMovesPagesAndTruncates() throws IOException {
+    final byte[] a = data(PAGE_SIZE * 4, 9);
+    final byte[] b = data(PAGE_SIZE * 2 + 10, 10);
+
+    store.append("a", ByteBuffer.wrap(a));
+    store.append("b", ByteBuffer.wrap(b));
+    store.discard("a");
+
+    assertEquals(7 * PAGE_SIZE, store.getFileSize());
+    assertEquals(4 * PAGE_SIZE, store.compact());
+    assertEquals(3 * PAGE_SIZE, store.getFileSize());
+    assertTrue(Arrays.equals(b, read("b")));
+
+    final byte[] more = data(PAGE_SIZE, 11);
+    store.append("b", ByteBuffer.wrap(more));
+    assertTrue(Arrays.equals(concat(b, more), read("b")));
+  }
+
+  public void testAppendRacingDiscardLeaksNoPages() throws Exception {
+    final byte[] large = data(PAGE_SIZE * 16384, 12);
+    final byte[] small = data(PAGE_SIZE + 1, 13);
+
+    for (int round = 0; round < 8; round++) {
+      // the first append holds the chain while a second append and a discard of the same key wait for it, so that
+      // the discard can win the chain over the append which looked it up before.
+      final Thread first = append("a", large);
+      while (store.size("a") == 0) {
+        Thread.yield();
+      }
+      final Thread second = append("a", small);
+      awaitBlocked(second, first);
+
+      final Thread discard = new Thread() {
+        @Override
+        public void run() {
+          store.discard("a");
+        }
+      };
+      discard.start();
+      awaitBlocked(discard, first);
+
+      first.join();
+      second.join();
+      discard.join();
+    }
+
+    // every page taken by an append must have been given back, including those of chains discarded mid-append.
+    store.discard("a");
+    store.compact();
+    assertEquals(0, store.getFileSize());
+  }
+
+  private Thread append(final String key, final byte[] data) {
+    final Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          store.append(key, ByteBuffer.wrap(data));
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    thread.start();
+    return thread;
+  }
+
+  /**
+   * Waits until the specified thread blocks on the chain, or the holder of the chain is done with it.
+   */
+  private static void awaitBlocked(final Thread thread, final Thread holder) {
+    while (thread.getState() != Thread.State.BLOCKED && holder.isAlive()) {
+      Thread.yield();
+    }
+  }
+
+  private byte[] read(final String key) throws IOException {
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    store.read(key, new OutputStreamWriteAdapter(out), new BufferFilter() {
+      @Override
+      public void before(final ByteWriteAdapter writer) {
+      }
+
+      @Override
+      public int each(final int i, final ByteWriteAdapter writer) {
+        return i;
+      }
+
+      @Override
+      public void after(final ByteWriteAdapter writer) {
+      }
+    });
+    return out.toByteArray();
+  }
+
+  private static byte[] data(final int length, final int seed) {
+    final byte[] data = new byte[length];
+    for (int i = 0; i < length; i++) {
+      data[i] = (byte) (i * 31 + seed);
+    }
+    return data;
+  }
+
+  private static byte[] concat(final byte[] a, final byte[] b) {
+    final byte[] result = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, result, a.length, b.length);
+    return result;
+  }
+}
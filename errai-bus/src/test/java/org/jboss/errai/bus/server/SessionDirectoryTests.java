@@ -0,0 +1,55 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.server.cluster.SessionDirectory;
+
+/**
+ * Tests the replicated {@link SessionDirectory}.
+ */
+public class SessionDirectoryTests extends TestCase {
+
+  public void testSessionMovedToAnotherNodeIsNotForgottenByTheOldOne() {
+    final SessionDirectory<String> directory = new SessionDirectory<String>();
+    directory.put("s1", "nodeA");
+    directory.put("s1", "nodeB");
+
+    assertFalse(directory.remove("s1", "nodeA"));
+    assertEquals("nodeB", directory.get("s1"));
+
+    assertTrue(directory.remove("s1", "nodeB"));
+    assertNull(directory.get("s1"));
+  }
+
+  public void testSessionsOfNodesLeavingTheClusterAreForgotten() {
+    final SessionDirectory<String> directory = new SessionDirectory<String>();
+    directory.put("s1", "nodeA");
+    directory.put("s2", "nodeB");
+    directory.put("s3", "nodeC");
+
+    directory.retainOwners(Arrays.asList("nodeA", "nodeC"));
+
+    assertEquals(2, directory.size());
+    assertEquals("nodeA", directory.get("s1"));
+    assertNull(directory.get("s2"));
+    assertEquals("nodeC", directory.get("s3"));
+  }
+}
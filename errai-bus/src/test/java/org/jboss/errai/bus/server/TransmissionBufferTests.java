@@ -635,6 +635,111 @@ public class TransmissionBufferTests extends TestCase {
     System.out.println(System.currentTimeMillis() - start);
   }
 
+  public void testTopicColorsVisibleToSubscribedColorsOnly() throws IOException {
+    final BufferColor colorA = BufferColor.getNewColor();
+    final BufferColor colorB = BufferColor.getNewColor();
+    final BufferColor colorC = BufferColor.getNewColor();
+    final BufferColor topic = BufferColor.getNewTopicColor();
+
+    final TransmissionBuffer buffer = TransmissionBuffer.create(5, 2500);
+
+    // written before anyone subscribes, so it must not be visible to anyone.
+    write(buffer, topic, "early");
+
+    colorA.subscribeTo(topic, buffer.getHeadSequence());
+    colorB.subscribeTo(topic, buffer.getHeadSequence());
+    assertTrue(colorA.isSubscribedTo(topic));
+    assertFalse(colorC.isSubscribedTo(topic));
+
+    write(buffer, colorA, "A1");
+    write(buffer, topic, "T1");
+    write(buffer, colorC, "C1");
+    write(buffer, BufferColor.getAllBuffersColor(), "G1");
+
+    assertEquals("A1T1G1", read(buffer, colorA));
+    assertEquals("T1G1", read(buffer, colorB));
+    assertEquals("C1G1", read(buffer, colorC));
+
+    colorB.unsubscribeFrom(topic);
+    assertFalse(colorB.isSubscribedTo(topic));
+
+    write(buffer, topic, "T2");
+
+    assertEquals("T2", read(buffer, colorA));
+    assertEquals("", read(buffer, colorB));
+    assertEquals("", read(buffer, colorC));
+    BufferColor.releaseTopicColor(topic);
+  }
+
+  public void testNewColorsNeverTakeALiveTopicColor() throws IOException {
+    final BufferColor topic = BufferColor.getNewTopicColor();
+    assertTrue(topic.isTopicColor());
+
+    try {
+      final TransmissionBuffer buffer = TransmissionBuffer.create(5, 2500);
+      final BufferColor subscriber = BufferColor.getNewColor();
+      subscriber.subscribeTo(topic, buffer.getHeadSequence());
+
+      // run the counter of the other colors around, past the topic color.
+      for (int i = 0; i < Short.MAX_VALUE * 2 + 10; i++) {
+        final BufferColor color = BufferColor.getNewColor();
+        assertFalse("a new color took the topic color " + topic.getColor(), color.isTopicColor());
+      }
+
+      final BufferColor session = BufferColor.getNewColorFromHead(buffer);
+      write(buffer, topic, "topic");
+      assertEquals("topic", read(buffer, subscriber));
+      assertEquals("", read(buffer, session));
+    }
+    finally {
+      BufferColor.releaseTopicColor(topic);
+    }
+  }
+
+  public void testTopicColorsAreReusedLast() {
+    final BufferColor first = BufferColor.getNewTopicColor();
+    final BufferColor second = BufferColor.getNewTopicColor();
+    assertFalse(first.getColor() == second.getColor());
+
+    BufferColor.releaseTopicColor(first);
+    final BufferColor third = BufferColor.getNewTopicColor();
+    assertFalse("a released topic color must not be reused right away", first.getColor() == third.getColor());
+
+    BufferColor.releaseTopicColor(second);
+    BufferColor.releaseTopicColor(third);
+  }
+
+  public void testCharactersAreWrittenAsUtf8() throws IOException {
+    final BufferColor color = BufferColor.getNewColor();
+    final TransmissionBuffer buffer = TransmissionBuffer.create(8, 16);
+
+    final String data = "{\"ToSubject\":\"caf\u00e9 \u20ac \ud83d\ude00\"}";
+    final String malformed = "a\ud83db\ude00c";
+
+    // enough writes to wrap around the end of the buffer at least once.
+    for (int i = 0; i < 10; i++) {
+      final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+
+      buffer.write(data, color);
+      buffer.write(new StringBuilder(malformed), color);
+      buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+
+      assertEquals(data + malformed.replace('\ud83d', '?').replace('\ude00', '?'),
+          new String(bOutputStream.toByteArray(), "UTF-8"));
+    }
+  }
+
+  private static void write(final TransmissionBuffer buffer, final BufferColor color, final String data)
+      throws IOException {
+    buffer.write(data.length(), new ByteArrayInputStream(data.getBytes()), color);
+  }
+
+  private static String read(final TransmissionBuffer buffer, final BufferColor color) throws IOException {
+    final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+    return new String(bOutputStream.toByteArray());
+  }
+
   public void testBufferColorCyclesAroundCorrectly() throws IOException {
     final int loopMax = Short.MAX_VALUE * 2 + 10;
 
@@ -826,4 +931,52 @@ public class TransmissionBufferTests extends TestCase {
       throw new AssertionError(ex);
     }
   }
+
+  public void testGrowableBufferWriteAndReadAcrossRings() throws IOException {
+    // 8 rings of 4 x 16 byte segments
+    final TransmissionBuffer buffer = TransmissionBuffer.createGrowable(false, 16, 4, 8);
+    final BufferColor color = BufferColor.getNewColor();
+
+    assertTrue(buffer.isGrowable());
+    assertEquals(64, buffer.getAllocatedBytes());
+
+    final String s = "0123456789abcdefghij";
+    for (int i = 0; i < 10000; i++) {
+      final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+      buffer.write(s.length(), new ByteArrayInputStream(s.getBytes()), color);
+      buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+      assertEquals(s, new String(bOutputStream.toByteArray()));
+    }
+  }
+
+  public void testGrowableBufferGrowsAndReclaims() throws IOException {
+    final TransmissionBuffer buffer = TransmissionBuffer.createGrowable(false, 16, 4, 8);
+    final BufferColor color = BufferColor.getNewColorFromHead(buffer);
+
+    final String s = "0123456789abcdefghij";
+    final StringBuilder expected = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      buffer.write(s.length(), new ByteArrayInputStream(s.getBytes()), color);
+      expected.append(s);
+    }
+
+    // 10 messages of 2 segments each span 5 rings
+    assertEquals(5 * 64, buffer.getAllocatedBytes());
+
+    // nothing can be released while the reader has not caught up
+    assertEquals(0, buffer.reclaim(color.getSequence().get()));
+
+    final ByteArrayOutputStream bOutputStream = new ByteArrayOutputStream();
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+    assertEquals(expected.toString(), new String(bOutputStream.toByteArray()));
+
+    // the reader is at the head, so only the ring it is in (and the one after it) are still needed
+    assertTrue(buffer.reclaim(color.getSequence().get()) > 0);
+    assertTrue(buffer.getAllocatedBytes() <= 2 * 64);
+
+    bOutputStream.reset();
+    buffer.write(s.length(), new ByteArrayInputStream(s.getBytes()), color);
+    buffer.read(new OutputStreamWriteAdapter(bOutputStream), color);
+    assertEquals(s, new String(bOutputStream.toByteArray()));
+  }
 }
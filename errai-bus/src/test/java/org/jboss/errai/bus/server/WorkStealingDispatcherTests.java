@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.api.QueueSession;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.client.api.messaging.MessageCallback;
+import org.jboss.errai.bus.server.service.ErraiConfigAttribs;
+import org.jboss.errai.bus.server.service.ErraiService;
+import org.jboss.errai.bus.server.service.ErraiServiceConfigurator;
+import org.jboss.errai.bus.server.service.ErraiServiceConfiguratorImpl;
+import org.jboss.errai.bus.server.service.ErraiServiceFactory;
+import org.jboss.errai.common.client.protocols.Resources;
+
+/**
+ * Tests the ordering and the progress guarantees of the {@link WorkStealingDispatcher}.
+ */
+public class WorkStealingDispatcherTests extends TestCase {
+  private ErraiService<?> service;
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (service != null) {
+      service.stopService();
+    }
+  }
+
+  private WorkStealingDispatcher startDispatcher(final boolean virtualThreads, final int parallelism) {
+    return startDispatcher(virtualThreads, parallelism, "");
+  }
+
+  private WorkStealingDispatcher startDispatcher(final boolean virtualThreads, final int parallelism,
+                                                 final String blockingSubjects) {
+    final ErraiServiceConfigurator configurator = new ErraiServiceConfiguratorImpl();
+    ErraiConfigAttribs.AUTO_DISCOVER_SERVICES.set(configurator, "false");
+    ErraiConfigAttribs.BUS_BUFFER_SIZE.set(configurator, "2");
+    ErraiConfigAttribs.DISPATCHER_VIRTUAL_THREADS.set(configurator, String.valueOf(virtualThreads));
+    ErraiConfigAttribs.DISPATCHER_PARALLELISM.set(configurator, String.valueOf(parallelism));
+    ErraiConfigAttribs.DISPATCHER_BLOCKING_SUBJECTS.set(configurator, blockingSubjects);
+    service = ErraiServiceFactory.create(configurator);
+    return new WorkStealingDispatcher(service);
+  }
+
+  private static Message message(final QueueSession session, final int seq) {
+    final Message message = CommandMessage.create().toSubject("Test").set("Seq", seq);
+    message.setResource(Resources.Session.name(), session);
+    return message;
+  }
+
+  /**
+   * @return the {@code Thread.isVirtual()} method, or null if the runtime has no virtual threads.
+   */
+  private static Method isVirtualMethod() {
+    try {
+      return Thread.class.getMethod("isVirtual");
+    }
+    catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static boolean isVirtual(final Thread thread) {
+    final Method isVirtual = isVirtualMethod();
+    try {
+      return isVirtual != null && (Boolean) isVirtual.invoke(thread);
+    }
+    catch (Exception e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  public void testSessionOrderIsPreservedUnderStealing() throws InterruptedException {
+    final WorkStealingDispatcher dispatcher = startDispatcher(false, 4);
+    assertFalse(dispatcher.isOnVirtualThreads());
+    assertSessionOrderIsPreserved(dispatcher, false);
+  }
+
+  public void testSessionOrderIsPreservedOnVirtualThreads() throws InterruptedException {
+    final WorkStealingDispatcher dispatcher = startDispatcher(true, 4);
+    if (isVirtualMethod() == null) {
+      // the ordering on the pool is covered above; only check that the dispatcher fell back to it.
+      assertFalse("virtual threads are not supported by this runtime", dispatcher.isOnVirtualThreads());
+      return;
+    }
+    assertTrue(dispatcher.isOnVirtualThreads());
+    assertSessionOrderIsPreserved(dispatcher, true);
+  }
+
+  private Set<String> assertSessionOrderIsPreserved(final WorkStealingDispatcher dispatcher,
+                                                    final boolean virtualThreads) throws InterruptedException {
+    final int sessions = 8;
+    // more messages than a lane delivers before it yields its thread, so that lanes move between workers.
+    final int messagesPerSession = 1000;
+
+    final ConcurrentMap<String, List<Integer>> received = new ConcurrentHashMap<String, List<Integer>>();
+    final ConcurrentMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<String, AtomicInteger>();
+    final AtomicInteger overlaps = new AtomicInteger();
+    final AtomicInteger wrongThreads = new AtomicInteger();
+    final Set<String> threads = ConcurrentHashMap.newKeySet();
+    final CountDownLatch done = new CountDownLatch(sessions * messagesPerSession);
+
+    service.getBus().subscribe("Test", new MessageCallback() {
+      @Override
+      public void callback(final Message message) {
+        final String sessionId =
+            message.getResource(QueueSession.class, Resources.Session.name()).getSessionId();
+        if (inFlight.get(sessionId).incrementAndGet() != 1) {
+          overlaps.incrementAndGet();
+        }
+        if (isVirtual(Thread.currentThread()) != virtualThreads) {
+          wrongThreads.incrementAndGet();
+        }
+        threads.add(Thread.currentThread().getName());
+        received.get(sessionId).add(message.get(Integer.class, "Seq"));
+        inFlight.get(sessionId).decrementAndGet();
+        done.countDown();
+      }
+    });
+
+    final List<Thread> producers = new ArrayList<Thread>();
+    for (int s = 0; s < sessions; s++) {
+      final QueueSession session = MockQueueSessionFactory.newSession("session" + s);
+      received.put(session.getSessionId(), new ArrayList<Integer>());
+      inFlight.put(session.getSessionId(), new AtomicInteger());
+
+      producers.add(new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < messagesPerSession; i++) {
+            dispatcher.dispatchGlobal(message(session, i));
+          }
+        }
+      });
+    }
+    for (final Thread producer : producers) {
+      producer.start();
+    }
+
+    assertTrue("not all messages were delivered", done.await(30, TimeUnit.SECONDS));
+    assertEquals("messages of the same session were delivered concurrently", 0, overlaps.get());
+    assertEquals("messages were delivered on the wrong kind of thread", 0, wrongThreads.get());
+
+    for (final List<Integer> list : received.values()) {
+      assertEquals(messagesPerSession, list.size());
+      for (int i = 0; i < messagesPerSession; i++) {
+        assertEquals(i, list.get(i).intValue());
+      }
+    }
+    return threads;
+  }
+
+  public void testParallelismBoundsThePool() throws InterruptedException {
+    final Set<String> threads = assertSessionOrderIsPreserved(startDispatcher(false, 2), false);
+    assertTrue("the pool grew beyond its parallelism: " + threads, threads.size() <= 2);
+  }
+
+  public void testBlockingServiceDoesNotStallOtherSessions() throws InterruptedException {
+    final WorkStealingDispatcher dispatcher = startDispatcher(false, 1, "Other, Blocking");
+
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    final CountDownLatch others = new CountDownLatch(10);
+
+    service.getBus().subscribe("Blocking", new MessageCallback() {
+      @Override
+      public void callback(final Message message) {
+        blocked.countDown();
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    });
+    service.getBus().subscribe("Test", new MessageCallback() {
+      @Override
+      public void callback(final Message message) {
+        others.countDown();
+      }
+    });
+
+    try {
+      final Message blocking = CommandMessage.create().toSubject("Blocking");
+      blocking.setResource(Resources.Session.name(), MockQueueSessionFactory.newSession("blocking"));
+      dispatcher.dispatchGlobal(blocking);
+      assertTrue(blocked.await(10, TimeUnit.SECONDS));
+
+      // the only worker of the pool is blocked in the service above.
+      for (int i = 0; i < 10; i++) {
+        dispatcher.dispatchGlobal(message(MockQueueSessionFactory.newSession("other" + i), i));
+      }
+      assertTrue("other sessions were stalled by a blocking service", others.await(10, TimeUnit.SECONDS));
+    }
+    finally {
+      release.countDown();
+    }
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.client.api.RoutingFlag;
+import org.jboss.errai.bus.client.api.base.CommandMessage;
+import org.jboss.errai.bus.client.api.messaging.Message;
+import org.jboss.errai.bus.server.cluster.IntrabusQueueSession;
+import org.jgroups.Address;
+import org.jgroups.JChannel;
+
+/**
+ * Tests the encoding of cluster messages into binary frames, and their batching by the {@link ClusterFrameBatch}.
+ */
+public class ClusterFramesTests extends TestCase {
+
+  /**
+   * A channel which records what is sent rather than sending it.
+   */
+  private static class RecordingChannel extends JChannel {
+    final List<Object> sent = new ArrayList<Object>();
+
+    RecordingChannel() throws Exception {
+      super(false);
+    }
+
+    @Override
+    public void send(final Address dst, final byte[] buf) {
+      sent.add(buf);
+    }
+
+    @Override
+    public void send(final Address dst, final Object obj) {
+      sent.add(obj);
+    }
+  }
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+  @Override
+  protected void tearDown() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  private static Message message(final String text) {
+    return CommandMessage.create().toSubject("ClusterTest").command("Test").set("Text", text);
+  }
+
+  private static List<Message> read(final byte[] frame) throws IOException {
+    assertTrue(ClusterFrames.isFrame(frame, 0, frame.length));
+    return ClusterFrames.readMessages(frame, 0, frame.length, IntrabusQueueSession.INSTANCE);
+  }
+
+  public void testRoundTrip() throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    final DataOutputStream out = new DataOutputStream(bytes);
+    ClusterFrames.writeMarker(out);
+    ClusterFrames.writeMessage(out, message("plain"));
+    ClusterFrames.writeMessage(out, message("\u00e9t\u00e9 \u2603 \"quoted\" {}"));
+    ClusterFrames.writeMessage(out, message(""));
+
+    final List<Message> messages = read(bytes.toByteArray());
+    assertEquals(3, messages.size());
+    assertEquals("plain", messages.get(0).get(String.class, "Text"));
+    assertEquals("\u00e9t\u00e9 \u2603 \"quoted\" {}", messages.get(1).get(String.class, "Text"));
+    assertEquals("", messages.get(2).get(String.class, "Text"));
+
+    for (final Message message : messages) {
+      assertEquals("ClusterTest", message.getSubject());
+      assertEquals("Test", message.getCommandType());
+      assertSame(IntrabusQueueSession.INSTANCE, message.getResource(Object.class, "Session"));
+      assertTrue(message.isFlagSet(RoutingFlag.FromRemote));
+    }
+  }
+
+  public void testJsonIsNotAFrame() {
+    final byte[] json = "{\"ToSubject\":\"ClusterTest\"}".getBytes(StandardCharsets.UTF_8);
+    assertFalse(ClusterFrames.isFrame(json, 0, json.length));
+    assertFalse(ClusterFrames.isFrame(new byte[] {'E', 'R'}, 0, 2));
+    assertFalse(ClusterFrames.isFrame(null, 0, 0));
+  }
+
+  public void testMessageWithPartsOtherThanStringsIsNotWritten() throws IOException {
+    final Message message = message("text").set("Count", 1);
+    assertFalse(ClusterFrames.canWrite(message));
+
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try {
+      ClusterFrames.writeMessage(new DataOutputStream(bytes), message);
+      fail("expected an IllegalArgumentException");
+    }
+    catch (IllegalArgumentException e) {
+      // expected
+    }
+    assertEquals("a partial message would corrupt the frame", 0, bytes.size());
+  }
+
+  public void testMessagesOfOneWindowAreSentInOneFrame() throws Exception {
+    final RecordingChannel channel = new RecordingChannel();
+    final ClusterFrameBatch batch = new ClusterFrameBatch(channel, null, scheduler, 60000, 1024 * 1024);
+
+    batch.add(message("m1"));
+    batch.add(message("m2"));
+    batch.add(message("m3"));
+    assertTrue(channel.sent.isEmpty());
+
+    // the batching window has passed.
+    batch.run();
+    assertEquals(1, channel.sent.size());
+    final List<Message> messages = read((byte[]) channel.sent.get(0));
+    assertEquals(3, messages.size());
+    for (int i = 0; i < 3; i++) {
+      assertEquals("m" + (i + 1), messages.get(i).get(String.class, "Text"));
+    }
+
+    batch.run();
+    assertEquals("an empty batch must not be sent", 1, channel.sent.size());
+  }
+
+  public void testBatchIsSentOnceFull() throws Exception {
+    final RecordingChannel channel = new RecordingChannel();
+    final ClusterFrameBatch batch = new ClusterFrameBatch(channel, null, scheduler, 60000, 100);
+
+    batch.add(message("m1"));
+    assertTrue(channel.sent.isEmpty());
+    batch.add(message("m2"));
+    assertEquals(1, channel.sent.size());
+    assertEquals(2, read((byte[]) channel.sent.get(0)).size());
+  }
+
+  public void testBatchIsSentRightAwayWithoutAWindow() throws Exception {
+    final RecordingChannel channel = new RecordingChannel();
+    final ClusterFrameBatch batch = new ClusterFrameBatch(channel, null, scheduler, 0, 1024 * 1024);
+
+    batch.add(message("m1"));
+    batch.add(message("m2"));
+    assertEquals(2, channel.sent.size());
+  }
+
+  public void testMessageWithPartsOtherThanStringsIsSentAsJson() throws Exception {
+    final RecordingChannel channel = new RecordingChannel();
+    final ClusterFrameBatch batch = new ClusterFrameBatch(channel, null, scheduler, 60000, 1024 * 1024);
+
+    batch.add(message("m1"));
+    batch.add(message("m2").set("Count", 2));
+    batch.add(message("m3"));
+
+    // the messages batched before are sent first, so that the order is kept.
+    assertEquals(2, channel.sent.size());
+    assertEquals(1, read((byte[]) channel.sent.get(0)).size());
+    final String json = (String) channel.sent.get(1);
+    assertTrue(json, json.contains("\"m2\""));
+
+    batch.run();
+    assertEquals(3, channel.sent.size());
+    assertEquals("m3", read((byte[]) channel.sent.get(2)).get(0).get(String.class, "Text"));
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.jgroups.Address;
+import org.jgroups.util.UUID;
+
+/**
+ * Tests which nodes the {@link JGroupsClusteringProvider} forwards a global message to.
+ */
+public class GlobalRoutingTests extends TestCase {
+  private final Address self = UUID.randomUUID();
+  private final Address a = UUID.randomUUID();
+  private final Address b = UUID.randomUUID();
+  private final Address c = UUID.randomUUID();
+  private final List<Address> members = Arrays.asList(self, a, b, c);
+
+  private final Map<Address, Set<Integer>> summaries = new HashMap<Address, Set<Integer>>();
+
+  private static Set<Integer> subjects(final String... subjects) {
+    final Set<Integer> hashes = new HashSet<Integer>();
+    for (final String subject : subjects) {
+      hashes.add(subject.hashCode());
+    }
+    return hashes;
+  }
+
+  private List<Address> targets(final String subject) {
+    return JGroupsClusteringProvider.getGlobalTargets(members, self, summaries, subject);
+  }
+
+  public void testNodesWhichHaveNotAnnouncedTheirSubjectsAreTargeted() {
+    assertEquals(Arrays.asList(a, b, c), targets("Chat"));
+
+    summaries.put(a, subjects("Chat"));
+    summaries.put(b, subjects("Stocks"));
+    assertEquals(Arrays.asList(a, c), targets("Chat"));
+  }
+
+  public void testOnlyNodesWithSubscribersAreTargeted() {
+    summaries.put(a, subjects("Chat", "Stocks"));
+    summaries.put(b, subjects("Stocks"));
+    summaries.put(c, Collections.<Integer>emptySet());
+
+    assertEquals(Arrays.asList(a), targets("Chat"));
+    assertEquals(Arrays.asList(a, b), targets("Stocks"));
+    assertTrue(targets("Weather").isEmpty());
+  }
+
+  public void testThisNodeIsNeverTargeted() {
+    summaries.put(self, subjects("Chat"));
+    assertFalse(targets("Chat").contains(self));
+    assertEquals(Collections.singletonList(self),
+        JGroupsClusteringProvider.getGlobalTargets(Collections.singletonList(self), a, summaries, "Chat"));
+    assertTrue(JGroupsClusteringProvider.getGlobalTargets(Collections.singletonList(self), self, summaries, "Chat")
+        .isEmpty());
+  }
+}
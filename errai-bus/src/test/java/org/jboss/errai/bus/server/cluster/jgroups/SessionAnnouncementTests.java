@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.cluster.jgroups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.server.cluster.ClusterCommands;
+import org.jboss.errai.bus.server.cluster.SessionDirectory;
+import org.jgroups.Address;
+import org.jgroups.util.UUID;
+
+/**
+ * Tests how the {@link JGroupsClusteringProvider} announces sessions to the cluster, and how it applies the
+ * announcements and the views of the other nodes to its {@link SessionDirectory}.
+ */
+public class SessionAnnouncementTests extends TestCase {
+  private final Address self = UUID.randomUUID();
+  private final Address a = UUID.randomUUID();
+  private final Address b = UUID.randomUUID();
+
+  private final SessionDirectory<Address> directory = new SessionDirectory<Address>();
+
+  private void announce(final ClusterCommands command, final Address owner, final List<String> sessionIds) {
+    for (final String joined : JGroupsClusteringProvider.joinSessionIds(sessionIds)) {
+      JGroupsClusteringProvider.applySessions(directory, command, owner, joined);
+    }
+  }
+
+  public void testOpenedAndClosedSessionsAreApplied() {
+    announce(ClusterCommands.SessionsOpened, a, Arrays.asList("s1", "s2"));
+    announce(ClusterCommands.SessionsOpened, b, Arrays.asList("s3"));
+    assertEquals(a, JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+    assertEquals(a, JGroupsClusteringProvider.getSessionTarget(directory, "s2"));
+    assertEquals(b, JGroupsClusteringProvider.getSessionTarget(directory, "s3"));
+
+    announce(ClusterCommands.SessionsClosed, a, Arrays.asList("s1"));
+    assertNull(JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+    assertEquals(a, JGroupsClusteringProvider.getSessionTarget(directory, "s2"));
+  }
+
+  public void testCloseFromFormerOwnerKeepsMovedSession() {
+    announce(ClusterCommands.SessionsOpened, a, Arrays.asList("s1"));
+    announce(ClusterCommands.SessionsOpened, b, Arrays.asList("s1"));
+
+    // the announcement of the old owner arrives after the session has moved on.
+    announce(ClusterCommands.SessionsClosed, a, Arrays.asList("s1"));
+    assertEquals(b, JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+  }
+
+  public void testLargeAnnouncementsAreSplitIntoBatches() {
+    final List<String> sessionIds = new ArrayList<String>();
+    for (int i = 0; i < JGroupsClusteringProvider.SESSION_BATCH_SIZE * 2 + 1; i++) {
+      sessionIds.add("session" + i);
+    }
+
+    assertEquals(3, JGroupsClusteringProvider.joinSessionIds(sessionIds).size());
+    assertTrue(JGroupsClusteringProvider.joinSessionIds(Collections.<String>emptyList()).isEmpty());
+
+    announce(ClusterCommands.SessionsOpened, a, sessionIds);
+    assertEquals(sessionIds.size(), directory.size());
+    for (final String sessionId : sessionIds) {
+      assertEquals(a, JGroupsClusteringProvider.getSessionTarget(directory, sessionId));
+    }
+  }
+
+  public void testSessionsOfLeavingMemberAreDropped() {
+    announce(ClusterCommands.SessionsOpened, a, Arrays.asList("s1"));
+    announce(ClusterCommands.SessionsOpened, b, Arrays.asList("s2"));
+
+    final List<Address> joined =
+        JGroupsClusteringProvider.applyView(directory, Arrays.asList(self, a, b), Arrays.asList(self, b), self);
+    assertTrue(joined.isEmpty());
+    assertNull(JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+    assertEquals(b, JGroupsClusteringProvider.getSessionTarget(directory, "s2"));
+  }
+
+  public void testJoiningMembersAreSentTheLocalSessions() {
+    assertEquals(Arrays.asList(a, b),
+        JGroupsClusteringProvider.applyView(directory, null, Arrays.asList(self, a, b), self));
+    assertEquals(Collections.singletonList(b),
+        JGroupsClusteringProvider.applyView(directory, Arrays.asList(self, a), Arrays.asList(self, a, b), self));
+  }
+
+  public void testUnknownSessionFallsBackToWhoHandles() {
+    assertNull("an unknown session must be located with a WhoHandles broadcast",
+        JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+
+    announce(ClusterCommands.SessionsOpened, a, Arrays.asList("s1"));
+    assertEquals(a, JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+
+    // once the owner has left, the session is unknown again.
+    JGroupsClusteringProvider.applyView(directory, Arrays.asList(self, a), Collections.singletonList(self), self);
+    assertNull(JGroupsClusteringProvider.getSessionTarget(directory, "s1"));
+  }
+}
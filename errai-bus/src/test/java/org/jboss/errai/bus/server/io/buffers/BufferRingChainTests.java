@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.io.buffers;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the allocation and the reclaiming of the rings of a {@link BufferRingChain}.
+ */
+public class BufferRingChainTests extends TestCase {
+
+  public void testReadOfReleasedRingFails() {
+    final BufferRingChain chain = new BufferRingChain(false, 16, 4, 0);
+    chain.acquire(20, 4);
+    chain.put(20, (byte) 1);
+    chain.release(20, 4);
+    assertEquals(1, chain.get(20));
+
+    assertEquals(1, chain.release(new boolean[4]));
+    try {
+      chain.get(20);
+      fail("a read of a released ring must fail");
+    }
+    catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  public void testPinnedRingIsNotReleased() {
+    final BufferRingChain chain = new BufferRingChain(false, 16, 4, 0);
+    chain.acquire(8, 16);
+    assertEquals(2, chain.getAllocatedRings());
+    assertEquals(0, chain.release(new boolean[4]));
+
+    chain.release(8, 16);
+    assertEquals(2, chain.release(new boolean[4]));
+    assertEquals(0, chain.getAllocatedRings());
+  }
+
+  public void testConcurrentWriteAndReclaim() throws InterruptedException {
+    final int ringSize = 64;
+    final int writerCount = 4;
+    final BufferRingChain chain = new BufferRingChain(false, ringSize, writerCount * 2, 1);
+
+    final AtomicBoolean running = new AtomicBoolean(true);
+    final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+    final CountDownLatch writersDone = new CountDownLatch(writerCount);
+
+    final List<Thread> threads = new ArrayList<Thread>();
+    for (int w = 0; w < writerCount; w++) {
+      // every writer owns the second half of one ring and the first half of the next.
+      final int position = w * ringSize * 2 + ringSize / 2;
+      threads.add(new Thread() {
+        @Override
+        public void run() {
+          try {
+            for (int i = 0; i < 20000; i++) {
+              final byte value = (byte) i;
+              chain.acquire(position, ringSize);
+              try {
+                for (int p = position; p < position + ringSize; p++) {
+                  chain.put(p, value);
+                }
+                for (int p = position; p < position + ringSize; p++) {
+                  assertEquals(value, chain.get(p));
+                }
+              }
+              finally {
+                chain.release(position, ringSize);
+              }
+            }
+          }
+          catch (Throwable t) {
+            errors.add(t);
+          }
+          finally {
+            writersDone.countDown();
+          }
+        }
+      });
+    }
+
+    threads.add(new Thread() {
+      @Override
+      public void run() {
+        try {
+          while (running.get()) {
+            chain.release(new boolean[writerCount * 2]);
+          }
+        }
+        catch (Throwable t) {
+          errors.add(t);
+        }
+      }
+    });
+
+    for (final Thread thread : threads) {
+      thread.start();
+    }
+    assertTrue("the writers did not finish", writersDone.await(60, TimeUnit.SECONDS));
+    running.set(false);
+    for (final Thread thread : threads) {
+      thread.join();
+    }
+
+    assertTrue("errors while writing: " + errors, errors.isEmpty());
+    chain.release(new boolean[writerCount * 2]);
+    assertEquals(0, chain.getAllocatedRings());
+  }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.bus.server.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+
+import junit.framework.TestCase;
+
+import org.jboss.errai.bus.server.MessageQueueImpl;
+import org.jboss.errai.bus.server.MockQueueSessionFactory;
+import org.jboss.errai.bus.server.io.buffers.TransmissionBuffer;
+
+/**
+ * Tests the lifecycle of an {@link SSEEventStream}: starting, streaming to a client which stops reading, and closing.
+ */
+public class SSEEventStreamTests extends TestCase {
+
+  /**
+   * A non-blocking output which, like the one of Tomcat, must not be used before its write listener is set.
+   */
+  private static class MockOutputStream extends ServletOutputStream {
+    final ByteArrayOutputStream written = new ByteArrayOutputStream();
+    WriteListener writeListener;
+    boolean ready = true;
+
+    @Override
+    public boolean isReady() {
+      if (writeListener == null) {
+        throw new IllegalStateException("no write listener set");
+      }
+      return ready;
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener writeListener) {
+      this.writeListener = writeListener;
+    }
+
+    @Override
+    public void write(final int b) {
+      if (!ready) {
+        throw new IllegalStateException("written while not ready");
+      }
+      written.write(b);
+    }
+
+    void writable() throws IOException {
+      ready = true;
+      writeListener.onWritePossible();
+    }
+
+    String text() {
+      return new String(written.toByteArray(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private final MockOutputStream outputStream = new MockOutputStream();
+  private final List<AsyncListener> listeners = new ArrayList<AsyncListener>();
+  private boolean completed;
+
+  private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+  private final MessageQueueImpl queue =
+      new MessageQueueImpl(TransmissionBuffer.create(1024, 64), MockQueueSessionFactory.newSession(), 60);
+
+  private final AsyncContext asyncContext = proxy(AsyncContext.class, new InvocationHandler() {
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      if (method.getName().equals("getResponse")) {
+        return response;
+      }
+      else if (method.getName().equals("addListener")) {
+        listeners.add((AsyncListener) args[0]);
+      }
+      else if (method.getName().equals("complete")) {
+        completed = true;
+      }
+      return null;
+    }
+  });
+
+  private final ServletResponse response = proxy(ServletResponse.class, new InvocationHandler() {
+    @Override
+    public Object invoke(final Object proxy, final Method method, final Object[] args) {
+      return method.getName().equals("getOutputStream") ? outputStream : null;
+    }
+  });
+
+  private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class[] {type}, handler));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    scheduler.shutdownNow();
+  }
+
+  private SSEEventStream startStream(final long heartbeatInterval) throws IOException {
+    final SSEEventStream stream = new SSEEventStream(asyncContext, queue, heartbeatInterval, scheduler);
+    stream.start();
+    return stream;
+  }
+
+  private void deliver(final String message) throws IOException {
+    // as the BufferDeliveryHandler does.
+    queue.getBuffer().write(message, queue.getBufferColor());
+    queue.incrementMessageCount();
+    queue.fireActivationCallback();
+  }
+
+  public void testMessagesBeforeTheFirstWritePossibleAreSentThen() throws IOException {
+    startStream(60000);
+    assertNotNull("the write listener must be set when the stream starts", outputStream.writeListener);
+
+    // the output must not be used yet.
+    deliver("{\"m\":1}");
+    assertNull(queue.getActivationCallback());
+    assertEquals(0, outputStream.written.size());
+
+    outputStream.writable();
+    assertEquals("data: [{\"m\":1}]\n\n", outputStream.text());
+    assertFalse(completed);
+
+    deliver("{\"m\":2}");
+    assertEquals("data: [{\"m\":1}]\n\ndata: [{\"m\":2}]\n\n", outputStream.text());
+  }
+
+  public void testMessagesStayInTheQueueWhileTheClientIsNotReading() throws IOException {
+    startStream(60000);
+    outputStream.writable();
+
+    outputStream.ready = false;
+    deliver("{\"m\":1}");
+    deliver("{\"m\":2}");
+    assertEquals(0, outputStream.written.size());
+    assertTrue(queue.messagesWaiting());
+
+    outputStream.writable();
+    assertEquals("data: [{\"m\":1},{\"m\":2}]\n\n", outputStream.text());
+    assertFalse(queue.messagesWaiting());
+  }
+
+  public void testMessagesAreKeptWhenTheStreamEndsWhileTheClientIsNotReading() throws IOException {
+    final SSEEventStream stream = startStream(60000);
+    outputStream.writable();
+
+    outputStream.ready = false;
+    deliver("{\"m\":1}");
+    for (final AsyncListener listener : listeners) {
+      listener.onTimeout(null);
+    }
+
+    assertTrue(completed);
+    assertNotSame(stream, queue.getActivationCallback());
+    assertTrue("the messages must be left for the next request", queue.messagesWaiting());
+
+    // nothing is written by a closed stream.
+    outputStream.writable();
+    assertEquals(0, outputStream.written.size());
+  }
+
+  public void testStreamClosedBeforeItStartedIsNotActivated() throws IOException {
+    startStream(60000);
+    outputStream.writeListener.onError(new IOException("connection reset"));
+    assertTrue(completed);
+
+    outputStream.writable();
+    assertNull(queue.getActivationCallback());
+  }
+
+  public void testHeartbeatIsSentWhileIdle() throws Exception {
+    startStream(20);
+    outputStream.writable();
+
+    final long deadline = System.currentTimeMillis() + 10000;
+    while (outputStream.written.size() == 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    assertTrue(outputStream.text(), outputStream.text().startsWith(":\n\n"));
+    assertFalse(completed);
+  }
+}
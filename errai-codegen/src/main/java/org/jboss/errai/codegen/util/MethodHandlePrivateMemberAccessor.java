@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.codegen.util;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.codegen.AbstractStatement;
+import org.jboss.errai.codegen.Context;
+import org.jboss.errai.codegen.DefParameters;
+import org.jboss.errai.codegen.Modifier;
+import org.jboss.errai.codegen.Parameter;
+import org.jboss.errai.codegen.Statement;
+import org.jboss.errai.codegen.builder.BlockBuilder;
+import org.jboss.errai.codegen.builder.ClassStructureBuilder;
+import org.jboss.errai.codegen.builder.MethodCommentBuilder;
+import org.jboss.errai.codegen.builder.callstack.LoadClassReference;
+import org.jboss.errai.codegen.meta.MetaClass;
+import org.jboss.errai.codegen.meta.MetaClassFactory;
+import org.jboss.errai.codegen.meta.MetaConstructor;
+import org.jboss.errai.codegen.meta.MetaField;
+import org.jboss.errai.codegen.meta.MetaMethod;
+
+/**
+ * Generates private member accessors which call a {@link MethodHandle} bound once to a {@code static final} field of
+ * the generated class. Unlike the {@link Field#get(Object)} and {@link Method#invoke(Object, Object...)} calls of the
+ * {@link ReflectionPrivateMemberAccessor}, the handles are invoked with {@link MethodHandle#invokeExact(Object...)}
+ * and exact types, so that the JIT can inline the access like a direct field or method access.
+ * <p/>
+ * The generated code requires Java 7, so this accessor is only for marshallers and proxies which run on the server.
+ */
+public class MethodHandlePrivateMemberAccessor implements PrivateMemberAccessor {
+
+  private static final String UNREFLECT_GETTER_UTIL_METH = "_unreflectGetter";
+  private static final String UNREFLECT_SETTER_UTIL_METH = "_unreflectSetter";
+  private static final String UNREFLECT_METH_UTIL_METH = "_unreflectMethod";
+  private static final String UNREFLECT_CONSTRUCTOR_UTIL_METH = "_unreflectConstructor";
+
+  private static void createUnreflectUtilMethod(final ClassStructureBuilder<?> classBuilder,
+                                                final String methodName,
+                                                final String lookupMethodName,
+                                                final Class<?> memberType) {
+
+    if (classBuilder.getClassDefinition().getMethod(methodName, memberType) != null) {
+      return;
+    }
+
+    classBuilder.privateMethod(MethodHandle.class, methodName).modifiers(Modifier.Static)
+            .parameters(DefParameters.of(Parameter.of(memberType, "member")))
+            .body()
+            ._(Stmt.try_()
+                    ._(Stmt.invokeStatic(MethodHandles.class, "lookup")
+                            .invoke(lookupMethodName, Stmt.loadVariable("member")).returnValue())
+                    .finish()
+                    .catch_(Throwable.class, "e")
+                    ._(Stmt.loadVariable("e").invoke("printStackTrace"))
+                    ._(Stmt.throw_(RuntimeException.class, Refs.get("e")))
+                    .finish())
+            .finish();
+  }
+
+  private static String initHandle(final ClassStructureBuilder<?> classBuilder,
+                                   final String handleName,
+                                   final String cachedMember,
+                                   final String utilMethodName,
+                                   final String lookupMethodName,
+                                   final Class<?> memberType) {
+
+    if (classBuilder.getClassDefinition().getField(handleName) != null) {
+      return handleName;
+    }
+
+    createUnreflectUtilMethod(classBuilder, utilMethodName, lookupMethodName, memberType);
+
+    classBuilder.privateField(handleName, MethodHandle.class).modifiers(Modifier.Static, Modifier.Final)
+            .initializesWith(Stmt.invokeStatic(classBuilder.getClassDefinition(), utilMethodName,
+                    Stmt.loadVariable(cachedMember))).finish();
+
+    return handleName;
+  }
+
+  public static String initFieldGetterHandle(final ClassStructureBuilder<?> classBuilder, final MetaField f) {
+    return initHandle(classBuilder, PrivateAccessUtil.getPrivateFieldAccessorName(f) + "_getter",
+            ReflectionPrivateMemberAccessor.initCachedField(classBuilder, f),
+            UNREFLECT_GETTER_UTIL_METH, "unreflectGetter", Field.class);
+  }
+
+  public static String initFieldSetterHandle(final ClassStructureBuilder<?> classBuilder, final MetaField f) {
+    return initHandle(classBuilder, PrivateAccessUtil.getPrivateFieldAccessorName(f) + "_setter",
+            ReflectionPrivateMemberAccessor.initCachedField(classBuilder, f),
+            UNREFLECT_SETTER_UTIL_METH, "unreflectSetter", Field.class);
+  }
+
+  public static String initMethodHandle(final ClassStructureBuilder<?> classBuilder, final MetaMethod m) {
+    return initHandle(classBuilder, PrivateAccessUtil.getPrivateMethodName(m) + "_handle",
+            ReflectionPrivateMemberAccessor.initCachedMethod(classBuilder, m),
+            UNREFLECT_METH_UTIL_METH, "unreflect", Method.class);
+  }
+
+  public static String initMethodHandle(final ClassStructureBuilder<?> classBuilder, final MetaConstructor c) {
+    return initHandle(classBuilder, PrivateAccessUtil.getPrivateMethodName(c) + "_handle",
+            ReflectionPrivateMemberAccessor.initCachedMethod(classBuilder, c),
+            UNREFLECT_CONSTRUCTOR_UTIL_METH, "unreflectConstructor", Constructor.class);
+  }
+
+  /**
+   * Creates an {@link MethodHandle#invokeExact(Object...)} call of the handle in the specified field. The codegen
+   * API would pass the arguments of the signature polymorphic method as an array, so the call is rendered here. Each
+   * argument, and the result, is cast to its erased type, which is the type in the signature of an unreflected
+   * handle.
+   *
+   * @param resultType
+   *     the type of the result, or null if the handle returns void.
+   */
+  private static Statement invokeExact(final String handle, final MetaClass resultType, final List<Parameter> args) {
+    return new AbstractStatement() {
+      @Override
+      public String generate(final Context context) {
+        final StringBuilder buf = new StringBuilder();
+        if (resultType != null) {
+          buf.append('(').append(LoadClassReference.getClassReference(resultType, context, false)).append(") ");
+        }
+        buf.append(handle).append(".invokeExact(");
+        for (int i = 0; i < args.size(); i++) {
+          if (i > 0) {
+            buf.append(", ");
+          }
+          buf.append('(').append(LoadClassReference.getClassReference(args.get(i).getType(), context, false))
+              .append(") ").append(args.get(i).getName());
+        }
+        return buf.append(')').toString();
+      }
+
+      @Override
+      public MetaClass getType() {
+        return resultType != null ? resultType : MetaClassFactory.get(void.class);
+      }
+    };
+  }
+
+  private static Statement returnValue(final Statement statement) {
+    return Stmt.nestedCall(statement).returnValue();
+  }
+
+  @Override
+  public void createWritableField(final MetaClass type,
+                                  final ClassStructureBuilder<?> classBuilder,
+                                  final MetaField field,
+                                  final Modifier[] modifiers) {
+
+    final String handle = initFieldSetterHandle(classBuilder, field);
+
+    final MethodCommentBuilder<? extends ClassStructureBuilder<?>> methodBuilder =
+            classBuilder.privateMethod(void.class, PrivateAccessUtil.getPrivateFieldAccessorName(field));
+
+    final List<Parameter> args = new ArrayList<Parameter>();
+    if (!field.isStatic()) {
+      args.add(Parameter.of(field.getDeclaringClass().getErased(), "instance"));
+    }
+    args.add(Parameter.of(field.getType(), "value"));
+    methodBuilder.parameters(DefParameters.fromParameters(args));
+
+    methodBuilder.modifiers(modifiers)
+            .body()
+            ._(Stmt.try_()
+                    ._(invokeExact(handle, null, args))
+                    .finish()
+                    .catch_(Throwable.class, "e")
+                    ._(Stmt.loadVariable("e").invoke("printStackTrace"))
+                    ._(Stmt.throw_(RuntimeException.class, Refs.get("e")))
+                    .finish())
+            .finish();
+  }
+
+  @Override
+  public void createReadableField(final MetaClass type,
+                                  final ClassStructureBuilder<?> classBuilder,
+                                  final MetaField field,
+                                  final Modifier[] modifiers) {
+
+    final String handle = initFieldGetterHandle(classBuilder, field);
+
+    final MethodCommentBuilder<? extends ClassStructureBuilder<?>> methodBuilder =
+            classBuilder.privateMethod(field.getType().getErased(), PrivateAccessUtil.getPrivateFieldAccessorName(field));
+
+    final List<Parameter> args = new ArrayList<Parameter>();
+    if (!field.isStatic()) {
+      args.add(Parameter.of(field.getDeclaringClass().getErased(), "instance"));
+      methodBuilder.parameters(DefParameters.fromParameters(args));
+    }
+
+    methodBuilder.modifiers(modifiers)
+            .body()
+            ._(Stmt.try_()
+                    ._(returnValue(invokeExact(handle, field.getType(), args)))
+                    .finish()
+                    .catch_(Throwable.class, "e")
+                    ._(Stmt.loadVariable("e").invoke("printStackTrace"))
+                    ._(Stmt.throw_(RuntimeException.class, Refs.get("e")))
+                    .finish())
+            .finish();
+  }
+
+  @Override
+  public void makeMethodAccessible(final ClassStructureBuilder<?> classBuilder,
+                                   final MetaMethod method,
+                                   final Modifier[] modifiers) {
+
+    final List<Parameter> wrapperDefParms = new ArrayList<Parameter>();
+
+    if (!method.isStatic()) {
+      wrapperDefParms.add(Parameter.of(method.getDeclaringClass().getErased(), "instance"));
+    }
+    wrapperDefParms.addAll(DefParameters.from(method).getParameters());
+
+    final String handle = initMethodHandle(classBuilder, method);
+
+    final BlockBuilder<? extends ClassStructureBuilder> body
+            = classBuilder.publicMethod(method.getReturnType(),
+            PrivateAccessUtil.getPrivateMethodName(method))
+            .parameters(DefParameters.fromParameters(wrapperDefParms))
+            .modifiers(modifiers)
+            .body();
+
+    final Statement invocation;
+    if (method.getReturnType().isVoid()) {
+      invocation = invokeExact(handle, null, wrapperDefParms);
+    }
+    else {
+      invocation = returnValue(invokeExact(handle, method.getReturnType(), wrapperDefParms));
+    }
+
+    body._(Stmt.try_()
+            ._(invocation)
+            .finish()
+            .catch_(Throwable.class, "e")
+            ._(Stmt.loadVariable("e").invoke("printStackTrace"))
+            ._(Stmt.throw_(RuntimeException.class, Refs.get("e")))
+            .finish())
+            .finish();
+  }
+
+  @Override
+  public void makeConstructorAccessible(final ClassStructureBuilder<?> classBuilder,
+                                        final MetaConstructor constructor) {
+
+    final DefParameters methodDefParms = DefParameters.from(constructor);
+    final String handle = initMethodHandle(classBuilder, constructor);
+
+    final BlockBuilder<? extends ClassStructureBuilder> body = classBuilder.publicMethod(constructor.getReturnType(),
+            PrivateAccessUtil.getPrivateMethodName(constructor))
+            .parameters(methodDefParms)
+            .modifiers(Modifier.Static)
+            .body();
+
+    body._(Stmt.try_()
+            ._(returnValue(invokeExact(handle, constructor.getDeclaringClass(), methodDefParms.getParameters())))
+            .finish()
+            .catch_(Throwable.class, "e")
+            ._(Stmt.loadVariable("e").invoke("printStackTrace"))
+            ._(Stmt.throw_(RuntimeException.class, Refs.get("e")))
+            .finish())
+            .finish();
+  }
+}
@@ -43,6 +43,7 @@ public class PrivateAccessUtil {
 
   static {
     PRIVATE_MEMBER_ACCESSORS.put("reflection", new ReflectionPrivateMemberAccessor());
+    PRIVATE_MEMBER_ACCESSORS.put("methodhandle", new MethodHandlePrivateMemberAccessor());
   }
 
   public static void registerPrivateMemberAccessor(final String type, final PrivateMemberAccessor accessor) {
@@ -62,7 +63,7 @@ public class PrivateAccessUtil {
    * @param accessType
    *     Whether to generate a read method, a write method, or both.
    * @param type
-   *     The type of accessors to use (ie. "reflection" or "jsni").
+   *     The type of accessors to use (ie. "reflection", "methodhandle" or "jsni").
    * @param classBuilder
    *     The class builder to add the generated methods to.
    * @param f
@@ -82,7 +83,7 @@ public class PrivateAccessUtil {
    * @param accessType
    *     Whether to generate a read method, a write method, or both.
    * @param accessorType
-   *     The type of accessors to use (ie. "reflection" or "jsni").
+   *     The type of accessors to use (ie. "reflection", "methodhandle" or "jsni").
    * @param classBuilder
    *     The class builder to add the generated methods to.
    * @param f
@@ -126,7 +127,7 @@ public class PrivateAccessUtil {
    * {@link #getPrivateMethodName(MetaMethod)}.
    *
    * @param accessorType
-   *     The type of accessors to use (ie. "reflection" or "jsni").
+   *     The type of accessors to use (ie. "reflection", "methodhandle" or "jsni").
    * @param classBuilder
    *     The class builder to add the generated method to.
    * @param m
@@ -153,7 +154,7 @@ public class PrivateAccessUtil {
    * {@link #getPrivateMethodName(MetaMethod)}.
    *
    * @param accessorType
-   *     The type of accessors to use (ie. "reflection" or "jsni").
+   *     The type of accessors to use (ie. "reflection", "methodhandle" or "jsni").
    * @param classBuilder
    *     The class builder to add the generated method to.
    * @param m
@@ -170,7 +171,7 @@ public class PrivateAccessUtil {
    * Reflection. The generated method will be private and static.
    *
    * @param accessorType
-   *     The type of accessors to use (ie. "reflection" or "jsni").
+   *     The type of accessors to use (ie. "reflection", "methodhandle" or "jsni").
    * @param classBuilder
    *     The class builder to add the generated method to.
    * @param m
@@ -123,5 +123,11 @@ public enum MessageParts {
 
   WebSocketURL,
 
-  WebSocketToken
+  WebSocketToken,
+
+  /**
+   * The hash of the table of marshallable types of the remote bus. Used to negotiate the compact encoding of
+   * messages, which requires both buses to have the same table.
+   */
+  TypeTableHash
 }
@@ -23,7 +23,8 @@ import java.util.Map;
  */
 public enum CommonConfigAttribs {
   LAZY_LOAD_BUILTIN_MARSHALLERS("errai.marshalling.lazy_load_builtin_marshallers", "true"),
-  MAKE_DEFAULT_ARRAY_MARSHALLERS("errai.marshalling.make_default_array_marshallers", "false");
+  MAKE_DEFAULT_ARRAY_MARSHALLERS("errai.marshalling.make_default_array_marshallers", "false"),
+  MAKE_TYPE_TABLE("errai.marshalling.make_type_table", "false");
 
   protected final String attributeName;
   protected final String defaultValue;
@@ -132,19 +132,23 @@ public abstract class Marshalling {
               + SerializationParts.QUALIFIED_VALUE + "\":null}";
     }
 
-    final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
-
     obj = MarshallUtil.maybeUnwrap(obj);
 
     if (needsQualification(obj)) {
       return NumbersUtils.qualifiedNumericEncoding(obj);
     }
     else {
-      final Marshaller<Object> marshaller = MarshallUtil.getMarshaller(obj, session);
-      if (marshaller == null) {
-        throw new RuntimeException("No marshaller for type: " + obj.getClass().getName());
+      final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
+      try {
+        final Marshaller<Object> marshaller = MarshallUtil.getMarshaller(obj, session);
+        if (marshaller == null) {
+          throw new RuntimeException("No marshaller for type: " + obj.getClass().getName());
+        }
+        return marshaller.marshall(obj, session);
+      }
+      finally {
+        MarshallingSessionProviderFactory.release(session);
       }
-      return marshaller.marshall(obj, session);
     }
   }
 
@@ -172,7 +176,13 @@ public abstract class Marshalling {
    */
   @SuppressWarnings("unchecked")
   public static String toJSON(final Map<Object, Object> obj) {
-    return MapMarshaller.INSTANCE.marshall(obj, MarshallingSessionProviderFactory.getEncoding());
+    final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
+    try {
+      return MapMarshaller.INSTANCE.marshall(obj, session);
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
   }
 
   /**
@@ -183,7 +193,13 @@ public abstract class Marshalling {
    * @return The JSON representation of the list.
    */
   public static String toJSON(final List arr) {
-    return ListMarshaller.INSTANCE.marshall(arr, MarshallingSessionProviderFactory.getEncoding());
+    final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
+    try {
+      return ListMarshaller.INSTANCE.marshall(arr, session);
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
   }
 
   /**
@@ -266,15 +282,20 @@ public abstract class Marshalling {
   @SuppressWarnings("unchecked")
   public static <T> T fromJSON(final EJValue parsedValue, final Class<T> type, final Class<?> assumedElementType) {
     final MarshallingSession session = MarshallingSessionProviderFactory.getDecoding();
-    if (assumedElementType != null) {
-      session.setAssumedElementType(assumedElementType.getName());
+    try {
+      if (assumedElementType != null) {
+        session.setAssumedElementType(assumedElementType.getName());
+      }
+      final Marshaller<Object> marshallerInstance = session.getMarshallerInstance(type.getName());
+      if (marshallerInstance == null) {
+        throw new RuntimeException("No marshaller for type: " + type.getName());
+      }
+
+      return (T) marshallerInstance.demarshall(parsedValue, session);
     }
-    final Marshaller<Object> marshallerInstance = session.getMarshallerInstance(type.getName());
-    if (marshallerInstance == null) {
-      throw new RuntimeException("No marshaller for type: " + type.getName());
+    finally {
+      MarshallingSessionProviderFactory.release(session);
     }
-
-    return (T) marshallerInstance.demarshall(parsedValue, session);
   }
 
   /**
@@ -297,14 +318,19 @@ public abstract class Marshalling {
       final Class<?> assumedMapValueType) {
     final EJValue parsedValue = ParserFactory.get().parse(json);
     final MarshallingSession session = MarshallingSessionProviderFactory.getDecoding();
-    session.setAssumedMapKeyType(assumedMapKeyType.getName());
-    session.setAssumedMapValueType(assumedMapValueType.getName());
+    try {
+      session.setAssumedMapKeyType(assumedMapKeyType.getName());
+      session.setAssumedMapValueType(assumedMapValueType.getName());
 
-    final Marshaller<Object> marshallerInstance = session.getMarshallerInstance(type.getName());
-    if (marshallerInstance == null) {
-      throw new RuntimeException("No marshaller for type: " + type.getName());
+      final Marshaller<Object> marshallerInstance = session.getMarshallerInstance(type.getName());
+      if (marshallerInstance == null) {
+        throw new RuntimeException("No marshaller for type: " + type.getName());
+      }
+      return (T) marshallerInstance.demarshall(parsedValue, session);
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
     }
-    return (T) marshallerInstance.demarshall(parsedValue, session);
   }
 
   /**
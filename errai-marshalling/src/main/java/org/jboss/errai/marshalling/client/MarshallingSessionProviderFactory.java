@@ -47,4 +47,12 @@ public class MarshallingSessionProviderFactory {
   public static MarshallingSession getDecoding() {
     return sessionProvider.getDecoding();
   }
+
+  /**
+   * Hands a session obtained from {@link #getEncoding()} or {@link #getDecoding()} back to the provider. The session
+   * must not be used afterwards.
+   */
+  public static void release(final MarshallingSession session) {
+    sessionProvider.release(session);
+  }
 }
@@ -16,8 +16,8 @@
 
 package org.jboss.errai.marshalling.client.api;
 
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.IdentityHashMap;
 import java.util.Map;
 
 import org.jboss.errai.common.client.api.Assert;
@@ -25,13 +25,36 @@ import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.client.util.MarshallUtil;
 
 /**
+ * Tracks the objects of a marshalled graph without allocating per object: references are mapped to their IDs in an
+ * open-addressing identity table, the objects of numeric IDs are kept in an array indexed by the ID, and the
+ * {@link String}s of the IDs are shared by all sessions. Only IDs which are not small positive numbers are kept in a
+ * map. A session can be {@link #reset()} and used again for the next message.
+ *
  * @author Mike Brock
  */
 public abstract class AbstractMarshallingSession implements MarshallingSession {
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Tables grown beyond this capacity by a large graph are dropped on {@link #reset()} rather than cleared and kept.
+   */
+  private static final int MAX_RETAINED_CAPACITY = 1 << 12;
+
+  private static final int MAX_CACHED_ID = 1 << 14;
+  private static String[] idStrings = new String[256];
+
   private final MappingContext context;
 
-  private final Map<Object, Integer> objects = new IdentityHashMap<Object, Integer>();
-  private final Map<String, Object> objectMap = new HashMap<String, Object>();
+  // references to their IDs, with linear probing. The table is at most half full.
+  private Object[] references = new Object[INITIAL_CAPACITY];
+  private int[] referenceIds = new int[INITIAL_CAPACITY];
+  private int referenceCount;
+
+  // recorded objects by numeric ID, and by any other ID.
+  private Object[] objectsById = new Object[INITIAL_CAPACITY];
+  private int maxObjectId;
+  private Map<String, Object> objectsByName;
+
   private String assumedElementType = null;
   private String assumedMapKeyType = null;
   private String assumedMapValueType = null;
@@ -81,38 +104,161 @@ public abstract class AbstractMarshallingSession implements MarshallingSession {
 
   @Override
   public boolean hasObject(final String hashCode) {
-    return objectMap.containsKey(hashCode);
+    return lookupObject(hashCode) != null;
   }
 
   @Override
   public boolean hasObject(final Object reference) {
-    return reference != null && objects.containsKey(reference);
+    return reference != null && references[indexOf(reference)] != null;
   }
 
   @Override
   public <T> T getObject(final Class<T> type, final String hashCode) {
-    return (T) objectMap.get(hashCode);
+    return (T) lookupObject(hashCode);
   }
 
   @Override
   public <T> T recordObject(final String hashCode, final T instance) {
     if ("-1".equals(hashCode)) return instance;
 
-    objectMap.put(hashCode, instance);
+    final int id = parseId(hashCode);
+    if (id > 0 && id < objectsById.length * 2) {
+      recordObject(id, instance);
+    }
+    else {
+      if (objectsByName == null) {
+        objectsByName = new HashMap<String, Object>();
+      }
+      objectsByName.put(hashCode, instance);
+    }
 
     return instance;
   }
 
   @Override
   public String getObject(final Object reference) {
-    Integer i = objects.get(reference);
+    int index = indexOf(reference);
+
+    if (references[index] == null) {
+      if ((referenceCount + 1) * 2 > references.length) {
+        growReferences();
+        index = indexOf(reference);
+      }
+      references[index] = reference;
+      referenceIds[index] = ++referenceCount;
+      recordObject(referenceCount, reference);
+    }
+
+    return idString(referenceIds[index]);
+  }
 
-    if (i == null) {
-      objects.put(reference, (i = objects.size() + 1));
-      recordObject(i.toString(), reference);
+  /**
+   * Forgets all objects of the marshalled graph and the assumed types, so that this session can be used again.
+   */
+  public void reset() {
+    if (references.length > MAX_RETAINED_CAPACITY) {
+      references = new Object[INITIAL_CAPACITY];
+      referenceIds = new int[INITIAL_CAPACITY];
     }
+    else if (referenceCount > 0) {
+      Arrays.fill(references, null);
+    }
+    referenceCount = 0;
 
-    return i.toString();
+    if (objectsById.length > MAX_RETAINED_CAPACITY) {
+      objectsById = new Object[INITIAL_CAPACITY];
+    }
+    else {
+      Arrays.fill(objectsById, 0, maxObjectId + 1, null);
+    }
+    maxObjectId = 0;
+    objectsByName = null;
+
+    resetAssumedTypes();
+  }
+
+  private Object lookupObject(final String hashCode) {
+    final int id = parseId(hashCode);
+    Object instance = (id > 0 && id < objectsById.length) ? objectsById[id] : null;
+    if (instance == null && objectsByName != null) {
+      instance = objectsByName.get(hashCode);
+    }
+    return instance;
+  }
+
+  private void recordObject(final int id, final Object instance) {
+    if (id >= objectsById.length) {
+      objectsById = Arrays.copyOf(objectsById, Math.max(id + 1, objectsById.length * 2));
+    }
+    objectsById[id] = instance;
+    if (id > maxObjectId) {
+      maxObjectId = id;
+    }
+  }
+
+  /**
+   * Returns the slot of the reference in the identity table, or the empty slot it would be put into.
+   */
+  private int indexOf(final Object reference) {
+    final int mask = references.length - 1;
+    final int hash = System.identityHashCode(reference);
+    int index = (hash ^ (hash >>> 16)) & mask;
+    Object key;
+    while ((key = references[index]) != null && key != reference) {
+      index = (index + 1) & mask;
+    }
+    return index;
+  }
+
+  private void growReferences() {
+    final Object[] oldReferences = references;
+    final int[] oldIds = referenceIds;
+    references = new Object[oldReferences.length * 2];
+    referenceIds = new int[oldReferences.length * 2];
+    for (int i = 0; i < oldReferences.length; i++) {
+      if (oldReferences[i] != null) {
+        final int index = indexOf(oldReferences[i]);
+        references[index] = oldReferences[i];
+        referenceIds[index] = oldIds[i];
+      }
+    }
+  }
+
+  /**
+   * Parses an ID written by {@link #getObject(Object)}.
+   *
+   * @return the ID, or -1 if it is not a positive number without leading zeros.
+   */
+  private static int parseId(final String hashCode) {
+    final int length = hashCode.length();
+    if (length == 0 || length > 9 || hashCode.charAt(0) == '0') {
+      return -1;
+    }
+    int id = 0;
+    for (int i = 0; i < length; i++) {
+      final char c = hashCode.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      id = id * 10 + (c - '0');
+    }
+    return id;
+  }
+
+  private static String idString(final int id) {
+    String[] cache = idStrings;
+    if (id >= cache.length) {
+      if (id >= MAX_CACHED_ID) {
+        return String.valueOf(id);
+      }
+      // a race between threads growing the cache only loses some cached strings.
+      idStrings = cache = Arrays.copyOf(cache, Math.min(MAX_CACHED_ID, Math.max(id + 1, cache.length * 2)));
+    }
+    String idString = cache[id];
+    if (idString == null) {
+      cache[id] = idString = String.valueOf(id);
+    }
+    return idString;
   }
 
   @Override
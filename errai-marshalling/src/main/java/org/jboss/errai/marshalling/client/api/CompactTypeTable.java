@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.client.api;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The table of marshallable types used by the {@link org.jboss.errai.marshalling.client.util.CompactEncoding}. Each
+ * type has a small integer ID, and the declared types of the fields of each type are known, so that objects of the
+ * declared type of the field they are assigned to need no type at all.
+ * <p/>
+ * The table is built from a description of the mappings of the
+ * {@link org.jboss.errai.marshalling.rebind.DefinitionsFactory} (see
+ * {@link org.jboss.errai.marshalling.rebind.util.MarshallingGenUtil#getTypeTableDescription}), which is generated into
+ * the {@link MarshallerFactory} of the client. Two tables only agree on the meaning of the IDs if their
+ * {@link #getHash() hashes} are equal.
+ * <p/>
+ * The description lists the types in order of their IDs, separated by {@code ;}. Each type is followed by the
+ * {@code |key=type} pairs of its fields.
+ */
+public final class CompactTypeTable {
+  private final String hash;
+  private final List<String> typeNames = new ArrayList<String>();
+  private final Map<String, Integer> typeIds = new HashMap<String, Integer>();
+  private final Map<String, Map<String, String>> fieldTypes = new HashMap<String, Map<String, String>>();
+
+  public CompactTypeTable(final String description) {
+    // the hash of a string is specified, so the client computes the same hash as the server.
+    this.hash = Integer.toHexString(description.hashCode()) + "-" + Integer.toHexString(description.length());
+
+    // ID 0 is reserved for objects without a type.
+    typeNames.add(null);
+
+    int start = 0;
+    while (start < description.length()) {
+      int end = description.indexOf(';', start);
+      if (end == -1) {
+        end = description.length();
+      }
+      addType(description.substring(start, end));
+      start = end + 1;
+    }
+  }
+
+  private void addType(final String entry) {
+    final String[] parts = entry.split("\\|");
+    final String typeName = parts[0];
+
+    typeIds.put(typeName, typeNames.size());
+    typeNames.add(typeName);
+
+    if (parts.length > 1) {
+      final Map<String, String> fields = new HashMap<String, String>();
+      for (int i = 1; i < parts.length; i++) {
+        final int eq = parts[i].indexOf('=');
+        fields.put(parts[i].substring(0, eq), parts[i].substring(eq + 1));
+      }
+      fieldTypes.put(typeName, fields);
+    }
+  }
+
+  /**
+   * Returns a hash of the description this table was built from.
+   */
+  public String getHash() {
+    return hash;
+  }
+
+  /**
+   * Returns the ID of the specified type, or 0 if it is not in the table.
+   */
+  public int getTypeId(final String typeName) {
+    final Integer id = typeIds.get(typeName);
+    return id == null ? 0 : id;
+  }
+
+  /**
+   * Returns the type with the specified ID.
+   */
+  public String getTypeName(final int typeId) {
+    if (typeId < 1 || typeId >= typeNames.size()) {
+      throw new RuntimeException("unknown type id: " + typeId);
+    }
+    return typeNames.get(typeId);
+  }
+
+  /**
+   * Returns the declared type of the field with the specified key, or null if the type or the field is not in the
+   * table.
+   */
+  public String getFieldType(final String typeName, final String key) {
+    final Map<String, String> fields = fieldTypes.get(typeName);
+    return fields == null ? null : fields.get(key);
+  }
+
+  public int size() {
+    return typeNames.size() - 1;
+  }
+}
@@ -40,4 +40,14 @@ public interface MarshallerFactory {
    *          the marshaller instance
    */
   void registerMarshaller(String fqcn, Marshaller<Object> marshaller);
+
+  /**
+   * Returns the description of the types this factory was generated for, which a {@link CompactTypeTable} is built
+   * from.
+   *
+   * @return the description, or null if this factory was not generated with one.
+   */
+  default String getTypeTable() {
+    return null;
+  }
 }
@@ -36,6 +36,7 @@ import com.google.gwt.json.client.JSONParser;
  */
 public class MarshallerFramework implements EntryPoint {
   private static MarshallerFactory marshallerFactory;
+  private static CompactTypeTable typeTable;
 
   static {
     InitVotes.waitFor(MarshallerFramework.class);
@@ -143,4 +144,15 @@ public class MarshallerFramework implements EntryPoint {
   public static MarshallerFactory getMarshallerFactory() {
     return marshallerFactory;
   }
+
+  /**
+   * Returns the table of the types the marshallers were generated for, or null if the generated marshaller factory
+   * has none.
+   */
+  public static CompactTypeTable getTypeTable() {
+    if (typeTable == null && marshallerFactory.getTypeTable() != null) {
+      typeTable = new CompactTypeTable(marshallerFactory.getTypeTable());
+    }
+    return typeTable;
+  }
 }
@@ -76,8 +76,16 @@ public class ErraiProtocolEnvelopeMarshaller implements Marshaller<Map<String, O
 
   @Override
   public String marshall(final Map<String, Object> o, final MarshallingSession ctx) {
-    final StringBuilder buf = new StringBuilder();
+    return marshall(o, ctx, new StringBuilder()).toString();
+  }
 
+  /**
+   * Appends the encoded envelope to the specified builder, so callers which can consume a {@link CharSequence} do not
+   * need to copy the payload into a {@link String} first.
+   *
+   * @return the specified builder.
+   */
+  public StringBuilder marshall(final Map<String, Object> o, final MarshallingSession ctx, final StringBuilder buf) {
     buf.append("{");
     Object key, val;
     int i = 0;
@@ -110,7 +118,7 @@ public class ErraiProtocolEnvelopeMarshaller implements Marshaller<Map<String, O
       }
     }
 
-    return buf.append("}").toString();
+    return buf.append("}");
   }
 
   @Override
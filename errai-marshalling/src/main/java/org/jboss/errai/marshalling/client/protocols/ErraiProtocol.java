@@ -17,6 +17,7 @@
 package org.jboss.errai.marshalling.client.protocols;
 
 import org.jboss.errai.marshalling.client.MarshallingSessionProviderFactory;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 import org.jboss.errai.marshalling.client.marshallers.ErraiProtocolEnvelopeMarshaller;
 
@@ -37,7 +38,13 @@ public class ErraiProtocol {
    * @return The encoded JSON
    */
   public static String encodePayload(final Map<String, Object> message) {
-    return protocolMarshaller.marshall(message, MarshallingSessionProviderFactory.getEncoding());
+    final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
+    try {
+      return protocolMarshaller.marshall(message, session);
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
   }
 
   /**
@@ -47,6 +54,12 @@ public class ErraiProtocol {
    * @return The decoded Map.
    */
   public static Map<String, Object> decodePayload(final EJValue value) {
-    return protocolMarshaller.demarshall(value, MarshallingSessionProviderFactory.getDecoding());
+    final MarshallingSession session = MarshallingSessionProviderFactory.getDecoding();
+    try {
+      return protocolMarshaller.demarshall(value, session);
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
   }
 }
@@ -28,4 +28,11 @@ public interface MarshallingSessionProvider {
   public boolean hasMarshaller(String fqcn);
   public Marshaller getMarshaller(String fqcn);
   public void registerMarshaller(String fqcn, Marshaller m);
+
+  /**
+   * Called when a session obtained from {@link #getEncoding()} or {@link #getDecoding()} is no longer used, so that
+   * providers which pool their sessions can reuse it.
+   */
+  public default void release(MarshallingSession session) {
+  }
 }
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.client.util;
+
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
+
+/**
+ * Rewrites the JSON written by the marshallers into a compact form, and back, using a {@link CompactTypeTable} both
+ * sides agreed on:
+ * <ul>
+ * <li>{@code "^EncodedType":"com.foo.Bar"} becomes {@code "^T":7}, the ID of the type in the table. Types which are
+ * not in the table keep their name.</li>
+ * <li>An object of the declared type of the field it is assigned to has no type member at all. An object without a
+ * type in such a field gets {@code "^T":0} instead, so that it is not mistaken for one.</li>
+ * <li>{@code "^ObjectID":"12"} becomes {@code "^I":12} within typed objects.</li>
+ * <li>Keys of the original which could be taken for these ({@code ^T}, {@code ^I} and keys starting with
+ * {@code ^^}) get another {@code ^} prepended.</li>
+ * </ul>
+ * The marshallers always write the {@value SerializationParts#ENCODED_TYPE} as the first member of an object, and
+ * the compact form keeps it there, so {@link #expand(String, CompactTypeTable)} restores exactly the original JSON
+ * (whitespace aside). JSON which was never compacted and has no such keys is left as it is.
+ */
+public final class CompactEncoding {
+  public static final String TYPE_ID = "^T";
+  public static final String OBJECT_ID = "^I";
+
+  private final String json;
+  private final CompactTypeTable table;
+  private final boolean compacting;
+  private final StringBuilder out;
+  private int pos;
+
+  private CompactEncoding(final String json, final CompactTypeTable table, final boolean compacting) {
+    this.json = json;
+    this.table = table;
+    this.compacting = compacting;
+    this.out = new StringBuilder(compacting ? json.length() / 2 : json.length() * 2);
+  }
+
+  /**
+   * Returns the compact form of the specified JSON.
+   */
+  public static String compact(final String json, final CompactTypeTable table) {
+    return new CompactEncoding(json, table, true).rewrite();
+  }
+
+  /**
+   * Returns the original JSON of the specified compact form.
+   */
+  public static String expand(final String json, final CompactTypeTable table) {
+    return new CompactEncoding(json, table, false).rewrite();
+  }
+
+  private String rewrite() {
+    value(null);
+    skipWhitespace();
+    if (pos != json.length()) {
+      throw new RuntimeException("unexpected input after JSON value at position " + pos);
+    }
+    return out.toString();
+  }
+
+  /**
+   * @param declaredType
+   *     the declared type of the field the value is assigned to, if it is a field of an object in the table.
+   */
+  private void value(final String declaredType) {
+    skipWhitespace();
+    switch (peek()) {
+      case '{':
+        object(declaredType);
+        break;
+
+      case '[':
+        array();
+        break;
+
+      case '"': {
+        final int start = pos;
+        skipString();
+        out.append(json, start, pos);
+        break;
+      }
+
+      default: {
+        final int start = pos;
+        skipLiteral();
+        out.append(json, start, pos);
+      }
+    }
+  }
+
+  private void array() {
+    pos++;
+    out.append('[');
+    skipWhitespace();
+    if (peek() == ']') {
+      pos++;
+      out.append(']');
+      return;
+    }
+
+    while (true) {
+      value(null);
+      skipWhitespace();
+      final char c = json.charAt(pos++);
+      out.append(c);
+      if (c == ']') {
+        return;
+      }
+      else if (c != ',') {
+        throw new RuntimeException("expected ',' or ']' at position " + (pos - 1));
+      }
+    }
+  }
+
+  private void object(final String declaredType) {
+    pos++;
+    out.append('{');
+
+    String key = nextKey(true);
+    String typeName = null;
+    boolean first = true;
+
+    if (compacting) {
+      if (SerializationParts.ENCODED_TYPE.equals(key) && peekAfterWhitespace() == '"') {
+        final int start = pos;
+        skipString();
+        typeName = json.substring(start + 1, pos - 1);
+
+        if (!typeName.equals(declaredType)) {
+          final int typeId = table.getTypeId(typeName);
+          if (typeId > 0) {
+            member(TYPE_ID).append(typeId);
+          }
+          else {
+            member(SerializationParts.ENCODED_TYPE).append(json, start, pos);
+            typeName = null;
+          }
+          first = false;
+        }
+        key = nextKey(false);
+      }
+      else if (declaredType != null) {
+        member(TYPE_ID).append('0');
+        first = false;
+      }
+    }
+    else {
+      if (TYPE_ID.equals(key) && peekAfterWhitespace() != '"') {
+        final int typeId = Integer.parseInt(readLiteral());
+        if (typeId > 0) {
+          typeName = table.getTypeName(typeId);
+          member(SerializationParts.ENCODED_TYPE).append('"').append(typeName).append('"');
+          first = false;
+        }
+        key = nextKey(false);
+      }
+      else if (declaredType != null && !SerializationParts.ENCODED_TYPE.equals(key)) {
+        // an object of a type which is not in the table keeps its type even in a field.
+        typeName = declaredType;
+        member(SerializationParts.ENCODED_TYPE).append('"').append(typeName).append('"');
+        first = false;
+      }
+    }
+
+    while (key != null) {
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+
+      if (typeName != null && compacting && SerializationParts.OBJECT_ID.equals(key) && isNumericString()) {
+        final int start = pos;
+        skipString();
+        member(OBJECT_ID).append(json, start + 1, pos - 1);
+      }
+      else if (typeName != null && !compacting && OBJECT_ID.equals(key) && peekAfterWhitespace() != '"') {
+        member(SerializationParts.OBJECT_ID).append('"').append(readLiteral()).append('"');
+      }
+      else {
+        member(escapeKey(key));
+        value(typeName != null && !key.startsWith("^") ? table.getFieldType(typeName, key) : null);
+      }
+      key = nextKey(false);
+    }
+
+    out.append('}');
+  }
+
+  private StringBuilder member(final String key) {
+    return out.append('"').append(key).append("\":");
+  }
+
+  private String escapeKey(final String key) {
+    if (compacting) {
+      if (key.startsWith("^^") || TYPE_ID.equals(key) || OBJECT_ID.equals(key)) {
+        return "^" + key;
+      }
+    }
+    else if (key.startsWith("^^")) {
+      return key.substring(1);
+    }
+    return key;
+  }
+
+  /**
+   * Reads the next key of an object and the colon after it, or the closing brace if there are no more members.
+   * The key is returned as it appears in the JSON, escape sequences included.
+   *
+   * @return the key, or null if the object was closed.
+   */
+  private String nextKey(final boolean first) {
+    skipWhitespace();
+    char c = json.charAt(pos++);
+    if (c == '}') {
+      return null;
+    }
+
+    if (!first) {
+      if (c != ',') {
+        throw new RuntimeException("expected ',' or '}' at position " + (pos - 1));
+      }
+      skipWhitespace();
+      c = json.charAt(pos++);
+    }
+
+    if (c != '"') {
+      throw new RuntimeException("expected key at position " + (pos - 1));
+    }
+    final int start = --pos;
+    skipString();
+    final String key = json.substring(start + 1, pos - 1);
+
+    skipWhitespace();
+    if (json.charAt(pos++) != ':') {
+      throw new RuntimeException("expected ':' at position " + (pos - 1));
+    }
+    return key;
+  }
+
+  /**
+   * Returns true if the value at the current position is a string holding an integer in its canonical form, so
+   * that it can be written as a number and read back as the same string.
+   */
+  private boolean isNumericString() {
+    if (peekAfterWhitespace() != '"') {
+      return false;
+    }
+
+    int i = pos + 1;
+    if (i < json.length() && json.charAt(i) == '-') {
+      i++;
+    }
+    final int digits = i;
+    while (i < json.length() && json.charAt(i) >= '0' && json.charAt(i) <= '9') {
+      i++;
+    }
+
+    final int count = i - digits;
+    return i < json.length() && json.charAt(i) == '"' && count > 0 && count < 16
+        && (json.charAt(digits) != '0' || (count == 1 && digits == pos + 1));
+  }
+
+  private String readLiteral() {
+    skipWhitespace();
+    final int start = pos;
+    skipLiteral();
+    return json.substring(start, pos);
+  }
+
+  private void skipString() {
+    pos++;
+    while (true) {
+      final char c = json.charAt(pos++);
+      if (c == '"') {
+        return;
+      }
+      else if (c == '\\') {
+        pos++;
+      }
+    }
+  }
+
+  private void skipLiteral() {
+    final int start = pos;
+    while (pos < json.length()) {
+      final char c = json.charAt(pos);
+      if (c == ',' || c == '}' || c == ']' || isWhitespace(c)) {
+        break;
+      }
+      pos++;
+    }
+    if (pos == start) {
+      throw new RuntimeException("expected value at position " + pos);
+    }
+  }
+
+  private char peek() {
+    if (pos >= json.length()) {
+      throw new RuntimeException("unexpected end of JSON input");
+    }
+    return json.charAt(pos);
+  }
+
+  private char peekAfterWhitespace() {
+    skipWhitespace();
+    return peek();
+  }
+
+  private void skipWhitespace() {
+    while (pos < json.length() && isWhitespace(json.charAt(pos))) {
+      pos++;
+    }
+  }
+
+  private static boolean isWhitespace(final char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+  }
+}
@@ -223,6 +223,15 @@ public class MarshallerGeneratorFactory {
         .append(Stmt.loadVariable(MARSHALLERS_VAR).invoke("put", Stmt.loadVariable("a0"), Stmt.loadVariable("a1")))
         .finish();
 
+    // the description grows with the number of portable types, so it is only compiled into a client which can use
+    // the compact encoding of the WebSocket transport.
+    if (target == MarshallerOutputTarget.Java || CommonConfigAttribs.MAKE_TYPE_TABLE.getBoolean()) {
+      classStructureBuilder.publicMethod(String.class, "getTypeTable")
+          .append(Stmt.loadLiteral(MarshallingGenUtil.getTypeTableDescription(mappingContext.getDefinitionsFactory()))
+              .returnValue())
+          .finish();
+    }
+
     done = true;
     if (target == MarshallerOutputTarget.GWT) {
       refresh = true;
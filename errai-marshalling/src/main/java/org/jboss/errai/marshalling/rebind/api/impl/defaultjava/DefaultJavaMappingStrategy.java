@@ -89,6 +89,14 @@ public class DefaultJavaMappingStrategy implements MappingStrategy {
     this.toMap = toMap;
   }
 
+  /**
+   * Server marshallers reach private members through method handles, which the JIT can inline, rather than through
+   * {@link java.lang.reflect.Field} and {@link java.lang.reflect.Method} calls.
+   */
+  private String getPrivateAccessorType() {
+    return gwtTarget ? "jsni" : "methodhandle";
+  }
+
   @Override
   public ObjectMapper getMapper() {
     return generateJavaBeanMapper();
@@ -234,7 +242,7 @@ public class DefaultJavaMappingStrategy implements MappingStrategy {
                             Stmt.newObject(toMap, (Object[]) constructorParameters)));
               }
               else {
-                PrivateAccessUtil.addPrivateAccessStubs(gwtTarget ? "jsni" : "reflection", classStructureBuilder,
+                PrivateAccessUtil.addPrivateAccessStubs(getPrivateAccessorType(), classStructureBuilder,
                     constructor);
                 builder.append(Stmt.declareVariable(toMap).named("entity")
                     .initializeWith(
@@ -335,7 +343,7 @@ public class DefaultJavaMappingStrategy implements MappingStrategy {
               }
               else {
                 if (!context.isExposed(field, classStructureBuilder.getClassDefinition().getName())) {
-                  PrivateAccessUtil.addPrivateAccessStubs(gwtTarget ? "jsni" : "reflection", classStructureBuilder,
+                  PrivateAccessUtil.addPrivateAccessStubs(getPrivateAccessorType(), classStructureBuilder,
                       field);
                   context.markExposed(field, classStructureBuilder.getClassDefinition().getName());
                 }
@@ -608,7 +616,7 @@ public class DefaultJavaMappingStrategy implements MappingStrategy {
         }
         else {
           if (!context.isExposed(field, classStructureBuilder.getClassDefinition().getName())) {
-            PrivateAccessUtil.addPrivateAccessStubs(gwtTarget ? "jsni" : "reflection", classStructureBuilder, field);
+            PrivateAccessUtil.addPrivateAccessStubs(getPrivateAccessorType(), classStructureBuilder, field);
             context.markExposed(field, classStructureBuilder.getClassDefinition().getName());
           }
 
@@ -625,7 +633,7 @@ public class DefaultJavaMappingStrategy implements MappingStrategy {
       final MetaMethod method = (MetaMethod) member;
       if (!method.isPublic()) {
         if (!context.isExposed(method, classStructureBuilder.getClassDefinition().getName())) {
-          PrivateAccessUtil.addPrivateAccessStubs(gwtTarget ? "jsni" : "reflection", classStructureBuilder, method);
+          PrivateAccessUtil.addPrivateAccessStubs(getPrivateAccessorType(), classStructureBuilder, method);
           context.markExposed(method, classStructureBuilder.getClassDefinition().getName());
         }
 
@@ -24,6 +24,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 import org.apache.commons.lang3.StringUtils;
 import org.jboss.errai.codegen.Statement;
@@ -40,6 +41,9 @@ import org.jboss.errai.codegen.util.Stmt;
 import org.jboss.errai.config.rebind.EnvUtil;
 import org.jboss.errai.marshalling.client.Marshalling;
 import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
+import org.jboss.errai.marshalling.rebind.api.model.MemberMapping;
 
 /**
  * @author Mike Brock <cbrock@redhat.com>
@@ -226,6 +230,42 @@ public class MarshallingGenUtil {
     return Collections.unmodifiableCollection(l);
   }
 
+  /**
+   * Returns the description of the exposed types of the specified factory which a
+   * {@link org.jboss.errai.marshalling.client.api.CompactTypeTable} is built from. The types, and the fields of each
+   * type, are sorted by name, so that the client and the server describe the same mappings the same way.
+   */
+  public static String getTypeTableDescription(final DefinitionsFactory definitionsFactory) {
+    final Map<String, MappingDefinition> definitions = new TreeMap<>();
+    for (final MetaClass cls : definitionsFactory.getExposedClasses()) {
+      final MappingDefinition definition = definitionsFactory.getDefinition(cls);
+      if (!cls.isArray() && definition != null) {
+        definitions.put(cls.getFullyQualifiedName(), definition);
+      }
+    }
+
+    final StringBuilder buf = new StringBuilder();
+    for (final Map.Entry<String, MappingDefinition> entry : definitions.entrySet()) {
+      if (buf.length() > 0) {
+        buf.append(';');
+      }
+      buf.append(entry.getKey());
+
+      final Map<String, String> fields = new TreeMap<>();
+      for (final MemberMapping mapping : entry.getValue().getReadableMemberMappings()) {
+        final MetaClass type = mapping.getType();
+        final String key = mapping.getKey();
+        if (type != null && !type.isPrimitive() && StringUtils.containsNone(key, "|;=")) {
+          fields.put(key, type.getErased().getFullyQualifiedName());
+        }
+      }
+      for (final Map.Entry<String, String> field : fields.entrySet()) {
+        buf.append('|').append(field.getKey()).append('=').append(field.getValue());
+      }
+    }
+    return buf.toString();
+  }
+
   public static boolean isUseStaticMarshallers() {
     if (isForceStaticMarshallers())
       return true;
@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.server.json.impl.ErraiJSONValue;
+
+/**
+ * A JSON parser working directly on UTF-8 encoded bytes. It accepts the same input as the {@link JSONStreamDecoder}
+ * and produces the same trees, but reads the whole payload into one reusable buffer rather than through a reader, and
+ * avoids most per-value allocations on the way:
+ * <ul>
+ * <li>Strings made of ASCII characters only are created straight from the bytes.</li>
+ * <li>Object keys and the values of {@value SerializationParts#ENCODED_TYPE} are looked up in a small cache, so that
+ * the part names and class names repeated in every message share one instance.</li>
+ * <li>Numbers are computed from their digits. Only numbers which cannot be converted exactly that way are passed to
+ * {@link Double#parseDouble(String)}.</li>
+ * </ul>
+ * A decoder can be reused for any number of payloads, but not concurrently. {@link #decode(InputStream)} uses one
+ * decoder per thread.
+ */
+public class JSONByteDecoder {
+  private static final int INITIAL_BUFFER_SIZE = 1024 * 8;
+
+  /**
+   * Buffers which grew beyond this many bytes are not kept for the next payload.
+   */
+  private static final int MAX_RETAINED_BUFFER = 1024 * 512;
+
+  private static final int KEY_CACHE_SIZE = 512;
+  private static final int MAX_CACHED_KEY_LENGTH = 64;
+
+  private static final int SMALL_INTEGER_MIN = -128;
+  private static final int SMALL_INTEGER_MAX = 1024;
+  private static final Double[] SMALL_INTEGERS = new Double[SMALL_INTEGER_MAX - SMALL_INTEGER_MIN + 1];
+
+  // the powers of ten which are exact doubles.
+  private static final double[] POWERS_OF_TEN = new double[23];
+
+  // mantissas below this are exact doubles.
+  private static final long MAX_EXACT_MANTISSA = 1L << 53;
+
+  static {
+    for (int i = 0; i < SMALL_INTEGERS.length; i++) {
+      SMALL_INTEGERS[i] = (double) (i + SMALL_INTEGER_MIN);
+    }
+    POWERS_OF_TEN[0] = 1;
+    for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+      POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+    }
+  }
+
+  private static final ThreadLocal<JSONByteDecoder> decoders = new ThreadLocal<JSONByteDecoder>() {
+    @Override
+    protected JSONByteDecoder initialValue() {
+      return new JSONByteDecoder();
+    }
+  };
+
+  private byte[] buffer = new byte[INITIAL_BUFFER_SIZE];
+  private char[] chars = new char[256];
+  private final String[] keyCache = new String[KEY_CACHE_SIZE];
+
+  private byte[] in;
+  private int pos;
+  private int limit;
+
+  /**
+   * Decodes the UTF-8 encoded JSON payload of the specified stream, reading it to the end.
+   */
+  public static EJValue decode(final InputStream inStream) throws IOException {
+    return decoders.get().parse(inStream);
+  }
+
+  /**
+   * Decodes the UTF-8 encoded JSON payload between the position and the limit of the specified buffer.
+   */
+  public static EJValue decode(final ByteBuffer utf8) {
+    return decoders.get().parse(utf8);
+  }
+
+  /**
+   * Decodes the UTF-8 encoded JSON payload of the specified stream, reading it to the end.
+   */
+  public EJValue parse(final InputStream inStream) throws IOException {
+    final int length = readFully(inStream);
+    try {
+      return parse(buffer, 0, length);
+    }
+    finally {
+      if (buffer.length > MAX_RETAINED_BUFFER) {
+        buffer = new byte[INITIAL_BUFFER_SIZE];
+      }
+    }
+  }
+
+  /**
+   * Decodes the UTF-8 encoded JSON payload between the position and the limit of the specified buffer, and advances
+   * its position to the limit. This decoder keeps no reference to the buffer afterwards.
+   */
+  public EJValue parse(final ByteBuffer utf8) {
+    final int length = utf8.remaining();
+    if (utf8.hasArray()) {
+      final EJValue value = parse(utf8.array(), utf8.arrayOffset() + utf8.position(), length);
+      utf8.position(utf8.limit());
+      return value;
+    }
+
+    if (buffer.length < length) {
+      buffer = new byte[Math.max(length, buffer.length * 2)];
+    }
+    utf8.get(buffer, 0, length);
+    try {
+      return parse(buffer, 0, length);
+    }
+    finally {
+      if (buffer.length > MAX_RETAINED_BUFFER) {
+        buffer = new byte[INITIAL_BUFFER_SIZE];
+      }
+    }
+  }
+
+  /**
+   * Decodes the UTF-8 encoded JSON payload in the specified range of the array. The outer value must be an object,
+   * an array or a string.
+   */
+  public EJValue parse(final byte[] utf8, final int offset, final int length) {
+    reset(utf8, offset, length);
+    try {
+      if (!skipWhitespace()) {
+        return new ErraiJSONValue(null);
+      }
+      final Object value = parseValue(false);
+      if (!(value instanceof List || value instanceof Map || value instanceof String)) {
+        throw new RuntimeException("expected list or map but found: "
+            + (value == null ? null : value.getClass().getName()));
+      }
+      return new ErraiJSONValue(value);
+    }
+    finally {
+      this.in = null;
+      if (chars.length > MAX_RETAINED_BUFFER) {
+        chars = new char[256];
+      }
+    }
+  }
+
+  /**
+   * Reads the specified stream to the end into the buffer of this decoder.
+   *
+   * @return the number of bytes read.
+   */
+  int readFully(final InputStream inStream) throws IOException {
+    int length = 0;
+    int read;
+    while ((read = inStream.read(buffer, length, buffer.length - length)) != -1) {
+      length += read;
+      if (length == buffer.length) {
+        final byte[] grown = new byte[buffer.length * 2];
+        System.arraycopy(buffer, 0, grown, 0, length);
+        buffer = grown;
+      }
+    }
+    return length;
+  }
+
+  /**
+   * Returns the buffer filled by {@link #readFully(InputStream)}.
+   */
+  byte[] getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Sets the input to the specified range of the array, for the {@link JSONPullParser} which drives this decoder
+   * through the package-private methods below.
+   */
+  void reset(final byte[] utf8, final int offset, final int length) {
+    this.in = utf8;
+    this.pos = offset;
+    this.limit = offset + length;
+  }
+
+  /**
+   * Returns the next byte of the input without consuming it. Only valid after {@link #skipWhitespace()} returned true.
+   */
+  byte peek() {
+    return in[pos];
+  }
+
+  /**
+   * Consumes the next byte of the input.
+   */
+  void skip() {
+    pos++;
+  }
+
+  /**
+   * Skips whitespace, and returns false if the end of the input has been reached.
+   */
+  boolean skipWhitespace() {
+    while (pos < limit) {
+      switch (in[pos]) {
+        case ' ':
+        case '\t':
+        case '\r':
+        case '\n':
+          pos++;
+          break;
+        default:
+          return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Parses the value starting at the next byte, which must not be whitespace. Strings are taken from the key cache if
+   * cached is true.
+   */
+  Object parseValue(final boolean cached) {
+    final byte c = in[pos];
+    switch (c) {
+      case '{':
+        pos++;
+        return parseObject(new LinkedHashMap<Object, Object>());
+      case '[':
+        pos++;
+        return parseArray();
+      case '"':
+      case '\'':
+        pos++;
+        return parseString(c, cached);
+      case '-':
+      case '.':
+      case '0':
+      case '1':
+      case '2':
+      case '3':
+      case '4':
+      case '5':
+      case '6':
+      case '7':
+      case '8':
+      case '9':
+        return parseNumber();
+      default:
+        return parseIdentifier();
+    }
+  }
+
+  /**
+   * Parses the members of an object into the specified map, up to and including the closing brace. The opening brace
+   * and any members before must have been consumed already.
+   */
+  Map<Object, Object> parseObject(final Map<Object, Object> map) {
+    while (true) {
+      if (!skipWhitespace()) {
+        return map;
+      }
+      if (in[pos] == '}') {
+        pos++;
+        return map;
+      }
+      if (in[pos] == ',') {
+        pos++;
+        continue;
+      }
+
+      final Object key = parseValue(true);
+      if (skipWhitespace() && in[pos] == ':') {
+        pos++;
+      }
+
+      Object value = null;
+      if (skipWhitespace() && in[pos] != ',' && in[pos] != '}') {
+        value = parseValue(SerializationParts.ENCODED_TYPE.equals(key));
+      }
+      if (key != null) {
+        map.put(key, value);
+      }
+    }
+  }
+
+  /**
+   * Parses the elements of an array, up to and including the closing bracket. The opening bracket must have been
+   * consumed already.
+   */
+  List<Object> parseArray() {
+    final List<Object> list = new ArrayList<Object>();
+    while (true) {
+      if (!skipWhitespace()) {
+        return list;
+      }
+      if (in[pos] == ']') {
+        pos++;
+        return list;
+      }
+      if (in[pos] == ',') {
+        pos++;
+        continue;
+      }
+      list.add(parseValue(false));
+    }
+  }
+
+  private String parseString(final byte quote, final boolean cached) {
+    final int start = pos;
+
+    // the fast path: ASCII characters without escapes.
+    while (pos < limit) {
+      final byte b = in[pos];
+      if (b == quote) {
+        final int length = pos - start;
+        pos++;
+        return cached && length <= MAX_CACHED_KEY_LENGTH
+            ? cachedString(start, length)
+            : new String(in, start, length, StandardCharsets.ISO_8859_1);
+      }
+      if (b == '\\' || b < 0) {
+        break;
+      }
+      pos++;
+    }
+
+    int length = pos - start;
+    ensureChars(length + 16);
+    for (int i = 0; i < length; i++) {
+      chars[i] = (char) in[start + i];
+    }
+
+    while (pos < limit) {
+      final int b = in[pos++];
+      if (b == quote) {
+        return new String(chars, 0, length);
+      }
+
+      ensureChars(length + 2);
+      if (b == '\\') {
+        chars[length++] = parseEscapeSequence();
+      }
+      else if (b >= 0) {
+        chars[length++] = (char) b;
+      }
+      else {
+        length = decodeUtf8(b & 0xFF, length);
+      }
+    }
+    throw new RuntimeException("unterminated string literal");
+  }
+
+  /**
+   * Returns the cached instance of the specified ASCII string, or creates and caches it.
+   */
+  private String cachedString(final int start, final int length) {
+    int hash = 0;
+    for (int i = start; i < start + length; i++) {
+      hash = 31 * hash + in[i];
+    }
+
+    // the hash equals String.hashCode() for ASCII strings, so the slot of a string is the same either way.
+    final int slot = (hash ^ (hash >>> 16)) & (KEY_CACHE_SIZE - 1);
+    final String cached = keyCache[slot];
+    if (cached != null && cached.length() == length && cached.hashCode() == hash) {
+      int i = 0;
+      while (i < length && cached.charAt(i) == in[start + i]) {
+        i++;
+      }
+      if (i == length) {
+        return cached;
+      }
+    }
+
+    return keyCache[slot] = new String(in, start, length, StandardCharsets.ISO_8859_1);
+  }
+
+  private char parseEscapeSequence() {
+    if (pos == limit) {
+      throw new RuntimeException("unterminated string literal");
+    }
+    final byte c = in[pos++];
+    switch (c) {
+      case '\\':
+        return '\\';
+      case '/':
+        return '/';
+      case 'b':
+        return '\b';
+      case 'f':
+        return '\f';
+      case 't':
+        return '\t';
+      case 'r':
+        return '\r';
+      case 'n':
+        return '\n';
+      case '\'':
+        return '\'';
+      case '"':
+        return '\"';
+      case 'u':
+        if (limit - pos < 4) {
+          throw new RuntimeException("illegal unicode escape sequence: expected 4 hex characters after \\u");
+        }
+        int value = 0;
+        for (int i = 0; i < 4; i++) {
+          final int digit = Character.digit(in[pos++], 16);
+          if (digit == -1) {
+            throw new RuntimeException("illegal unicode escape sequence: expected 4 hex characters after \\u");
+          }
+          value = (value << 4) | digit;
+        }
+        return (char) value;
+      default:
+        throw new RuntimeException("illegal escape sequence: " + (char) c);
+    }
+  }
+
+  /**
+   * Decodes the UTF-8 sequence starting with the specified byte into the character buffer. Characters outside the
+   * basic multilingual plane become two surrogates, and malformed input becomes U+FFFD.
+   *
+   * @return the new length of the character buffer.
+   */
+  private int decodeUtf8(final int b, int length) {
+    if ((b & 0xE0) == 0xC0) {
+      chars[length++] = (char) (((b & 0x1F) << 6) | continuation());
+    }
+    else if ((b & 0xF0) == 0xE0) {
+      chars[length++] = (char) (((b & 0x0F) << 12) | (continuation() << 6) | continuation());
+    }
+    else if ((b & 0xF8) == 0xF0) {
+      final int codePoint = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+      if (Character.isSupplementaryCodePoint(codePoint)) {
+        chars[length++] = Character.highSurrogate(codePoint);
+        chars[length++] = Character.lowSurrogate(codePoint);
+      }
+      else {
+        chars[length++] = '\uFFFD';
+      }
+    }
+    else {
+      chars[length++] = '\uFFFD';
+    }
+    return length;
+  }
+
+  private int continuation() {
+    return pos < limit ? in[pos++] & 0x3F : 0;
+  }
+
+  private void ensureChars(final int length) {
+    if (length > chars.length) {
+      final char[] grown = new char[Math.max(length, chars.length * 2)];
+      System.arraycopy(chars, 0, grown, 0, chars.length);
+      chars = grown;
+    }
+  }
+
+  /**
+   * Parses a JSON number (see {@link JSONStreamDecoder}). Integers and short decimals are computed from their digits,
+   * which gives the same result as {@link Double#parseDouble(String)} as long as the mantissa and the power of ten
+   * are both exact doubles.
+   */
+  private Double parseNumber() {
+    final int start = pos;
+
+    final boolean negative = in[pos] == '-';
+    if (negative) {
+      pos++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int fractionDigits = 0;
+    int exponent = 0;
+    boolean fraction = false;
+    boolean hasExponent = false;
+
+    if (pos == limit || !isDigit(in[pos])) {
+      throw new NumberFormatException("Found '" + (pos == limit ? "" : (char) in[pos])
+          + "' but expected '-' or a digit 1-9");
+    }
+
+    while (pos < limit) {
+      final byte c = in[pos];
+      if (isDigit(c)) {
+        if (digits < 18) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (mantissa != 0) {
+            digits++;
+          }
+          if (fraction) {
+            fractionDigits++;
+          }
+        }
+        else {
+          // too many digits for the fast path.
+          digits++;
+        }
+        pos++;
+      }
+      else if (c == '.' && !fraction && !hasExponent) {
+        fraction = true;
+        pos++;
+      }
+      else if ((c == 'e' || c == 'E') && !hasExponent) {
+        hasExponent = true;
+        pos++;
+        boolean negativeExponent = false;
+        if (pos < limit && (in[pos] == '-' || in[pos] == '+')) {
+          negativeExponent = in[pos] == '-';
+          pos++;
+        }
+        if (pos == limit || !isDigit(in[pos])) {
+          throw new NumberFormatException("The numeric literal \""
+              + new String(in, start, pos - start, StandardCharsets.ISO_8859_1)
+              + "\" is malformed (can't end with e or E)");
+        }
+        while (pos < limit && isDigit(in[pos])) {
+          if (exponent < 10000) {
+            exponent = exponent * 10 + (in[pos] - '0');
+          }
+          pos++;
+        }
+        if (negativeExponent) {
+          exponent = -exponent;
+        }
+      }
+      else {
+        break;
+      }
+    }
+
+    if (mantissa == 0) {
+      return negative ? -0.0 : SMALL_INTEGERS[-SMALL_INTEGER_MIN];
+    }
+
+    final int scale = exponent - fractionDigits;
+    if (digits <= 18 && mantissa < MAX_EXACT_MANTISSA && scale >= -22 && scale <= 22) {
+      if (scale == 0) {
+        final long value = negative ? -mantissa : mantissa;
+        if (value >= SMALL_INTEGER_MIN && value <= SMALL_INTEGER_MAX) {
+          return SMALL_INTEGERS[(int) value - SMALL_INTEGER_MIN];
+        }
+        return (double) value;
+      }
+      final double value = scale > 0 ? mantissa * POWERS_OF_TEN[scale] : mantissa / POWERS_OF_TEN[-scale];
+      return negative ? -value : value;
+    }
+
+    return Double.parseDouble(new String(in, start, pos - start, StandardCharsets.ISO_8859_1));
+  }
+
+  private static boolean isDigit(final byte c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private Object parseIdentifier() {
+    final int start = pos;
+    while (pos < limit && isIdentifierPart(in[pos])) {
+      pos++;
+    }
+
+    final int length = pos - start;
+    if (length == 0) {
+      throw new RuntimeException("unexpected character in JSON input at offset " + pos + ": " + (char) in[pos]);
+    }
+    if (length == 4 && in[start] == 'n' && in[start + 1] == 'u' && in[start + 2] == 'l' && in[start + 3] == 'l') {
+      return null;
+    }
+    if (length == 4 && in[start] == 't' && in[start + 1] == 'r' && in[start + 2] == 'u' && in[start + 3] == 'e') {
+      return Boolean.TRUE;
+    }
+    if (length == 5 && in[start] == 'f' && in[start + 1] == 'a' && in[start + 2] == 'l' && in[start + 3] == 's'
+        && in[start + 4] == 'e') {
+      return Boolean.FALSE;
+    }
+    return new String(in, start, length, StandardCharsets.ISO_8859_1);
+  }
+
+  private static boolean isIdentifierPart(final byte c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_' || c == '$';
+  }
+}
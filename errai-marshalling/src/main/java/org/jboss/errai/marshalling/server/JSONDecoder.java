@@ -16,8 +16,7 @@
 
 package org.jboss.errai.marshalling.server;
 
-import java.io.ByteArrayInputStream;
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 
 import org.jboss.errai.marshalling.client.api.json.EJValue;
 
@@ -26,10 +25,7 @@ import org.jboss.errai.marshalling.client.api.json.EJValue;
  */
 public class JSONDecoder {
   public static EJValue decode(final String o) {
-    try {
-      return new JSONStreamDecoder(new ByteArrayInputStream(o.getBytes("UTF-8"))).parse();
-    } catch (UnsupportedEncodingException e) {
-      throw new AssertionError("UTF-8 not supported by this JRE?");
-    }
+    final byte[] utf8 = o.getBytes(StandardCharsets.UTF_8);
+    return new JSONByteDecoder().parse(utf8, 0, utf8.length);
   }
 }
@@ -0,0 +1,243 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.server.json.impl.ErraiJSONValue;
+
+/**
+ * Reads a UTF-8 encoded JSON payload one token at a time, so that it can be demarshalled without building the
+ * complete tree of {@link EJValue}s first (see {@link StreamingDemarshaller}). Parts of the payload which still need
+ * a tree can be read with {@link #readValue()} and {@link #readRemainingObject(Map)}.
+ * <p/>
+ * Commas and colons are consumed implicitly. The parser accepts the same input as the {@link JSONByteDecoder}, and
+ * caches object keys and the values of {@value SerializationParts#ENCODED_TYPE} the same way.
+ * <p/>
+ * Instances are not thread-safe.
+ */
+public class JSONPullParser {
+  public enum Token {
+    START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY, STRING, NUMBER, BOOLEAN, NULL,
+
+    /**
+     * The end of the payload.
+     */
+    END
+  }
+
+  private final JSONByteDecoder lexer = new JSONByteDecoder();
+
+  // for each open container: whether it is an object, and whether an object expects a key next.
+  private boolean[] objects = new boolean[32];
+  private boolean[] expectKey = new boolean[32];
+  private int depth;
+
+  private boolean encodedTypeValue;
+
+  private Token token;
+  private Object value;
+
+  /**
+   * Creates a parser for the UTF-8 encoded JSON payload of the specified stream, which is read to the end right away.
+   */
+  public JSONPullParser(final InputStream inStream) throws IOException {
+    final int length = lexer.readFully(inStream);
+    lexer.reset(lexer.getBuffer(), 0, length);
+  }
+
+  /**
+   * Creates a parser for the UTF-8 encoded JSON payload in the specified range of the array.
+   */
+  public JSONPullParser(final byte[] utf8, final int offset, final int length) {
+    lexer.reset(utf8, offset, length);
+  }
+
+  /**
+   * Advances to the next token.
+   *
+   * @return the new current token.
+   */
+  public Token next() {
+    value = null;
+
+    if (!skipSeparators()) {
+      if (depth != 0) {
+        throw new RuntimeException("unexpected end of JSON input");
+      }
+      return token = Token.END;
+    }
+
+    final byte c = lexer.peek();
+    if (c == '}' || c == ']') {
+      if (depth == 0 || objects[depth - 1] != (c == '}')) {
+        throw new RuntimeException("unexpected character in JSON input: " + (char) c);
+      }
+      lexer.skip();
+      depth--;
+      return token = (c == '}' ? Token.END_OBJECT : Token.END_ARRAY);
+    }
+
+    if (depth > 0 && objects[depth - 1]) {
+      if (expectKey[depth - 1]) {
+        expectKey[depth - 1] = false;
+        final Object key = lexer.parseValue(true);
+        value = key instanceof String ? key : String.valueOf(key);
+        encodedTypeValue = SerializationParts.ENCODED_TYPE.equals(value);
+        return token = Token.KEY;
+      }
+      expectKey[depth - 1] = true;
+    }
+
+    final boolean cached = encodedTypeValue;
+    encodedTypeValue = false;
+
+    if (c == '{' || c == '[') {
+      lexer.skip();
+      if (depth == objects.length) {
+        objects = Arrays.copyOf(objects, depth * 2);
+        expectKey = Arrays.copyOf(expectKey, depth * 2);
+      }
+      objects[depth] = c == '{';
+      expectKey[depth++] = c == '{';
+      return token = (c == '{' ? Token.START_OBJECT : Token.START_ARRAY);
+    }
+
+    value = lexer.parseValue(cached);
+    if (value == null) {
+      return token = Token.NULL;
+    }
+    else if (value instanceof String) {
+      return token = Token.STRING;
+    }
+    else if (value instanceof Boolean) {
+      return token = Token.BOOLEAN;
+    }
+    else {
+      return token = Token.NUMBER;
+    }
+  }
+
+  /**
+   * Returns the current token.
+   */
+  public Token getToken() {
+    return token;
+  }
+
+  /**
+   * Returns the name of the current {@link Token#KEY}, or the value of the current {@link Token#STRING}.
+   */
+  public String getString() {
+    return (String) value;
+  }
+
+  /**
+   * Returns the value of the current scalar token: a {@link String}, {@link Double}, {@link Boolean}, or null.
+   */
+  public Object getValue() {
+    return value;
+  }
+
+  /**
+   * Reads the value starting with the current token into a tree. For objects and arrays, the parser is left at their
+   * closing token.
+   */
+  public EJValue readValue() {
+    switch (token) {
+      case START_OBJECT:
+        return readRemainingObject(new LinkedHashMap<Object, Object>());
+      case START_ARRAY: {
+        final List<Object> list = lexer.parseArray();
+        depth--;
+        token = Token.END_ARRAY;
+        return new ErraiJSONValue(list);
+      }
+      default:
+        return new ErraiJSONValue(value);
+    }
+  }
+
+  /**
+   * Reads the remaining members of the current object into the specified map, which holds the members read so far,
+   * and returns the whole object. If the current token is a {@link Token#KEY}, its value is read first. The parser is
+   * left at the closing token of the object.
+   */
+  public EJValue readRemainingObject(final Map<Object, Object> members) {
+    if (token == Token.END_OBJECT) {
+      return new ErraiJSONValue(members);
+    }
+    if (depth == 0 || !objects[depth - 1]) {
+      throw new IllegalStateException("not inside an object");
+    }
+
+    if (token == Token.KEY) {
+      final Object key = value;
+      Object member = null;
+      if (lexer.skipWhitespace() && lexer.peek() == ':') {
+        lexer.skip();
+      }
+      if (lexer.skipWhitespace() && lexer.peek() != ',' && lexer.peek() != '}') {
+        member = lexer.parseValue(encodedTypeValue);
+      }
+      members.put(key, member);
+    }
+
+    lexer.parseObject(members);
+    depth--;
+    token = Token.END_OBJECT;
+    value = null;
+    encodedTypeValue = false;
+    return new ErraiJSONValue(members);
+  }
+
+  /**
+   * Skips the value starting with the current token. For objects and arrays, the parser is left at their closing
+   * token.
+   */
+  public void skipValue() {
+    if (token == Token.START_OBJECT || token == Token.START_ARRAY) {
+      final int target = depth - 1;
+      while (depth > target) {
+        next();
+      }
+    }
+  }
+
+  /**
+   * Skips whitespace, and commas and colons between tokens.
+   *
+   * @return false if the end of the input has been reached.
+   */
+  private boolean skipSeparators() {
+    while (lexer.skipWhitespace()) {
+      final byte c = lexer.peek();
+      if (c != ',' && c != ':') {
+        return true;
+      }
+      lexer.skip();
+    }
+    return false;
+  }
+}
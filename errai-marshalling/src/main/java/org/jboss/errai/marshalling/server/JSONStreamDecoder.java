@@ -42,6 +42,8 @@ public class JSONStreamDecoder {
   private final CharBuffer buffer;
   private final BufferedReader reader;
 
+  private final StringBuilder scratch = new StringBuilder(100);
+
   private char carry;
   private int read;
   private boolean initial = true;
@@ -91,6 +93,11 @@ public class JSONStreamDecoder {
     return buffer.get();
   }
 
+  private StringBuilder scratch() {
+    scratch.setLength(0);
+    return scratch;
+  }
+
   public EJValue parse() {
     try {
       return new ErraiJSONValue(_parse(new OuterContext()));
@@ -124,7 +131,7 @@ public class JSONStreamDecoder {
         case '"':
         case '\'':
           char term = c;
-          appender = new StringBuilder(100);
+          appender = scratch();
           StrCapture:
           while ((c = read()) != 0) {
             switch (c) {
@@ -158,7 +165,7 @@ public class JSONStreamDecoder {
             break;
           }
           else if (Character.isJavaIdentifierPart(c)) {
-            appender = new StringBuilder(100).append(c);
+            appender = scratch().append(c);
 
             while (((c = read()) != 0) && Character.isJavaIdentifierPart(c)) {
               appender.append(c);
@@ -277,7 +284,7 @@ public class JSONStreamDecoder {
    * @throws IOException
    */
   private double parseDouble() throws IOException {
-    final StringBuilder sb = new StringBuilder(25);
+    final StringBuilder sb = scratch();
 
     State state = State.READ_SIGN;
 
@@ -24,6 +24,7 @@ import org.jboss.errai.codegen.meta.MetaClass;
 import org.jboss.errai.codegen.meta.MetaClassFactory;
 import org.jboss.errai.config.util.ClassScanner;
 import org.jboss.errai.marshalling.client.MarshallingSessionProviderFactory;
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
 import org.jboss.errai.marshalling.client.api.Marshaller;
 import org.jboss.errai.marshalling.client.api.MarshallerFactory;
 import org.jboss.errai.marshalling.client.api.MarshallingSession;
@@ -50,6 +51,9 @@ import org.slf4j.Logger;
  */
 public class MappingContextSingleton {
   private static final ServerMappingContext context;
+  private static final MarshallingSessionPool sessionPool;
+  private static volatile String typeTableDescription;
+  private static volatile CompactTypeTable typeTable;
   private static final Logger log = getLogger("ErraiMarshalling");
 
   static {
@@ -95,6 +99,7 @@ public class MappingContextSingleton {
     }
 
     context = sContext;
+    sessionPool = new MarshallingSessionPool(sContext);
   }
 
   private static void dynamicMarshallingWarning() {
@@ -112,18 +117,24 @@ public class MappingContextSingleton {
 
     final Object o = cls.newInstance();
     final MarshallerFactory marshallerFactory = (MarshallerFactory) o;
+    typeTableDescription = marshallerFactory.getTypeTable();
 
     return new ServerMappingContext() {
       {
         MarshallingSessionProviderFactory.setMarshallingSessionProvider(new MarshallingSessionProvider() {
           @Override
           public MarshallingSession getEncoding() {
-            return new EncodingSession(get());
+            return sessionPool.getEncoding();
           }
 
           @Override
           public MarshallingSession getDecoding() {
-            return new DecodingSession(get());
+            return sessionPool.getDecoding();
+          }
+
+          @Override
+          public void release(final MarshallingSession session) {
+            sessionPool.release(session);
           }
 
           @Override
@@ -193,12 +204,17 @@ public class MappingContextSingleton {
         MarshallingSessionProviderFactory.setMarshallingSessionProvider(new MarshallingSessionProvider() {
           @Override
           public MarshallingSession getEncoding() {
-            return new EncodingSession(get());
+            return sessionPool.getEncoding();
           }
 
           @Override
           public MarshallingSession getDecoding() {
-            return new DecodingSession(get());
+            return sessionPool.getDecoding();
+          }
+
+          @Override
+          public void release(final MarshallingSession session) {
+            sessionPool.release(session);
           }
 
           @Override
@@ -332,4 +348,28 @@ public class MappingContextSingleton {
   public static ServerMappingContext get() {
     return context;
   }
+
+  /**
+   * Returns the pool of the sessions handed out by the {@link MarshallingSessionProviderFactory}.
+   */
+  public static MarshallingSessionPool getSessionPool() {
+    return sessionPool;
+  }
+
+  /**
+   * Returns the table of the marshallable types, as generated into the static marshallers, or as described by the
+   * definitions of the dynamic marshallers.
+   */
+  public static CompactTypeTable getTypeTable() {
+    if (typeTable == null) {
+      synchronized (MappingContextSingleton.class) {
+        if (typeTable == null) {
+          final String description = typeTableDescription != null ? typeTableDescription
+              : MarshallingGenUtil.getTypeTableDescription(context.getDefinitionsFactory());
+          typeTable = new CompactTypeTable(description);
+        }
+      }
+    }
+    return typeTable;
+  }
 }
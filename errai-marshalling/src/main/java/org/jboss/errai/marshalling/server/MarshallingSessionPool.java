@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server;
+
+import java.lang.ref.WeakReference;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+
+/**
+ * Keeps one {@link EncodingSession} and one {@link DecodingSession} per thread, which are reset when they are
+ * released, so that marshalling a message does not create a new session and new reference tables every time.
+ * <p/>
+ * A session requested while the session of the thread is still in use, by marshalling nested in a marshaller, is a
+ * new session which is not pooled.
+ * <p/>
+ * The sessions reference the mapping context, and through it the marshallers and the classes of the application. So
+ * that the pooled sessions do not pin the class loader of an undeployed application to the threads of the container,
+ * the thread locals only hold weak references, and the sessions are held by the pool until {@link #clear()} is
+ * called, or until their thread terminates.
+ */
+public class MarshallingSessionPool {
+  private final ServerMappingContext context;
+
+  private final ThreadLocal<WeakReference<Sessions>> sessions = new ThreadLocal<WeakReference<Sessions>>();
+  private final Map<Thread, Sessions> sessionsByThread =
+      Collections.synchronizedMap(new WeakHashMap<Thread, Sessions>());
+
+  private final class Sessions {
+    private final EncodingSession encoding = new EncodingSession(context);
+    private final DecodingSession decoding = new DecodingSession(context);
+    private boolean encodingInUse;
+    private boolean decodingInUse;
+  }
+
+  public MarshallingSessionPool(final ServerMappingContext context) {
+    this.context = context;
+  }
+
+  private Sessions getSessions() {
+    final WeakReference<Sessions> reference = sessions.get();
+    Sessions pooled = (reference != null) ? reference.get() : null;
+    if (pooled == null) {
+      pooled = new Sessions();
+      sessionsByThread.put(Thread.currentThread(), pooled);
+      sessions.set(new WeakReference<Sessions>(pooled));
+    }
+    return pooled;
+  }
+
+  public MarshallingSession getEncoding() {
+    final Sessions pooled = getSessions();
+    if (pooled.encodingInUse) {
+      return new EncodingSession(context);
+    }
+    pooled.encodingInUse = true;
+    return pooled.encoding;
+  }
+
+  public MarshallingSession getDecoding() {
+    final Sessions pooled = getSessions();
+    if (pooled.decodingInUse) {
+      return new DecodingSession(context);
+    }
+    pooled.decodingInUse = true;
+    return pooled.decoding;
+  }
+
+  /**
+   * Resets the session if it is one of the pooled sessions of the calling thread, and makes it available again.
+   * Other sessions are left to the garbage collector.
+   */
+  public void release(final MarshallingSession session) {
+    final WeakReference<Sessions> reference = sessions.get();
+    final Sessions pooled = (reference != null) ? reference.get() : null;
+    if (pooled == null) {
+      return;
+    }
+    if (session == pooled.encoding && pooled.encodingInUse) {
+      pooled.encoding.reset();
+      pooled.encodingInUse = false;
+    }
+    else if (session == pooled.decoding && pooled.decodingInUse) {
+      pooled.decoding.reset();
+      pooled.decodingInUse = false;
+    }
+  }
+
+  /**
+   * Drops the pooled sessions of all threads, so that they no longer reference the mapping context. A thread which
+   * marshals again afterwards gets new sessions.
+   */
+  public void clear() {
+    sessionsByThread.clear();
+    sessions.remove();
+  }
+}
@@ -29,8 +29,17 @@ import java.io.InputStream;
 public abstract class ServerMarshalling extends Marshalling {
   @SuppressWarnings("unchecked")
   public static <T> T fromJSON(final InputStream inputStream, final Class<T> type) throws IOException {
+    final JSONPullParser parser = new JSONPullParser(inputStream);
+    if (parser.next() == JSONPullParser.Token.END) {
+      return null;
+    }
     final MarshallingSession session = MarshallingSessionProviderFactory.getDecoding();
-    return (T) session.getMarshallerInstance(type.getName()).demarshall(JSONStreamDecoder.decode(inputStream), session);
+    try {
+      return (T) StreamingDemarshaller.demarshall(parser, session, type.getName());
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
   }
 
   public static Object fromJSON(final InputStream inputStream) throws IOException {
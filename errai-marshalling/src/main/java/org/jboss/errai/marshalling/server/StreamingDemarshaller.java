@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jboss.errai.common.client.protocols.MessageParts;
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.client.marshallers.AbstractCollectionMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.ErraiProtocolEnvelopeMarshaller;
+import org.jboss.errai.marshalling.server.JSONPullParser.Token;
+import org.jboss.errai.marshalling.server.api.StreamingMarshaller;
+import org.jboss.errai.marshalling.server.json.impl.ErraiJSONValue;
+
+/**
+ * Demarshalls objects straight from a {@link JSONPullParser}, so that a payload never exists as a complete tree of
+ * {@link EJValue}s and as demarshalled objects at the same time.
+ * <p/>
+ * Collections are filled element by element, and objects whose marshaller is a {@link StreamingMarshaller} read
+ * their fields from the parser. All other marshallers are passed a tree of just the one object they demarshall, so
+ * that a list of thousands of entities needs the tree of one entity at a time.
+ * <p/>
+ * The results are the same as those of the marshallers demarshalling the tree of the whole payload, provided that
+ * {@value SerializationParts#ENCODED_TYPE} is the first member of an encoded object, as the marshallers write it.
+ */
+public final class StreamingDemarshaller {
+  private static final EJValue EMPTY_ARRAY = new ErraiJSONValue(Collections.emptyList());
+
+  private StreamingDemarshaller() {
+  }
+
+  /**
+   * Demarshalls the message parts of the protocol envelope at the current {@link Token#START_OBJECT}, like the
+   * {@link ErraiProtocolEnvelopeMarshaller}. The parser is left at the closing token of the envelope.
+   */
+  public static Map<String, Object> demarshallEnvelope(final JSONPullParser parser, final MarshallingSession ctx) {
+    if (parser.getToken() != Token.START_OBJECT) {
+      throw new RuntimeException("bad payload");
+    }
+
+    final Map<String, Object> parts = new HashMap<String, Object>();
+    while (parser.next() == Token.KEY) {
+      final String key = parser.getString();
+      parser.next();
+
+      if (MessageParts.SessionID.name().equals(key)) {
+        parser.skipValue();
+      }
+      else if (MessageParts.Throwable.name().equals(key)) {
+        // the envelope marshaller knows what to do with throwables it has no marshaller for.
+        final Map<Object, Object> part = new LinkedHashMap<Object, Object>();
+        part.put(key, parser.readValue().getRawValue());
+        parts.putAll(ErraiProtocolEnvelopeMarshaller.INSTANCE.demarshall(new ErraiJSONValue(part), ctx));
+      }
+      else {
+        parts.put(key, demarshall(parser, ctx, null));
+      }
+    }
+    return parts;
+  }
+
+  /**
+   * Demarshalls the value starting with the current token. For objects and arrays, the parser is left at their
+   * closing token.
+   *
+   * @param expectedType
+   *     the type to demarshall values without an {@value SerializationParts#ENCODED_TYPE} as, or null to demarshall
+   *     them as the types they were parsed as.
+   */
+  public static Object demarshall(final JSONPullParser parser, final MarshallingSession ctx, String expectedType) {
+    if (Object.class.getName().equals(expectedType)) {
+      expectedType = null;
+    }
+
+    switch (parser.getToken()) {
+      case NULL:
+        return null;
+
+      case START_OBJECT:
+        return demarshallObject(parser, ctx, expectedType);
+
+      case START_ARRAY:
+        if (expectedType == null) {
+          final List<Object> list = new ArrayList<Object>();
+          while (parser.next() != Token.END_ARRAY) {
+            list.add(demarshall(parser, ctx, null));
+          }
+          return list;
+        }
+        return marshallerFor(ctx, expectedType).demarshall(parser.readValue(), ctx);
+
+      case STRING:
+      case NUMBER:
+      case BOOLEAN:
+        if (expectedType == null) {
+          return parser.getValue();
+        }
+        return marshallerFor(ctx, expectedType).demarshall(new ErraiJSONValue(parser.getValue()), ctx);
+
+      default:
+        throw new RuntimeException("unexpected token in JSON input: " + parser.getToken());
+    }
+  }
+
+  private static Object demarshallObject(final JSONPullParser parser, final MarshallingSession ctx,
+                                         final String expectedType) {
+    if (parser.next() != Token.KEY || !SerializationParts.ENCODED_TYPE.equals(parser.getString())) {
+      final EJValue object = parser.readRemainingObject(new LinkedHashMap<Object, Object>());
+      return marshallerFor(ctx, expectedType != null ? expectedType : Object.class.getName()).demarshall(object, ctx);
+    }
+
+    parser.next();
+    final String encodedType = parser.getString();
+    final Marshaller<Object> marshaller = marshallerFor(ctx, encodedType);
+
+    if (marshaller instanceof StreamingMarshaller) {
+      return ((StreamingMarshaller<?>) marshaller).demarshall(encodedType, parser, ctx);
+    }
+    else if (marshaller instanceof AbstractCollectionMarshaller) {
+      return demarshallCollection((AbstractCollectionMarshaller<?>) marshaller, parser, ctx);
+    }
+
+    final Map<Object, Object> members = new LinkedHashMap<Object, Object>();
+    members.put(SerializationParts.ENCODED_TYPE, encodedType);
+    return marshaller.demarshall(parser.readRemainingObject(members), ctx);
+  }
+
+  /**
+   * Demarshalls the remaining members of an encoded collection, like the {@link AbstractCollectionMarshaller} does.
+   */
+  @SuppressWarnings("unchecked")
+  private static Collection<Object> demarshallCollection(final AbstractCollectionMarshaller<?> marshaller,
+                                                         final JSONPullParser parser,
+                                                         final MarshallingSession ctx) {
+    // the assumed element type can only be used once since it is not set for nested collections.
+    final String assumedElementType = ctx.getAssumedElementType();
+    ctx.setAssumedElementType(null);
+
+    Collection<Object> collection = null;
+    String objId = null;
+
+    while (parser.next() == Token.KEY) {
+      final String key = parser.getString();
+      parser.next();
+
+      if (SerializationParts.OBJECT_ID.equals(key) && parser.getToken() == Token.STRING) {
+        objId = parser.getString();
+        if (ctx.hasObject(objId)) {
+          collection = ctx.getObject(Collection.class, objId);
+        }
+      }
+      else if (SerializationParts.QUALIFIED_VALUE.equals(key) && parser.getToken() == Token.START_ARRAY
+          && collection == null) {
+        // an empty array gets the marshaller to create the collection type it stands for.
+        collection = (Collection<Object>) marshaller.doDemarshall(EMPTY_ARRAY, ctx);
+        if (objId != null) {
+          ctx.recordObject(objId, collection);
+        }
+
+        while (parser.next() != Token.END_ARRAY) {
+          collection.add(demarshall(parser, ctx, assumedElementType));
+        }
+      }
+      else {
+        parser.skipValue();
+      }
+    }
+    return collection;
+  }
+
+  private static Marshaller<Object> marshallerFor(final MarshallingSession ctx, final String type) {
+    final Marshaller<Object> marshaller = ctx.getMarshallerInstance(type);
+    if (marshaller == null) {
+      throw new RuntimeException("no marshaller for type: " + type);
+    }
+    return marshaller;
+  }
+}
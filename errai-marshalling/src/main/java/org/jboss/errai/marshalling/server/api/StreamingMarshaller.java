@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.server.api;
+
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.server.JSONPullParser;
+
+/**
+ * A server marshaller which can also demarshall its objects straight from a {@link JSONPullParser}, without a tree of
+ * the object being built first. Used by the {@link org.jboss.errai.marshalling.server.StreamingDemarshaller}.
+ */
+public interface StreamingMarshaller<T> extends Marshaller<T> {
+
+  /**
+   * Demarshalls an encoded object. The {@code ^EncodedType} member of the object has been read already, and the
+   * parser is at its value. The remaining members, and the values of fields, are read from the parser, which must be
+   * left at the closing token of the object.
+   *
+   * @param encodedType
+   *     the value of the {@code ^EncodedType} member.
+   */
+  T demarshall(String encodedType, JSONPullParser parser, MarshallingSession ctx);
+}
@@ -34,27 +34,73 @@ import org.jboss.errai.marshalling.rebind.api.model.Mapping;
 import org.jboss.errai.marshalling.rebind.api.model.MappingDefinition;
 import org.jboss.errai.marshalling.rebind.api.model.MemberMapping;
 import org.jboss.errai.marshalling.server.EncodingSession;
+import org.jboss.errai.marshalling.server.JSONPullParser;
+import org.jboss.errai.marshalling.server.JSONPullParser.Token;
 import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jboss.errai.marshalling.server.StreamingDemarshaller;
 import org.jboss.errai.marshalling.server.api.ServerMarshaller;
+import org.jboss.errai.marshalling.server.api.StreamingMarshaller;
 import org.mvel2.DataConversion;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * @author Mike Brock
  */
-public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
+public class DefaultDefinitionMarshaller implements ServerMarshaller<Object>, StreamingMarshaller<Object> {
   static final Charset UTF_8 = Charset.forName("UTF-8");
 
+  private static final Object[] NO_ARGS = new Object[0];
+
+  private static final MethodType INSTANTIATOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+  private static final MethodType DEFAULT_INSTANTIATOR_TYPE = MethodType.methodType(Object.class);
+  private static final MethodType READER_TYPE = MethodType.methodType(Object.class, Object.class);
+  private static final MethodType WRITER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+
   private final MappingDefinition definition;
 
+  private volatile Map<String, MemberMapping> writableMembersByKey;
+
+  /**
+   * The members and the instantiation mapping of the definition are bound to method handles once, so that they are
+   * not looked up and access checked for every object, and so that the JIT can inline the calls.
+   */
+  private volatile MethodHandle instantiator;
+  private volatile MethodHandle defaultInstantiator;
+  private volatile Map<MemberMapping, MethodHandle> readers;
+  private volatile Map<MemberMapping, MemberWriter> writers;
+
+  /**
+   * A writable member bound to a method handle of the type {@code (Object, Object)void}, and the type its values are
+   * converted to.
+   */
+  private static final class MemberWriter {
+    private final MethodHandle handle;
+    private final Class<?> type;
+
+    private MemberWriter(final MethodHandle handle, final Class<?> type) {
+      this.handle = handle;
+      this.type = type;
+    }
+
+    private void write(final Object instance, final Object value) throws Throwable {
+      handle.invokeExact(instance, (Object) DataConversion.convert(value, type));
+    }
+  }
+
   public DefaultDefinitionMarshaller(final MappingDefinition definition) {
     this.definition = definition;
   }
@@ -110,7 +156,7 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
              * Check to see if this object is instantiate only... meaning it has no fields to marshall.
              */
             if (oMap.containsKey(SerializationParts.INSTANTIATE_ONLY)) {
-              newInstance = getTypeHandled().newInstance();
+              newInstance = getDefaultInstantiator().invokeExact();
               ctx.recordObject(objID, newInstance);
               return newInstance;
             }
@@ -127,15 +173,7 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
                       marshaller.demarshall(oMap.get(mapping.getKey()), ctx), targetTypes[i++]);
             }
 
-            if (cMapping instanceof ConstructorMapping) {
-              final Constructor constructor = ((ConstructorMapping) cMapping).getMember().asConstructor();
-              constructor.setAccessible(true);
-              newInstance = constructor.newInstance(parms);
-            }
-            else {
-              newInstance = ((FactoryMapping) cMapping).getMember().asMethod().invoke(null, parms);
-            }
-
+            newInstance = getInstantiator().invokeExact(parms);
             ctx.recordObject(objID, newInstance);
           }
 
@@ -146,19 +184,7 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
               final Marshaller<Object> marshaller
                       = ctx.getMarshallerInstance(mapping.getType().getFullyQualifiedName());
 
-              if (mapping.getBindingMember() instanceof MetaField) {
-                final MetaField f = (MetaField) mapping.getBindingMember();
-
-                setProperty(newInstance, f.asField(),
-                        marshaller.demarshall(o1, ctx));
-              }
-              else {
-                final Method m = ((MetaMethod) mapping.getBindingMember()).asMethod();
-
-                m.invoke(newInstance, DataConversion.convert(
-                        marshaller.demarshall(o1, ctx),
-                        m.getParameterTypes()[0]));
-              }
+              getWriters().get(mapping).write(newInstance, marshaller.demarshall(o1, ctx));
             }
           }
 
@@ -176,11 +202,157 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
         return o.getRawValue();
       }
     }
-    catch (Exception e) {
-      throw new MarshallingException("Failed to demarshall an instance of " + definition.getMappingClass(), e);
+    catch (Throwable t) {
+      throw new MarshallingException("Failed to demarshall an instance of " + definition.getMappingClass(), t);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  @Override
+  public Object demarshall(final String encodedType, final JSONPullParser parser, final MarshallingSession ctx) {
+    try {
+      final InstantiationMapping cMapping = definition.getInstantiationMapping();
+      Object newInstance = null;
+
+      while (parser.next() == Token.KEY) {
+        final String key = parser.getString();
+
+        if (newInstance == null && (cMapping == null || cMapping.getMappings().length > 0
+            || !(SerializationParts.OBJECT_ID.equals(key) || SerializationParts.ENUM_STRING_VALUE.equals(key)))) {
+          /**
+           * The constructor arguments have to be known before the instance can be created, and fields can only be
+           * set after. Fall back to the tree of the object for these, and for objects not written by a marshaller.
+           */
+          final Map<Object, Object> members = new LinkedHashMap<Object, Object>();
+          members.put(SerializationParts.ENCODED_TYPE, encodedType);
+          return demarshall(parser.readRemainingObject(members), ctx);
+        }
+
+        final Token value = parser.next();
+
+        if (SerializationParts.OBJECT_ID.equals(key)) {
+          final String objID = parser.getString();
+          if (ctx.hasObject(objID)) {
+            newInstance = ctx.getObject(Object.class, objID);
+          }
+          else {
+            newInstance = getInstantiator().invokeExact(NO_ARGS);
+            ctx.recordObject(objID, newInstance);
+          }
+        }
+        else if (SerializationParts.ENUM_STRING_VALUE.equals(key)) {
+          newInstance = Enum.valueOf(getClassReference(encodedType), parser.getString());
+        }
+        else {
+          final MemberMapping mapping = getWritableMembersByKey().get(key);
+          if (mapping == null || value == Token.NULL) {
+            parser.skipValue();
+            continue;
+          }
+
+          final Object v = StreamingDemarshaller.demarshall(parser, ctx, mapping.getType().getFullyQualifiedName());
+          getWriters().get(mapping).write(newInstance, v);
+        }
+      }
+
+      if (newInstance == null) {
+        throw new RuntimeException("bad payload");
+      }
+      return newInstance;
+    }
+    catch (Throwable t) {
+      throw new MarshallingException("Failed to demarshall an instance of " + definition.getMappingClass(), t);
     }
   }
 
+  private Map<String, MemberMapping> getWritableMembersByKey() {
+    Map<String, MemberMapping> members = writableMembersByKey;
+    if (members == null) {
+      members = new HashMap<String, MemberMapping>();
+      for (final MemberMapping mapping : definition.getWritableMemberMappings()) {
+        members.put(mapping.getKey(), mapping);
+      }
+      writableMembersByKey = members;
+    }
+    return members;
+  }
+
+  private MethodHandle getInstantiator() throws IllegalAccessException {
+    MethodHandle handle = instantiator;
+    if (handle == null) {
+      final InstantiationMapping cMapping = definition.getInstantiationMapping();
+      if (cMapping instanceof ConstructorMapping) {
+        handle = MethodHandles.lookup()
+            .unreflectConstructor(accessible(((ConstructorMapping) cMapping).getMember().asConstructor()));
+      }
+      else {
+        handle = MethodHandles.lookup().unreflect(accessible(((FactoryMapping) cMapping).getMember().asMethod()));
+      }
+      instantiator = handle = handle.asSpreader(Object[].class, cMapping.getMappings().length)
+          .asType(INSTANTIATOR_TYPE);
+    }
+    return handle;
+  }
+
+  /**
+   * Returns a handle to the no-arg constructor of the type, which instantiates the objects sent as
+   * {@link SerializationParts#INSTANTIATE_ONLY}. Unlike {@link Class#newInstance()} it can call a private constructor.
+   */
+  private MethodHandle getDefaultInstantiator() throws IllegalAccessException, NoSuchMethodException {
+    MethodHandle handle = defaultInstantiator;
+    if (handle == null) {
+      defaultInstantiator = handle = MethodHandles.lookup()
+          .unreflectConstructor(accessible(getTypeHandled().getDeclaredConstructor()))
+          .asType(DEFAULT_INSTANTIATOR_TYPE);
+    }
+    return handle;
+  }
+
+  private Map<MemberMapping, MethodHandle> getReaders() throws IllegalAccessException {
+    Map<MemberMapping, MethodHandle> handles = readers;
+    if (handles == null) {
+      handles = new IdentityHashMap<MemberMapping, MethodHandle>();
+      for (final MemberMapping mapping : definition.getReadableMemberMappings()) {
+        final MethodHandle handle;
+        if (mapping.getReadingMember() instanceof MetaField) {
+          handle = MethodHandles.lookup()
+              .unreflectGetter(accessible(((MetaField) mapping.getReadingMember()).asField()));
+        }
+        else {
+          handle = MethodHandles.lookup().unreflect(accessible(((MetaMethod) mapping.getReadingMember()).asMethod()));
+        }
+        handles.put(mapping, handle.asType(READER_TYPE));
+      }
+      readers = handles;
+    }
+    return handles;
+  }
+
+  private Map<MemberMapping, MemberWriter> getWriters() throws IllegalAccessException {
+    Map<MemberMapping, MemberWriter> handles = writers;
+    if (handles == null) {
+      handles = new IdentityHashMap<MemberMapping, MemberWriter>();
+      for (final MemberMapping mapping : definition.getWritableMemberMappings()) {
+        final MethodHandle handle;
+        if (mapping.getBindingMember() instanceof MetaField) {
+          handle = MethodHandles.lookup()
+              .unreflectSetter(accessible(((MetaField) mapping.getBindingMember()).asField()));
+        }
+        else {
+          handle = MethodHandles.lookup().unreflect(accessible(((MetaMethod) mapping.getBindingMember()).asMethod()));
+        }
+        handles.put(mapping, new MemberWriter(handle.asType(WRITER_TYPE), handle.type().parameterType(1)));
+      }
+      writers = handles;
+    }
+    return handles;
+  }
+
+  private static <T extends AccessibleObject> T accessible(final T member) {
+    member.setAccessible(true);
+    return member;
+  }
+
   @Override
   public String marshall(final Object o, final MarshallingSession ctx) {
     final ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream(1024);
@@ -244,27 +416,11 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
       i++;
       final Object v;
 
-      if (mapping.getReadingMember() instanceof MetaField) {
-        final Field field = ((MetaField) mapping.getReadingMember()).asField();
-        field.setAccessible(true);
-
-        try {
-          v = field.get(o);
-        }
-        catch (Exception e) {
-          throw new RuntimeException("error accessing field: " + field, e);
-        }
+      try {
+        v = getReaders().get(mapping).invokeExact(o);
       }
-      else {
-        final Method method = ((MetaMethod) mapping.getReadingMember()).asMethod();
-        method.setAccessible(true);
-
-        try {
-          v = method.invoke(o);
-        }
-        catch (Exception e) {
-          throw new RuntimeException("error calling getter: " + method, e);
-        }
+      catch (Throwable t) {
+        throw new RuntimeException("error accessing member: " + mapping.getReadingMember(), t);
       }
 
       outstream.write(("\"" + mapping.getKey() + "\"").getBytes(UTF_8));
@@ -309,9 +465,12 @@ public class DefaultDefinitionMarshaller implements ServerMarshaller<Object> {
   }
 
   public static Class getClassReference(final EJObject oMap) {
+    return getClassReference(oMap.get(SerializationParts.ENCODED_TYPE).isString().stringValue());
+  }
+
+  private static Class getClassReference(final String encodedType) {
     try {
-      return Thread.currentThread().getContextClassLoader()
-              .loadClass(oMap.get(SerializationParts.ENCODED_TYPE).isString().stringValue());
+      return Thread.currentThread().getContextClassLoader().loadClass(encodedType);
     }
     catch (ClassNotFoundException e) {
       throw new RuntimeException("could not instantiate class", e);
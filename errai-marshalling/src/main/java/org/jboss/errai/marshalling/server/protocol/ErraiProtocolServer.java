@@ -20,12 +20,25 @@ import java.io.ByteArrayInputStream;
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
 
+import org.jboss.errai.marshalling.client.MarshallingSessionProviderFactory;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.client.marshallers.ErraiProtocolEnvelopeMarshaller;
 import org.jboss.errai.marshalling.client.protocols.ErraiProtocol;
 
 /**
  * @author Mike Brock
  */
 public class ErraiProtocolServer extends ErraiProtocol{
+  private static final int MIN_PAYLOAD_CAPACITY = 256;
+  private static final int MAX_PAYLOAD_CAPACITY = 64 * 1024;
+
+  /**
+   * The capacity new payload builders start with. It follows the recent payload sizes with some headroom, so that
+   * most payloads are encoded without growing the builder. Updates from concurrent encoders may get lost, which only
+   * makes the estimate lag.
+   */
+  private static volatile int payloadCapacity = MIN_PAYLOAD_CAPACITY;
+
   public static ByteArrayInputStream encodePayloadToByteArrayInputStream(final Map<String, Object> payload) {
     try {
       return new ByteArrayInputStream(encodePayload(payload).getBytes("UTF-8"));
@@ -33,4 +46,34 @@ public class ErraiProtocolServer extends ErraiProtocol{
       throw new AssertionError("UTF-8 appears not to be supported by this JRE, but that's impossible");
     }
   }
+
+  /**
+   * Encodes the payload without copying it into a {@link String} or a byte array, for writers which encode the
+   * characters themselves.
+   * <p/>
+   * This still allocates one {@link StringBuilder} per payload, presized from the recent payload sizes so that it
+   * rarely has to grow, in addition to whatever the marshallers of the payload's values allocate themselves.
+   */
+  public static CharSequence encodePayloadToCharSequence(final Map<String, Object> payload) {
+    final MarshallingSession session = MarshallingSessionProviderFactory.getEncoding();
+    try {
+      final StringBuilder encoded =
+          ErraiProtocolEnvelopeMarshaller.INSTANCE.marshall(payload, session, new StringBuilder(payloadCapacity));
+      updatePayloadCapacity(encoded.length());
+      return encoded;
+    }
+    finally {
+      MarshallingSessionProviderFactory.release(session);
+    }
+  }
+
+  private static void updatePayloadCapacity(final int length) {
+    final int capacity = payloadCapacity;
+    final int target = Math.min(MAX_PAYLOAD_CAPACITY, Math.max(MIN_PAYLOAD_CAPACITY, length + (length >> 2)));
+    // move an eighth of the way towards the new size, so that a single large payload does not inflate every builder.
+    final int updated = capacity + ((target - capacity) >> 3);
+    if (updated != capacity) {
+      payloadCapacity = updated;
+    }
+  }
 }
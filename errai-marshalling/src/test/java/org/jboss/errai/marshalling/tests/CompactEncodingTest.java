@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.jboss.errai.config.rebind.CommonConfigAttribs;
+import org.jboss.errai.marshalling.client.api.CompactTypeTable;
+import org.jboss.errai.marshalling.client.util.CompactEncoding;
+import org.jboss.errai.marshalling.rebind.MarshallerGeneratorFactory;
+import org.jboss.errai.marshalling.rebind.MarshallerOutputTarget;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.junit.Test;
+
+/**
+ * Tests the {@link CompactEncoding} and the {@link CompactTypeTable}, and that the table generated into the client
+ * marshallers matches the table of the server.
+ */
+public class CompactEncodingTest {
+  private static final String DESCRIPTION = "com.acme.Address|city=java.lang.String;"
+      + "com.acme.Person|address=com.acme.Address|age=java.lang.Long|tags=java.util.Map;"
+      + "java.lang.Long;java.util.ArrayList";
+
+  private static final Pattern GENERATED_TYPE_TABLE =
+      Pattern.compile("String getTypeTable\\(\\) \\{\\s*return \"([^\"]*)\";");
+
+  private final CompactTypeTable table = new CompactTypeTable(DESCRIPTION);
+
+  @Test
+  public void testTable() {
+    assertEquals(4, table.size());
+    assertEquals(1, table.getTypeId("com.acme.Address"));
+    assertEquals(4, table.getTypeId("java.util.ArrayList"));
+    assertEquals(0, table.getTypeId("com.acme.Unknown"));
+    assertEquals("com.acme.Person", table.getTypeName(2));
+    assertEquals("com.acme.Address", table.getFieldType("com.acme.Person", "address"));
+    assertNull(table.getFieldType("java.lang.Long", "address"));
+
+    assertEquals(table.getHash(), new CompactTypeTable(DESCRIPTION).getHash());
+    assertFalse(table.getHash().equals(new CompactTypeTable(DESCRIPTION + "|x=java.lang.String").getHash()));
+  }
+
+  @Test
+  public void testTypesAndObjectIds() {
+    final String json = "[{\"ToSubject\":\"People\",\"Value\":{\"^EncodedType\":\"java.util.ArrayList\","
+        + "\"^ObjectID\":\"1\",\"^Value\":[" + person("2", "\"Paris\"") + "," + person("3", "null") + ","
+        + "{\"^EncodedType\":\"com.acme.Person\",\"^ObjectID\":\"2\"}]}}]";
+
+    final String compact = CompactEncoding.compact(json, table);
+
+    assertFalse(compact.contains("com.acme"));
+    assertFalse(compact.contains("^EncodedType"));
+    assertTrue(compact.contains("{\"^T\":2,\"^I\":3,\"name\":\"Ann\",\"age\":{\"^I\":-1,\"^NumVal\":\"42\"}"));
+    assertTrue(compact.length() * 2 < json.length());
+    assertEquals(json, CompactEncoding.expand(compact, table));
+  }
+
+  @Test
+  public void testObjectsWhichDoNotMatchTheirField() {
+    final String json = "{\"^EncodedType\":\"com.acme.Person\",\"^ObjectID\":\"1\","
+        + "\"address\":{\"city\":\"untyped\"},"
+        + "\"tags\":{\"^EncodedType\":\"java.util.HashMap\",\"^ObjectID\":\"2\",\"^Value\":{\"^T\":\"user key\"}},"
+        + "\"age\":{\"^EncodedType\":\"java.lang.Long\",\"^ObjectID\":\"01\",\"^NumVal\":\"1\"}}";
+
+    final String compact = CompactEncoding.compact(json, table);
+
+    assertTrue(compact.contains("\"address\":{\"^T\":0,\"city\":\"untyped\"}"));
+    assertTrue(compact.contains("\"^EncodedType\":\"java.util.HashMap\""));
+    assertTrue(compact.contains("{\"^^T\":\"user key\"}"));
+    assertTrue(compact.contains("\"^ObjectID\":\"01\""));
+    assertEquals(json, CompactEncoding.expand(compact, table));
+  }
+
+  @Test
+  public void testPlainJsonIsLeftAsItIs() {
+    final String json = "[{\"ToSubject\":\"ClientBus\",\"^Tag\":[1,2.5e3,true,null,\"\\\"}\"],\"empty\":{}}]";
+
+    assertEquals(json, CompactEncoding.expand(json, table));
+    assertEquals(json, CompactEncoding.compact(json, table));
+    assertEquals("[{\"a\":1}]", CompactEncoding.expand(" [ { \"a\" : 1 } ] ", table));
+  }
+
+  @Test
+  public void testGeneratedClientTableMatchesTheServerTable() {
+    // the dynamic marshallers of the server describe their definitions at runtime.
+    final CompactTypeTable serverTable = MappingContextSingleton.getTypeTable();
+    assertTrue(serverTable.size() > 0);
+
+    final String disabled = generateClientMarshallers();
+    assertFalse("the table must not be compiled into clients by default",
+        GENERATED_TYPE_TABLE.matcher(disabled).find());
+
+    CommonConfigAttribs.MAKE_TYPE_TABLE.set("true");
+    final String enabled;
+    try {
+      enabled = generateClientMarshallers();
+    }
+    finally {
+      CommonConfigAttribs.MAKE_TYPE_TABLE.set("false");
+    }
+
+    final Matcher matcher = GENERATED_TYPE_TABLE.matcher(enabled);
+    assertTrue(matcher.find());
+    final CompactTypeTable clientTable = new CompactTypeTable(matcher.group(1));
+    assertEquals(serverTable.size(), clientTable.size());
+    assertEquals(serverTable.getHash(), clientTable.getHash());
+  }
+
+  private static String generateClientMarshallers() {
+    return MarshallerGeneratorFactory.getFor(null, MarshallerOutputTarget.GWT)
+        .generate("org.jboss.errai.marshalling.tests.gen", "TypeTableMarshallerFactory");
+  }
+
+  private static String person(final String objId, final String city) {
+    return "{\"^EncodedType\":\"com.acme.Person\",\"^ObjectID\":\"" + objId + "\",\"name\":\"Ann\","
+        + "\"age\":{\"^EncodedType\":\"java.lang.Long\",\"^ObjectID\":\"-1\",\"^NumVal\":\"42\"},"
+        + "\"address\":{\"^EncodedType\":\"com.acme.Address\",\"^ObjectID\":\"" + objId + "0\",\"city\":" + city
+        + "}}";
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.server.JSONByteDecoder;
+import org.jboss.errai.marshalling.server.JSONStreamDecoder;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JSONByteDecoder} against the {@link JSONStreamDecoder} it replaces.
+ */
+public class JSONByteDecoderTest {
+  private static final String MESSAGES = "[{\"ToSubject\":\"ClientBus\",\"CommandType\":\"RemoteSubscribe\","
+      + "\"Value\":{\"^EncodedType\":\"org.example.Person\",\"^ObjectID\":\"1\","
+      + "\"name\":\"J\u00fcrgen \\\"J\\\" \\u00D6 \uD83D\uDE00\\n\",\"age\":42,\"balance\":-17.5e3,"
+      + "\"ratio\":0.1,\"tiny\":1.5E-300,\"big\":123456789012345678901234567890,\"negZero\":-0,"
+      + "\"tags\":[ \"a\" , 'b', [], {} ],\"active\":true,\"spouse\":null,\"retired\":false}},"
+      + "{\"ToSubject\":\"ClientBus\",\"Value\":{\"^EncodedType\":\"org.example.Person\",\"age\":-7}}]";
+
+  @Test
+  public void testProducesTheSameTreeAsTheStreamDecoder() throws Exception {
+    final Object expected = JSONStreamDecoder.decode(stream(MESSAGES)).getRawValue();
+    final Object actual = JSONByteDecoder.decode(stream(MESSAGES)).getRawValue();
+
+    assertEquals(expected, actual);
+    assertEquals(Double.doubleToLongBits(-0.0), Double.doubleToLongBits(value(actual, 0, "negZero")));
+  }
+
+  @Test
+  public void testRepeatedKeysAndTypeNamesShareOneInstance() throws Exception {
+    final JSONByteDecoder decoder = new JSONByteDecoder();
+    final List<?> first = (List<?>) decoder.parse(stream(MESSAGES)).getRawValue();
+    final List<?> second = (List<?>) decoder.parse(stream(MESSAGES)).getRawValue();
+
+    assertSame(firstKey(first.get(0)), firstKey(first.get(1)));
+    assertSame(firstKey(first.get(0)), firstKey(second.get(0)));
+    assertSame(((Map<?, ?>) ((Map<?, ?>) first.get(0)).get("Value")).get("^EncodedType"),
+        ((Map<?, ?>) ((Map<?, ?>) second.get(1)).get("Value")).get("^EncodedType"));
+  }
+
+  @Test
+  public void testNumbersMatchDoubleParsing() {
+    final JSONByteDecoder decoder = new JSONByteDecoder();
+    final Random random = new Random(42);
+    for (int i = 0; i < 10000; i++) {
+      final String number;
+      switch (i % 4) {
+        case 0:
+          number = Long.toString(random.nextLong() >> random.nextInt(64));
+          break;
+        case 1:
+          number = Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20));
+          break;
+        case 2:
+          number = (random.nextInt(2000000) - 1000000) + "." + random.nextInt(100000);
+          break;
+        default:
+          number = random.nextInt(100000) + "e" + (random.nextInt(60) - 30);
+      }
+
+      final byte[] json = ("[" + number + "]").getBytes(StandardCharsets.UTF_8);
+      final Object parsed = ((List<?>) decoder.parse(json, 0, json.length).getRawValue()).get(0);
+      assertEquals(number, Double.parseDouble(number), ((Double) parsed).doubleValue(), 0.0);
+    }
+  }
+
+  @Test
+  public void testReadsPayloadsLargerThanTheBuffer() throws Exception {
+    final StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 5000; i++) {
+      json.append(i == 0 ? "" : ",").append("{\"ToSubject\":\"Service").append(i).append("\",\"Value\":\"\u20ac")
+          .append(i).append("\"}");
+    }
+    json.append(']');
+
+    final List<?> messages = (List<?>) JSONByteDecoder.decode(stream(json.toString())).getRawValue();
+    assertEquals(5000, messages.size());
+    assertEquals("\u20ac4999", ((Map<?, ?>) messages.get(4999)).get("Value"));
+  }
+
+  @Test
+  public void testDecodesDirectByteBuffer() {
+    final byte[] bytes = "{ \"myValue\": \"caf\u00e9\" }".getBytes(StandardCharsets.UTF_8);
+    final ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+    direct.put(bytes).flip();
+
+    final EJValue value = JSONByteDecoder.decode(direct);
+    assertEquals("caf\u00e9", value.isObject().get("myValue").isString().stringValue());
+    assertEquals(0, direct.remaining());
+  }
+
+  @Test
+  public void testEmptyInputIsNull() throws Exception {
+    assertNull(JSONByteDecoder.decode(stream(" ")).getRawValue());
+  }
+
+  @Test
+  public void testRejectsUnterminatedString() throws Exception {
+    try {
+      JSONByteDecoder.decode(stream("{\"a\":\"b"));
+      fail("expected a RuntimeException");
+    }
+    catch (RuntimeException e) {
+      assertTrue(e.getMessage().contains("unterminated"));
+    }
+  }
+
+  private static ByteArrayInputStream stream(final String json) {
+    return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Object firstKey(final Object map) {
+    final Iterator<?> keys = ((Map<?, ?>) map).keySet().iterator();
+    return keys.next();
+  }
+
+  private static double value(final Object messages, final int index, final String field) {
+    final Map<?, ?> message = (Map<?, ?>) ((List<?>) messages).get(index);
+    return (Double) ((Map<?, ?>) message.get("Value")).get(field);
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.server.DecodingSession;
+import org.jboss.errai.marshalling.server.EncodingSession;
+import org.jboss.errai.marshalling.server.MarshallingSessionPool;
+import org.jboss.errai.marshalling.server.ServerMappingContext;
+import org.junit.Test;
+
+/**
+ * Tests the object reference tracking of the {@link org.jboss.errai.marshalling.client.api.AbstractMarshallingSession}
+ * and the {@link MarshallingSessionPool}.
+ */
+public class MarshallingSessionTest {
+  private final ServerMappingContext mappingContext = new ServerMappingContext() {
+    @Override
+    public DefinitionsFactory getDefinitionsFactory() {
+      return null;
+    }
+
+    @Override
+    public Marshaller<Object> getMarshaller(final String clazz) {
+      return null;
+    }
+
+    @Override
+    public boolean hasMarshaller(final String clazzName) {
+      return false;
+    }
+
+    @Override
+    public boolean canMarshal(final String cls) {
+      return false;
+    }
+  };
+
+  @Test
+  public void testReferencesAreTrackedByIdentity() {
+    final EncodingSession session = new EncodingSession(mappingContext);
+    final String a = new String("same");
+    final String b = new String("same");
+
+    assertFalse(session.hasObject((Object) a));
+    assertEquals("1", session.getObject(a));
+    assertEquals("2", session.getObject(b));
+    assertEquals("1", session.getObject(a));
+    assertTrue(session.hasObject((Object) a));
+    assertFalse(session.hasObject((Object) null));
+    assertSame(b, session.getObject(String.class, "2"));
+  }
+
+  @Test
+  public void testLargeGraphs() {
+    final EncodingSession session = new EncodingSession(mappingContext);
+    final List<Object> objects = new ArrayList<Object>();
+    for (int i = 0; i < 20000; i++) {
+      objects.add(new Object());
+      assertEquals(String.valueOf(i + 1), session.getObject(objects.get(i)));
+    }
+
+    for (int i = 0; i < objects.size(); i++) {
+      final String id = String.valueOf(i + 1);
+      assertEquals(id, session.getObject(objects.get(i)));
+      assertSame(objects.get(i), session.getObject(Object.class, id));
+    }
+  }
+
+  @Test
+  public void testRecordedIds() {
+    final DecodingSession session = new DecodingSession(mappingContext);
+    final Object first = new Object();
+    final Object named = new Object();
+    final Object distant = new Object();
+
+    assertSame(first, session.recordObject("1", first));
+    session.recordObject("-1", new Object());
+    session.recordObject("a7", named);
+    session.recordObject("999999", distant);
+
+    assertSame(first, session.getObject(Object.class, "1"));
+    assertFalse(session.hasObject("-1"));
+    assertFalse(session.hasObject("01"));
+    assertFalse(session.hasObject("2"));
+    assertSame(named, session.getObject(Object.class, "a7"));
+    assertSame(distant, session.getObject(Object.class, "999999"));
+  }
+
+  @Test
+  public void testIdStringsAreShared() {
+    final String first = new EncodingSession(mappingContext).getObject(new Object());
+    final String second = new EncodingSession(mappingContext).getObject(new Object());
+
+    assertEquals("1", first);
+    assertSame(first, second);
+  }
+
+  @Test
+  public void testResetForgetsTheGraph() {
+    final EncodingSession session = new EncodingSession(mappingContext);
+    final Object o = new Object();
+    for (int i = 0; i < 10000; i++) {
+      session.getObject(new Object());
+    }
+    session.getObject(o);
+    session.recordObject("name", o);
+    session.setAssumedElementType(String.class.getName());
+
+    session.reset();
+
+    assertFalse(session.hasObject(o));
+    assertFalse(session.hasObject("10001"));
+    assertFalse(session.hasObject("name"));
+    assertNull(session.getAssumedElementType());
+    assertEquals("1", session.getObject(o));
+  }
+
+  @Test
+  public void testPoolReusesSessionsOfTheThread() {
+    final MarshallingSessionPool pool = new MarshallingSessionPool(mappingContext);
+
+    final MarshallingSession session = pool.getEncoding();
+    session.getObject(new Object());
+    final MarshallingSession nested = pool.getEncoding();
+    assertNotSame(session, nested);
+    pool.release(nested);
+    pool.release(session);
+
+    final MarshallingSession reused = pool.getEncoding();
+    assertSame(session, reused);
+    assertFalse(reused.hasObject("1"));
+    assertTrue(pool.getDecoding() instanceof DecodingSession);
+  }
+
+  @Test
+  public void testClearDropsThePooledSessions() {
+    final MarshallingSessionPool pool = new MarshallingSessionPool(mappingContext);
+
+    final MarshallingSession session = pool.getEncoding();
+    pool.release(session);
+    pool.clear();
+
+    final MarshallingSession fresh = pool.getEncoding();
+    assertNotSame(session, fresh);
+    pool.release(fresh);
+    assertSame(fresh, pool.getEncoding());
+  }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jboss.errai.codegen.util.ClassChangeUtil;
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallerFactory;
+import org.jboss.errai.marshalling.client.api.ParserFactory;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactorySingleton;
+import org.jboss.errai.marshalling.rebind.MarshallerGeneratorFactory;
+import org.jboss.errai.marshalling.rebind.MarshallerOutputTarget;
+import org.jboss.errai.marshalling.server.DecodingSession;
+import org.jboss.errai.marshalling.server.EncodingSession;
+import org.jboss.errai.marshalling.server.JSONPullParser;
+import org.jboss.errai.marshalling.server.MappingContextSingleton;
+import org.jboss.errai.marshalling.server.ServerMappingContext;
+import org.jboss.errai.marshalling.server.StreamingDemarshaller;
+import org.jboss.errai.marshalling.server.marshallers.DefaultDefinitionMarshaller;
+import org.jboss.errai.marshalling.tests.res.EntityWithPrivateMembers;
+import org.junit.Test;
+
+/**
+ * Tests the round trip of a type which is only reachable through private members, through the method handles of the
+ * {@link DefaultDefinitionMarshaller} and through a generated server marshaller.
+ */
+public class PrivateMemberMarshallingTest {
+  private static final String TYPE = EntityWithPrivateMembers.class.getName();
+  private static final String MARKER = EntityWithPrivateMembers.Marker.class.getName();
+
+  private static final EntityWithPrivateMembers ENTITY =
+      EntityWithPrivateMembers.create(42, Long.MAX_VALUE, true, 0.25, '\u00e9', "private");
+
+  @Test
+  public void testDynamicRoundTrip() {
+    final ServerMappingContext context = MappingContextSingleton.loadDynamicMarshallers();
+    final Marshaller<Object> marshaller = context.getMarshaller(TYPE);
+    assertTrue(marshaller instanceof DefaultDefinitionMarshaller);
+
+    final String json = marshaller.marshall(ENTITY, new EncodingSession(context));
+    assertTrue(json, json.contains("\"" + SerializationParts.INSTANTIATE_ONLY + "\":true"));
+
+    assertEquals(ENTITY, marshaller.demarshall(ParserFactory.get().parse(json), new DecodingSession(context)));
+
+    final byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+    final JSONPullParser parser = new JSONPullParser(utf8, 0, utf8.length);
+    parser.next();
+    assertEquals(ENTITY, StreamingDemarshaller.demarshall(parser, new DecodingSession(context), TYPE));
+  }
+
+  @Test
+  public void testDynamicInstantiateOnly() {
+    final ServerMappingContext context = MappingContextSingleton.loadDynamicMarshallers();
+    final String json = "{\"" + SerializationParts.ENCODED_TYPE + "\":\"" + MARKER + "\",\""
+        + SerializationParts.OBJECT_ID + "\":\"1\",\"" + SerializationParts.INSTANTIATE_ONLY + "\":true}";
+
+    final Object marker =
+        context.getMarshaller(MARKER).demarshall(ParserFactory.get().parse(json), new DecodingSession(context));
+    assertEquals(new EntityWithPrivateMembers.Marker(), marker);
+  }
+
+  @Test
+  public void testGeneratedRoundTrip() throws Exception {
+    // also sets up the class scanning and the JSON parser.
+    final ServerMappingContext dynamic = MappingContextSingleton.loadDynamicMarshallers();
+
+    final String packageName = "org.jboss.errai.marshalling.tests.gen";
+    final String className = "PrivateMemberMarshallerFactory";
+    final String source = MarshallerGeneratorFactory.getFor(null, MarshallerOutputTarget.Java)
+        .generate(packageName, className);
+    assertTrue("private members must be reached through method handles", source.contains(".invokeExact("));
+
+    final MarshallerFactory factory = (MarshallerFactory) ClassChangeUtil
+        .compileAndLoadFromSource(packageName, className, source).newInstance();
+    final ServerMappingContext context = new ServerMappingContext() {
+      @Override
+      public DefinitionsFactory getDefinitionsFactory() {
+        return DefinitionsFactorySingleton.get();
+      }
+
+      @Override
+      public Marshaller<Object> getMarshaller(final String clazz) {
+        return factory.getMarshaller(clazz);
+      }
+
+      @Override
+      public boolean hasMarshaller(final String clazzName) {
+        return factory.getMarshaller(clazzName) != null;
+      }
+
+      @Override
+      public boolean canMarshal(final String cls) {
+        return hasMarshaller(cls);
+      }
+    };
+
+    final Marshaller<Object> marshaller = context.getMarshaller(TYPE);
+    assertNotNull(marshaller);
+
+    final String json = marshaller.marshall(ENTITY, new EncodingSession(context));
+    assertTrue(json, json.contains("\"" + SerializationParts.INSTANTIATE_ONLY + "\":true"));
+    assertEquals(ENTITY, marshaller.demarshall(ParserFactory.get().parse(json), new DecodingSession(context)));
+
+    // the generated and the dynamic marshallers must understand each other.
+    assertEquals(ENTITY, dynamic.getMarshaller(TYPE)
+        .demarshall(ParserFactory.get().parse(json), new DecodingSession(dynamic)));
+  }
+}
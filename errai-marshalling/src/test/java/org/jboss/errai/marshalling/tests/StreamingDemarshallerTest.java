@@ -0,0 +1,273 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jboss.errai.common.client.protocols.SerializationParts;
+import org.jboss.errai.marshalling.client.api.Marshaller;
+import org.jboss.errai.marshalling.client.api.MarshallingSession;
+import org.jboss.errai.marshalling.client.api.json.EJObject;
+import org.jboss.errai.marshalling.client.api.json.EJValue;
+import org.jboss.errai.marshalling.client.marshallers.BooleanMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.DoubleMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.ErraiProtocolEnvelopeMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.IntegerMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.ListMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.MapMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.ObjectMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.SetMarshaller;
+import org.jboss.errai.marshalling.client.marshallers.StringMarshaller;
+import org.jboss.errai.marshalling.rebind.DefinitionsFactory;
+import org.jboss.errai.marshalling.server.DecodingSession;
+import org.jboss.errai.marshalling.server.JSONByteDecoder;
+import org.jboss.errai.marshalling.server.JSONPullParser;
+import org.jboss.errai.marshalling.server.JSONPullParser.Token;
+import org.jboss.errai.marshalling.server.ServerMappingContext;
+import org.jboss.errai.marshalling.server.StreamingDemarshaller;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the {@link JSONPullParser} and the {@link StreamingDemarshaller}.
+ */
+public class StreamingDemarshallerTest {
+  private static final String PERSON = Person.class.getName();
+
+  private final Map<String, Marshaller<Object>> marshallers = new HashMap<String, Marshaller<Object>>();
+  private final List<EJValue> personTrees = new ArrayList<EJValue>();
+
+  private final ServerMappingContext mappingContext = new ServerMappingContext() {
+    @Override
+    public DefinitionsFactory getDefinitionsFactory() {
+      return null;
+    }
+
+    @Override
+    public Marshaller<Object> getMarshaller(final String clazz) {
+      return marshallers.get(clazz);
+    }
+
+    @Override
+    public boolean hasMarshaller(final String clazzName) {
+      return marshallers.containsKey(clazzName);
+    }
+
+    @Override
+    public boolean canMarshal(final String cls) {
+      return hasMarshaller(cls);
+    }
+  };
+
+  static class Person {
+    String name;
+  }
+
+  /**
+   * A marshaller which is not a {@link org.jboss.errai.marshalling.server.api.StreamingMarshaller}, and records the
+   * trees it is passed.
+   */
+  private class PersonMarshaller implements Marshaller<Object> {
+    @Override
+    public Object demarshall(final EJValue o, final MarshallingSession ctx) {
+      personTrees.add(o);
+      final EJObject obj = o.isObject();
+      final String objId = obj.get(SerializationParts.OBJECT_ID).isString().stringValue();
+      if (ctx.hasObject(objId)) {
+        return ctx.getObject(Person.class, objId);
+      }
+      final Person person = new Person();
+      person.name = obj.get("name").isString().stringValue();
+      return ctx.recordObject(objId, person);
+    }
+
+    @Override
+    public String marshall(final Object o, final MarshallingSession ctx) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Object[] getEmptyArray() {
+      return new Person[0];
+    }
+  }
+
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  @Before
+  public void setUp() {
+    marshallers.put(Object.class.getName(), new ObjectMarshaller());
+    marshallers.put(String.class.getName(), (Marshaller) new StringMarshaller());
+    marshallers.put(Integer.class.getName(), (Marshaller) new IntegerMarshaller());
+    marshallers.put(Double.class.getName(), (Marshaller) new DoubleMarshaller());
+    marshallers.put(Boolean.class.getName(), (Marshaller) new BooleanMarshaller());
+    marshallers.put(List.class.getName(), (Marshaller) ListMarshaller.INSTANCE);
+    marshallers.put(ArrayList.class.getName(), (Marshaller) ListMarshaller.INSTANCE);
+    marshallers.put(Set.class.getName(), (Marshaller) new SetMarshaller());
+    marshallers.put(HashSet.class.getName(), (Marshaller) new SetMarshaller());
+    marshallers.put(Map.class.getName(), (Marshaller) MapMarshaller.INSTANCE);
+    marshallers.put(PERSON, new PersonMarshaller());
+  }
+
+  @Test
+  public void testTokens() {
+    final JSONPullParser parser = parser("{\"a\" : [1, \"x\", true, null], \"b\": {}}");
+    final List<Token> tokens = new ArrayList<Token>();
+    final List<Object> values = new ArrayList<Object>();
+    Token token;
+    while ((token = parser.next()) != Token.END) {
+      tokens.add(token);
+      values.add(parser.getValue());
+    }
+
+    assertEquals(Arrays.asList(Token.START_OBJECT, Token.KEY, Token.START_ARRAY, Token.NUMBER, Token.STRING,
+        Token.BOOLEAN, Token.NULL, Token.END_ARRAY, Token.KEY, Token.START_OBJECT, Token.END_OBJECT,
+        Token.END_OBJECT), tokens);
+    assertEquals(Arrays.asList(null, "a", null, 1.0, "x", true, null, null, "b", null, null, null), values);
+  }
+
+  @Test
+  public void testReadRemainingObjectAfterKey() {
+    final JSONPullParser parser = parser("[{\"first\":1,\"second\":{\"x\":[2]},\"third\":3},4]");
+    parser.next();
+    parser.next();
+    parser.next();
+    assertEquals(Token.NUMBER, parser.next());
+    assertEquals(Token.KEY, parser.next());
+
+    final Map<Object, Object> members = new LinkedHashMap<Object, Object>();
+    members.put("first", 1.0);
+    final EJValue object = parser.readRemainingObject(members);
+
+    assertEquals(3, object.isObject().size());
+    assertEquals(2.0, object.isObject().get("second").isObject().get("x").isArray().get(0).isNumber().doubleValue(),
+        0.0);
+    assertEquals(Token.END_OBJECT, parser.getToken());
+    assertEquals(Token.NUMBER, parser.next());
+    assertEquals(Token.END_ARRAY, parser.next());
+    assertEquals(Token.END, parser.next());
+  }
+
+  @Test
+  public void testSkipValue() {
+    final JSONPullParser parser = parser("[{\"a\":[1,2,{\"b\":[]}]},\"after\"]");
+    parser.next();
+    parser.next();
+    parser.skipValue();
+
+    assertEquals(Token.END_OBJECT, parser.getToken());
+    assertEquals(Token.STRING, parser.next());
+    assertEquals("after", parser.getString());
+  }
+
+  @Test
+  public void testListOfEntitiesIsDemarshalledOneEntityAtATime() {
+    final JSONPullParser parser = parser("{\"^EncodedType\":\"java.util.ArrayList\",\"^ObjectID\":\"1\",\"^Value\":["
+        + person("2", "Ann") + "," + person("3", "Bob") + ",{\"^EncodedType\":\"" + PERSON + "\",\"^ObjectID\":\"2\"}"
+        + "]}");
+    parser.next();
+
+    final List<?> people = (List<?>) StreamingDemarshaller.demarshall(parser, session(), null);
+
+    assertEquals(3, people.size());
+    assertEquals("Ann", ((Person) people.get(0)).name);
+    assertEquals("Bob", ((Person) people.get(1)).name);
+    assertSame(people.get(0), people.get(2));
+
+    assertEquals(3, personTrees.size());
+    for (final EJValue tree : personTrees) {
+      assertEquals(PERSON, tree.isObject().get(SerializationParts.ENCODED_TYPE).isString().stringValue());
+    }
+    assertEquals(3, personTrees.get(0).isObject().size());
+  }
+
+  @Test
+  public void testCollectionBackReference() {
+    final JSONPullParser parser = parser("[{\"^EncodedType\":\"java.util.HashSet\",\"^ObjectID\":\"1\",\"^Value\":"
+        + "[\"a\"]},{\"^EncodedType\":\"java.util.HashSet\",\"^ObjectID\":\"1\"}]");
+    parser.next();
+
+    final List<?> sets = (List<?>) StreamingDemarshaller.demarshall(parser, session(), Object.class.getName());
+
+    assertEquals(new HashSet<Object>(Arrays.asList("a")), sets.get(0));
+    assertSame(sets.get(0), sets.get(1));
+  }
+
+  @Test
+  public void testAssumedElementType() {
+    final JSONPullParser parser = parser("{\"^EncodedType\":\"java.util.ArrayList\",\"^ObjectID\":\"1\",\"^Value\":"
+        + "[1,2,null]}");
+    parser.next();
+
+    final MarshallingSession session = session();
+    session.setAssumedElementType(Integer.class.getName());
+    final List<?> list = (List<?>) StreamingDemarshaller.demarshall(parser, session, List.class.getName());
+
+    assertEquals(Arrays.asList(1, 2, null), list);
+    assertNull(session.getAssumedElementType());
+  }
+
+  @Test
+  public void testEnvelopeMatchesTreeDemarshalling() {
+    final String json = "{\"ToSubject\":\"Service\",\"CommandType\":\"Call\",\"SessionID\":\"abc\",\"Priority\":2,"
+        + "\"Count\":{\"^EncodedType\":\"java.lang.Integer\",\"^ObjectID\":\"-1\",\"^NumVal\":7},"
+        + "\"Tags\":{\"plain\":\"map\"},\"Empty\":null,"
+        + "\"MethodParms\":{\"^EncodedType\":\"java.util.ArrayList\",\"^ObjectID\":\"1\",\"^Value\":["
+        + person("2", "Ann") + ",\"text\",true]}}";
+
+    final JSONPullParser parser = parser(json);
+    parser.next();
+    final Map<String, Object> streamed = StreamingDemarshaller.demarshallEnvelope(parser, session());
+    final Map<String, Object> tree = ErraiProtocolEnvelopeMarshaller.INSTANCE.demarshall(
+        JSONByteDecoder.decode(ByteBuffer.wrap(json.getBytes(StandardCharsets.UTF_8))), session());
+
+    assertEquals(tree.keySet(), streamed.keySet());
+    assertEquals(7, streamed.get("Count"));
+    assertEquals(tree.get("Tags"), streamed.get("Tags"));
+    assertEquals(tree.get("Priority"), streamed.get("Priority"));
+
+    final List<?> parms = (List<?>) streamed.get("MethodParms");
+    assertEquals("Ann", ((Person) parms.get(0)).name);
+    assertEquals(((List<?>) tree.get("MethodParms")).subList(1, 3), parms.subList(1, 3));
+    assertEquals(Token.END, parser.next());
+  }
+
+  private static String person(final String objId, final String name) {
+    return "{\"^EncodedType\":\"" + PERSON + "\",\"^ObjectID\":\"" + objId + "\",\"name\":\"" + name + "\"}";
+  }
+
+  private static JSONPullParser parser(final String json) {
+    final byte[] utf8 = json.getBytes(StandardCharsets.UTF_8);
+    return new JSONPullParser(utf8, 0, utf8.length);
+  }
+
+  private MarshallingSession session() {
+    return new DecodingSession(mappingContext);
+  }
+}
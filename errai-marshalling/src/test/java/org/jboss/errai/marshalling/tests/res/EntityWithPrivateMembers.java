@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2017 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jboss.errai.marshalling.tests.res;
+
+import org.jboss.errai.common.client.api.annotations.MapsTo;
+import org.jboss.errai.common.client.api.annotations.Portable;
+
+/**
+ * Portable type used to test marshalling of types which are only reachable through private members: a private
+ * mapped constructor, and private fields of primitive and reference types.
+ */
+@Portable
+public class EntityWithPrivateMembers {
+
+  private final int count;
+  private final long total;
+  private boolean active;
+  private double ratio;
+  private char grade;
+  private String name;
+  private Marker marker;
+
+  private EntityWithPrivateMembers(@MapsTo("count") final int count, @MapsTo("total") final long total) {
+    this.count = count;
+    this.total = total;
+  }
+
+  public static EntityWithPrivateMembers create(final int count, final long total, final boolean active,
+                                                final double ratio, final char grade, final String name) {
+    final EntityWithPrivateMembers entity = new EntityWithPrivateMembers(count, total);
+    entity.active = active;
+    entity.ratio = ratio;
+    entity.grade = grade;
+    entity.name = name;
+    entity.marker = new Marker();
+    return entity;
+  }
+
+  /**
+   * A type without any members, which is sent as instantiate only.
+   */
+  @Portable
+  public static class Marker {
+
+    @Override
+    public int hashCode() {
+      return 1;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      return obj != null && obj.getClass() == getClass();
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    final int prime = 31;
+    int result = 1;
+    result = prime * result + count;
+    result = prime * result + (int) (total ^ (total >>> 32));
+    result = prime * result + (active ? 1231 : 1237);
+    final long bits = Double.doubleToLongBits(ratio);
+    result = prime * result + (int) (bits ^ (bits >>> 32));
+    result = prime * result + grade;
+    result = prime * result + ((name == null) ? 0 : name.hashCode());
+    result = prime * result + ((marker == null) ? 0 : marker.hashCode());
+    return result;
+  }
+
+  @Override
+  public boolean equals(final Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    final EntityWithPrivateMembers other = (EntityWithPrivateMembers) obj;
+    if (count != other.count || total != other.total || active != other.active || grade != other.grade)
+      return false;
+    if (Double.doubleToLongBits(ratio) != Double.doubleToLongBits(other.ratio))
+      return false;
+    if (name == null) {
+      if (other.name != null)
+        return false;
+    }
+    else if (!name.equals(other.name))
+      return false;
+    if (marker == null) {
+      if (other.marker != null)
+        return false;
+    }
+    else if (!marker.equals(other.marker))
+      return false;
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "EntityWithPrivateMembers [count=" + count + ", total=" + total + ", active=" + active + ", ratio="
+        + ratio + ", grade=" + grade + ", name=" + name + ", marker=" + marker + "]";
+  }
+}